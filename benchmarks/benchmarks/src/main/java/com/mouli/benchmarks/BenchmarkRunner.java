@@ -0,0 +1,34 @@
+package com.mouli.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * JMH entry point. Accepts the usual JMH command line, but unless -rf/-rff are given the
+ * results are written as JSON to results/&lt;label&gt;.json, where the label is -Dbench.label
+ * (e.g. the commit hash) or a timestamp. Keeping one file per commit makes regressions diffable.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+
+        if (!cmd.getResultFormat().hasValue() && !cmd.getResult().hasValue()) {
+            String label = System.getProperty("bench.label",
+                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+            Path out = Path.of("results", label + ".json");
+            Files.createDirectories(out.getParent());
+            options.resultFormat(ResultFormatType.JSON).result(out.toString());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,77 @@
+package com.mouli.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.mouli.consumer.codec.CommandMessageCodec;
+import com.mouli.consumer.codec.WireFormat;
+import com.mouli.consumer.config.JacksonConfig;
+import com.mouli.consumer.config.RabbitMQConfig;
+import com.mouli.consumer.dto.CommandMessage;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson2JsonMessageConverter round trips of CommandMessage, configured exactly like the
+ * consumer's converter bean, plus the CommandMessageCodec decode the listeners actually use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConverterBenchmark {
+
+    @Param({"256", "4096", "65536"})
+    public int payloadBytes;
+
+    private Jackson2JsonMessageConverter converter;
+    private CommandMessageCodec codec;
+    private CommandMessage message;
+    private Message jsonMessage;
+    private Message smileMessage;
+
+    @Setup
+    public void setup() throws Exception {
+        ObjectMapper mapper = new JacksonConfig().objectMapper();
+        converter = new RabbitMQConfig().jacksonMessageConverter(mapper);
+        codec = new CommandMessageCodec(mapper, Integer.MAX_VALUE);
+        message = Payloads.commandMessage(payloadBytes);
+
+        jsonMessage = converter.toMessage(message, new MessageProperties());
+
+        MessageProperties smileProps = new MessageProperties();
+        smileProps.setContentType(WireFormat.SMILE_CONTENT_TYPE);
+        byte[] smileBody = mapper.copyWith(new SmileFactory()).writeValueAsBytes(message);
+        smileMessage = new Message(smileBody, smileProps);
+    }
+
+    @Benchmark
+    public Message serialize() {
+        return converter.toMessage(message, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return converter.fromMessage(jsonMessage);
+    }
+
+    @Benchmark
+    public Object roundTrip() {
+        return converter.fromMessage(converter.toMessage(message, new MessageProperties()));
+    }
+
+    @Benchmark
+    public CommandMessage codecDecodeJson() {
+        return codec.decode(jsonMessage);
+    }
+
+    @Benchmark
+    public CommandMessage codecDecodeSmile() {
+        return codec.decode(smileMessage);
+    }
+}
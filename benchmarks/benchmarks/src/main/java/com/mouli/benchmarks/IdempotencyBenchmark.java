@@ -0,0 +1,143 @@
+package com.mouli.benchmarks;
+
+import com.mouli.consumer.cache.ProcessedNearCache;
+import com.mouli.consumer.service.ClaimResult;
+import com.mouli.consumer.service.IdempotencyService;
+import com.mouli.consumer.service.LeaseKeeper;
+import com.mouli.consumer.store.IdempotencyStore;
+import com.mouli.consumer.store.MappedIdempotencyStore;
+import com.mouli.consumer.store.RedisIdempotencyStore;
+import com.mouli.consumer.store.RedisNodes;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * IdempotencyService claim / mark / release per store backend:
+ * redis = the real Lettuce client against {@link InProcessRedis} on loopback,
+ * local = the memory-mapped store on a temp file.
+ * Absolute Redis numbers are not Redis numbers; they show client-side cost and round-trip counts,
+ * which is what the claim script, pipelining, near-cache and local store are meant to reduce.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdempotencyBenchmark {
+
+    private static final int BATCH = 50;
+
+    @Param({"redis", "local"})
+    public String store;
+
+    private InProcessRedis server;
+    private LettuceConnectionFactory connectionFactory;
+    private MappedIdempotencyStore mapped;
+    private Path mappedDir;
+    private IdempotencyService withNearCache;
+    private IdempotencyService storeOnly;
+    private final AtomicLong ids = new AtomicLong();
+    private final String processedId = "bench-processed";
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        IdempotencyStore backend;
+        if ("local".equals(store)) {
+            mappedDir = Files.createTempDirectory("idempotency-bench");
+            mapped = new MappedIdempotencyStore(mappedDir.resolve("idempotency.dat").toString(),
+                    1 << 20, 0.7, 86400, new SimpleMeterRegistry());
+            backend = mapped;
+        } else {
+            server = new InProcessRedis();
+            connectionFactory = new LettuceConnectionFactory(
+                    new RedisStandaloneConfiguration(server.host(), server.port()));
+            connectionFactory.afterPropertiesSet();
+            connectionFactory.start();
+            backend = new RedisIdempotencyStore(new RedisNodes(List.of(new StringRedisTemplate(connectionFactory))),
+                    86400, 1024);
+        }
+        // never started: no heartbeat thread, claims are only given the lease length
+        LeaseKeeper leases = new LeaseKeeper(backend, new SimpleMeterRegistry(), 5000, 0);
+        withNearCache = new IdempotencyService(backend, nearCache(true), leases, new SimpleMeterRegistry());
+        storeOnly = new IdempotencyService(backend, nearCache(false), leases, new SimpleMeterRegistry());
+        withNearCache.markProcessed(processedId);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (mapped != null) {
+            mapped.close();
+            try (var files = Files.list(mappedDir)) {
+                for (Path file : files.toList()) Files.delete(file);
+            }
+            Files.delete(mappedDir);
+        }
+        if (connectionFactory != null) connectionFactory.destroy();
+        if (server != null) server.close();
+    }
+
+    private static ProcessedNearCache nearCache(boolean enabled) {
+        return new ProcessedNearCache(enabled, 100_000, 600, new SimpleMeterRegistry());
+    }
+
+    private String nextId() {
+        return "bench-" + ids.incrementAndGet();
+    }
+
+    /** New message, processing fails: claim then safe release. */
+    @Benchmark
+    public boolean claimAndRelease() {
+        String id = nextId();
+        ClaimResult claim = storeOnly.claim(id);
+        return storeOnly.releaseClaim(id, claim.token());
+    }
+
+    /** New message, processing succeeds: claim then the fenced mark with the claim token, as the listeners do. */
+    @Benchmark
+    public ClaimResult claimAndMarkProcessed() {
+        String id = nextId();
+        ClaimResult claim = storeOnly.claim(id);
+        storeOnly.markProcessed(id, claim.token());
+        return claim;
+    }
+
+    /** Redelivery of a processed message with the near-cache disabled: answered by the store. */
+    @Benchmark
+    public ClaimResult duplicateFromStore() {
+        return storeOnly.claim(processedId);
+    }
+
+    /** Redelivery of a processed message answered by the near-cache: the store is not touched. */
+    @Benchmark
+    public ClaimResult duplicateFromNearCache() {
+        return withNearCache.claim(processedId);
+    }
+
+    /** Batch listener path: one batched claim for a whole batch of new messages, then one batched fenced mark. */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<ClaimResult> claimAllAndMarkBatch() {
+        List<String> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(nextId());
+        }
+        List<ClaimResult> claims = storeOnly.claimAll(batch);
+        List<String> tokens = new ArrayList<>(BATCH);
+        for (ClaimResult claim : claims) {
+            tokens.add(claim.token());
+        }
+        storeOnly.markAllProcessed(batch, tokens);
+        return claims;
+    }
+}
@@ -0,0 +1,304 @@
+package com.mouli.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Minimal RESP2 server on loopback, just enough for the Lettuce client and IdempotencyService:
+ * PING, SELECT, CLIENT, GET, SET [PX], DEL, HSET, HEXISTS, EXPIREAT, EVAL, EVALSHA, SCRIPT LOAD.
+ *
+ * Lua is not interpreted. The idempotency scripts are recognised by their text and executed as
+ * Java equivalents, so a benchmark measures the client side (encoding, round trips, pipelining)
+ * rather than a Lua interpreter. A script that is not recognised fails loudly; when a script in
+ * RedisIdempotencyStore changes, its equivalent here has to change with it.
+ *
+ * General-purpose embedded Redis servers were tried first, but cost around a millisecond per
+ * command, which hid everything the benchmarks are meant to show.
+ */
+final class InProcessRedis implements AutoCloseable {
+
+    private record Entry(String value, long expiresAtMillis) {
+        boolean expired(long now) {
+            return expiresAtMillis > 0 && now >= expiresAtMillis;
+        }
+    }
+
+    private static final class Hash {
+        final Set<String> fields = ConcurrentHashMap.newKeySet();
+        volatile long expiresAtMillis;
+    }
+
+    private final Map<String, Entry> data = new ConcurrentHashMap<>();
+    private final Map<String, Hash> hashes = new ConcurrentHashMap<>();
+    private final Map<String, BiFunction<List<String>, List<String>, Object>> scriptsBySha = new ConcurrentHashMap<>();
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+
+    InProcessRedis() throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.acceptor = Thread.ofPlatform().daemon().name("in-process-redis").start(this::acceptLoop);
+    }
+
+    String host() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        acceptor.interrupt();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread.ofPlatform().daemon().name("in-process-redis-conn").start(() -> serve(socket));
+            } catch (IOException ex) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             InputStream in = new BufferedInputStream(socket.getInputStream());
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            while (true) {
+                List<String> command = readCommand(in);
+                if (command == null) return;
+                write(out, execute(command));
+                // pipelined commands are answered in one flush, like a real server
+                if (in.available() == 0) out.flush();
+            }
+        } catch (IOException ignored) {
+            // client went away
+        }
+    }
+
+    private Object execute(List<String> command) {
+        String name = command.get(0).toUpperCase();
+        return switch (name) {
+            case "PING" -> new Status("PONG");
+            case "SELECT", "CLIENT" -> new Status("OK");
+            case "GET" -> get(command.get(1));
+            case "SET" -> set(command);
+            case "DEL" -> data.remove(command.get(1)) != null | hashes.remove(command.get(1)) != null ? 1L : 0L;
+            case "HSET" -> hset(command.get(1), command.get(2));
+            case "HEXISTS" -> hexists(command.get(1), command.get(2));
+            case "EXPIREAT" -> expireAt(command.get(1), Long.parseLong(command.get(2)));
+            case "FLUSHALL", "FLUSHDB" -> {
+                data.clear();
+                hashes.clear();
+                yield new Status("OK");
+            }
+            case "SCRIPT" -> "LOAD".equalsIgnoreCase(command.get(1))
+                    ? load(command.get(2)) : new Error("ERR unsupported SCRIPT subcommand");
+            case "EVAL" -> eval(scriptsBySha.get(load(command.get(1))), command);
+            case "EVALSHA" -> eval(scriptsBySha.get(command.get(1)), command);
+            default -> new Error("ERR unknown command '" + command.get(0) + "'");
+        };
+    }
+
+    private String get(String key) {
+        Entry entry = data.get(key);
+        if (entry == null) return null;
+        if (entry.expired(System.currentTimeMillis())) {
+            data.remove(key, entry);
+            return null;
+        }
+        return entry.value();
+    }
+
+    private Status set(List<String> command) {
+        long expiresAt = 0;
+        for (int i = 3; i + 1 < command.size(); i++) {
+            if ("PX".equalsIgnoreCase(command.get(i))) {
+                expiresAt = System.currentTimeMillis() + Long.parseLong(command.get(i + 1));
+            }
+        }
+        data.put(command.get(1), new Entry(command.get(2), expiresAt));
+        return new Status("OK");
+    }
+
+    private Long hset(String key, String field) {
+        Hash hash = hash(key);
+        if (hash == null) {
+            hash = hashes.computeIfAbsent(key, k -> new Hash());
+        }
+        return hash.fields.add(field) ? 1L : 0L;
+    }
+
+    private Long hexists(String key, String field) {
+        Hash hash = hash(key);
+        return hash != null && hash.fields.contains(field) ? 1L : 0L;
+    }
+
+    private Long expireAt(String key, long epochSeconds) {
+        Hash hash = hash(key);
+        if (hash == null) return 0L;
+        hash.expiresAtMillis = epochSeconds * 1000;
+        return 1L;
+    }
+
+    private Hash hash(String key) {
+        Hash hash = hashes.get(key);
+        if (hash == null) return null;
+        if (hash.expiresAtMillis > 0 && System.currentTimeMillis() >= hash.expiresAtMillis) {
+            hashes.remove(key, hash);
+            return null;
+        }
+        return hash;
+    }
+
+    private Object eval(BiFunction<List<String>, List<String>, Object> script, List<String> command) {
+        if (script == null) return new Error("NOSCRIPT No matching script. Please use EVAL.");
+        int numKeys = Integer.parseInt(command.get(2));
+        List<String> keys = command.subList(3, 3 + numKeys);
+        List<String> args = command.subList(3 + numKeys, command.size());
+        return script.apply(keys, args);
+    }
+
+    private String load(String script) {
+        String sha = sha1(script);
+        scriptsBySha.computeIfAbsent(sha, s -> compile(script));
+        return sha;
+    }
+
+    // Java equivalents of RedisIdempotencyStore's CLAIM, MARK, IS_PROCESSED, RENEW and RELEASE scripts.
+    // KEYS[1] is the claim key, KEYS[2..] the marker buckets.
+    private BiFunction<List<String>, List<String>, Object> compile(String script) {
+        if (script.contains("return 'FREE'")) {
+            return (keys, args) -> {
+                if (inBuckets(keys, args.get(2))) return "PROCESSED";
+                String key = keys.get(0);
+                String current = get(key);
+                if (current == null) {
+                    data.put(key, new Entry(args.get(0), System.currentTimeMillis() + Long.parseLong(args.get(1))));
+                    return "FREE";
+                }
+                return "PROCESSED".equals(current) ? "PROCESSED" : "CLAIMED";
+            };
+        }
+        if (script.contains("redis.call('hset'")) {
+            return (keys, args) -> {
+                // ARGV[3], when given, is the claim token: a claim held with another token fences the mark
+                if (args.size() > 2) {
+                    String current = get(keys.get(0));
+                    if (current != null && !"PROCESSED".equals(current) && !current.equals(args.get(2))) return 0L;
+                }
+                hset(keys.get(1), args.get(0));
+                expireAt(keys.get(1), Long.parseLong(args.get(1)));
+                data.remove(keys.get(0));
+                return 1L;
+            };
+        }
+        if (script.contains("return 1 end")) {
+            return (keys, args) -> inBuckets(keys, args.get(0)) || "PROCESSED".equals(get(keys.get(0))) ? 1L : 0L;
+        }
+        if (script.contains("redis.call('pexpire', KEYS[1], ARGV[2])")) {
+            return (keys, args) -> {
+                String key = keys.get(0);
+                Entry entry = data.get(key);
+                if (entry == null || !args.get(0).equals(get(key))) return 0L;
+                return data.replace(key, entry,
+                        new Entry(entry.value(), System.currentTimeMillis() + Long.parseLong(args.get(1)))) ? 1L : 0L;
+            };
+        }
+        if (script.contains("redis.call('del', KEYS[1])")) {
+            return (keys, args) -> {
+                String key = keys.get(0);
+                return args.get(0).equals(get(key)) && data.remove(key) != null ? 1L : 0L;
+            };
+        }
+        return (keys, args) -> new Error("ERR script not supported by InProcessRedis: " + script);
+    }
+
+    private boolean inBuckets(List<String> keys, String messageId) {
+        for (int i = 1; i < keys.size(); i++) {
+            if (hexists(keys.get(i), messageId) == 1L) return true;
+        }
+        return false;
+    }
+
+    private static String sha1(String script) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return HexFormat.of().formatHex(digest.digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // --- RESP2 ---
+
+    private record Status(String text) {
+    }
+
+    private record Error(String text) {
+    }
+
+    private static List<String> readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) return null;
+        if (type != '*') throw new IOException("expected array, got " + (char) type);
+        int count = Integer.parseInt(readLine(in));
+        List<String> parts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') throw new IOException("expected bulk string");
+            int length = Integer.parseInt(readLine(in));
+            byte[] bytes = in.readNBytes(length);
+            in.skipNBytes(2);
+            parts.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return parts;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) throw new IOException("connection closed");
+            line.append((char) c);
+        }
+        in.read();
+        return line.toString();
+    }
+
+    private static void write(OutputStream out, Object reply) throws IOException {
+        switch (reply) {
+            case null -> out.write("$-1\r\n".getBytes(StandardCharsets.US_ASCII));
+            case Status s -> out.write(("+" + s.text() + "\r\n").getBytes(StandardCharsets.UTF_8));
+            case Error e -> out.write(("-" + e.text() + "\r\n").getBytes(StandardCharsets.UTF_8));
+            case Long n -> out.write((":" + n + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            case String s -> {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(bytes);
+                out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+            }
+            default -> throw new IllegalArgumentException("unsupported reply " + reply);
+        }
+    }
+}
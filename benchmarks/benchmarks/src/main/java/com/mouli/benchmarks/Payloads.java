@@ -0,0 +1,33 @@
+package com.mouli.benchmarks;
+
+import com.mouli.consumer.dto.CommandMessage;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * CommandMessage fixtures shaped like what the producer sends: a few scalar fields plus one
+ * free-text field padded so the encoded body lands near the requested size.
+ */
+final class Payloads {
+
+    private Payloads() {
+    }
+
+    static CommandMessage commandMessage(int approxBytes) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("type", "CREATE_ORDER");
+        payload.put("orderId", 123456);
+        payload.put("amount", 99.95);
+        payload.put("priority", "HIGH");
+        payload.put("note", "x".repeat(Math.max(0, approxBytes - 160)));
+
+        CommandMessage message = new CommandMessage();
+        message.setMessageId("cmd-" + UUID.randomUUID());
+        message.setPayload(payload);
+        message.setCreatedAt(Instant.now());
+        return message;
+    }
+}
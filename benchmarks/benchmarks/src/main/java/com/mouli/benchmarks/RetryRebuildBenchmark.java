@@ -0,0 +1,76 @@
+package com.mouli.benchmarks;
+
+import com.mouli.consumer.listener.RetryRouter;
+import com.mouli.consumer.metrics.ConsumerMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RetryRouter's retry and DLQ branches: header copy, MessageBuilder rebuild and metrics.
+ * The template only captures the rebuilt message, so the broker publish is excluded.
+ * RetryRouter logging is switched off in logback.xml for the same reason.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RetryRebuildBenchmark {
+
+    @Param({"2", "16"})
+    public int headerCount;
+
+    private CapturingRabbitTemplate template;
+    private RetryRouter router;
+    private Message firstAttempt;
+    private Message exhausted;
+    private final Exception failure = new IllegalStateException("Simulated failure");
+
+    @Setup
+    public void setup() {
+        template = new CapturingRabbitTemplate();
+        router = new RetryRouter(template, new ConsumerMetrics(new SimpleMeterRegistry()),
+                3, new long[]{1000, 10000, 60000}, 1000, 10, 60000, 0.2, 20);
+        firstAttempt = delivery(0);
+        exhausted = delivery(3);
+    }
+
+    private Message delivery(int retries) {
+        MessageProperties props = new MessageProperties();
+        props.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        props.setMessageId("cmd-bench");
+        for (int i = 0; i < headerCount; i++) {
+            props.setHeader("x-header-" + i, "value-" + i);
+        }
+        if (retries > 0) props.setHeader("x-retries", retries);
+        return new Message(Payloads.commandMessage(512).toString().getBytes(), props);
+    }
+
+    @Benchmark
+    public Message retry() {
+        router.retryOrDeadLetter(firstAttempt, "cmd-bench", failure);
+        return template.last;
+    }
+
+    @Benchmark
+    public Message deadLetterAfterRetries() {
+        router.retryOrDeadLetter(exhausted, "cmd-bench", failure);
+        return template.last;
+    }
+
+    static final class CapturingRabbitTemplate extends RabbitTemplate {
+
+        Message last;
+
+        @Override
+        public void send(String exchange, String routingKey, Message message) {
+            last = message;
+        }
+    }
+}
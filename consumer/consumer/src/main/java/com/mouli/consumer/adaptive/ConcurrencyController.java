@@ -0,0 +1,365 @@
+package com.mouli.consumer.adaptive;
+
+import com.mouli.consumer.config.RabbitMQConfig;
+import com.mouli.consumer.metrics.ConsumerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feedback controller for the command listener's consumer count and prefetch (consumer.adaptive.enabled).
+ *
+ * Every interval it looks at the last window: p99 processing latency (the handler call, whatever its outcome,
+ * from the histogram buckets of consumer.stage{stage=process}), mean Redis claim latency, and the depth of the
+ * queues the container listens on. Then AIMD:
+ *
+ *   latency or Redis above target     consumers x decrease-factor (at the floor: prefetch halves)
+ *   backlog, latency under headroom   consumers + 1 (at the ceiling, and latency under half the target:
+ *                                     prefetch doubles)
+ *   queues empty for idle-ticks       consumers - 1
+ *   otherwise                         hold
+ *
+ * After a decrease, increases wait cooldown-ticks so the controller does not saw around the limit. Consumer
+ * count changes apply immediately. A prefetch change only applies to new consumers, so the container's consumers
+ * are re-created (their in-flight deliveries finish first; prefetched ones are requeued); prefetch therefore
+ * moves in powers of two. In batch mode prefetch is left alone, since it is sized to the batch.
+ *
+ * Every tick's decision is logged ([ADAPTIVE_DECISION] at info for changes, debug for holds), counted in
+ * consumer.adaptive.decisions{action}, and the last history-size decisions are in /status.
+ */
+@Component
+public class ConcurrencyController {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrencyController.class);
+
+    public enum Action { INCREASE, DECREASE, HOLD, IDLE }
+
+    public record Decision(Instant at, Action action, int consumers, int prefetch, String reason,
+                           double latencyP99Ms, double redisMs, long depth, long depthDelta, double perSecond) {
+    }
+
+    record Window(long count, double p99Ms, double redisMs, double perSecond) {
+    }
+
+    private final RabbitListenerEndpointRegistry listeners;
+    private final RabbitTemplate rabbitTemplate;
+    private final ConsumerMetrics metrics;
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final boolean batchMode;
+    private final long intervalMs;
+    private final double targetLatencyMs;
+    private final double redisTargetMs;
+    private final int minConsumers;
+    private final int maxConsumers;
+    private final int minPrefetch;
+    private final int maxPrefetch;
+    private final double decreaseFactor;
+    private final double headroom;
+    private final int idleTicks;
+    private final int cooldownTicks;
+    private final int historySize;
+    private final int initialPrefetch;
+    private final Deque<Decision> history = new ArrayDeque<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("adaptive-concurrency").daemon().factory());
+
+    private volatile int consumers;
+    private volatile int prefetch;
+    private boolean initialized;
+    private long lastDepth = -1;
+    private int emptyTicks;
+    private int cooldown;
+    private long lastCount;
+    private double lastTotalMs;
+    private long lastRedisCount;
+    private double lastRedisTotalMs;
+    private double[] lastBuckets = new double[0];
+    private long lastTickNanos = System.nanoTime();
+
+    public ConcurrencyController(RabbitListenerEndpointRegistry listeners,
+                                 RabbitTemplate rabbitTemplate,
+                                 ConsumerMetrics metrics,
+                                 MeterRegistry registry,
+                                 @Value("${consumer.adaptive.enabled:false}") boolean enabled,
+                                 @Value("${consumer.listener.mode:single}") String mode,
+                                 @Value("${consumer.adaptive.interval-ms:5000}") long intervalMs,
+                                 @Value("${consumer.adaptive.target-latency-ms:250}") double targetLatencyMs,
+                                 @Value("${consumer.adaptive.redis-target-ms:20}") double redisTargetMs,
+                                 @Value("${consumer.adaptive.min-consumers:1}") int minConsumers,
+                                 @Value("${consumer.adaptive.max-consumers:16}") int maxConsumers,
+                                 @Value("${consumer.adaptive.min-prefetch:1}") int minPrefetch,
+                                 @Value("${consumer.adaptive.max-prefetch:64}") int maxPrefetch,
+                                 @Value("${consumer.adaptive.decrease-factor:0.75}") double decreaseFactor,
+                                 @Value("${consumer.adaptive.headroom:0.8}") double headroom,
+                                 @Value("${consumer.adaptive.idle-ticks:6}") int idleTicks,
+                                 @Value("${consumer.adaptive.cooldown-ticks:2}") int cooldownTicks,
+                                 @Value("${consumer.adaptive.history-size:50}") int historySize,
+                                 @Value("${consumer.listener.concurrency:1}") int initialConsumers,
+                                 @Value("${consumer.listener.prefetch:1}") int initialPrefetch) {
+        this.listeners = listeners;
+        this.rabbitTemplate = rabbitTemplate;
+        this.metrics = metrics;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.batchMode = "batch".equalsIgnoreCase(mode);
+        this.intervalMs = intervalMs;
+        this.targetLatencyMs = targetLatencyMs;
+        this.redisTargetMs = redisTargetMs;
+        this.minConsumers = Math.max(1, minConsumers);
+        this.maxConsumers = Math.max(this.minConsumers, maxConsumers);
+        this.minPrefetch = Math.max(1, minPrefetch);
+        this.maxPrefetch = Math.max(this.minPrefetch, maxPrefetch);
+        this.decreaseFactor = decreaseFactor;
+        this.headroom = headroom;
+        this.idleTicks = idleTicks;
+        this.cooldownTicks = cooldownTicks;
+        this.historySize = historySize;
+        this.initialPrefetch = initialPrefetch;
+        this.consumers = Math.clamp(initialConsumers, this.minConsumers, this.maxConsumers);
+        this.prefetch = Math.clamp(initialPrefetch, this.minPrefetch, this.maxPrefetch);
+        registry.gauge("consumer.adaptive.consumers", this, c -> c.consumers);
+        registry.gauge("consumer.adaptive.prefetch", this, c -> c.prefetch);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            executor.scheduleWithFixedDelay(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /** Current limits and the recent decisions, newest first, for /status. */
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("consumers", consumers);
+        status.put("prefetch", prefetch);
+        status.put("targetLatencyMs", targetLatencyMs);
+        status.put("redisTargetMs", redisTargetMs);
+        List<Decision> recent = new ArrayList<>(history);
+        status.put("decisions", recent.reversed());
+        return status;
+    }
+
+    private void tick() {
+        try {
+            MessageListenerContainer found = listeners.getListenerContainer(RabbitMQConfig.COMMAND_LISTENER_ID);
+            if (!(found instanceof SimpleMessageListenerContainer container) || !container.isRunning()) return;
+            if (!initialized) {
+                // start from the configured values, clamped to the controller's bounds
+                container.setMaxConcurrentConsumers(Integer.MAX_VALUE);
+                applyConsumers(container, Integer.MAX_VALUE, consumers);
+                if (prefetch != initialPrefetch && !batchMode) {
+                    applyPrefetch(container, prefetch);
+                }
+                initialized = true;
+            }
+            Window window = sample();
+            long depth = depth(container.getQueueNames());
+            long depthDelta = lastDepth < 0 ? 0 : depth - lastDepth;
+            lastDepth = depth;
+            decide(container, window, depth, depthDelta);
+        } catch (RuntimeException ex) {
+            log.warn("[ADAPTIVE_TICK_FAILED] {}", ex.getMessage());
+        }
+    }
+
+    void decide(SimpleMessageListenerContainer container, Window w, long depth, long depthDelta) {
+        int nextConsumers = consumers;
+        int nextPrefetch = prefetch;
+        Action action;
+        String reason;
+        if (cooldown > 0) cooldown--;
+
+        if (w.count() > 0 && (w.p99Ms() > targetLatencyMs || w.redisMs() > redisTargetMs)) {
+            action = Action.DECREASE;
+            reason = w.p99Ms() > targetLatencyMs
+                    ? String.format(Locale.ROOT, "p99 %.1fms above target %.0fms", w.p99Ms(), targetLatencyMs)
+                    : String.format(Locale.ROOT, "redis %.1fms above target %.0fms", w.redisMs(), redisTargetMs);
+            nextConsumers = Math.max(minConsumers, (int) Math.floor(consumers * decreaseFactor));
+            if (nextConsumers == consumers && !batchMode) {
+                nextPrefetch = Math.max(minPrefetch, prefetch / 2);
+            }
+            cooldown = cooldownTicks;
+            emptyTicks = 0;
+        } else if (depth > 0) {
+            emptyTicks = 0;
+            boolean underHeadroom = w.count() == 0 || w.p99Ms() <= targetLatencyMs * headroom;
+            if (cooldown > 0) {
+                action = Action.HOLD;
+                reason = "cooling down after a decrease";
+            } else if (!underHeadroom) {
+                action = Action.HOLD;
+                reason = String.format(Locale.ROOT, "p99 %.1fms close to target", w.p99Ms());
+            } else if (consumers < maxConsumers) {
+                action = Action.INCREASE;
+                reason = "backlog of " + depth + (depthDelta > 0 ? " growing by " + depthDelta : "");
+                nextConsumers = consumers + 1;
+            } else if (!batchMode && prefetch < maxPrefetch && (w.count() == 0 || w.p99Ms() <= targetLatencyMs / 2)) {
+                action = Action.INCREASE;
+                reason = "backlog of " + depth + " at max consumers, latency low: larger prefetch";
+                nextPrefetch = Math.min(maxPrefetch, prefetch * 2);
+            } else {
+                action = Action.HOLD;
+                reason = "at max consumers and prefetch";
+            }
+        } else if (++emptyTicks >= idleTicks && consumers > minConsumers) {
+            action = Action.IDLE;
+            reason = "queues empty for " + emptyTicks + " ticks";
+            nextConsumers = consumers - 1;
+            emptyTicks = 0;
+        } else {
+            action = Action.HOLD;
+            reason = "no backlog";
+        }
+
+        if (nextConsumers != consumers) {
+            applyConsumers(container, consumers, nextConsumers);
+        }
+        if (nextPrefetch != prefetch) {
+            applyPrefetch(container, nextPrefetch);
+        }
+        consumers = nextConsumers;
+        prefetch = nextPrefetch;
+        record(new Decision(Instant.now(), action, nextConsumers, nextPrefetch, reason,
+                round(w.p99Ms()), round(w.redisMs()), depth, depthDelta, round(w.perSecond())));
+    }
+
+    private static void applyConsumers(SimpleMessageListenerContainer container, int current, int n) {
+        // concurrent == max, so the container's own idle/active scaling does not fight the controller
+        if (n > current) {
+            container.setMaxConcurrentConsumers(n);
+            container.setConcurrentConsumers(n);
+        } else {
+            container.setConcurrentConsumers(n);
+            container.setMaxConcurrentConsumers(n);
+        }
+    }
+
+    private static void applyPrefetch(SimpleMessageListenerContainer container, int n) {
+        container.setPrefetchCount(n);
+        // prefetch is set per channel when a consumer starts; re-create them so the new value applies
+        container.setQueueNames(container.getQueueNames());
+    }
+
+    private synchronized void record(Decision decision) {
+        history.addLast(decision);
+        while (history.size() > historySize) {
+            history.removeFirst();
+        }
+        registry.counter("consumer.adaptive.decisions", "action", decision.action().name().toLowerCase(Locale.ROOT))
+                .increment();
+        if (decision.action() == Action.HOLD) {
+            log.debug("[ADAPTIVE_DECISION] {}", decision);
+        } else {
+            log.info("[ADAPTIVE_DECISION] {}", decision);
+        }
+    }
+
+    // deltas since the previous tick; the timers themselves are cumulative
+    Window sample() {
+        // failed and timed-out calls count too: a handler that slows down by failing late is still slow
+        long count = 0;
+        double totalMs = 0;
+        CountAtBucket[] buckets = null;
+        for (ConsumerMetrics.StageOutcome outcome : ConsumerMetrics.StageOutcome.values()) {
+            Timer processing = metrics.stage(ConsumerMetrics.Stage.PROCESS, outcome);
+            count += processing.count();
+            totalMs += processing.totalTime(TimeUnit.MILLISECONDS);
+            buckets = sum(buckets, processing.takeSnapshot().histogramCounts());
+        }
+        long windowCount = count - lastCount;
+        double meanMs = windowCount > 0 ? (totalMs - lastTotalMs) / windowCount : 0;
+        double p99Ms = windowCount > 0 ? windowedPercentile(buckets, windowCount, 0.99, meanMs) : 0;
+
+        Timer claim = metrics.stage(ConsumerMetrics.Stage.CLAIM, ConsumerMetrics.StageOutcome.SUCCESS);
+        long redisCount = claim.count();
+        double redisTotalMs = claim.totalTime(TimeUnit.MILLISECONDS);
+        double redisMs = redisCount > lastRedisCount ? (redisTotalMs - lastRedisTotalMs) / (redisCount - lastRedisCount) : 0;
+
+        long now = System.nanoTime();
+        double perSecond = windowCount / Math.max(1e-9, (now - lastTickNanos) / 1e9);
+
+        lastCount = count;
+        lastTotalMs = totalMs;
+        lastRedisCount = redisCount;
+        lastRedisTotalMs = redisTotalMs;
+        lastTickNanos = now;
+        return new Window(windowCount, p99Ms, redisMs, perSecond);
+    }
+
+    // the outcome timers share one bucket layout, so their counts add up bucket by bucket
+    private static CountAtBucket[] sum(CountAtBucket[] total, CountAtBucket[] more) {
+        if (total == null) return more;
+        CountAtBucket[] summed = new CountAtBucket[total.length];
+        for (int i = 0; i < total.length; i++) {
+            summed[i] = new CountAtBucket(total[i].bucket(), total[i].count() + more[i].count());
+        }
+        return summed;
+    }
+
+    // buckets are cumulative (count <= le) since start; the window's share is this tick minus the last one.
+    // A registry that keeps no buckets (SimpleMeterRegistry) leaves the window mean as the estimate.
+    private double windowedPercentile(CountAtBucket[] buckets, long windowCount, double percentile, double fallbackMs) {
+        double[] counts = new double[buckets.length];
+        double result = fallbackMs;
+        boolean found = false;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].count();
+            double previous = i < lastBuckets.length ? lastBuckets[i] : 0;
+            if (!found && counts[i] - previous >= percentile * windowCount) {
+                result = buckets[i].bucket(TimeUnit.MILLISECONDS);
+                found = true;
+            }
+        }
+        lastBuckets = counts;
+        return result;
+    }
+
+    private long depth(String[] queues) {
+        Long depth = rabbitTemplate.execute(channel -> {
+            long total = 0;
+            for (String queue : queues) {
+                total += channel.queueDeclarePassive(queue).getMessageCount();
+            }
+            return total;
+        });
+        return depth != null ? depth : 0;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+}
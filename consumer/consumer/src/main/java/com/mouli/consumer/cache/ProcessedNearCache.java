@@ -0,0 +1,68 @@
+package com.mouli.consumer.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * In-process layer in front of the Redis processed-set.
+ *
+ * Only terminal PROCESSED state is ever cached, so a hit is correct no matter which consumer
+ * instance did the work. A miss says nothing and always falls through to Redis.
+ *
+ * There is deliberately no Bloom pre-filter: the Caffeine probe is already a single hash lookup, and a
+ * local negative cannot skip the Redis call either, since another instance may have processed the id.
+ */
+@Component
+public class ProcessedNearCache {
+
+    private final boolean enabled;
+    private final Cache<String, Boolean> processed;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public ProcessedNearCache(
+            @Value("${consumer.near-cache.enabled:true}") boolean enabled,
+            @Value("${consumer.near-cache.max-size:100000}") long maxSize,
+            @Value("${consumer.near-cache.ttl-seconds:600}") long ttlSeconds,
+            MeterRegistry registry) {
+        this.enabled = enabled;
+        this.processed = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(registry, processed, "idempotency.near-cache");
+        this.hits = registry.counter("idempotency.near-cache.lookups", "result", "hit");
+        this.misses = registry.counter("idempotency.near-cache.lookups", "result", "miss");
+    }
+
+    /**
+     * True only if this id is known to be PROCESSED. False means "ask Redis", never "not processed".
+     */
+    public boolean isProcessed(String messageId) {
+        if (!enabled) return false;
+        if (processed.getIfPresent(messageId) != null) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Record terminal PROCESSED state. Must only be called after Redis holds the PROCESSED marker.
+     */
+    public void markProcessed(String messageId) {
+        if (!enabled) return;
+        processed.put(messageId, Boolean.TRUE);
+    }
+}
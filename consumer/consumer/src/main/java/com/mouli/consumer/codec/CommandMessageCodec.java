@@ -0,0 +1,138 @@
+package com.mouli.consumer.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdException;
+import com.github.luben.zstd.ZstdInputStream;
+import com.mouli.consumer.config.RabbitMQConfig;
+import com.mouli.consumer.dto.CommandMessage;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decodes CommandMessage bodies in whichever wire format the producer used (content-type),
+ * so JSON and Smile publishers can be mixed during a rollout. Bodies the producer compressed
+ * (content-encoding "zstd:..." or "gzip:...") are inflated first, up to max-decompressed-bytes.
+ */
+@Component
+public class CommandMessageCodec {
+
+    private final ObjectReader jsonReader;
+    private final ObjectReader smileReader;
+    private final int maxDecompressedBytes;
+
+    public CommandMessageCodec(ObjectMapper objectMapper,
+                               @Value("${consumer.compression.max-decompressed-bytes:16777216}") int maxDecompressedBytes) {
+        this.maxDecompressedBytes = maxDecompressedBytes;
+        this.jsonReader = objectMapper.readerFor(CommandMessage.class);
+        // same modules/features as the JSON mapper, binary encoding
+        this.smileReader = objectMapper.copyWith(new SmileFactory()).readerFor(CommandMessage.class);
+    }
+
+    /**
+     * messageId from the AMQP message-id property, or null for messages published without it
+     * (in which case the body has to be decoded to find the id).
+     */
+    public String messageIdOf(Message message) {
+        String id = message.getMessageProperties().getMessageId();
+        return id == null || id.isBlank() ? null : id;
+    }
+
+    /**
+     * Ordering key stamped by a producer partitioning on a payload field (x-partition-key), or null.
+     */
+    public String partitionKeyOf(Message message) {
+        Object key = message.getMessageProperties().getHeaders().get(RabbitMQConfig.PARTITION_KEY_HEADER);
+        return key == null ? null : key.toString();
+    }
+
+    public CommandMessage decode(Message message) {
+        MessageProperties props = message.getMessageProperties();
+        Object version = props.getHeaders().get(WireFormat.SCHEMA_VERSION_HEADER);
+        if (version instanceof Number n && n.intValue() > WireFormat.SCHEMA_VERSION) {
+            throw new MessageConversionException("Unsupported schema version " + n + " (max "
+                    + WireFormat.SCHEMA_VERSION + ")");
+        }
+        try {
+            return readerFor(props.getContentType()).readValue(bodyOf(message));
+        } catch (IOException | ZstdException ex) {
+            throw new MessageConversionException("Failed to decode CommandMessage", ex);
+        }
+    }
+
+    /**
+     * The body as the producer serialized it: inflated when content-encoding names zstd or gzip.
+     * A body that would inflate past max-decompressed-bytes is rejected, not truncated.
+     */
+    private byte[] bodyOf(Message message) throws IOException {
+        String encoding = message.getMessageProperties().getContentEncoding();
+        byte[] body = message.getBody();
+        if (encoding == null) {
+            return body;
+        }
+        if (encoding.startsWith(WireFormat.ZSTD_ENCODING)) {
+            long size = frameContentSize(body);
+            if (size > maxDecompressedBytes) {
+                throw tooLarge();
+            }
+            if (size >= 0) {
+                return Zstd.decompress(body, (int) size);
+            }
+            // size not recorded in the frame header (streamed frames)
+            return inflate(new ZstdInputStream(new ByteArrayInputStream(body)));
+        }
+        if (encoding.startsWith(WireFormat.GZIP_ENCODING)) {
+            return inflate(new GZIPInputStream(new ByteArrayInputStream(body)));
+        }
+        return body;
+    }
+
+    // -1 when the frame header does not record it; zstd-jni reports that, like a broken header, by throwing, and a
+    // broken frame then fails in the stream
+    private static long frameContentSize(byte[] body) {
+        try {
+            return Zstd.getFrameContentSize(body);
+        } catch (ZstdException ex) {
+            return -1;
+        }
+    }
+
+    private byte[] inflate(InputStream in) throws IOException {
+        try (in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                if (out.size() + read > maxDecompressedBytes) {
+                    throw tooLarge();
+                }
+                out.write(chunk, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private MessageConversionException tooLarge() {
+        return new MessageConversionException("Decompressed body exceeds " + maxDecompressedBytes
+                + " bytes (consumer.compression.max-decompressed-bytes)");
+    }
+
+    private ObjectReader readerFor(String contentType) {
+        if (contentType != null && contentType.startsWith(WireFormat.SMILE_CONTENT_TYPE)) {
+            return smileReader;
+        }
+        // JSON is the default, including for messages published without a content-type
+        return jsonReader;
+    }
+}
@@ -0,0 +1,22 @@
+package com.mouli.consumer.codec;
+
+/**
+ * Wire formats for CommandMessage bodies, selected by the AMQP content-type.
+ * Must match the producer's WireFormat.
+ */
+public final class WireFormat {
+
+    public static final String JSON_CONTENT_TYPE = "application/json";
+    public static final String SMILE_CONTENT_TYPE = "application/x-jackson-smile";
+
+    /** content-encoding prefixes of compressed bodies ("zstd:UTF-8"); the part after the colon is the charset. */
+    public static final String ZSTD_ENCODING = "zstd";
+    public static final String GZIP_ENCODING = "gzip";
+
+    public static final String SCHEMA_VERSION_HEADER = "x-schema-version";
+    /** Highest body schema version this consumer understands; messages without the header are version 1. */
+    public static final int SCHEMA_VERSION = 1;
+
+    private WireFormat() {
+    }
+}
@@ -1,6 +1,6 @@
 package com.mouli.consumer.config;
 
-import com.mouli.consumer.exception.SimulatedProcessingException;
+import com.mouli.consumer.exception.TransientProcessingException;
 import org.springframework.amqp.rabbit.listener.ConditionalRejectingErrorHandler;
 import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
 import org.slf4j.Logger;
@@ -18,9 +18,9 @@ public class RabbitListenerErrorHandler extends ConditionalRejectingErrorHandler
         if (t instanceof ListenerExecutionFailedException lefe) {
             Throwable cause = lefe.getCause();
 
-            if (cause instanceof SimulatedProcessingException) {
+            if (cause instanceof TransientProcessingException) {
                 log.info("[INTENTIONAL_FAILURE] {}", cause.getMessage());
-                return; // suppress WARN for intentional failures
+                return; // suppress WARN for intentional / retryable failures
             }
         }
         log.error("[UNEXPECTED_RABBIT_ERROR]", t);
@@ -1,7 +1,9 @@
 package com.mouli.consumer.config;
 
 import org.springframework.amqp.core.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -9,14 +11,44 @@ import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFacto
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.DefaultJackson2JavaTypeMapper;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 
 @Configuration
 public class RabbitMQConfig {
 
     public static final String COMMAND_QUEUE = "command.queue";
     public static final String DLQ_QUEUE = "command.dlq";
+    public static final String RETRY_QUEUE_PREFIX = "command.retry.";
+    public static final String COMMAND_EXCHANGE = "command.exchange";
+    public static final String PARTITION_QUEUE_PREFIX = "command.queue.";
+    public static final String PARTITION_ROUTING_PREFIX = "command.partition.";
+    public static final String PARTITION_KEY_HEADER = "x-partition-key";
+    public static final String LANE_ROUTING_PREFIX = "command.lane.";
+    public static final String HIGH_LANE_QUEUE = LANE_ROUTING_PREFIX + "high";
+    public static final String LOW_LANE_QUEUE = LANE_ROUTING_PREFIX + "low";
+    // shared by CommandListener and BatchCommandListener (only one is active); PartitionAssignor looks it up
+    public static final String COMMAND_LISTENER_ID = "command";
+    public static final String HIGH_LANE_LISTENER_ID = "lane-high";
+    public static final String LOW_LANE_LISTENER_ID = "lane-low";
+
+    // platform = one platform thread per consumer (default), virtual = listener invocations on virtual threads
+    @Value("${consumer.listener.execution:platform}")
+    private String execution;
+
+    @Value("${consumer.listener.concurrency:1}")
+    private int concurrency;
+
+    @Value("${consumer.listener.max-concurrency:1}")
+    private int maxConcurrency;
+
+    @Value("${consumer.partitions.count:1}")
+    private int partitions;
+
+    @Value("${consumer.lanes.enabled:false}")
+    private boolean lanesEnabled;
 
     @Bean
     public Jackson2JsonMessageConverter jacksonMessageConverter(ObjectMapper objectMapper) {
@@ -33,22 +65,163 @@ public class RabbitMQConfig {
     @Bean
     public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
             ConnectionFactory connectionFactory,
-            Jackson2JsonMessageConverter converter
+            Jackson2JsonMessageConverter converter,
+            @Value("${consumer.listener.prefetch:1}") int prefetch
     ) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         factory.setConnectionFactory(connectionFactory);
+        // CommandListener takes the raw Message and decodes lazily (JSON or Smile) after the dedup check
         factory.setMessageConverter(converter);
         factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
         factory.setDefaultRequeueRejected(false);
-        factory.setPrefetchCount(1);
+        factory.setPrefetchCount(prefetch);
+        applyExecution(factory);
+        return factory;
+    }
+
+    /**
+     * Used by BatchCommandListener (consumer.listener.mode=batch).
+     * A batch is delivered once batch-size messages have arrived or timeout-ms has elapsed, whichever comes first.
+     * Prefetch is raised to at least the batch size, otherwise every batch would be cut short by the timeout.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(
+            ConnectionFactory connectionFactory,
+            @Value("${consumer.batch.size:50}") int batchSize,
+            @Value("${consumer.batch.timeout-ms:100}") long timeoutMs,
+            @Value("${consumer.batch.prefetch:250}") int prefetch
+    ) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setDefaultRequeueRejected(false);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setBatchReceiveTimeout(timeoutMs);
+        factory.setPrefetchCount(Math.max(prefetch, batchSize));
+        applyExecution(factory);
         return factory;
     }
 
+    /**
+     * Consumer count and thread model shared by both listener factories.
+     * Each consumer owns one channel, so concurrency N means N messages (or batches) in flight.
+     */
+    private void applyExecution(SimpleRabbitListenerContainerFactory factory) {
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(Math.max(concurrency, maxConcurrency));
+        if ("virtual".equalsIgnoreCase(execution)) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("rabbit-vt-");
+            executor.setVirtualThreads(true);
+            factory.setTaskExecutor(executor);
+        }
+    }
+
     @Bean
     public Queue dlqQueue() {
         return QueueBuilder.durable(DLQ_QUEUE).build();
     }
 
+    /**
+     * One delay queue per retry tier. Messages sit there until their TTL expires and are then
+     * dead-lettered back to command.queue, so a failing dependency no longer causes a hot retry loop.
+     */
+    @Bean
+    public Declarables retryQueues(@Value("${consumer.retry.tiers-ms:1000,10000,60000}") long[] tiersMs) {
+        List<Declarable> queues = new ArrayList<>();
+        for (long tierMs : tiersMs) {
+            queues.add(QueueBuilder.durable(retryQueueName(tierMs))
+                    .ttl((int) tierMs)
+                    .deadLetterExchange("")
+                    .deadLetterRoutingKey(COMMAND_QUEUE)
+                    .build());
+        }
+        return new Declarables(queues);
+    }
+
+    public static String retryQueueName(long tierMs) {
+        return RETRY_QUEUE_PREFIX + tierMs + "ms";
+    }
+
+    public static String routedRetryName(long tierMs) {
+        return retryQueueName(tierMs) + ".routed";
+    }
+
+    public static String partitionQueueName(int partition) {
+        return PARTITION_QUEUE_PREFIX + partition;
+    }
+
+    /**
+     * consumer.partitions.count &gt; 1 (must match the producer): one queue per partition, bound to
+     * command.exchange as command.partition.&lt;n&gt;. Each is a single-active-consumer queue, so however
+     * partitions are assigned, and even while a rebalance hands one over, only one consumer receives from
+     * it and its order holds.
+     */
+    @Bean
+    public Declarables partitionQueues() {
+        List<Declarable> declarables = new ArrayList<>();
+        for (int p = 0; partitions > 1 && p < partitions; p++) {
+            Queue queue = QueueBuilder.durable(partitionQueueName(p))
+                    .deadLetterExchange("")
+                    .deadLetterRoutingKey(DLQ_QUEUE)
+                    .singleActiveConsumer()
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(commandExchange()).with(PARTITION_ROUTING_PREFIX + p));
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * consumer.lanes.enabled: command.lane.high and command.lane.low, bound to command.exchange under their own
+     * names. The normal lane is command.queue (or the partition queues) as before. Only the single-message
+     * listener consumes the lane queues, so lanes with the batch listener refuse to start rather than let high and
+     * low traffic pile up unconsumed.
+     */
+    @Bean
+    public Declarables laneQueues(@Value("${consumer.listener.mode:single}") String mode) {
+        if (lanesEnabled && "batch".equals(mode)) {
+            throw new IllegalStateException("consumer.lanes.enabled needs consumer.listener.mode=single: "
+                    + "the batch listener does not consume " + HIGH_LANE_QUEUE + " or " + LOW_LANE_QUEUE);
+        }
+        List<Declarable> declarables = new ArrayList<>();
+        for (String lane : lanesEnabled ? List.of(HIGH_LANE_QUEUE, LOW_LANE_QUEUE) : List.<String>of()) {
+            Queue queue = QueueBuilder.durable(lane)
+                    .deadLetterExchange("")
+                    .deadLetterRoutingKey(DLQ_QUEUE)
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(commandExchange()).with(lane));
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * Retries from partition and lane queues have to come back to the queue they came from, so they go through
+     * their own tier queues: a fanout exchange per tier keeps the message's routing key, and on expiry the tier
+     * queue dead-letters to command.exchange without overriding it. The original tiers are left as they are,
+     * since changing a declared queue's arguments fails on an existing broker.
+     */
+    @Bean
+    public Declarables routedRetryQueues(@Value("${consumer.retry.tiers-ms:1000,10000,60000}") long[] tiersMs) {
+        List<Declarable> declarables = new ArrayList<>();
+        if (partitions <= 1 && !lanesEnabled) {
+            return new Declarables(declarables);
+        }
+        for (long tierMs : tiersMs) {
+            FanoutExchange exchange = new FanoutExchange(routedRetryName(tierMs));
+            Queue queue = QueueBuilder.durable(routedRetryName(tierMs))
+                    .ttl((int) tierMs)
+                    .deadLetterExchange(COMMAND_EXCHANGE)
+                    .build();
+            declarables.add(exchange);
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange));
+        }
+        return new Declarables(declarables);
+    }
+
     @Bean
     public Queue commandQueue() {
         Map<String, Object> args = new HashMap<>();
@@ -59,7 +232,7 @@ public class RabbitMQConfig {
 
     @Bean
     public DirectExchange commandExchange() {
-        return new DirectExchange("command.exchange");
+        return new DirectExchange(COMMAND_EXCHANGE);
     }
 
     @Bean
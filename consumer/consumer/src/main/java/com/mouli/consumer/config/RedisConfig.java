@@ -1,6 +1,8 @@
 package com.mouli.consumer.config;
 
+import com.mouli.consumer.store.RedisNodes;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -8,6 +10,11 @@ import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+
 @Configuration
 public class RedisConfig {
 
@@ -23,4 +30,32 @@ public class RedisConfig {
     public StringRedisTemplate redisTemplate(RedisConnectionFactory factory) {
         return new StringRedisTemplate(factory);
     }
+
+    /**
+     * Nodes the idempotency store spreads messageIds over: consumer.idempotency.redis.nodes (host:port,...),
+     * or just the connection above when that is empty. Partition membership and ordering stay on the connection
+     * above: every instance has to see the same member set and order lists, which are not keyed by messageId.
+     *
+     * With nodes configured, the connection above is also the legacy node until its processed:&lt;id&gt; markers
+     * have aged out: the migrator keeps expiring them for grace-minutes (plus one interval for the last pass),
+     * and each then lives for at most the dedup horizon. Without the migrator they never expire, so neither do
+     * the legacy reads.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "consumer.idempotency.store", havingValue = "redis", matchIfMissing = true)
+    public RedisNodes idempotencyRedisNodes(
+            StringRedisTemplate redis,
+            @Value("${consumer.idempotency.redis.nodes:}") String[] nodes,
+            @Value("${spring.data.redis.password:}") String password,
+            @Value("${consumer.idempotency.redis.dedup-horizon-seconds:86400}") long horizonSeconds,
+            @Value("${consumer.idempotency.redis.migration.enabled:true}") boolean migration,
+            @Value("${consumer.idempotency.redis.migration.interval-minutes:60}") long intervalMinutes,
+            @Value("${consumer.idempotency.redis.migration.grace-minutes:1440}") long graceMinutes) {
+        List<String> hostPorts = Arrays.stream(nodes).map(String::trim).filter(n -> !n.isEmpty()).toList();
+        if (hostPorts.isEmpty()) return new RedisNodes(List.of(redis));
+        Duration legacyReads = migration
+                ? Duration.ofMinutes(graceMinutes + intervalMinutes).plusSeconds(horizonSeconds)
+                : ChronoUnit.CENTURIES.getDuration();
+        return RedisNodes.connect(hostPorts, password, redis, legacyReads);
+    }
 }
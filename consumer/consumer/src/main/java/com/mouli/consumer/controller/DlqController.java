@@ -0,0 +1,56 @@
+package com.mouli.consumer.controller;
+
+import com.mouli.consumer.redrive.DlqRedriveService;
+import com.mouli.consumer.redrive.RedriveJob;
+import com.mouli.consumer.redrive.RedriveRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * DLQ redrive: POST starts a job (202) and returns its progress, GET shows the current or last job,
+ * DELETE cancels it after the batch in flight. Only one job runs at a time (409 otherwise).
+ */
+@RestController
+@RequestMapping("/dlq/redrive")
+public class DlqController {
+
+    private final DlqRedriveService redrive;
+
+    public DlqController(DlqRedriveService redrive) {
+        this.redrive = redrive;
+    }
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> start(@RequestBody RedriveRequest request) {
+        try {
+            RedriveJob job = redrive.start(request);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.snapshot());
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", ex.getMessage()));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(Map.of("error", ex.getMessage()));
+        } catch (Exception ex) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", String.valueOf(ex.getMessage())));
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> status() {
+        RedriveJob job = redrive.current();
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job.snapshot());
+    }
+
+    @DeleteMapping
+    public ResponseEntity<Map<String, Object>> cancel() {
+        RedriveJob job = redrive.cancel();
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job.snapshot());
+    }
+}
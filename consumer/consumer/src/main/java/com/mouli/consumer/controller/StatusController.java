@@ -1,9 +1,17 @@
 package com.mouli.consumer.controller;
 
+import com.mouli.consumer.adaptive.ConcurrencyController;
+import com.mouli.consumer.handler.HandlerRegistry;
+import com.mouli.consumer.lane.Lane;
+import com.mouli.consumer.lane.LaneScheduler;
+import com.mouli.consumer.partition.PartitionAssignor;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.mouli.consumer.config.RabbitMQConfig.*;
@@ -12,22 +20,86 @@ import static com.mouli.consumer.config.RabbitMQConfig.*;
 public class StatusController {
 
     private final RabbitTemplate rabbitTemplate;
+    private final PartitionAssignor partitions;
+    private final LaneScheduler lanes;
+    private final ConcurrencyController adaptive;
+    private final HandlerRegistry handlers;
 
-    public StatusController(RabbitTemplate rabbitTemplate) {
+    public StatusController(RabbitTemplate rabbitTemplate, PartitionAssignor partitions, LaneScheduler lanes,
+                            ConcurrencyController adaptive, HandlerRegistry handlers) {
         this.rabbitTemplate = rabbitTemplate;
+        this.partitions = partitions;
+        this.lanes = lanes;
+        this.adaptive = adaptive;
+        this.handlers = handlers;
     }
 
     @GetMapping("/status")
     public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
         try {
             int primary = rabbitTemplate.execute(channel ->
                     channel.queueDeclarePassive(COMMAND_QUEUE).getMessageCount());
             int poison = rabbitTemplate.execute(channel ->
                     channel.queueDeclarePassive(DLQ_QUEUE).getMessageCount());
-            return Map.of("primaryQueue", primary, "poisonQueue", poison);
+            status.put("primaryQueue", primary);
+            status.put("poisonQueue", poison);
         } catch (Exception ex) {
-            return Map.of("primaryQueue", 0, "poisonQueue", 0, "error", ex.getMessage());
+            status.put("primaryQueue", 0);
+            status.put("poisonQueue", 0);
+            status.put("error", ex.getMessage());
         }
+        if (partitions.partitioned()) {
+            // this instance's share; depth of each partition queue is in the management UI
+            status.put("partitions", Map.of(
+                    "instance", partitions.instanceId(),
+                    "members", partitions.members(),
+                    "assigned", partitions.assigned()));
+        }
+        if (lanes.enabled()) {
+            Map<String, Object> laneStatus = new LinkedHashMap<>();
+            for (Lane lane : Lane.values()) {
+                Map<String, Object> stats = new LinkedHashMap<>();
+                try {
+                    stats.put("depth", depth(queuesOf(lane)));
+                } catch (Exception ex) {
+                    stats.put("error", ex.getMessage());
+                }
+                stats.putAll(lanes.stats(lane));
+                laneStatus.put(lane.tag(), stats);
+            }
+            status.put("lanes", laneStatus);
+        }
+        if (adaptive.enabled()) {
+            status.put("adaptive", adaptive.status());
+        }
+        status.put("handlers", handlers.status());
+        return status;
+    }
+
+    private List<String> queuesOf(Lane lane) {
+        return switch (lane) {
+            case HIGH -> List.of(HIGH_LANE_QUEUE);
+            case LOW -> List.of(LOW_LANE_QUEUE);
+            case NORMAL -> {
+                List<String> queues = new ArrayList<>();
+                queues.add(COMMAND_QUEUE);
+                for (int p = 0; partitions.partitioned() && p < partitions.partitionCount(); p++) {
+                    queues.add(partitionQueueName(p));
+                }
+                yield queues;
+            }
+        };
+    }
+
+    private long depth(List<String> queues) {
+        return rabbitTemplate.execute(channel -> {
+            long depth = 0;
+            for (String queue : queues) {
+                depth += channel.queueDeclarePassive(queue).getMessageCount();
+            }
+            return depth;
+        });
     }
 
 }
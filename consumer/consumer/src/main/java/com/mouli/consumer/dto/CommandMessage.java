@@ -8,6 +8,8 @@ public class CommandMessage {
     private String messageId;
     private Map<String, Object> payload;
     private Instant createdAt;
+    // high / normal / low; the lane is taken from the queue, this is informational
+    private String priority;
 
     public String getMessageId() {
         return messageId;
@@ -32,4 +34,12 @@ public class CommandMessage {
     public void setCreatedAt(Instant createdAt) {
         this.createdAt = createdAt;
     }
+
+    public String getPriority() {
+        return priority;
+    }
+
+    public void setPriority(String priority) {
+        this.priority = priority;
+    }
 }
@@ -0,0 +1,12 @@
+package com.mouli.consumer.exception;
+
+/**
+ * A command type's bulkhead had no free slot. The command did not fail, so the listeners send it round a delay
+ * tier without counting a retry; a busy type must not push commands into the DLQ.
+ */
+public class BulkheadFullException extends TransientProcessingException {
+
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+}
@@ -1,6 +1,6 @@
 package com.mouli.consumer.exception;
 
-public class SimulatedProcessingException extends RuntimeException {
+public class SimulatedProcessingException extends TransientProcessingException {
 
     public SimulatedProcessingException(String messageId) {
         super("Simulated processing failure for messageId=" + messageId);
@@ -0,0 +1,15 @@
+package com.mouli.consumer.exception;
+
+/**
+ * A failure worth retrying: the listeners park the message in a retry tier instead of dead-lettering it.
+ */
+public class TransientProcessingException extends RuntimeException {
+
+    public TransientProcessingException(String message) {
+        super(message);
+    }
+
+    public TransientProcessingException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,147 @@
+package com.mouli.consumer.handler;
+
+import com.mouli.consumer.dto.CommandMessage;
+import com.mouli.consumer.exception.BulkheadFullException;
+import com.mouli.consumer.exception.TransientProcessingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * One command type's share of the consumer: a pool of at most concurrency threads, with up to queue-limit
+ * commands waiting for one. The listener thread hands the command over and waits at most timeout for it, so a
+ * slow type ties up listener threads only up to its own concurrency + queue-limit. Everything beyond that is
+ * rejected at once ({@link BulkheadFullException}) and comes back later without using up a retry, leaving the
+ * listener threads free for the other types.
+ *
+ * Admission is a semaphore of concurrency + queue-limit slots, and a slot is only given back when the handler
+ * call has really returned. A command past its timeout releases the listener thread and its handler thread is
+ * interrupted, but a handler that ignores the interrupt keeps its slot (and its thread) until it finishes, so
+ * hung handlers fill the bulkhead and further commands of the type are rejected instead of piling up threads.
+ * A timed-out command is retried while its first run may still complete, so handlers must be idempotent.
+ */
+final class Bulkhead {
+
+    private final String type;
+    private final int concurrency;
+    private final int queueLimit;
+    private final long timeoutMs;
+    private final Semaphore slots;
+    private final ThreadPoolExecutor executor;
+    private final Timer latency;
+    private final Counter full;
+    private final Counter timedOut;
+
+    Bulkhead(String type, int concurrency, int queueLimit, long timeoutMs, MeterRegistry registry) {
+        this.type = type;
+        this.concurrency = Math.max(1, concurrency);
+        this.queueLimit = Math.max(0, queueLimit);
+        this.timeoutMs = timeoutMs;
+        this.slots = new Semaphore(this.concurrency + this.queueLimit);
+        // the slots bound the queue; a SynchronousQueue would also reject a hand-over that lands just before
+        // a worker that has finished gets back to polling
+        this.executor = new ThreadPoolExecutor(this.concurrency, this.concurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), Thread.ofPlatform().name("handler-" + type + "-", 0).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+
+        // from hand-over to completion, so time spent queued in the bulkhead counts
+        this.latency = Timer.builder("consumer.handler.latency").tag("type", type)
+                .publishPercentiles(0.5, 0.99)
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(registry);
+        this.full = registry.counter("consumer.handler.rejections", "type", type, "reason", "full");
+        this.timedOut = registry.counter("consumer.handler.rejections", "type", type, "reason", "timeout");
+        Gauge.builder("consumer.handler.active", executor, ThreadPoolExecutor::getActiveCount)
+                .tag("type", type).register(registry);
+        Gauge.builder("consumer.handler.queued", executor, e -> e.getQueue().size())
+                .tag("type", type).register(registry);
+    }
+
+    void run(CommandHandler handler, CommandMessage message) {
+        long start = System.nanoTime();
+        if (!slots.tryAcquire()) {
+            full.increment();
+            throw new BulkheadFullException("Bulkhead for type " + type + " is full (" + concurrency
+                    + " running, " + queueLimit + " queued)");
+        }
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                try {
+                    handler.handle(message);
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // shut down
+            slots.release();
+            throw new TransientProcessingException("Bulkhead for type " + type + " is shut down");
+        }
+        try {
+            task.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            abandon(task);
+            timedOut.increment();
+            throw new TransientProcessingException("Handler for type " + type + " timed out after " + timeoutMs
+                    + " ms", ex);
+        } catch (InterruptedException ex) {
+            abandon(task);
+            Thread.currentThread().interrupt();
+            throw new TransientProcessingException("Interrupted waiting for handler of type " + type, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            if (cause instanceof Error error) throw error;
+            throw new IllegalStateException("Handler for type " + type + " failed", cause);
+        } finally {
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // still queued: it will never run, so its slot is free now. Running: interrupted, and its slot comes back
+    // when the handler returns.
+    private void abandon(Future<?> task) {
+        if (executor.remove((Runnable) task)) {
+            slots.release();
+        } else {
+            task.cancel(true);
+        }
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("concurrency", concurrency);
+        stats.put("queueLimit", queueLimit);
+        stats.put("timeoutMs", timeoutMs);
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("calls", latency.count());
+        stats.put("rejectedFull", (long) full.count());
+        stats.put("timedOut", (long) timedOut.count());
+        for (ValueAtPercentile p : latency.takeSnapshot().percentileValues()) {
+            stats.put("latencyP" + Math.round(p.percentile() * 100) + "Ms", Math.round(p.value(TimeUnit.MILLISECONDS)));
+        }
+        return stats;
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
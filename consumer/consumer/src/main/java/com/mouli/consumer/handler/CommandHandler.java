@@ -0,0 +1,18 @@
+package com.mouli.consumer.handler;
+
+import com.mouli.consumer.dto.CommandMessage;
+
+/**
+ * Handles one command type, the value of the payload field named by consumer.handlers.type-field.
+ * Handlers are Spring beans; {@link HandlerRegistry} picks them up and runs each type in its own bulkhead.
+ *
+ * Throw {@link com.mouli.consumer.exception.TransientProcessingException} for failures worth retrying; anything
+ * else dead-letters the message. A handler that runs past its timeout is interrupted and should stop when it is:
+ * until it returns it keeps its bulkhead slot. The command is retried meanwhile, so handlers must be idempotent.
+ */
+public interface CommandHandler {
+
+    String type();
+
+    void handle(CommandMessage message);
+}
@@ -0,0 +1,42 @@
+package com.mouli.consumer.handler;
+
+import com.mouli.consumer.dto.CommandMessage;
+import com.mouli.consumer.exception.SimulatedProcessingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Commands without a type, or of a type nobody registered a handler for.
+ */
+@Component
+public class DefaultCommandHandler implements CommandHandler {
+
+    public static final String TYPE = "default";
+
+    private static final Logger log =
+            LoggerFactory.getLogger(DefaultCommandHandler.class);
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public void handle(CommandMessage message) {
+
+        // 30% intentional failure
+        if (ThreadLocalRandom.current().nextInt(100) < 30) {
+            log.warn("[SIMULATED_FAILURE] messageId={}",
+                    message.getMessageId());
+            throw new SimulatedProcessingException(
+                    message.getMessageId());
+        }
+
+        log.info("[PROCESSING] messageId={} payload={}",
+                message.getMessageId(),
+                message.getPayload());
+    }
+}
@@ -0,0 +1,115 @@
+package com.mouli.consumer.handler;
+
+import com.mouli.consumer.dto.CommandMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes each command to the {@link CommandHandler} for its type (payload field consumer.handlers.type-field) and
+ * runs it in that type's {@link Bulkhead}. Commands without a type, or of a type without a handler, go to the
+ * "default" handler, so unknown types share one bulkhead instead of each getting their own.
+ *
+ * Bulkhead sizes come from consumer.handlers.concurrency / queue-limit / timeout-ms, overridable per type with
+ * consumer.handlers.type.&lt;type&gt;.concurrency and so on. A bulkhead only isolates anything if it is smaller than
+ * the number of commands the listeners process at once (consumer.listener.max-concurrency, or
+ * consumer.adaptive.max-consumers when that is on, or consumer.lanes.slots with priority lanes), so
+ * concurrency 0 (the default) means half of those threads and no queue. With a single type there is nothing to
+ * isolate it from, and it gets all of them.
+ */
+@Component
+public class HandlerRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(HandlerRegistry.class);
+
+    private final String typeField;
+    private final Map<String, CommandHandler> handlers = new LinkedHashMap<>();
+    private final Map<String, Bulkhead> bulkheads = new LinkedHashMap<>();
+    private final CommandHandler fallback;
+
+    @Autowired
+    public HandlerRegistry(List<CommandHandler> handlers,
+                           Environment env,
+                           MeterRegistry registry,
+                           @Value("${consumer.handlers.type-field:type}") String typeField,
+                           @Value("${consumer.listener.max-concurrency:1}") int listenerMaxConcurrency,
+                           @Value("${consumer.adaptive.enabled:false}") boolean adaptive,
+                           @Value("${consumer.adaptive.max-consumers:16}") int adaptiveMaxConsumers,
+                           @Value("${consumer.lanes.enabled:false}") boolean lanes,
+                           @Value("${consumer.lanes.slots:${consumer.listener.concurrency:1}}") int laneSlots,
+                           @Value("${consumer.handlers.concurrency:0}") int concurrency,
+                           @Value("${consumer.handlers.queue-limit:0}") int queueLimit,
+                           @Value("${consumer.handlers.timeout-ms:30000}") long timeoutMs) {
+        this(handlers, env, registry, typeField,
+                lanes ? laneSlots
+                        : adaptive ? Math.max(listenerMaxConcurrency, adaptiveMaxConsumers) : listenerMaxConcurrency,
+                concurrency, queueLimit, timeoutMs);
+    }
+
+    HandlerRegistry(List<CommandHandler> handlers, Environment env, MeterRegistry registry, String typeField,
+                    int listenerThreads, int concurrency, int queueLimit, long timeoutMs) {
+        this.typeField = typeField;
+        int defaultConcurrency = concurrency > 0 ? concurrency
+                : handlers.size() == 1 ? Math.max(1, listenerThreads) : Math.max(1, listenerThreads / 2);
+        for (CommandHandler handler : handlers) {
+            String type = handler.type();
+            CommandHandler previous = this.handlers.putIfAbsent(type, handler);
+            if (previous != null) {
+                throw new IllegalStateException("Two handlers for command type " + type + ": "
+                        + previous.getClass().getName() + " and " + handler.getClass().getName());
+            }
+            String prefix = "consumer.handlers.type." + type + ".";
+            int typeConcurrency = env.getProperty(prefix + "concurrency", Integer.class, defaultConcurrency);
+            int typeQueueLimit = env.getProperty(prefix + "queue-limit", Integer.class, queueLimit);
+            long typeTimeoutMs = env.getProperty(prefix + "timeout-ms", Long.class, timeoutMs);
+            bulkheads.put(type, new Bulkhead(type, typeConcurrency, typeQueueLimit, typeTimeoutMs, registry));
+            log.info("[HANDLER_REGISTERED] type={} handler={} concurrency={} queueLimit={} timeoutMs={}", type,
+                    handler.getClass().getName(), typeConcurrency, typeQueueLimit, typeTimeoutMs);
+            if (handlers.size() > 1 && typeConcurrency + typeQueueLimit >= listenerThreads) {
+                log.warn("[HANDLER_BULKHEAD_UNBOUNDED] type={} can hold all {} listener threads (concurrency={} "
+                        + "queueLimit={}); a slow {} stalls every other type", type, listenerThreads,
+                        typeConcurrency, typeQueueLimit, type);
+            } else if (handlers.size() == 1 && typeConcurrency + typeQueueLimit < listenerThreads) {
+                log.warn("[HANDLER_BULKHEAD_UNDERSIZED] type={} takes {} of {} concurrent listener threads "
+                        + "(concurrency={} queueLimit={}); the rest are deferred and come back later", type,
+                        typeConcurrency + typeQueueLimit, listenerThreads, typeConcurrency, typeQueueLimit);
+            }
+        }
+        this.fallback = this.handlers.get(DefaultCommandHandler.TYPE);
+        if (fallback == null) {
+            throw new IllegalStateException("No handler registered for type " + DefaultCommandHandler.TYPE);
+        }
+    }
+
+    public void dispatch(CommandMessage message) {
+        CommandHandler handler = handlerFor(message);
+        bulkheads.get(handler.type()).run(handler, message);
+    }
+
+    /** Per type: bulkhead limits, current occupancy, latency percentiles and rejection counts. */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        bulkheads.forEach((type, bulkhead) -> status.put(type, bulkhead.stats()));
+        return status;
+    }
+
+    @PreDestroy
+    public void stop() {
+        bulkheads.values().forEach(Bulkhead::shutdown);
+    }
+
+    private CommandHandler handlerFor(CommandMessage message) {
+        Object type = message.getPayload() == null ? null : message.getPayload().get(typeField);
+        if (type == null) return fallback;
+        return handlers.getOrDefault(type.toString(), fallback);
+    }
+}
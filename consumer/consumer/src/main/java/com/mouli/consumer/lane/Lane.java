@@ -0,0 +1,15 @@
+package com.mouli.consumer.lane;
+
+import java.util.Locale;
+
+/**
+ * Priority lanes, in the order ties are broken. NORMAL is command.queue (and the partition queues), so
+ * commands published without a priority are unaffected by lanes being switched on.
+ */
+public enum Lane {
+    HIGH, NORMAL, LOW;
+
+    public String tag() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,163 @@
+package com.mouli.consumer.lane;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Weighted fair scheduler over the priority lanes (consumer.lanes.enabled).
+ *
+ * Each lane has its own listener container, so a backlog in one lane never sits in front of another lane's
+ * messages. Before processing, a listener thread takes one of consumer.lanes.slots processing slots. When
+ * lanes compete for slots they are granted by stride scheduling: every lane has a pass value that advances by
+ * 1/weight per grant, and the waiting lane with the lowest pass goes next. With weights 8:3:1 a saturated
+ * consumer spends about 8/12 of its slots on high, 3/12 on normal and 1/12 on low, so low still makes
+ * progress. An idle lane's unused share goes to the others. A lane that was idle restarts at the current
+ * virtual time, so it cannot save up credit and then monopolise the slots.
+ *
+ * With lanes disabled acquire/release cost nothing and only the normal lane exists.
+ */
+@Component
+public class LaneScheduler {
+
+    private static final double STRIDE_SCALE = 1_000_000d;
+
+    private final boolean enabled;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Lane, Condition> turns = new EnumMap<>(Lane.class);
+    private final Map<Lane, Double> strides = new EnumMap<>(Lane.class);
+    private final Map<Lane, Double> passes = new EnumMap<>(Lane.class);
+    private final Map<Lane, Integer> waiting = new EnumMap<>(Lane.class);
+    private final Map<Lane, Timer> waits = new EnumMap<>(Lane.class);
+    private final Map<Lane, Timer> latencies = new EnumMap<>(Lane.class);
+    private final Map<Lane, Counter> processed = new EnumMap<>(Lane.class);
+    private int freeSlots;
+    private double virtualTime;
+
+    public LaneScheduler(MeterRegistry registry,
+                         @Value("${consumer.lanes.enabled:false}") boolean enabled,
+                         @Value("${consumer.lanes.slots:${consumer.listener.concurrency:1}}") int slots,
+                         @Value("${consumer.lanes.weight.high:8}") int highWeight,
+                         @Value("${consumer.lanes.weight.normal:3}") int normalWeight,
+                         @Value("${consumer.lanes.weight.low:1}") int lowWeight) {
+        this.enabled = enabled;
+        this.freeSlots = Math.max(1, slots);
+        Map<Lane, Integer> weights = Map.of(Lane.HIGH, highWeight, Lane.NORMAL, normalWeight, Lane.LOW, lowWeight);
+        for (Lane lane : Lane.values()) {
+            turns.put(lane, lock.newCondition());
+            strides.put(lane, STRIDE_SCALE / Math.max(1, weights.get(lane)));
+            passes.put(lane, 0d);
+            waiting.put(lane, 0);
+            // time spent waiting for a slot, and createdAt -> processed per lane
+            waits.put(lane, Timer.builder("consumer.lane.wait").tag("lane", lane.tag())
+                    .publishPercentiles(0.5, 0.99).register(registry));
+            latencies.put(lane, Timer.builder("consumer.lane.latency").tag("lane", lane.tag())
+                    .publishPercentiles(0.5, 0.99)
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofMinutes(10))
+                    .register(registry));
+            processed.put(lane, registry.counter("consumer.lane.processed", "lane", lane.tag()));
+        }
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /** Blocks until the lane is granted a processing slot; pair with {@link #release()}. */
+    public void acquire(Lane lane) throws InterruptedException {
+        if (!enabled) return;
+        long start = System.nanoTime();
+        lock.lockInterruptibly();
+        try {
+            if (waiting.get(lane) == 0) {
+                passes.put(lane, Math.max(passes.get(lane), virtualTime));
+            }
+            waiting.merge(lane, 1, Integer::sum);
+            try {
+                while (freeSlots == 0 || next() != lane) {
+                    turns.get(lane).await();
+                }
+            } catch (InterruptedException ex) {
+                // container stopping; the delivery is not acked and goes back to the queue
+                waiting.merge(lane, -1, Integer::sum);
+                signalNext();
+                throw ex;
+            }
+            waiting.merge(lane, -1, Integer::sum);
+            freeSlots--;
+            virtualTime = passes.get(lane);
+            passes.put(lane, virtualTime + strides.get(lane));
+            signalNext();
+        } finally {
+            lock.unlock();
+        }
+        waits.get(lane).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    public void release() {
+        if (!enabled) return;
+        lock.lock();
+        try {
+            freeSlots++;
+            signalNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** A command from the lane was processed; createdAt is the producer's timestamp (may be null). */
+    public void processed(Lane lane, Instant createdAt) {
+        if (!enabled) return;
+        processed.get(lane).increment();
+        if (createdAt != null) {
+            latencies.get(lane).record(Math.max(0, Duration.between(createdAt, Instant.now()).toNanos()),
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /** Per-lane counts and percentiles (ms) for /status. */
+    public Map<String, Object> stats(Lane lane) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("processed", (long) processed.get(lane).count());
+        putPercentiles(stats, "latency", latencies.get(lane).takeSnapshot());
+        putPercentiles(stats, "wait", waits.get(lane).takeSnapshot());
+        return stats;
+    }
+
+    private static void putPercentiles(Map<String, Object> stats, String name, HistogramSnapshot snapshot) {
+        for (ValueAtPercentile p : snapshot.percentileValues()) {
+            stats.put(name + "P" + Math.round(p.percentile() * 100) + "Ms", Math.round(p.value(TimeUnit.MILLISECONDS)));
+        }
+    }
+
+    // waiting lane with the lowest pass; ties go to the higher priority lane
+    private Lane next() {
+        Lane best = null;
+        for (Lane lane : Lane.values()) {
+            if (waiting.get(lane) > 0 && (best == null || passes.get(lane) < passes.get(best))) {
+                best = lane;
+            }
+        }
+        return best;
+    }
+
+    private void signalNext() {
+        if (freeSlots == 0) return;
+        Lane lane = next();
+        if (lane != null) turns.get(lane).signal();
+    }
+}
@@ -0,0 +1,195 @@
+package com.mouli.consumer.listener;
+
+import com.mouli.consumer.codec.CommandMessageCodec;
+import com.mouli.consumer.config.RabbitMQConfig;
+import com.mouli.consumer.dto.CommandMessage;
+import com.mouli.consumer.exception.BulkheadFullException;
+import com.mouli.consumer.exception.TransientProcessingException;
+import com.mouli.consumer.metrics.ConsumerMetrics;
+import com.mouli.consumer.partition.OrderingGate;
+import com.mouli.consumer.service.ClaimResult;
+import com.mouli.consumer.service.IdempotencyService;
+import com.mouli.consumer.service.ProcessingService;
+
+import com.rabbitmq.client.Channel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batch variant of {@link CommandListener}, enabled with consumer.listener.mode=batch.
+ * Like the single listener, bodies are only decoded for messages this batch actually claimed.
+ * Each batch is claimed, processed and marked together, then acked with a single multiple=true ack.
+ * Failed messages are republished (retry/DLQ) before that ack, so acking the whole batch is safe.
+ * The {@link OrderingGate} is consulted message by message while processing, so a failure earlier in the
+ * batch already holds back later commands with the same partition key.
+ */
+@Component
+@ConditionalOnProperty(name = "consumer.listener.mode", havingValue = "batch")
+public class BatchCommandListener {
+
+    private final IdempotencyService idempotency;
+    private final ProcessingService processor;
+    private final RetryRouter retryRouter;
+    private final CommandMessageCodec codec;
+    private final OrderingGate ordering;
+    private final ConsumerMetrics metrics;
+
+    public BatchCommandListener(IdempotencyService idempotency,
+                                ProcessingService processor,
+                                RetryRouter retryRouter,
+                                CommandMessageCodec codec,
+                                OrderingGate ordering,
+                                ConsumerMetrics metrics) {
+        this.idempotency = idempotency;
+        this.processor = processor;
+        this.retryRouter = retryRouter;
+        this.codec = codec;
+        this.ordering = ordering;
+        this.metrics = metrics;
+    }
+
+    private static final Logger log =
+            LoggerFactory.getLogger(BatchCommandListener.class);
+
+    // message is null until decoded; with a message-id property we only decode claimed messages
+    private record Delivery(Message amqpMessage, String id, CommandMessage message) {
+    }
+
+    private record Claimed(Message amqpMessage, CommandMessage message, String claimToken, String partitionKey) {
+    }
+
+    // partition queues are added to this listener's container at runtime by PartitionAssignor
+    @RabbitListener(id = RabbitMQConfig.COMMAND_LISTENER_ID, queues = RabbitMQConfig.COMMAND_QUEUE,
+            containerFactory = "batchRabbitListenerContainerFactory")
+    public void consumeBatch(List<Message> amqpMessages, Channel channel) throws Exception {
+        if (amqpMessages.isEmpty()) {
+            return;
+        }
+        Instant receivedAt = Instant.now();
+        long lastTag = amqpMessages.get(amqpMessages.size() - 1).getMessageProperties().getDeliveryTag();
+
+        // 1. resolve ids from the message-id property (decode only messages published without it)
+        List<Delivery> deliveries = new ArrayList<>(amqpMessages.size());
+        for (Message amqpMessage : amqpMessages) {
+            String id = codec.messageIdOf(amqpMessage);
+            CommandMessage message = null;
+            if (id == null) {
+                message = decode(amqpMessage, null);
+                if (message == null) continue;
+                id = message.getMessageId();
+            }
+            log.info("[RECEIVED] messageId={}", id);
+            deliveries.add(new Delivery(amqpMessage, id, message));
+        }
+
+        // 2. claim the whole batch in one pipelined round trip; duplicates are acked without decoding
+        long start = System.nanoTime();
+        List<ClaimResult> claims = deliveries.isEmpty() ? List.of()
+                : idempotency.claimAll(deliveries.stream().map(Delivery::id).toList());
+        metrics.recordStage(ConsumerMetrics.Stage.CLAIM, start);
+        List<Claimed> claimed = new ArrayList<>(claims.size());
+        for (int i = 0; i < claims.size(); i++) {
+            ClaimResult claim = claims.get(i);
+            Delivery d = deliveries.get(i);
+            switch (claim.status()) {
+                case PROCESSED -> {
+                    log.info("[DUPLICATE_ALREADY_PROCESSED] messageId={}", d.id());
+                    metrics.outcome(ConsumerMetrics.Outcome.DUPLICATE);
+                }
+                case CLAIMED -> {
+                    if (CommandListener.mayBeOrphaned(d.amqpMessage())) {
+                        retryRouter.deferBehindLease(d.amqpMessage(), d.id(), idempotency.lease().toMillis());
+                    } else {
+                        log.info("[DUPLICATE_IGNORED] messageId={}", d.id());
+                        metrics.outcome(ConsumerMetrics.Outcome.DUPLICATE);
+                    }
+                }
+                case FREE -> {
+                    CommandMessage message = d.message() != null ? d.message() : decode(d.amqpMessage(), d.id());
+                    if (message == null) {
+                        idempotency.releaseClaim(d.id(), claim.token());
+                        continue;
+                    }
+                    claimed.add(new Claimed(d.amqpMessage(), message, claim.token(),
+                            codec.partitionKeyOf(d.amqpMessage())));
+                }
+            }
+        }
+
+        // 3. process in delivery order; only failed messages go down the retry/DLQ branches
+        List<Claimed> succeeded = new ArrayList<>(claimed.size());
+        for (Claimed c : claimed) {
+            String id = c.message().getMessageId();
+            String key = c.partitionKey();
+            if (key != null && ordering.admit(key, id, RetryRouter.parkLaps(c.amqpMessage())) == OrderingGate.Decision.WAIT) {
+                idempotency.releaseClaim(id, c.claimToken());
+                retryRouter.park(c.amqpMessage(), id);
+                continue;
+            }
+            try {
+                processor.process(c.message());
+                succeeded.add(c);
+            } catch (BulkheadFullException ex) {
+                idempotency.releaseClaim(id, c.claimToken());
+                if (key != null) ordering.hold(key, id);
+                retryRouter.deferForCapacity(c.amqpMessage(), id);
+            } catch (TransientProcessingException ex) {
+                idempotency.releaseClaim(id, c.claimToken());
+                if (key != null) ordering.hold(key, id);
+                boolean retried = retryRouter.retryOrDeadLetter(c.amqpMessage(), id, ex);
+                if (key != null && !retried) ordering.release(key, id);
+            } catch (Exception ex) {
+                idempotency.releaseClaim(id, c.claimToken());
+                retryRouter.deadLetter(c.amqpMessage(), id, ex);
+                if (key != null) ordering.release(key, id);
+            }
+        }
+
+        // 4. mark processed BEFORE ack (requirement), then one ack for the whole batch;
+        // a fenced mark (lease lapsed and taken over) is acked too, the new holder has its own copy
+        start = System.nanoTime();
+        List<Boolean> marked = idempotency.markAllProcessed(
+                succeeded.stream().map(c -> c.message().getMessageId()).toList(),
+                succeeded.stream().map(Claimed::claimToken).toList());
+        metrics.recordStage(ConsumerMetrics.Stage.MARK_PROCESSED, start);
+        for (Claimed c : succeeded) {
+            if (c.partitionKey() != null) ordering.release(c.partitionKey(), c.message().getMessageId());
+        }
+
+        start = System.nanoTime();
+        channel.basicAck(lastTag, true);
+        metrics.recordStage(ConsumerMetrics.Stage.ACK, start);
+
+        for (int i = 0; i < succeeded.size(); i++) {
+            if (!marked.get(i)) continue;
+            Claimed c = succeeded.get(i);
+            metrics.processed(c.message().getCreatedAt(), receivedAt);
+            log.info("[PROCESSED_SUCCESSFULLY] messageId={}", c.message().getMessageId());
+        }
+        log.debug("[BATCH_ACKED] size={} processed={} lastTag={}",
+                amqpMessages.size(), succeeded.size(), lastTag);
+    }
+
+    // undecodable bodies go straight to the DLQ; returns null in that case
+    private CommandMessage decode(Message amqpMessage, String id) {
+        long start = System.nanoTime();
+        try {
+            return codec.decode(amqpMessage);
+        } catch (Exception ex) {
+            retryRouter.deadLetter(amqpMessage, id, ex);
+            return null;
+        } finally {
+            metrics.recordStage(ConsumerMetrics.Stage.DESERIALIZE, start);
+        }
+    }
+}
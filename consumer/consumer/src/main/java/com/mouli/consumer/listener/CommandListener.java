@@ -1,8 +1,15 @@
 package com.mouli.consumer.listener;
 
+import com.mouli.consumer.codec.CommandMessageCodec;
 import com.mouli.consumer.config.RabbitMQConfig;
 import com.mouli.consumer.dto.CommandMessage;
-import com.mouli.consumer.exception.SimulatedProcessingException;
+import com.mouli.consumer.exception.BulkheadFullException;
+import com.mouli.consumer.exception.TransientProcessingException;
+import com.mouli.consumer.lane.Lane;
+import com.mouli.consumer.lane.LaneScheduler;
+import com.mouli.consumer.metrics.ConsumerMetrics;
+import com.mouli.consumer.partition.OrderingGate;
+import com.mouli.consumer.service.ClaimResult;
 import com.mouli.consumer.service.IdempotencyService;
 import com.mouli.consumer.service.ProcessingService;
 
@@ -12,146 +19,206 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.amqp.core.Message;
-import org.springframework.amqp.core.MessageBuilder;
 import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
-import java.util.Map;
-
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Dedup runs before the body is touched: the messageId comes from the AMQP message-id property,
+ * so duplicates are acked without deserializing. Only messages we actually claimed are decoded.
+ * Messages carrying a partition key also pass the {@link OrderingGate}, so they never overtake an earlier
+ * command for the same key that is waiting in a retry tier.
+ * With priority lanes enabled each lane has its own container and the {@link LaneScheduler} decides which
+ * lane's message gets the next processing slot.
+ */
 @Component
+@ConditionalOnProperty(name = "consumer.listener.mode", havingValue = "single", matchIfMissing = true)
 public class CommandListener {
-    private static final int MAX_RETRIES = 3;
 
     private final IdempotencyService idempotency;
     private final ProcessingService processor;
-    private final RabbitTemplate rabbitTemplate;
+    private final RetryRouter retryRouter;
+    private final CommandMessageCodec codec;
+    private final OrderingGate ordering;
+    private final LaneScheduler lanes;
+    private final ConsumerMetrics metrics;
 
     public CommandListener(IdempotencyService idempotency,
                            ProcessingService processor,
-                           RabbitTemplate rabbitTemplate) {
+                           RetryRouter retryRouter,
+                           CommandMessageCodec codec,
+                           OrderingGate ordering,
+                           LaneScheduler lanes,
+                           ConsumerMetrics metrics) {
         this.idempotency = idempotency;
         this.processor = processor;
-        this.rabbitTemplate = rabbitTemplate;
+        this.retryRouter = retryRouter;
+        this.codec = codec;
+        this.ordering = ordering;
+        this.lanes = lanes;
+        this.metrics = metrics;
     }
 
     private static final Logger log =
             LoggerFactory.getLogger(CommandListener.class);
 
-    @RabbitListener(queues = RabbitMQConfig.COMMAND_QUEUE,
+    // partition queues are added to this listener's container at runtime by PartitionAssignor
+    @RabbitListener(id = RabbitMQConfig.COMMAND_LISTENER_ID, queues = RabbitMQConfig.COMMAND_QUEUE,
             containerFactory = "rabbitListenerContainerFactory")
-    public void consume(CommandMessage message,
-                        Message amqpMessage,
+    public void consume(Message amqpMessage,
                         Channel channel) throws Exception {
+        consumeInLane(Lane.NORMAL, amqpMessage, channel);
+    }
+
+    @RabbitListener(id = RabbitMQConfig.HIGH_LANE_LISTENER_ID, queues = RabbitMQConfig.HIGH_LANE_QUEUE,
+            containerFactory = "rabbitListenerContainerFactory", autoStartup = "${consumer.lanes.enabled:false}")
+    public void consumeHighLane(Message amqpMessage, Channel channel) throws Exception {
+        consumeInLane(Lane.HIGH, amqpMessage, channel);
+    }
+
+    @RabbitListener(id = RabbitMQConfig.LOW_LANE_LISTENER_ID, queues = RabbitMQConfig.LOW_LANE_QUEUE,
+            containerFactory = "rabbitListenerContainerFactory", autoStartup = "${consumer.lanes.enabled:false}")
+    public void consumeLowLane(Message amqpMessage, Channel channel) throws Exception {
+        consumeInLane(Lane.LOW, amqpMessage, channel);
+    }
+
+    private void consumeInLane(Lane lane, Message amqpMessage, Channel channel) throws Exception {
+        lanes.acquire(lane);
+        try {
+            handle(lane, amqpMessage, channel);
+        } finally {
+            lanes.release();
+        }
+    }
 
+    private void handle(Lane lane, Message amqpMessage, Channel channel) throws Exception {
+        Instant receivedAt = Instant.now();
         long tag = amqpMessage.getMessageProperties().getDeliveryTag();
-        String id = message.getMessageId();
+        String id = codec.messageIdOf(amqpMessage);
+        CommandMessage message = null;
+        if (id == null) {
+            // published without the message-id property: the body is the only place to find the id
+            message = decode(amqpMessage, null, channel, tag);
+            if (message == null) return;
+            id = message.getMessageId();
+        }
         log.info("[RECEIVED] messageId={}", id);
 
-        // Claim with a token. If we couldn't claim, check if already processed; otherwise ignore duplicate.
-        String claimToken = idempotency.claimProcessing(id);
-        if (claimToken == null) {
-            if (idempotency.isProcessed(id)) {
-                log.info("[DUPLICATE_ALREADY_PROCESSED] messageId={}", id);
-                channel.basicAck(tag, false);
-                return;
+        // Claim with a token; the same round trip tells us if it was already processed or claimed elsewhere.
+        long start = System.nanoTime();
+        ClaimResult claim = idempotency.claim(id);
+        metrics.recordStage(ConsumerMetrics.Stage.CLAIM, start);
+        if (claim.status() == ClaimResult.Status.PROCESSED) {
+            log.info("[DUPLICATE_ALREADY_PROCESSED] messageId={}", id);
+            metrics.outcome(ConsumerMetrics.Outcome.DUPLICATE);
+            ack(channel, tag);
+            return;
+        } else if (claim.status() == ClaimResult.Status.CLAIMED) {
+            if (mayBeOrphaned(amqpMessage)) {
+                // the lease may belong to a consumer that died with this very delivery in flight
+                retryRouter.deferBehindLease(amqpMessage, id, idempotency.lease().toMillis());
             } else {
-                // Another consumer is processing or claim expired — avoid concurrent processing
+                // Another consumer is processing its own copy — avoid concurrent processing
                 log.info("[DUPLICATE_IGNORED] messageId={}", id);
-                channel.basicAck(tag, false);
+                metrics.outcome(ConsumerMetrics.Outcome.DUPLICATE);
+            }
+            ack(channel, tag);
+            return;
+        }
+        String claimToken = claim.token();
+
+        String partitionKey = codec.partitionKeyOf(amqpMessage);
+        if (partitionKey != null
+                && ordering.admit(partitionKey, id, RetryRouter.parkLaps(amqpMessage)) == OrderingGate.Decision.WAIT) {
+            idempotency.releaseClaim(id, claimToken);
+            retryRouter.park(amqpMessage, id);
+            ack(channel, tag);
+            return;
+        }
+
+        if (message == null) {
+            message = decode(amqpMessage, id, channel, tag);
+            if (message == null) {
+                idempotency.releaseClaim(id, claimToken);
+                if (partitionKey != null) ordering.release(partitionKey, id);
                 return;
             }
         }
 
         try {
             processor.process(message);
-            // mark processed BEFORE ack (requirement)
-            idempotency.markProcessed(id);
-            channel.basicAck(tag, false);
-            log.info("[PROCESSED_SUCCESSFULLY] messageId={}", id);
-
-        } catch (SimulatedProcessingException ex) {
-            MessageProperties props = amqpMessage.getMessageProperties();
-            Map<String, Object> headers = props.getHeaders();
-            Integer attempts = (headers != null && headers.get("x-retries") instanceof Integer)
-                    ? (Integer) headers.get("x-retries") : 0;
-            attempts = attempts + 1;
-
-            if (attempts <= MAX_RETRIES) {
-                log.warn("[RETRYING attempt={} messageId={}]", attempts, id);
-
-                // release claim so a retried message can be claimed again
-                idempotency.releaseClaim(id, claimToken);
 
-                // build new properties preserving original headers/type info
-                MessageProperties newProps = new MessageProperties();
-                // copy headers safely
-                if (props.getHeaders() != null) {
-                    newProps.getHeaders().putAll(new HashMap<>(props.getHeaders()));
-                }
-                newProps.setContentType(props.getContentType());
-                newProps.setHeader("x-retries", attempts);
-
-                org.springframework.amqp.core.Message newMsg =
-                        MessageBuilder.withBody(amqpMessage.getBody())
-                                .andProperties(newProps)
-                                .build();
-
-                // republish to primary queue via default exchange (route by queue name)
-                rabbitTemplate.send("", RabbitMQConfig.COMMAND_QUEUE, newMsg);
-
-                // ack current so broker won't redeliver this instance
-                channel.basicAck(tag, false);
-            } else {
-                log.error("[MOVED_TO_DLQ] messageId={} after {} attempts", id, attempts);
+            // mark processed BEFORE ack (requirement); fenced if our lease lapsed and another consumer took over
+            start = System.nanoTime();
+            boolean marked = idempotency.markProcessed(id, claimToken);
+            metrics.recordStage(ConsumerMetrics.Stage.MARK_PROCESSED, start);
+            if (partitionKey != null) ordering.release(partitionKey, id);
+
+            ack(channel, tag);
+            if (marked) {
+                metrics.processed(message.getCreatedAt(), receivedAt);
+                lanes.processed(lane, message.getCreatedAt());
+                log.info("[PROCESSED_SUCCESSFULLY] messageId={}", id);
+            }
 
-                // release claim before moving to DLQ
-                idempotency.releaseClaim(id, claimToken);
+        } catch (BulkheadFullException ex) {
+            // not a failure: comes back later without spending a retry
+            idempotency.releaseClaim(id, claimToken);
+            if (partitionKey != null) ordering.hold(partitionKey, id);
+            retryRouter.deferForCapacity(amqpMessage, id);
+            ack(channel, tag);
 
-                // send to DLQ, preserving headers and adding metadata
-                MessageProperties newProps = new MessageProperties();
-                if (props.getHeaders() != null) {
-                    newProps.getHeaders().putAll(new HashMap<>(props.getHeaders()));
-                }
-                newProps.setContentType(props.getContentType());
-                newProps.setHeader("x-retries", attempts);
-                newProps.setHeader("x-error-reason", ex.getMessage());
-                newProps.setHeader("x-original-queue", RabbitMQConfig.COMMAND_QUEUE);
-
-                org.springframework.amqp.core.Message newMsg =
-                        MessageBuilder.withBody(amqpMessage.getBody())
-                                .andProperties(newProps)
-                                .build();
-
-                rabbitTemplate.send("", RabbitMQConfig.DLQ_QUEUE, newMsg);
-                channel.basicAck(tag, false);
-            }
+        } catch (TransientProcessingException ex) {
+            // release claim so a retried message can be claimed again
+            idempotency.releaseClaim(id, claimToken);
+            // hold the key before the retry is published, so nothing behind it can slip through
+            if (partitionKey != null) ordering.hold(partitionKey, id);
+            boolean retried = retryRouter.retryOrDeadLetter(amqpMessage, id, ex);
+            if (partitionKey != null && !retried) ordering.release(partitionKey, id);
 
-        } catch (Exception ex) {
-            log.error("[UNEXPECTED_FAILURE_MOVED_TO_DLQ] messageId={}", id, ex);
+            // ack current so broker won't redeliver this instance
+            ack(channel, tag);
 
+        } catch (Exception ex) {
             // release claim before moving to DLQ
             idempotency.releaseClaim(id, claimToken);
+            retryRouter.deadLetter(amqpMessage, id, ex);
+            if (partitionKey != null) ordering.release(partitionKey, id);
+            ack(channel, tag);
+        }
+    }
 
-            // move immediately to DLQ (preserve original message)
-            MessageProperties props = amqpMessage.getMessageProperties();
-            MessageProperties newProps = new MessageProperties();
-            if (props.getHeaders() != null) {
-                newProps.getHeaders().putAll(new HashMap<>(props.getHeaders()));
-            }
-            newProps.setContentType(props.getContentType());
-            newProps.setHeader("x-error-reason", ex.getMessage());
-            newProps.setHeader("x-original-queue", RabbitMQConfig.COMMAND_QUEUE);
-
-            org.springframework.amqp.core.Message newMsg =
-                    MessageBuilder.withBody(amqpMessage.getBody())
-                            .andProperties(newProps)
-                            .build();
+    /**
+     * A live lease only proves another consumer is working on its own copy when this delivery is a first delivery.
+     * A redelivery (or a copy already deferred once) may be the one the lease holder was processing when it died.
+     */
+    static boolean mayBeOrphaned(Message amqpMessage) {
+        MessageProperties props = amqpMessage.getMessageProperties();
+        return Boolean.TRUE.equals(props.getRedelivered())
+                || props.getHeaders().containsKey(RetryRouter.LEASE_DEFERRALS_HEADER);
+    }
 
-            rabbitTemplate.send("", RabbitMQConfig.DLQ_QUEUE, newMsg);
-            channel.basicAck(tag, false);
+    // undecodable bodies go straight to the DLQ and are acked; returns null in that case
+    private CommandMessage decode(Message amqpMessage, String id, Channel channel, long tag) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return codec.decode(amqpMessage);
+        } catch (Exception ex) {
+            retryRouter.deadLetter(amqpMessage, id, ex);
+            ack(channel, tag);
+            return null;
+        } finally {
+            metrics.recordStage(ConsumerMetrics.Stage.DESERIALIZE, start);
         }
     }
+
+    private void ack(Channel channel, long tag) throws IOException {
+        long start = System.nanoTime();
+        channel.basicAck(tag, false);
+        metrics.recordStage(ConsumerMetrics.Stage.ACK, start);
+    }
 }
@@ -0,0 +1,253 @@
+package com.mouli.consumer.listener;
+
+import com.mouli.consumer.config.RabbitMQConfig;
+import com.mouli.consumer.metrics.ConsumerMetrics;
+import com.mouli.consumer.redrive.DlqRedriveService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Parks failed deliveries in a delayed-retry tier or moves them to the DLQ.
+ * Shared by the single-message and batch listeners so both follow the same retry rules.
+ * Callers are responsible for releasing the idempotency claim and acking the original delivery.
+ * Deliveries from a partition or lane queue go through the routed tiers, which return them to the same queue.
+ */
+@Component
+public class RetryRouter {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(RetryRouter.class);
+
+    /** Set on messages that were sent round a delay tier because another consumer's lease was live. */
+    public static final String LEASE_DEFERRALS_HEADER = "x-lease-deferrals";
+    /** Laps a message has taken through the delay tiers because its type's bulkhead was full. */
+    public static final String CAPACITY_DEFERRALS_HEADER = "x-capacity-deferrals";
+    /** Laps a message has taken through the shortest tier waiting behind an earlier command for its key. */
+    public static final String PARK_LAPS_HEADER = "x-park-laps";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final ConsumerMetrics metrics;
+    private final int maxRetries;
+    private final int maxLeaseDeferrals;
+    private final long[] tiersMs;
+    private final long initialIntervalMs;
+    private final double multiplier;
+    private final long maxIntervalMs;
+    private final double jitter;
+
+    public RetryRouter(RabbitTemplate rabbitTemplate,
+                       ConsumerMetrics metrics,
+                       @Value("${consumer.retry.max-retries:3}") int maxRetries,
+                       @Value("${consumer.retry.tiers-ms:1000,10000,60000}") long[] tiersMs,
+                       @Value("${consumer.retry.initial-interval-ms:1000}") long initialIntervalMs,
+                       @Value("${consumer.retry.multiplier:10}") double multiplier,
+                       @Value("${consumer.retry.max-interval-ms:60000}") long maxIntervalMs,
+                       @Value("${consumer.retry.jitter:0.2}") double jitter,
+                       @Value("${consumer.retry.max-lease-deferrals:20}") int maxLeaseDeferrals) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.metrics = metrics;
+        this.maxRetries = maxRetries;
+        this.maxLeaseDeferrals = maxLeaseDeferrals;
+        this.tiersMs = tiersMs.clone();
+        Arrays.sort(this.tiersMs);
+        this.initialIntervalMs = initialIntervalMs;
+        this.multiplier = multiplier;
+        this.maxIntervalMs = maxIntervalMs;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Transient failure: park the message in a delay tier with x-retries incremented,
+     * or dead-letter once max-retries is exceeded. Returns true if it was parked for a retry.
+     */
+    public boolean retryOrDeadLetter(Message amqpMessage, String id, Exception ex) {
+        Map<String, Object> headers = amqpMessage.getMessageProperties().getHeaders();
+        Integer attempts = (headers != null && headers.get("x-retries") instanceof Integer)
+                ? (Integer) headers.get("x-retries") : 0;
+        attempts = attempts + 1;
+
+        if (attempts <= maxRetries) {
+            long delayMs = backoff(attempts);
+            log.warn("[RETRYING attempt={} messageId={} delayMs={}]", attempts, id, delayMs);
+
+            MessageProperties newProps = copyProperties(amqpMessage);
+            newProps.setHeader("x-retries", attempts);
+            // per-message TTL below the tier's queue TTL; expired messages dead-letter to where they came from
+            newProps.setExpiration(String.valueOf(delayMs));
+
+            sendToTier(amqpMessage, newProps, tierFor(delayMs));
+            metrics.outcome(ConsumerMetrics.Outcome.RETRIED);
+            return true;
+        } else {
+            log.error("[MOVED_TO_DLQ] messageId={} after {} attempts", id, attempts);
+
+            MessageProperties newProps = copyProperties(amqpMessage);
+            newProps.setHeader("x-retries", attempts);
+            newProps.setHeader("x-error-reason", ex.getMessage());
+            newProps.setHeader("x-original-queue", originalQueue(amqpMessage));
+
+            sendToDlq(amqpMessage, newProps);
+            return false;
+        }
+    }
+
+    /**
+     * Ordered wait: an earlier command with the same partition key is in a retry tier, so this one takes a lap
+     * through the shortest tier instead of overtaking it. x-retries is left alone; it has not failed.
+     * x-park-laps counts the laps, so the {@link com.mouli.consumer.partition.OrderingGate} can bound the wait.
+     */
+    public void park(Message amqpMessage, String id) {
+        int laps = parkLaps(amqpMessage) + 1;
+        log.info("[PARKED_BEHIND_RETRY] messageId={} laps={}", id, laps);
+        MessageProperties newProps = copyProperties(amqpMessage);
+        newProps.setHeader(PARK_LAPS_HEADER, laps);
+        newProps.setExpiration(String.valueOf(tiersMs[0]));
+        sendToTier(amqpMessage, newProps, tiersMs[0]);
+        metrics.outcome(ConsumerMetrics.Outcome.PARKED);
+    }
+
+    /**
+     * Redelivery that found another consumer's live lease, most likely the lease of a consumer that crashed with
+     * this message in flight. Acking it as a duplicate would lose the message if that consumer is gone, so it comes
+     * back after delayMs (by then a dead consumer's lease has lapsed). x-lease-deferrals counts the laps; x-retries
+     * is left alone. A lease that is still held after max-lease-deferrals laps is being renewed by a consumer that
+     * never finishes, so the message is dead-lettered instead of circling forever. Returns true if it was deferred.
+     */
+    public boolean deferBehindLease(Message amqpMessage, String id, long delayMs) {
+        Map<String, Object> headers = amqpMessage.getMessageProperties().getHeaders();
+        int deferrals = (headers != null && headers.get(LEASE_DEFERRALS_HEADER) instanceof Integer n) ? n + 1 : 1;
+        MessageProperties newProps = copyProperties(amqpMessage);
+        newProps.setHeader(LEASE_DEFERRALS_HEADER, deferrals);
+        if (deferrals > maxLeaseDeferrals) {
+            log.error("[MOVED_TO_DLQ] messageId={} still leased elsewhere after {} deferrals", id, deferrals - 1);
+            newProps.setHeader("x-error-reason", "lease held by another consumer through " + (deferrals - 1)
+                    + " deferrals");
+            newProps.setHeader("x-original-queue", originalQueue(amqpMessage));
+            sendToDlq(amqpMessage, newProps);
+            return false;
+        }
+        log.info("[DEFERRED_BEHIND_LEASE] messageId={} deferrals={} delayMs={}", id, deferrals, delayMs);
+        newProps.setExpiration(String.valueOf(delayMs));
+        sendToTier(amqpMessage, newProps, tierFor(delayMs));
+        metrics.outcome(ConsumerMetrics.Outcome.DEFERRED);
+        return true;
+    }
+
+    /**
+     * The command's bulkhead was full: nothing failed, so x-retries is left alone and the message can never reach
+     * the DLQ this way. It comes back after the usual backoff for its x-capacity-deferrals count, so a type that
+     * stays saturated is offered its commands less and less often (at most every max-interval-ms).
+     */
+    public void deferForCapacity(Message amqpMessage, String id) {
+        Map<String, Object> headers = amqpMessage.getMessageProperties().getHeaders();
+        int deferrals = (headers != null && headers.get(CAPACITY_DEFERRALS_HEADER) instanceof Integer n) ? n + 1 : 1;
+        long delayMs = backoff(deferrals);
+        log.info("[DEFERRED_FOR_CAPACITY] messageId={} deferrals={} delayMs={}", id, deferrals, delayMs);
+        MessageProperties newProps = copyProperties(amqpMessage);
+        newProps.setHeader(CAPACITY_DEFERRALS_HEADER, deferrals);
+        newProps.setExpiration(String.valueOf(delayMs));
+        sendToTier(amqpMessage, newProps, tierFor(delayMs));
+        metrics.outcome(ConsumerMetrics.Outcome.DEFERRED);
+    }
+
+    public static int parkLaps(Message amqpMessage) {
+        Map<String, Object> headers = amqpMessage.getMessageProperties().getHeaders();
+        return headers != null && headers.get(PARK_LAPS_HEADER) instanceof Integer n ? n : 0;
+    }
+
+    /**
+     * Unexpected failure: move immediately to the DLQ (preserve original message).
+     */
+    public void deadLetter(Message amqpMessage, String id, Exception ex) {
+        log.error("[UNEXPECTED_FAILURE_MOVED_TO_DLQ] messageId={}", id, ex);
+
+        MessageProperties newProps = copyProperties(amqpMessage);
+        newProps.setHeader("x-error-reason", ex.getMessage());
+        newProps.setHeader("x-original-queue", originalQueue(amqpMessage));
+
+        sendToDlq(amqpMessage, newProps);
+    }
+
+    /**
+     * The original tiers dead-letter to command.queue. Routed tiers are reached through a fanout exchange with the
+     * delivery's own routing key (command.partition.&lt;n&gt;, command.lane.&lt;lane&gt;), which they keep when they
+     * dead-letter.
+     */
+    private void sendToTier(Message amqpMessage, MessageProperties newProps, long tierMs) {
+        String routingKey = amqpMessage.getMessageProperties().getReceivedRoutingKey();
+        long start = System.nanoTime();
+        if (routingKey != null && (routingKey.startsWith(RabbitMQConfig.PARTITION_ROUTING_PREFIX)
+                || routingKey.startsWith(RabbitMQConfig.LANE_ROUTING_PREFIX))) {
+            rabbitTemplate.send(RabbitMQConfig.routedRetryName(tierMs), routingKey, rebuild(amqpMessage, newProps));
+        } else {
+            rabbitTemplate.send("", RabbitMQConfig.retryQueueName(tierMs), rebuild(amqpMessage, newProps));
+        }
+        metrics.recordStage(ConsumerMetrics.Stage.RETRY_PUBLISH, start);
+    }
+
+    private static String originalQueue(Message amqpMessage) {
+        String queue = amqpMessage.getMessageProperties().getConsumerQueue();
+        return queue != null ? queue : RabbitMQConfig.COMMAND_QUEUE;
+    }
+
+    private void sendToDlq(Message amqpMessage, MessageProperties newProps) {
+        // lets a redrive filter by age
+        newProps.setHeader(DlqRedriveService.DEAD_LETTERED_AT_HEADER, System.currentTimeMillis());
+        long start = System.nanoTime();
+        rabbitTemplate.send("", RabbitMQConfig.DLQ_QUEUE, rebuild(amqpMessage, newProps));
+        metrics.recordStage(ConsumerMetrics.Stage.DLQ_PUBLISH, start);
+        metrics.outcome(ConsumerMetrics.Outcome.DEAD_LETTERED);
+    }
+
+    /**
+     * Exponential backoff capped at max-interval-ms, scaled down by up to jitter (0..1) so a burst of
+     * failures does not come back as a burst. The result never exceeds the cap, so it fits its tier.
+     */
+    long backoff(int attempt) {
+        double base = initialIntervalMs * Math.pow(multiplier, attempt - 1);
+        long capped = (long) Math.min(base, maxIntervalMs);
+        long jittered = (long) (capped * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+        return Math.max(1, jittered);
+    }
+
+    // smallest tier that can hold the delay; longer delays are clamped to the largest tier
+    private long tierFor(long delayMs) {
+        for (long tier : tiersMs) {
+            if (delayMs <= tier) return tier;
+        }
+        return tiersMs[tiersMs.length - 1];
+    }
+
+    // build new properties preserving original headers/type info and the message-id used for dedup
+    private static MessageProperties copyProperties(Message amqpMessage) {
+        MessageProperties props = amqpMessage.getMessageProperties();
+        MessageProperties newProps = new MessageProperties();
+        if (props.getHeaders() != null) {
+            newProps.getHeaders().putAll(new HashMap<>(props.getHeaders()));
+        }
+        newProps.setContentType(props.getContentType());
+        // compressed bodies are forwarded as they are, so the encoding has to travel with them
+        newProps.setContentEncoding(props.getContentEncoding());
+        newProps.setMessageId(props.getMessageId());
+        return newProps;
+    }
+
+    private static Message rebuild(Message amqpMessage, MessageProperties newProps) {
+        return MessageBuilder.withBody(amqpMessage.getBody())
+                .andProperties(newProps)
+                .build();
+    }
+}
@@ -0,0 +1,111 @@
+package com.mouli.consumer.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot-path meters for the consumer. Meters are created once up front so recording is just an
+ * array lookup and an atomic add per stage.
+ *
+ * consumer.stage{stage,outcome}    time spent in each step of a delivery; outcome is success, failure or timeout
+ *                                  (a handler that overran its bulkhead timeout), so failed work is timed too
+ * consumer.messages{outcome}       processed / duplicate / retried / dead_lettered / parked (waiting behind a retry)
+ * consumer.latency.end_to_end      CommandMessage.createdAt -> processed
+ * consumer.latency.queue_wait      createdAt -> received by the listener (includes retry delays)
+ * consumer.latency.processing      received -> processed
+ */
+@Component
+public class ConsumerMetrics {
+
+    public enum Stage { DESERIALIZE, CLAIM, PROCESS, MARK_PROCESSED, ACK, RETRY_PUBLISH, DLQ_PUBLISH }
+
+    public enum Outcome { PROCESSED, DUPLICATE, RETRIED, DEAD_LETTERED, PARKED, DEFERRED }
+
+    public enum StageOutcome { SUCCESS, FAILURE, TIMEOUT }
+
+    private final Map<Stage, Map<StageOutcome, Timer>> stages = new EnumMap<>(Stage.class);
+    private final Map<Outcome, Counter> outcomes = new EnumMap<>(Outcome.class);
+    private final Timer endToEnd;
+    private final Timer queueWait;
+    private final Timer processing;
+
+    public ConsumerMetrics(MeterRegistry registry) {
+        for (Stage stage : Stage.values()) {
+            Map<StageOutcome, Timer> byOutcome = new EnumMap<>(StageOutcome.class);
+            for (StageOutcome outcome : StageOutcome.values()) {
+                Timer.Builder timer = Timer.builder("consumer.stage")
+                        .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                        .tag("outcome", outcome.name().toLowerCase(Locale.ROOT));
+                if (stage == Stage.PROCESS) {
+                    // the adaptive controller takes its windowed p99 from these buckets
+                    timer.publishPercentileHistogram()
+                            .minimumExpectedValue(Duration.ofMillis(1))
+                            .maximumExpectedValue(Duration.ofMinutes(10));
+                }
+                byOutcome.put(outcome, timer.register(registry));
+            }
+            stages.put(stage, byOutcome);
+        }
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, Counter.builder("consumer.messages")
+                    .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+        this.endToEnd = latencyTimer("consumer.latency.end_to_end", registry);
+        this.queueWait = latencyTimer("consumer.latency.queue_wait", registry);
+        this.processing = latencyTimer("consumer.latency.processing", registry);
+    }
+
+    private static Timer latencyTimer(String name, MeterRegistry registry) {
+        return Timer.builder(name)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(registry);
+    }
+
+    /** Record a stage that started at startNanos (System.nanoTime()) and succeeded. */
+    public void recordStage(Stage stage, long startNanos) {
+        recordStage(stage, startNanos, StageOutcome.SUCCESS);
+    }
+
+    public void recordStage(Stage stage, long startNanos, StageOutcome outcome) {
+        stages.get(stage).get(outcome).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** For readers that need windowed views (the adaptive concurrency controller). */
+    public Timer stage(Stage stage, StageOutcome outcome) {
+        return stages.get(stage).get(outcome);
+    }
+
+    public void outcome(Outcome outcome) {
+        outcomes.get(outcome).increment();
+    }
+
+    /**
+     * Latency split for a processed message. createdAt comes from the producer's clock, so
+     * negative spans caused by clock skew are clamped to zero.
+     */
+    public void processed(Instant createdAt, Instant receivedAt) {
+        Instant now = Instant.now();
+        processing.record(nonNegative(Duration.between(receivedAt, now)));
+        if (createdAt != null) {
+            queueWait.record(nonNegative(Duration.between(createdAt, receivedAt)));
+            endToEnd.record(nonNegative(Duration.between(createdAt, now)));
+        }
+        outcome(Outcome.PROCESSED);
+    }
+
+    private static Duration nonNegative(Duration d) {
+        return d.isNegative() ? Duration.ZERO : d;
+    }
+}
@@ -0,0 +1,116 @@
+package com.mouli.consumer.partition;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Keeps commands with the same partition key (x-partition-key) in order while one of them is in a retry tier.
+ *
+ * A partition queue alone is not enough: a failed command is parked in a delay queue and everything behind it
+ * would overtake it. So per key there is a Redis list of messageIds waiting their turn. A command that fails
+ * and is retried puts itself at the head; later commands for the key join the tail and take laps through the
+ * shortest retry tier until they are at the head. A command that ends up in the DLQ gives up its place, so
+ * one poison command does not block its key for longer than its own retries.
+ *
+ * Lists expire after order-ttl-seconds without activity, which must outlast the whole retry schedule;
+ * past that, ordering for the key is given up rather than blocking it forever.
+ *
+ * A head that never comes back (its consumer crashed, or its delivery was acked elsewhere) would keep every
+ * later command for the key lapping until that TTL, and the laps themselves keep refreshing it. So a waiting
+ * command counts its laps, and once it has taken max-park-laps it forces the gate: the stale head is dropped
+ * and the waiting command takes its place.
+ *
+ * The lists live on the spring.data.redis connection, not on the idempotency store's nodes: they are keyed by
+ * partition key, and every instance must find a key's list in the same place.
+ */
+@Component
+public class OrderingGate {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderingGate.class);
+
+    public enum Decision { PROCEED, WAIT }
+
+    static final String PREFIX = "partition:order:";
+
+    // KEYS[1] = key's queue; ARGV = messageId, ttl (s)
+    private static final RedisScript<String> ADMIT_SCRIPT = new DefaultRedisScript<>(
+            "local head = redis.call('lindex', KEYS[1], 0) " +
+                    "if not head or head == ARGV[1] then return 'PROCEED' end " +
+                    "if not redis.call('lpos', KEYS[1], ARGV[1]) then redis.call('rpush', KEYS[1], ARGV[1]) end " +
+                    "redis.call('expire', KEYS[1], ARGV[2]) " +
+                    "return 'WAIT'",
+            String.class);
+    // only a command that was admitted gets here, so it is the head already or the list is empty
+    private static final RedisScript<Long> HOLD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('lindex', KEYS[1], 0) ~= ARGV[1] then redis.call('lpush', KEYS[1], ARGV[1]) end " +
+                    "redis.call('expire', KEYS[1], ARGV[2]) " +
+                    "return 1",
+            Long.class);
+    // this command waited long enough: replace the head with it. Returns the head it replaced ('' if none).
+    private static final RedisScript<String> FORCE_SCRIPT = new DefaultRedisScript<>(
+            "local head = redis.call('lindex', KEYS[1], 0) " +
+                    "if not head then return '' end " +
+                    "if head == ARGV[1] then return head end " +
+                    "redis.call('lrem', KEYS[1], 0, ARGV[1]) " +
+                    "redis.call('lset', KEYS[1], 0, ARGV[1]) " +
+                    "redis.call('expire', KEYS[1], ARGV[2]) " +
+                    "return head",
+            String.class);
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('lindex', KEYS[1], 0) == ARGV[1] then redis.call('lpop', KEYS[1]) return 1 end " +
+                    "return 0",
+            Long.class);
+
+    private final StringRedisTemplate redis;
+    private final String ttlSeconds;
+    private final int maxParkLaps;
+    private final Counter forced;
+
+    public OrderingGate(StringRedisTemplate redis,
+                        MeterRegistry registry,
+                        @Value("${consumer.partitions.order-ttl-seconds:900}") long ttlSeconds,
+                        @Value("${consumer.partitions.max-park-laps:180}") int maxParkLaps) {
+        this.redis = redis;
+        this.ttlSeconds = String.valueOf(ttlSeconds);
+        this.maxParkLaps = maxParkLaps;
+        this.forced = registry.counter("consumer.partitions.gate.forced");
+    }
+
+    /**
+     * WAIT: an earlier command for the key is still pending; this one has been queued behind it.
+     * parkLaps is how many laps this delivery has already taken waiting; at max-park-laps the gate is forced.
+     */
+    public Decision admit(String partitionKey, String messageId, int parkLaps) {
+        List<String> key = List.of(PREFIX + partitionKey);
+        if (parkLaps >= maxParkLaps) {
+            String stale = redis.execute(FORCE_SCRIPT, key, messageId, ttlSeconds);
+            if (stale != null && !stale.isEmpty() && !stale.equals(messageId)) {
+                forced.increment();
+                log.warn("[ORDERING_GATE_FORCED] key={} messageId={} laps={} staleHead={}",
+                        partitionKey, messageId, parkLaps, stale);
+            }
+            return Decision.PROCEED;
+        }
+        String decision = redis.execute(ADMIT_SCRIPT, key, messageId, ttlSeconds);
+        return Decision.valueOf(decision);
+    }
+
+    /** The admitted command failed and is going to a retry tier: later commands for the key wait for it. */
+    public void hold(String partitionKey, String messageId) {
+        redis.execute(HOLD_SCRIPT, List.of(PREFIX + partitionKey), messageId, ttlSeconds);
+    }
+
+    /** The command is done (processed or dead-lettered): the next one for the key may go. */
+    public void release(String partitionKey, String messageId) {
+        redis.execute(RELEASE_SCRIPT, List.of(PREFIX + partitionKey), messageId);
+    }
+}
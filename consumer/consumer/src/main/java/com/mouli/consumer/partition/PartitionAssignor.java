@@ -0,0 +1,179 @@
+package com.mouli.consumer.partition;
+
+import com.mouli.consumer.config.RabbitMQConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads the partition queues over the running consumer instances (consumer.partitions.count &gt; 1).
+ *
+ * Every instance heartbeats into a sorted set in Redis; members that missed session-timeout-ms are dropped
+ * by whoever heartbeats next. Members are ordered by id and partition p goes to member p % members, so all
+ * instances reach the same assignment from the same member list without talking to each other. A changed
+ * assignment swaps the listener container's queues (command.queue is always kept, to drain anything
+ * published before partitioning was switched on).
+ *
+ * The partition queues are single-active-consumer, so this only balances load; it is not what keeps a
+ * partition ordered. Two instances that briefly disagree during a rebalance both subscribe, and the broker
+ * still delivers to one of them. For the same reason an instance that cannot reach Redis subscribes to
+ * every partition rather than none.
+ *
+ * The member set is one key on the spring.data.redis connection, never on the idempotency store's nodes.
+ */
+@Component
+public class PartitionAssignor {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionAssignor.class);
+
+    static final String MEMBERS_KEY = "consumer:partitions:members";
+
+    // KEYS[1] = members; ARGV = instanceId, session timeout (ms). Redis' clock, so instance clock skew does not matter.
+    // Returns the live members one per line (a plain String result instead of a raw List).
+    private static final RedisScript<String> HEARTBEAT_SCRIPT = new DefaultRedisScript<>(
+            "local t = redis.call('time') " +
+                    "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+                    "redis.call('zadd', KEYS[1], now, ARGV[1]) " +
+                    "redis.call('zremrangebyscore', KEYS[1], '-inf', now - tonumber(ARGV[2])) " +
+                    "return table.concat(redis.call('zrange', KEYS[1], 0, -1), '\\n')",
+            String.class);
+
+    private final RabbitListenerEndpointRegistry listeners;
+    private final StringRedisTemplate redis;
+    private final int partitions;
+    private final long heartbeatMs;
+    private final long sessionTimeoutMs;
+    private final String instanceId;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("partition-assignor").daemon().factory());
+
+    private volatile List<Integer> assigned = List.of();
+    private volatile int members;
+
+    public PartitionAssignor(RabbitListenerEndpointRegistry listeners,
+                             StringRedisTemplate redis,
+                             MeterRegistry registry,
+                             @Value("${consumer.partitions.count:1}") int partitions,
+                             @Value("${consumer.partitions.heartbeat-ms:2000}") long heartbeatMs,
+                             @Value("${consumer.partitions.session-timeout-ms:10000}") long sessionTimeoutMs,
+                             @Value("${consumer.partitions.instance-id:}") String instanceId) {
+        this.listeners = listeners;
+        this.redis = redis;
+        this.partitions = partitions;
+        this.heartbeatMs = heartbeatMs;
+        this.sessionTimeoutMs = sessionTimeoutMs;
+        // RuntimeMXBean name is pid@host: unique per process, readable in the member set
+        this.instanceId = instanceId.isBlank() ? ManagementFactory.getRuntimeMXBean().getName() : instanceId;
+        registry.gauge("consumer.partitions.assigned", this, a -> a.assigned.size());
+    }
+
+    public boolean partitioned() {
+        return partitions > 1;
+    }
+
+    public int partitionCount() {
+        return partitions;
+    }
+
+    public String instanceId() {
+        return instanceId;
+    }
+
+    public List<Integer> assigned() {
+        return assigned;
+    }
+
+    public int members() {
+        return members;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (partitioned()) {
+            executor.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!partitioned()) return;
+        executor.shutdownNow();
+        try {
+            // listener containers are already stopped; let the others take over without waiting for the timeout
+            redis.opsForZSet().remove(MEMBERS_KEY, instanceId);
+        } catch (RuntimeException ex) {
+            log.debug("[PARTITION_LEAVE_FAILED] {}", ex.getMessage());
+        }
+    }
+
+    private void heartbeat() {
+        List<Integer> partitionsToOwn;
+        try {
+            List<String> current = heartbeatMembers();
+            members = current.size();
+            partitionsToOwn = assignment(current);
+        } catch (RuntimeException ex) {
+            log.warn("[PARTITION_HEARTBEAT_FAILED] subscribing to all partitions: {}", ex.getMessage());
+            partitionsToOwn = assignment(List.of(instanceId));
+        }
+        try {
+            apply(partitionsToOwn);
+        } catch (RuntimeException ex) {
+            log.warn("[PARTITION_ASSIGN_FAILED] {}", ex.getMessage());
+        }
+    }
+
+    // registers this instance and returns the live members
+    List<String> heartbeatMembers() {
+        String current = redis.execute(HEARTBEAT_SCRIPT, List.of(MEMBERS_KEY), instanceId,
+                String.valueOf(sessionTimeoutMs));
+        return current == null || current.isEmpty() ? List.of() : List.of(current.split("\n"));
+    }
+
+    List<Integer> assignment(List<String> currentMembers) {
+        List<String> sorted = new ArrayList<>(currentMembers);
+        sorted.sort(null);
+        int index = Math.max(0, sorted.indexOf(instanceId));
+        int size = Math.max(1, sorted.size());
+        List<Integer> owned = new ArrayList<>();
+        for (int p = index; p < partitions; p += size) {
+            owned.add(p);
+        }
+        return List.copyOf(owned);
+    }
+
+    private void apply(List<Integer> partitionsToOwn) {
+        if (partitionsToOwn.equals(assigned)) return;
+        MessageListenerContainer container = listeners.getListenerContainer(RabbitMQConfig.COMMAND_LISTENER_ID);
+        if (!(container instanceof AbstractMessageListenerContainer listener)) {
+            throw new IllegalStateException("no listener container with id " + RabbitMQConfig.COMMAND_LISTENER_ID);
+        }
+        List<String> queues = new ArrayList<>(partitionsToOwn.size() + 1);
+        queues.add(RabbitMQConfig.COMMAND_QUEUE);
+        for (int p : partitionsToOwn) {
+            queues.add(RabbitMQConfig.partitionQueueName(p));
+        }
+        // a running container cancels and re-creates its consumers; in-flight deliveries finish first
+        listener.setQueueNames(queues.toArray(String[]::new));
+        log.info("[PARTITIONS_ASSIGNED] instance={} members={} partitions={}", instanceId, members, partitionsToOwn);
+        assigned = partitionsToOwn;
+    }
+}
@@ -0,0 +1,361 @@
+package com.mouli.consumer.redrive;
+
+import com.mouli.consumer.config.RabbitMQConfig;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.AbstractConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams command.dlq and sends matching messages back to their x-original-queue (POST /dlq/redrive).
+ *
+ * One job at a time, on its own connection, so a large redrive cannot block the listeners' connection when the
+ * broker applies flow control. The job consumes the DLQ with a prefetch window and works in batches: every
+ * message of a batch is either republished to its original queue (x-retries, x-error-reason and friends
+ * removed, x-redriven incremented) or, if it does not match the filters, republished to the back of the DLQ.
+ * The batch is acked on the DLQ with one multiple-ack after all its publishes are confirmed, so a crash or a
+ * failed confirm leaves messages in the DLQ (a later redrive may then send some twice; the idempotency store
+ * drops the repeats).
+ *
+ * A job scans only as many messages as the DLQ held when it started, so rotated messages are not seen twice.
+ * Live traffic is protected by ratePerSecond and by pausing while a target queue is deeper than
+ * consumer.redrive.max-target-depth.
+ *
+ * A dry run consumes without acking and counts what would be redriven; closing its connection puts every
+ * message back where it was. Everything it has seen stays unacked on its channel until then, so it looks at no
+ * more than consumer.redrive.dry-run-scan-limit messages from the head of the DLQ (also its prefetch window) and
+ * reports a sample, not a census, when the DLQ is deeper than that.
+ */
+@Service
+public class DlqRedriveService {
+
+    private static final Logger log = LoggerFactory.getLogger(DlqRedriveService.class);
+
+    public static final String DEAD_LETTERED_AT_HEADER = "x-dead-lettered-at";
+    static final String REDRIVEN_HEADER = "x-redriven";
+    // basic.qos prefetch-count is an unsigned short
+    private static final int MAX_PREFETCH = 65535;
+    private static final Set<String> DLQ_HEADERS =
+            Set.of("x-retries", "x-error-reason", "x-original-queue", DEAD_LETTERED_AT_HEADER, "x-death");
+
+    private record Delivery(Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+    }
+
+    private record Outgoing(String queue, AMQP.BasicProperties properties, byte[] body, boolean redriven) {
+    }
+
+    private final ConnectionFactory connectionFactory;
+    private final int batchSize;
+    private final int defaultRatePerSecond;
+    private final long maxTargetDepth;
+    private final long confirmTimeoutMs;
+    private final long idleTimeoutMs;
+    private final int dryRunScanLimit;
+    private final Counter redrivenCounter;
+    private final Counter rotatedCounter;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("dlq-redrive").daemon().factory());
+
+    private volatile RedriveJob current;
+
+    public DlqRedriveService(ConnectionFactory connectionFactory,
+                             MeterRegistry registry,
+                             @Value("${consumer.redrive.batch-size:500}") int batchSize,
+                             @Value("${consumer.redrive.rate-per-second:2000}") int defaultRatePerSecond,
+                             @Value("${consumer.redrive.max-target-depth:10000}") long maxTargetDepth,
+                             @Value("${consumer.redrive.confirm-timeout-ms:10000}") long confirmTimeoutMs,
+                             @Value("${consumer.redrive.idle-timeout-ms:2000}") long idleTimeoutMs,
+                             @Value("${consumer.redrive.dry-run-scan-limit:10000}") int dryRunScanLimit) {
+        this.connectionFactory = connectionFactory;
+        this.batchSize = Math.max(1, batchSize);
+        this.defaultRatePerSecond = defaultRatePerSecond;
+        this.maxTargetDepth = maxTargetDepth;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.dryRunScanLimit = Math.clamp(dryRunScanLimit, 1, MAX_PREFETCH);
+        this.redrivenCounter = registry.counter("consumer.redrive.messages", "result", "redriven");
+        this.rotatedCounter = registry.counter("consumer.redrive.messages", "result", "rotated");
+    }
+
+    /**
+     * Starts a job. Throws {@link IllegalStateException} while another one runs and
+     * {@link IllegalArgumentException} for an invalid filter.
+     */
+    public synchronized RedriveJob start(RedriveRequest request) throws IOException, TimeoutException {
+        if (current != null && current.state() == RedriveJob.State.RUNNING) {
+            throw new IllegalStateException("redrive " + current.id() + " is still running");
+        }
+        RedriveRequest.Matcher matcher = request.matcher();
+        Connection connection = open();
+        RedriveJob job;
+        try (Channel channel = connection.createChannel()) {
+            long depth = channel.queueDeclarePassive(RabbitMQConfig.DLQ_QUEUE).getMessageCount();
+            job = new RedriveJob(request, depth, request.dryRun() ? Math.min(depth, dryRunScanLimit) : depth);
+        } catch (IOException | TimeoutException | RuntimeException ex) {
+            connection.close();
+            throw ex;
+        }
+        current = job;
+        log.info("[REDRIVE_STARTED] id={} dryRun={} dlqDepth={} request={}",
+                job.id(), request.dryRun(), job.dlqDepthAtStart(), request);
+        executor.execute(() -> run(job, matcher, connection));
+        return job;
+    }
+
+    public RedriveJob current() {
+        return current;
+    }
+
+    public RedriveJob cancel() {
+        RedriveJob job = current;
+        if (job != null) {
+            job.cancel();
+        }
+        return job;
+    }
+
+    @PreDestroy
+    public void stop() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private void run(RedriveJob job, RedriveRequest.Matcher matcher, Connection connection) {
+        RedriveRequest request = job.request();
+        DlqStream stream = null;
+        try {
+            Channel publish = null;
+            AtomicInteger returned = new AtomicInteger();
+            if (!request.dryRun()) {
+                publish = connection.createChannel();
+                publish.confirmSelect();
+                publish.addReturnListener(r -> returned.incrementAndGet());
+            }
+            // a dry run never acks, so its window has to cover the whole (limited) scan
+            stream = new DlqStream(connection.createChannel(),
+                    request.dryRun() ? (int) Math.max(1, job.toScan()) : batchSize * 2, batchSize * 4);
+            Map<String, Boolean> targets = new HashMap<>();
+            long limit = request.limit() != null ? request.limit() : Long.MAX_VALUE;
+            int rate = request.ratePerSecond() != null ? request.ratePerSecond() : defaultRatePerSecond;
+            long toScan = job.toScan();
+            long scanned = 0;
+            long published = 0;
+            long startNanos = System.nanoTime();
+
+            while (scanned < toScan && job.matchedCount() < limit && !job.cancelRequested()) {
+                List<Delivery> batch = stream.next((int) Math.min(batchSize, toScan - scanned), idleTimeoutMs);
+                if (batch.isEmpty()) break; // someone else emptied the DLQ
+                List<Outgoing> outgoing = new ArrayList<>(batch.size());
+                for (Delivery delivery : batch) {
+                    scanned++;
+                    job.scanned();
+                    Map<String, Object> headers = delivery.properties().getHeaders() != null
+                            ? delivery.properties().getHeaders() : Map.of();
+                    String reason = reasonOf(headers);
+                    String queue = originalQueueOf(headers);
+                    String messageId = delivery.properties().getMessageId();
+                    boolean match = job.matchedCount() < limit
+                            && matcher.matches(reason, messageId, ageSecondsOf(delivery.properties(), headers));
+                    if (match && !request.dryRun()
+                            && !targets.computeIfAbsent(queue, q -> queueExists(connection, q))) {
+                        job.unroutable();
+                        match = false;
+                    }
+                    if (match) {
+                        job.matched(reason, queue, messageId);
+                    }
+                    if (!request.dryRun()) {
+                        outgoing.add(match
+                                ? new Outgoing(queue, redriveProperties(delivery.properties(), headers), delivery.body(), true)
+                                : new Outgoing(RabbitMQConfig.DLQ_QUEUE, delivery.properties(), delivery.body(), false));
+                    }
+                }
+                if (request.dryRun()) continue;
+
+                awaitTargetCapacity(stream.getChannel(), outgoing, job);
+                published += pace(outgoing.size(), published, rate, startNanos);
+                for (Outgoing message : outgoing) {
+                    publish.basicPublish("", message.queue(), true, message.properties(), message.body());
+                }
+                publish.waitForConfirmsOrDie(confirmTimeoutMs);
+                if (returned.get() > 0) {
+                    throw new IllegalStateException(returned.get() + " messages were returned as unroutable");
+                }
+                stream.getChannel().basicAck(batch.getLast().envelope().getDeliveryTag(), true);
+                int redriven = (int) outgoing.stream().filter(Outgoing::redriven).count();
+                job.redriven(redriven);
+                job.rotated(outgoing.size() - redriven);
+                redrivenCounter.increment(redriven);
+                rotatedCounter.increment(outgoing.size() - redriven);
+            }
+            job.finish(job.cancelRequested() ? RedriveJob.State.CANCELLED : RedriveJob.State.COMPLETED, null);
+        } catch (Exception ex) {
+            if (ex instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.error("[REDRIVE_FAILED] id={}: {}", job.id(), ex.getMessage(), ex);
+            job.finish(RedriveJob.State.FAILED, ex.getMessage());
+        } finally {
+            if (stream != null) stream.stop();
+            // unacked deliveries (the rest of the prefetch window, a failed batch, a whole dry run) go back to the DLQ
+            try {
+                connection.close();
+            } catch (IOException | RuntimeException ex) {
+                log.debug("[REDRIVE_CLOSE_FAILED] {}", ex.getMessage());
+            }
+        }
+        log.info("[REDRIVE_FINISHED] {}", job.snapshot());
+    }
+
+    // returns how many messages were paced, for the running total
+    private static long pace(int count, long published, int rate, long startNanos) throws InterruptedException {
+        if (rate > 0) {
+            long dueNanos = startNanos + (published * 1_000_000_000L) / rate;
+            long aheadNanos = dueNanos - System.nanoTime();
+            if (aheadNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(aheadNanos);
+            }
+        }
+        return count;
+    }
+
+    private void awaitTargetCapacity(Channel channel, List<Outgoing> outgoing, RedriveJob job)
+            throws IOException, InterruptedException {
+        if (maxTargetDepth <= 0) return;
+        Set<String> queues = new HashSet<>();
+        for (Outgoing message : outgoing) {
+            if (message.redriven()) queues.add(message.queue());
+        }
+        for (String queue : queues) {
+            while (!job.cancelRequested() && channel.queueDeclarePassive(queue).getMessageCount() > maxTargetDepth) {
+                log.debug("[REDRIVE_PAUSED] {} is above {} messages", queue, maxTargetDepth);
+                Thread.sleep(500);
+            }
+        }
+    }
+
+    static AMQP.BasicProperties redriveProperties(AMQP.BasicProperties properties, Map<String, Object> headers) {
+        Map<String, Object> cleaned = new HashMap<>(headers);
+        cleaned.keySet().removeAll(DLQ_HEADERS);
+        Object redriven = headers.get(REDRIVEN_HEADER);
+        cleaned.put(REDRIVEN_HEADER, (redriven instanceof Number n ? n.intValue() : 0) + 1);
+        return properties.builder().headers(cleaned).expiration(null).build();
+    }
+
+    private static String reasonOf(Map<String, Object> headers) {
+        Object reason = headers.get("x-error-reason");
+        if (reason != null) return reason.toString();
+        Map<?, ?> death = firstDeath(headers);
+        // rejected by the broker's own dead-lettering (e.g. a queue length limit): "rejected", "maxlen", ...
+        return death != null && death.get("reason") != null ? death.get("reason").toString() : null;
+    }
+
+    private static String originalQueueOf(Map<String, Object> headers) {
+        Object queue = headers.get("x-original-queue");
+        if (queue != null) return queue.toString();
+        Map<?, ?> death = firstDeath(headers);
+        return death != null && death.get("queue") != null ? death.get("queue").toString() : RabbitMQConfig.COMMAND_QUEUE;
+    }
+
+    private static Long ageSecondsOf(AMQP.BasicProperties properties, Map<String, Object> headers) {
+        long deadLetteredAt;
+        Map<?, ?> death = firstDeath(headers);
+        if (headers.get(DEAD_LETTERED_AT_HEADER) instanceof Number at) {
+            deadLetteredAt = at.longValue();
+        } else if (death != null && death.get("time") instanceof Date time) {
+            deadLetteredAt = time.getTime();
+        } else if (properties.getTimestamp() != null) {
+            deadLetteredAt = properties.getTimestamp().getTime();
+        } else {
+            return null;
+        }
+        return Math.max(0, (System.currentTimeMillis() - deadLetteredAt) / 1000);
+    }
+
+    private static Map<?, ?> firstDeath(Map<String, Object> headers) {
+        return headers.get("x-death") instanceof List<?> deaths && !deaths.isEmpty()
+                && deaths.getFirst() instanceof Map<?, ?> death ? death : null;
+    }
+
+    // a passive declare of a missing queue closes the channel, so it gets a throwaway one
+    private static boolean queueExists(Connection connection, String queue) {
+        try (Channel channel = connection.createChannel()) {
+            channel.queueDeclarePassive(queue);
+            return true;
+        } catch (IOException | TimeoutException | RuntimeException ex) {
+            log.warn("[REDRIVE_UNROUTABLE] original queue {} does not exist; its messages stay in the DLQ", queue);
+            return false;
+        }
+    }
+
+    private Connection open() throws IOException, TimeoutException {
+        if (connectionFactory instanceof AbstractConnectionFactory factory) {
+            return factory.getRabbitConnectionFactory().newConnection("dlq-redrive");
+        }
+        throw new IllegalStateException("redrive needs a CachingConnectionFactory, got " + connectionFactory.getClass());
+    }
+
+    /** DLQ consumer feeding a bounded buffer, so a slow (rate-limited) job pushes back on the broker. */
+    private static final class DlqStream extends DefaultConsumer {
+
+        private final BlockingQueue<Delivery> buffer;
+        private volatile boolean stopped;
+
+        DlqStream(Channel channel, int prefetch, int capacity) throws IOException {
+            super(channel);
+            this.buffer = new ArrayBlockingQueue<>(capacity);
+            channel.basicQos(prefetch);
+            channel.basicConsume(RabbitMQConfig.DLQ_QUEUE, false, "dlq-redrive", this);
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+            Delivery delivery = new Delivery(envelope, properties, body);
+            try {
+                while (!stopped && !buffer.offer(delivery, 100, TimeUnit.MILLISECONDS)) {
+                    // job is behind; the broker stops sending once the prefetch window is full
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /** Up to max deliveries; waits up to idleTimeoutMs for the first one. */
+        List<Delivery> next(int max, long idleTimeoutMs) throws InterruptedException {
+            List<Delivery> batch = new ArrayList<>(max);
+            Delivery first = buffer.poll(idleTimeoutMs, TimeUnit.MILLISECONDS);
+            if (first == null) return batch;
+            batch.add(first);
+            buffer.drainTo(batch, max - 1);
+            return batch;
+        }
+
+        void stop() {
+            stopped = true;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.mouli.consumer.redrive;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Progress of one redrive (or dry run). Written by the redrive thread only; /dlq/redrive reads a snapshot.
+ */
+public class RedriveJob {
+
+    public enum State { RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    // distinct reasons kept in the breakdown; the rest are counted under "other"
+    private static final int MAX_REASONS = 50;
+    private static final int MAX_REASON_LENGTH = 200;
+    private static final int MAX_SAMPLES = 20;
+
+    private final String id = UUID.randomUUID().toString();
+    private final RedriveRequest request;
+    private final Instant startedAt = Instant.now();
+    private final long dlqDepthAtStart;
+    private final long toScan;
+    private final Map<String, Long> byReason = new LinkedHashMap<>();
+    private final Map<String, Long> byQueue = new LinkedHashMap<>();
+    private final List<String> samples = new ArrayList<>();
+
+    private volatile State state = State.RUNNING;
+    private volatile boolean cancelRequested;
+    private volatile long scanned;
+    private volatile long matched;
+    private volatile long redriven;
+    private volatile long rotated;
+    private volatile long unroutable;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    RedriveJob(RedriveRequest request, long dlqDepthAtStart, long toScan) {
+        this.request = request;
+        this.dlqDepthAtStart = dlqDepthAtStart;
+        this.toScan = toScan;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    RedriveRequest request() {
+        return request;
+    }
+
+    long dlqDepthAtStart() {
+        return dlqDepthAtStart;
+    }
+
+    /** How many messages from the head of the DLQ the job looks at: all of them, or a dry run's scan limit. */
+    long toScan() {
+        return toScan;
+    }
+
+    boolean cancelRequested() {
+        return cancelRequested;
+    }
+
+    void cancel() {
+        cancelRequested = true;
+    }
+
+    void scanned() {
+        scanned++;
+    }
+
+    long matchedCount() {
+        return matched;
+    }
+
+    synchronized void matched(String reason, String queue, String messageId) {
+        matched++;
+        String key = reason == null ? "unknown"
+                : reason.length() > MAX_REASON_LENGTH ? reason.substring(0, MAX_REASON_LENGTH) : reason;
+        if (!byReason.containsKey(key) && byReason.size() >= MAX_REASONS) {
+            key = "other";
+        }
+        byReason.merge(key, 1L, Long::sum);
+        byQueue.merge(queue, 1L, Long::sum);
+        if (samples.size() < MAX_SAMPLES && messageId != null) {
+            samples.add(messageId);
+        }
+    }
+
+    void redriven(int count) {
+        redriven += count;
+    }
+
+    void rotated(int count) {
+        rotated += count;
+    }
+
+    void unroutable() {
+        unroutable++;
+    }
+
+    void finish(State state, String error) {
+        this.error = error;
+        this.finishedAt = Instant.now();
+        this.state = state;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("id", id);
+        view.put("state", state);
+        view.put("dryRun", request.dryRun());
+        view.put("dlqDepthAtStart", dlqDepthAtStart);
+        if (toScan < dlqDepthAtStart) {
+            // a dry run of a deep DLQ: the counts cover only the first toScan messages
+            view.put("scanLimit", toScan);
+        }
+        view.put("scanned", scanned);
+        view.put("matched", matched);
+        if (!request.dryRun()) {
+            view.put("redriven", redriven);
+            // non-matching messages moved to the back of the DLQ
+            view.put("rotated", rotated);
+            view.put("unroutable", unroutable);
+        }
+        view.put("byReason", new LinkedHashMap<>(byReason));
+        view.put("byOriginalQueue", new LinkedHashMap<>(byQueue));
+        view.put("sampleMessageIds", List.copyOf(samples));
+        view.put("startedAt", startedAt.toString());
+        if (finishedAt != null) {
+            view.put("finishedAt", finishedAt.toString());
+        }
+        if (error != null) {
+            view.put("error", error);
+        }
+        return view;
+    }
+}
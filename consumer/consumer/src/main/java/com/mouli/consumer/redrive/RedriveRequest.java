@@ -0,0 +1,47 @@
+package com.mouli.consumer.redrive;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Body of POST /dlq/redrive. Every filter is optional; a message is redriven when it matches all that are set.
+ *
+ * reason            substring of x-error-reason (or the x-death reason), case-insensitive
+ * messageIdPattern  regex that must match the whole messageId
+ * minAgeSeconds / maxAgeSeconds  time since the message was dead-lettered
+ * limit             stop after this many matches
+ * ratePerSecond     publish rate cap; defaults to consumer.redrive.rate-per-second
+ * dryRun            only count (grouped by reason and original queue); the DLQ is left untouched
+ */
+public record RedriveRequest(String reason,
+                             String messageIdPattern,
+                             Long minAgeSeconds,
+                             Long maxAgeSeconds,
+                             Long limit,
+                             Integer ratePerSecond,
+                             boolean dryRun) {
+
+    Matcher matcher() {
+        Pattern idPattern = messageIdPattern == null || messageIdPattern.isBlank()
+                ? null : Pattern.compile(messageIdPattern);
+        String reasonPart = reason == null || reason.isBlank() ? null : reason.toLowerCase(Locale.ROOT);
+        return (messageReason, messageId, ageSeconds) -> {
+            if (reasonPart != null
+                    && (messageReason == null || !messageReason.toLowerCase(Locale.ROOT).contains(reasonPart))) {
+                return false;
+            }
+            if (idPattern != null && (messageId == null || !idPattern.matcher(messageId).matches())) {
+                return false;
+            }
+            if (minAgeSeconds != null && (ageSeconds == null || ageSeconds < minAgeSeconds)) {
+                return false;
+            }
+            return maxAgeSeconds == null || ageSeconds != null && ageSeconds <= maxAgeSeconds;
+        };
+    }
+
+    /** ageSeconds is null when the message does not say when it was dead-lettered. */
+    interface Matcher {
+        boolean matches(String reason, String messageId, Long ageSeconds);
+    }
+}
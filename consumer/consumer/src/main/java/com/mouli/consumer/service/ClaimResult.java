@@ -0,0 +1,21 @@
+package com.mouli.consumer.service;
+
+/**
+ * Outcome of a single-round-trip claim attempt.
+ * The token is only present when the key was FREE and is now held by the caller.
+ */
+public record ClaimResult(Status status, String token) {
+
+    public enum Status {
+        /** Key was absent; the caller now holds the claim. */
+        FREE,
+        /** Another consumer holds a live claim (lease). */
+        CLAIMED,
+        /** Message was already processed. */
+        PROCESSED
+    }
+
+    public boolean acquired() {
+        return status == Status.FREE;
+    }
+}
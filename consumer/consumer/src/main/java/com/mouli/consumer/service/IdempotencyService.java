@@ -1,30 +1,88 @@
 package com.mouli.consumer.service;
 
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import com.mouli.consumer.cache.ProcessedNearCache;
+import com.mouli.consumer.store.IdempotencyStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
+/**
+ * Claim / mark / release on top of the configured {@link IdempotencyStore} (consumer.idempotency.store),
+ * with the near-cache in front of it for ids already known to be PROCESSED.
+ * Claims are leases kept alive by the {@link LeaseKeeper} until they are marked or released.
+ */
 @Service
 public class IdempotencyService {
-    private static final String PREFIX = "processed:";
-    private static final Duration CLAIM_EXPIRY = Duration.ofMinutes(5);
-    private static final String RELEASE_SCRIPT =
-            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
-                    "  return redis.call('del', KEYS[1]) " +
-                    "else " +
-                    "  return 0 " +
-                    "end";
-
-    private final StringRedisTemplate redis;
-    private final DefaultRedisScript<Long> releaseScript;
-
-    public IdempotencyService(StringRedisTemplate redis) {
-        this.redis = redis;
-        this.releaseScript = new DefaultRedisScript<>(RELEASE_SCRIPT, Long.class);
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+    private final IdempotencyStore store;
+    private final ProcessedNearCache nearCache;
+    private final LeaseKeeper leases;
+    private final Counter fenced;
+
+    public IdempotencyService(IdempotencyStore store, ProcessedNearCache nearCache, LeaseKeeper leases,
+                              MeterRegistry registry) {
+        this.store = store;
+        this.nearCache = nearCache;
+        this.leases = leases;
+        this.fenced = registry.counter("consumer.lease.fenced");
+    }
+
+    /** Length of a claim lease; a dead consumer's claims are free again at most this long after it stopped renewing. */
+    public Duration lease() {
+        return leases.lease();
+    }
+
+    /**
+     * Claim the message and learn its current state in a single store operation.
+     * FREE means we now hold the claim (token set); CLAIMED / PROCESSED carry no token.
+     */
+    public ClaimResult claim(String messageId) {
+        if (nearCache.isProcessed(messageId)) {
+            return new ClaimResult(ClaimResult.Status.PROCESSED, null);
+        }
+        String token = UUID.randomUUID().toString();
+        return toResult(messageId, store.claim(messageId, token, leases.lease()), token);
+    }
+
+    /**
+     * Batched {@link #claim(String)}: ids answered by the near-cache are skipped, the rest go to the
+     * store in one call. Results are in the same order as the given ids.
+     */
+    public List<ClaimResult> claimAll(List<String> messageIds) {
+        ClaimResult[] results = new ClaimResult[messageIds.size()];
+        List<Integer> pending = new ArrayList<>(messageIds.size());
+        for (int i = 0; i < messageIds.size(); i++) {
+            if (nearCache.isProcessed(messageIds.get(i))) {
+                results[i] = new ClaimResult(ClaimResult.Status.PROCESSED, null);
+            } else {
+                pending.add(i);
+            }
+        }
+        if (pending.isEmpty()) return Arrays.asList(results);
+
+        List<String> ids = new ArrayList<>(pending.size());
+        List<String> tokens = new ArrayList<>(pending.size());
+        for (int i : pending) {
+            ids.add(messageIds.get(i));
+            tokens.add(UUID.randomUUID().toString());
+        }
+        List<ClaimResult.Status> statuses = store.claimAll(ids, tokens, leases.lease());
+
+        for (int p = 0; p < pending.size(); p++) {
+            results[pending.get(p)] = toResult(ids.get(p), statuses.get(p), tokens.get(p));
+        }
+        return Arrays.asList(results);
     }
 
     /**
@@ -32,10 +90,7 @@ public class IdempotencyService {
      * Returns a claim token (non-null) if we successfully claimed; null otherwise.
      */
     public String claimProcessing(String messageId) {
-        String key = PREFIX + messageId;
-        String token = UUID.randomUUID().toString();
-        Boolean ok = redis.opsForValue().setIfAbsent(key, token, CLAIM_EXPIRY);
-        return Boolean.TRUE.equals(ok) ? token : null;
+        return claim(messageId).token();
     }
 
     /**
@@ -43,27 +98,80 @@ public class IdempotencyService {
      * This makes the key present (value "PROCESSED") so duplicates are ignored.
      */
     public void markProcessed(String messageId) {
-        String key = PREFIX + messageId;
-        redis.opsForValue().set(key, "PROCESSED");
-        // optionally remove expiry by re-setting persist depending on Redis client; leaving as-is is fine
+        leases.drop(messageId);
+        store.markProcessed(messageId);
+        nearCache.markProcessed(messageId);
+    }
+
+    /**
+     * Batched {@link #markProcessed(String)}.
+     */
+    public void markAllProcessed(Collection<String> messageIds) {
+        if (messageIds.isEmpty()) return;
+        messageIds.forEach(leases::drop);
+        store.markAllProcessed(messageIds);
+        messageIds.forEach(nearCache::markProcessed);
+    }
+
+    /**
+     * Mark processed under our claim. Returns false when the lease had lapsed and another consumer took the id
+     * over; nothing is written then, and the new holder's outcome is the one that counts.
+     */
+    public boolean markProcessed(String messageId, String token) {
+        leases.drop(messageId, token);
+        boolean marked = store.markProcessed(messageId, token);
+        afterMark(messageId, marked);
+        return marked;
+    }
+
+    /**
+     * Batched {@link #markProcessed(String, String)}; results in the same order.
+     */
+    public List<Boolean> markAllProcessed(List<String> messageIds, List<String> tokens) {
+        if (messageIds.isEmpty()) return List.of();
+        for (int i = 0; i < messageIds.size(); i++) {
+            leases.drop(messageIds.get(i), tokens.get(i));
+        }
+        List<Boolean> marked = store.markAllProcessed(messageIds, tokens);
+        for (int i = 0; i < messageIds.size(); i++) {
+            afterMark(messageIds.get(i), marked.get(i));
+        }
+        return marked;
     }
 
     /**
      * Release a claim only if the token matches (safe delete).
-     * Returns true if the key was deleted.
+     * Returns true if the claim was removed.
      */
     public boolean releaseClaim(String messageId, String token) {
         if (token == null) return false;
-        String key = PREFIX + messageId;
-        Long res = redis.execute(releaseScript, Collections.singletonList(key), token);
-        return res != null && res > 0;
+        leases.drop(messageId, token);
+        return store.release(messageId, token);
     }
 
     /**
      * Check whether the message is already processed (exists in state store).
      */
     public boolean isProcessed(String messageId) {
-        String key = PREFIX + messageId;
-        return Boolean.TRUE.equals(redis.hasKey(key) && "PROCESSED".equals(redis.opsForValue().get(key)));
+        if (nearCache.isProcessed(messageId)) return true;
+        boolean processed = store.isProcessed(messageId);
+        if (processed) nearCache.markProcessed(messageId);
+        return processed;
+    }
+
+    private void afterMark(String messageId, boolean marked) {
+        if (marked) {
+            nearCache.markProcessed(messageId);
+        } else {
+            fenced.increment();
+            log.warn("[LEASE_FENCED] messageId={} was claimed by another consumer; not marked", messageId);
+        }
+    }
+
+    private ClaimResult toResult(String messageId, ClaimResult.Status status, String token) {
+        // PROCESSED is terminal, so remembering it locally is safe across instances
+        if (status == ClaimResult.Status.PROCESSED) nearCache.markProcessed(messageId);
+        if (status == ClaimResult.Status.FREE) leases.hold(messageId, token);
+        return new ClaimResult(status, status == ClaimResult.Status.FREE ? token : null);
     }
 }
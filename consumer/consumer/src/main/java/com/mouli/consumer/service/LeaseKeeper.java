@@ -0,0 +1,114 @@
+package com.mouli.consumer.service;
+
+import com.mouli.consumer.store.IdempotencyStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps this instance's claims alive while their messages are being processed.
+ *
+ * Claims are leases of consumer.idempotency.lease-ms, short enough that a crashed consumer's claims lapse within
+ * seconds and the broker's redelivery can be processed elsewhere. A heartbeat renews every held lease each
+ * renew-interval-ms (a third of the lease by default) in one batched store call. A lease that cannot be renewed
+ * was taken over (or released) and is dropped; the fenced mark then keeps this instance from marking the id.
+ * If the store is unreachable the leases are kept and retried on the next beat; they lapse if it stays down.
+ */
+@Component
+public class LeaseKeeper {
+
+    private static final Logger log = LoggerFactory.getLogger(LeaseKeeper.class);
+
+    private final IdempotencyStore store;
+    private final Duration lease;
+    private final long renewIntervalMs;
+    // messageId -> claim token
+    private final Map<String, String> held = new ConcurrentHashMap<>();
+    private final Counter renewed;
+    private final Counter lost;
+    private final Counter failed;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("lease-keeper").daemon().factory());
+
+    public LeaseKeeper(IdempotencyStore store,
+                       MeterRegistry registry,
+                       @Value("${consumer.idempotency.lease-ms:5000}") long leaseMs,
+                       @Value("${consumer.idempotency.renew-interval-ms:0}") long renewIntervalMs) {
+        this.store = store;
+        this.lease = Duration.ofMillis(leaseMs);
+        this.renewIntervalMs = renewIntervalMs > 0 ? renewIntervalMs : Math.max(1, leaseMs / 3);
+        this.renewed = registry.counter("consumer.lease.renewals", "result", "renewed");
+        this.lost = registry.counter("consumer.lease.renewals", "result", "lost");
+        this.failed = registry.counter("consumer.lease.renewals", "result", "error");
+        registry.gauge("consumer.lease.held", held, Map::size);
+    }
+
+    public Duration lease() {
+        return lease;
+    }
+
+    void hold(String messageId, String token) {
+        held.put(messageId, token);
+    }
+
+    void drop(String messageId, String token) {
+        held.remove(messageId, token);
+    }
+
+    // unfenced mark: whatever claim we held on the id is gone
+    void drop(String messageId) {
+        held.remove(messageId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.scheduleWithFixedDelay(this::renew, renewIntervalMs, renewIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    void renew() {
+        if (held.isEmpty()) return;
+        List<String> ids = new ArrayList<>(held.size());
+        List<String> tokens = new ArrayList<>(held.size());
+        held.forEach((id, token) -> {
+            ids.add(id);
+            tokens.add(token);
+        });
+        List<Boolean> results;
+        try {
+            results = store.renewAll(ids, tokens, lease);
+        } catch (RuntimeException ex) {
+            failed.increment(ids.size());
+            log.warn("[LEASE_RENEW_FAILED] leases={} {}", ids.size(), ex.getMessage());
+            return;
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            if (results.get(i)) {
+                renewed.increment();
+            } else if (held.remove(ids.get(i), tokens.get(i))) {
+                // not removed means it finished (marked or released) while we were renewing
+                lost.increment();
+                log.warn("[LEASE_LOST] messageId={}", ids.get(i));
+            }
+        }
+    }
+}
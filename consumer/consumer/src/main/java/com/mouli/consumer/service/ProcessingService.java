@@ -1,33 +1,42 @@
 package com.mouli.consumer.service;
 
 import com.mouli.consumer.dto.CommandMessage;
-import com.mouli.consumer.exception.SimulatedProcessingException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.mouli.consumer.exception.TransientProcessingException;
+import com.mouli.consumer.handler.HandlerRegistry;
+import com.mouli.consumer.metrics.ConsumerMetrics;
 import org.springframework.stereotype.Service;
 
-import java.util.Random;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Runs a command through the handler registered for its type, inside that type's bulkhead.
+ * Throws {@link com.mouli.consumer.exception.TransientProcessingException} when the command should be retried.
+ * The PROCESS stage is timed here for every outcome, so failed and timed-out work shows up in its latency.
+ */
 @Service
 public class ProcessingService {
 
-    private static final Logger log =
-            LoggerFactory.getLogger(ProcessingService.class);
+    private final HandlerRegistry handlers;
+    private final ConsumerMetrics metrics;
 
-    private final Random random = new Random();
+    public ProcessingService(HandlerRegistry handlers, ConsumerMetrics metrics) {
+        this.handlers = handlers;
+        this.metrics = metrics;
+    }
 
     public void process(CommandMessage message) {
-
-        // 30% intentional failure
-        if (random.nextInt(100) < 30) {
-            log.warn("[SIMULATED_FAILURE] messageId={}",
-                    message.getMessageId());
-            throw new SimulatedProcessingException(
-                    message.getMessageId());
+        long start = System.nanoTime();
+        ConsumerMetrics.StageOutcome outcome = ConsumerMetrics.StageOutcome.FAILURE;
+        try {
+            handlers.dispatch(message);
+            outcome = ConsumerMetrics.StageOutcome.SUCCESS;
+        } catch (TransientProcessingException ex) {
+            if (ex.getCause() instanceof TimeoutException) {
+                outcome = ConsumerMetrics.StageOutcome.TIMEOUT;
+            }
+            throw ex;
+        } finally {
+            metrics.recordStage(ConsumerMetrics.Stage.PROCESS, start, outcome);
         }
-
-        log.info("[PROCESSING] messageId={} payload={}",
-                message.getMessageId(),
-                message.getPayload());
     }
 }
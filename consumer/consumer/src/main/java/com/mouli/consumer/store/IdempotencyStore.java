@@ -0,0 +1,72 @@
+package com.mouli.consumer.store;
+
+import com.mouli.consumer.service.ClaimResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Backend for {@link com.mouli.consumer.service.IdempotencyService}, selected with consumer.idempotency.store.
+ *
+ * Per messageId the store holds nothing, a claim (token + expiry) or the terminal PROCESSED marker.
+ * claim must be atomic: of two concurrent claims for a free id exactly one sees FREE.
+ * An expired claim counts as free again, so a consumer that died mid-processing does not block the id forever.
+ * Claims are short leases that the holder keeps alive with {@link #renew}; the claim token doubles as the
+ * fencing token, so a holder whose lease lapsed and was taken over can no longer renew it or mark the id.
+ */
+public interface IdempotencyStore {
+
+    /** Claim the id with the given token unless it is claimed or processed; returns the state found. */
+    ClaimResult.Status claim(String messageId, String token, Duration expiry);
+
+    /** {@link #claim} for a batch; results in the same order. Stores with round trips should batch them. */
+    default List<ClaimResult.Status> claimAll(List<String> messageIds, List<String> tokens, Duration expiry) {
+        List<ClaimResult.Status> statuses = new ArrayList<>(messageIds.size());
+        for (int i = 0; i < messageIds.size(); i++) {
+            statuses.add(claim(messageIds.get(i), tokens.get(i), expiry));
+        }
+        return statuses;
+    }
+
+    /** Extend the claim to expire lease from now, only if it is still held with this token. */
+    boolean renew(String messageId, String token, Duration lease);
+
+    /** {@link #renew} for a batch; results in the same order. */
+    default List<Boolean> renewAll(List<String> messageIds, List<String> tokens, Duration lease) {
+        List<Boolean> renewed = new ArrayList<>(messageIds.size());
+        for (int i = 0; i < messageIds.size(); i++) {
+            renewed.add(renew(messageIds.get(i), tokens.get(i), lease));
+        }
+        return renewed;
+    }
+
+    /** Set the terminal PROCESSED marker, replacing any claim. */
+    void markProcessed(String messageId);
+
+    default void markAllProcessed(Collection<String> messageIds) {
+        messageIds.forEach(this::markProcessed);
+    }
+
+    /**
+     * Fenced {@link #markProcessed(String)}: writes nothing and returns false when a live claim with a different
+     * token holds the id (our lease lapsed and another consumer took over). A lapsed claim nobody took over
+     * does not fence.
+     */
+    boolean markProcessed(String messageId, String token);
+
+    /** {@link #markProcessed(String, String)} for a batch; results in the same order. */
+    default List<Boolean> markAllProcessed(List<String> messageIds, List<String> tokens) {
+        List<Boolean> marked = new ArrayList<>(messageIds.size());
+        for (int i = 0; i < messageIds.size(); i++) {
+            marked.add(markProcessed(messageIds.get(i), tokens.get(i)));
+        }
+        return marked;
+    }
+
+    /** Drop the claim only if it is still held with this token. */
+    boolean release(String messageId, String token);
+
+    boolean isProcessed(String messageId);
+}
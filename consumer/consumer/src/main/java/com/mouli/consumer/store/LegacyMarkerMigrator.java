@@ -0,0 +1,167 @@
+package com.mouli.consumer.store;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Online migration from the old marker layout (processed:&lt;id&gt; = "PROCESSED" with no TTL).
+ *
+ * Reads keep honouring those keys, so nothing has to be moved: each pass SCANs string keys under
+ * processed:* and gives every legacy marker an expiry of dedup-horizon, after which it ages out like a
+ * bucketed marker would. Passes repeat every interval-minutes so keys written by not-yet-upgraded consumers
+ * during a rolling deploy are caught. An empty pass only ends the migration once grace-minutes have passed
+ * since this instance started, which should outlast the rollout; until then an old consumer may still write
+ * legacy markers after a pass found none. Throttled to keys-per-second so the scan does not compete with
+ * the listeners.
+ *
+ * Each pass covers every node of {@link RedisNodes} and the legacy node: the legacy markers sit wherever the
+ * single connection pointed before nodes were configured, not on the node their id hashes to now.
+ */
+@Component
+@ConditionalOnProperty(name = "consumer.idempotency.store", havingValue = "redis", matchIfMissing = true)
+public class LegacyMarkerMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(LegacyMarkerMigrator.class);
+
+    // KEYS[1] = legacy key; ARGV[1] = expiry (s). Claim tokens and already-expiring keys are left alone.
+    private static final byte[] EXPIRE_LEGACY_SCRIPT = (
+            "if redis.call('ttl', KEYS[1]) == -1 and redis.call('get', KEYS[1]) == 'PROCESSED' then " +
+                    "  return redis.call('expire', KEYS[1], ARGV[1]) " +
+                    "end " +
+                    "return 0").getBytes(StandardCharsets.UTF_8);
+
+    private final RedisNodes nodes;
+    private final boolean enabled;
+    private final long horizonSeconds;
+    private final int batchSize;
+    private final int keysPerSecond;
+    private final long intervalMinutes;
+    private final long graceNanos;
+    private final long startedAt = System.nanoTime();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("legacy-marker-migrator").daemon().factory());
+
+    public LegacyMarkerMigrator(
+            RedisNodes nodes,
+            @Value("${consumer.idempotency.redis.migration.enabled:true}") boolean enabled,
+            @Value("${consumer.idempotency.redis.dedup-horizon-seconds:86400}") long horizonSeconds,
+            @Value("${consumer.idempotency.redis.migration.batch-size:500}") int batchSize,
+            @Value("${consumer.idempotency.redis.migration.keys-per-second:5000}") int keysPerSecond,
+            @Value("${consumer.idempotency.redis.migration.interval-minutes:60}") long intervalMinutes,
+            @Value("${consumer.idempotency.redis.migration.grace-minutes:1440}") long graceMinutes) {
+        this.nodes = nodes;
+        this.enabled = enabled;
+        this.horizonSeconds = horizonSeconds;
+        this.batchSize = batchSize;
+        this.keysPerSecond = keysPerSecond;
+        this.intervalMinutes = intervalMinutes;
+        this.graceNanos = TimeUnit.MINUTES.toNanos(graceMinutes);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            executor.scheduleWithFixedDelay(this::runPass, 0, intervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private void runPass() {
+        try {
+            long migrated = pass();
+            if (migrated == 0 && System.nanoTime() - startedAt >= graceNanos) {
+                log.info("[LEGACY_MARKER_MIGRATION_COMPLETE] no legacy markers left after the grace period");
+                executor.shutdown();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            // Redis unavailable or SCAN TYPE unsupported; try again next interval
+            log.warn("[LEGACY_MARKER_MIGRATION_FAILED] {}", ex.getMessage());
+        }
+    }
+
+    long pass() throws InterruptedException {
+        List<StringRedisTemplate> targets = new ArrayList<>(nodes.all());
+        if (nodes.legacyNode() != null) targets.add(nodes.legacyNode());
+        long migrated = 0;
+        for (StringRedisTemplate redis : targets) {
+            migrated += pass(redis);
+        }
+        return migrated;
+    }
+
+    private long pass(StringRedisTemplate redis) throws InterruptedException {
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(RedisIdempotencyStore.PREFIX + "*")
+                .type(DataType.STRING)
+                .count(batchSize)
+                .build();
+        long scanned = 0;
+        long migrated = 0;
+        long start = System.nanoTime();
+        try (Cursor<String> cursor = redis.scan(options)) {
+            List<String> batch = new ArrayList<>(batchSize);
+            while (cursor.hasNext()) {
+                String key = cursor.next();
+                // only strings are requested, but bucket hashes share the prefix
+                if (!key.startsWith(RedisIdempotencyStore.BUCKET_PREFIX)) batch.add(key);
+                if (batch.size() == batchSize || (!cursor.hasNext() && !batch.isEmpty())) {
+                    migrated += expire(redis, batch);
+                    scanned += batch.size();
+                    batch.clear();
+                    throttle(scanned, start);
+                }
+            }
+        }
+        log.info("[LEGACY_MARKER_MIGRATION_PASS] scanned={} migrated={}", scanned, migrated);
+        return migrated;
+    }
+
+    private long expire(StringRedisTemplate redis, List<String> keys) {
+        byte[] ttl = String.valueOf(horizonSeconds).getBytes(StandardCharsets.UTF_8);
+        List<Object> results = redis.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.scriptingCommands().eval(EXPIRE_LEGACY_SCRIPT, ReturnType.INTEGER, 1,
+                        key.getBytes(StandardCharsets.UTF_8), ttl);
+            }
+            return null;
+        });
+        long migrated = 0;
+        for (Object result : results) {
+            if (result instanceof Long n) migrated += n;
+        }
+        return migrated;
+    }
+
+    private void throttle(long scanned, long startNanos) throws InterruptedException {
+        long dueMillis = scanned * 1000 / keysPerSecond;
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (dueMillis > elapsedMillis) {
+            Thread.sleep(dueMillis - elapsedMillis);
+        }
+    }
+}
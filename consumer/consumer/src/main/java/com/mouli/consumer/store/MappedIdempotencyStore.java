@@ -0,0 +1,379 @@
+package com.mouli.consumer.store;
+
+import com.mouli.consumer.service.ClaimResult;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Embedded store for single-node / edge deployments: an open-addressing hash table (linear probing)
+ * in a memory-mapped file, so state lives off-heap and survives restarts without a network hop.
+ *
+ * Slots are 32 bytes: two independent 64-bit fingerprints of the messageId (the 128-bit pair stands
+ * in for the key), a state word and a hash of the claim token.
+ * State: &gt; 0 claim expiry (epoch ms), &lt; 0 PROCESSED at -state (epoch ms), Long.MIN_VALUE released.
+ * A slot becomes visible when its first fingerprint is written, which happens last.
+ *
+ * PROCESSED markers are remembered for dedup-horizon-seconds (by default the same horizon as the Redis store);
+ * an older marker reads as absent, like a Redis bucket that has expired.
+ *
+ * Once occupied slots pass max-load the table is rewritten to a new file and renamed over the old
+ * one, dropping released, expired and past-horizon entries; it doubles unless that alone frees enough room. Writes go to the page cache,
+ * so a killed process loses nothing; an OS crash can lose the last unflushed pages, which at worst
+ * means reprocessing those messages, same as any at-least-once redelivery.
+ *
+ * Only one consumer process may open a given file.
+ */
+@Component
+@ConditionalOnProperty(name = "consumer.idempotency.store", havingValue = "local")
+public class MappedIdempotencyStore implements IdempotencyStore, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedIdempotencyStore.class);
+
+    private static final long MAGIC = 0x4944454d504f5431L; // "IDEMPOT1"
+    private static final int VERSION = 1;
+    private static final int HEADER = 64;
+    private static final int SLOT = 32;
+    private static final int H_MAGIC = 0, H_VERSION = 8, H_CAPACITY = 16, H_USED = 24;
+    private static final int FP1 = 0, FP2 = 8, STATE = 16, TOKEN = 24;
+    private static final long RELEASED = Long.MIN_VALUE;
+    private static final long MAX_CAPACITY = Integer.highestOneBit((Integer.MAX_VALUE - HEADER) / SLOT);
+
+    private final Path path;
+    private final double maxLoad;
+    private final long horizonMs;
+    private final Clock clock;
+    // critical sections are a few memory accesses; a j.u.c lock keeps virtual listener threads unpinned
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel channel;
+    private MappedByteBuffer table;
+    private int capacity;
+    private int used;
+
+    @Autowired
+    public MappedIdempotencyStore(
+            @Value("${consumer.idempotency.local.path:data/idempotency.dat}") String path,
+            @Value("${consumer.idempotency.local.initial-capacity:1048576}") int initialCapacity,
+            @Value("${consumer.idempotency.local.max-load:0.7}") double maxLoad,
+            @Value("${consumer.idempotency.local.dedup-horizon-seconds:${consumer.idempotency.redis.dedup-horizon-seconds:86400}}")
+            long horizonSeconds,
+            MeterRegistry registry) throws IOException {
+        this(path, initialCapacity, maxLoad, horizonSeconds, registry, Clock.systemUTC());
+    }
+
+    MappedIdempotencyStore(String path, int initialCapacity, double maxLoad, long horizonSeconds,
+                           MeterRegistry registry, Clock clock) throws IOException {
+        this.path = Path.of(path);
+        // probing relies on at least one empty slot
+        this.maxLoad = Math.min(0.9, maxLoad);
+        this.horizonMs = Duration.ofSeconds(horizonSeconds).toMillis();
+        this.clock = clock;
+        open(Math.max(1024, Integer.highestOneBit(Math.max(1, initialCapacity - 1)) << 1));
+
+        Gauge.builder("idempotency.local.slots", this, s -> s.used).tag("state", "used").register(registry);
+        Gauge.builder("idempotency.local.slots", this, s -> s.capacity).tag("state", "capacity").register(registry);
+    }
+
+    @Override
+    public ClaimResult.Status claim(String messageId, String token, Duration expiry) {
+        long fp1 = fingerprint1(messageId), fp2 = fingerprint2(messageId);
+        long now = clock.millis();
+        lock.lock();
+        try {
+            int slot = find(fp1, fp2);
+            if (slot >= 0) {
+                long state = table.getLong(slot + STATE);
+                if (isProcessed(state, now)) return ClaimResult.Status.PROCESSED;
+                if (state > now) return ClaimResult.Status.CLAIMED;
+                // released or expired claim, or a marker past the horizon: take it over in place
+                table.putLong(slot + TOKEN, fingerprint1(token));
+                table.putLong(slot + STATE, now + expiry.toMillis());
+                return ClaimResult.Status.FREE;
+            }
+            insert(fp1, fp2, now + expiry.toMillis(), fingerprint1(token));
+            return ClaimResult.Status.FREE;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void markProcessed(String messageId) {
+        long fp1 = fingerprint1(messageId), fp2 = fingerprint2(messageId);
+        long processed = -clock.millis();
+        lock.lock();
+        try {
+            int slot = find(fp1, fp2);
+            if (slot >= 0) {
+                table.putLong(slot + STATE, processed);
+            } else {
+                insert(fp1, fp2, processed, 0);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean markProcessed(String messageId, String token) {
+        long fp1 = fingerprint1(messageId), fp2 = fingerprint2(messageId);
+        long now = clock.millis();
+        lock.lock();
+        try {
+            int slot = find(fp1, fp2);
+            if (slot < 0) {
+                insert(fp1, fp2, -now, 0);
+                return true;
+            }
+            if (table.getLong(slot + STATE) > now && table.getLong(slot + TOKEN) != fingerprint1(token)) {
+                return false;
+            }
+            table.putLong(slot + STATE, -now);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean renew(String messageId, String token, Duration lease) {
+        long fp1 = fingerprint1(messageId), fp2 = fingerprint2(messageId);
+        long now = clock.millis();
+        lock.lock();
+        try {
+            int slot = find(fp1, fp2);
+            // like a Redis key past its PX, a lapsed claim cannot be renewed
+            if (slot < 0 || table.getLong(slot + STATE) <= now || table.getLong(slot + TOKEN) != fingerprint1(token)) {
+                return false;
+            }
+            table.putLong(slot + STATE, now + lease.toMillis());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean release(String messageId, String token) {
+        long fp1 = fingerprint1(messageId), fp2 = fingerprint2(messageId);
+        lock.lock();
+        try {
+            int slot = find(fp1, fp2);
+            if (slot < 0 || table.getLong(slot + STATE) <= 0 || table.getLong(slot + TOKEN) != fingerprint1(token)) {
+                return false;
+            }
+            table.putLong(slot + STATE, RELEASED);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isProcessed(String messageId) {
+        long fp1 = fingerprint1(messageId), fp2 = fingerprint2(messageId);
+        lock.lock();
+        try {
+            int slot = find(fp1, fp2);
+            return slot >= 0 && isProcessed(table.getLong(slot + STATE), clock.millis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            table.force();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // --- table ---
+
+    // byte offset of the slot holding this key, or -1
+    private int find(long fp1, long fp2) {
+        int mask = capacity - 1;
+        for (int i = (int) (fp1 & mask); ; i = (i + 1) & mask) {
+            int slot = offset(i);
+            long slotFp1 = table.getLong(slot + FP1);
+            if (slotFp1 == 0) return -1;
+            if (slotFp1 == fp1 && table.getLong(slot + FP2) == fp2) return slot;
+        }
+    }
+
+    private void insert(long fp1, long fp2, long state, long token) {
+        if (used + 1 > capacity * maxLoad) {
+            // mostly released / expired slots: compact in place instead of growing
+            resize(liveEntries(clock.millis()) + 1 > capacity * maxLoad / 2 ? capacity * 2L : capacity);
+        }
+        int slot = emptySlot(table, capacity, fp1);
+        table.putLong(slot + STATE, state);
+        table.putLong(slot + TOKEN, token);
+        table.putLong(slot + FP2, fp2);
+        table.putLong(slot + FP1, fp1);
+        used++;
+        table.putInt(H_USED, used);
+    }
+
+    private static int emptySlot(MappedByteBuffer table, int capacity, long fp1) {
+        int mask = capacity - 1;
+        for (int i = (int) (fp1 & mask); ; i = (i + 1) & mask) {
+            if (table.getLong(offset(i) + FP1) == 0) return offset(i);
+        }
+    }
+
+    private int liveEntries(long now) {
+        int live = 0;
+        for (int i = 0; i < capacity; i++) {
+            int slot = offset(i);
+            if (table.getLong(slot + FP1) != 0 && isLive(table.getLong(slot + STATE), now)) live++;
+        }
+        return live;
+    }
+
+    private boolean isLive(long state, long now) {
+        return state > now || isProcessed(state, now);
+    }
+
+    // PROCESSED at -state, and still within the horizon
+    private boolean isProcessed(long state, long now) {
+        return state < 0 && state != RELEASED && -state > now - horizonMs;
+    }
+
+    // rewrite live entries into a table of newCapacity slots, then swap files
+    private void resize(long newCapacity) {
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Local idempotency store is full (" + capacity
+                    + " slots, all live within the dedup horizon)");
+        }
+        Path tmp = resizeFile();
+        long now = clock.millis();
+        FileChannel newChannel = null;
+        try {
+            newChannel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer newTable = map(newChannel, (int) newCapacity);
+            int live = 0;
+            for (int i = 0; i < capacity; i++) {
+                int slot = offset(i);
+                long fp1 = table.getLong(slot + FP1);
+                long state = table.getLong(slot + STATE);
+                if (fp1 == 0 || !isLive(state, now)) continue;
+                int target = emptySlot(newTable, (int) newCapacity, fp1);
+                newTable.putLong(target + STATE, state);
+                newTable.putLong(target + TOKEN, table.getLong(slot + TOKEN));
+                newTable.putLong(target + FP2, table.getLong(slot + FP2));
+                newTable.putLong(target + FP1, fp1);
+                live++;
+            }
+            newTable.putInt(H_USED, live);
+            newTable.force();
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            channel.close();
+            log.info("[IDEMPOTENCY_STORE_RESIZED] slots {} -> {}, live entries {}", capacity, newCapacity, live);
+            channel = newChannel;
+            table = newTable;
+            capacity = (int) newCapacity;
+            used = live;
+        } catch (IOException ex) {
+            try {
+                if (newChannel != null) newChannel.close();
+                Files.deleteIfExists(tmp);
+            } catch (IOException suppressed) {
+                ex.addSuppressed(suppressed);
+            }
+            throw new UncheckedIOException("Failed to resize " + path, ex);
+        }
+    }
+
+    private void open(int initialCapacity) throws IOException {
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        // a resize interrupted by a crash leaves the original file intact
+        Files.deleteIfExists(resizeFile());
+
+        boolean exists = Files.exists(path) && Files.size(path) >= HEADER;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (exists) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            if (header.getLong(H_MAGIC) != MAGIC || header.getInt(H_VERSION) != VERSION) {
+                throw new IllegalStateException(path + " is not an idempotency store (or has an unsupported version)");
+            }
+            capacity = (int) header.getLong(H_CAPACITY);
+            table = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity * SLOT);
+            used = table.getInt(H_USED);
+            log.info("[IDEMPOTENCY_STORE_OPENED] {} slots={} used={}", path, capacity, used);
+        } else {
+            capacity = initialCapacity;
+            table = map(channel, capacity);
+            used = 0;
+            log.info("[IDEMPOTENCY_STORE_CREATED] {} slots={}", path, capacity);
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, int capacity) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity * SLOT);
+        buffer.putLong(H_MAGIC, MAGIC);
+        buffer.putInt(H_VERSION, VERSION);
+        buffer.putLong(H_CAPACITY, capacity);
+        buffer.putInt(H_USED, 0);
+        return buffer;
+    }
+
+    private Path resizeFile() {
+        return path.resolveSibling(path.getFileName() + ".resize");
+    }
+
+    private static int offset(int index) {
+        return HEADER + index * SLOT;
+    }
+
+    // FNV-1a over the UTF-16 code units, finalised with the murmur3 mixer; never 0 (0 marks an empty slot)
+    private static long fingerprint1(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h = mix64(h);
+        return h == 0 ? 1 : h;
+    }
+
+    // independent second hash (multiply-rotate with a different seed) so the pair acts as a 128-bit key
+    private static long fingerprint2(String s) {
+        long h = 0x9e3779b97f4a7c15L ^ s.length();
+        for (int i = 0; i < s.length(); i++) {
+            h = Long.rotateLeft(h ^ s.charAt(i), 23) * 0xc2b2ae3d27d4eb4fL;
+        }
+        return mix64(h);
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -0,0 +1,327 @@
+package com.mouli.consumer.store;
+
+import com.mouli.consumer.service.ClaimResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shared store for any number of consumer instances.
+ *
+ * Claims are short-lived string keys, processed:&lt;messageId&gt; = token (PX lease), extended by renew
+ * and checked against the token when marking.
+ * PROCESSED markers are fields in time-bucketed, hash-sharded hashes,
+ * processed:bucket:&lt;bucket&gt;:&lt;shard&gt;, with buckets as wide as the dedup horizon. A bucket expires as a
+ * whole at the end of the bucket after it, so a marker is remembered for at least the horizon (one written as its
+ * bucket ends) and at most twice the horizon. Small hashes stay listpack-encoded, so a marker costs little more than its id instead of a full key,
+ * and memory is bounded by traffic within the horizon rather than all-time traffic.
+ *
+ * Lookups check the claim key plus the current and the previous bucket, the only two that can still exist,
+ * in one script call: a fixed three keys per id whatever the horizon. Legacy markers (processed:&lt;id&gt; = "PROCESSED", no TTL) are still honoured;
+ * {@link LegacyMarkerMigrator} gives them an expiry so they age out.
+ *
+ * All keys of one messageId live on the same node of {@link RedisNodes}, and the shard is taken from the same
+ * 64-bit hash that picks the node; batches send one pipeline per node. While {@link RedisNodes#legacyNode()} is
+ * set, an id found free on its node is also looked up there, and a legacy marker found is copied into the id's
+ * bucket so the next lookup stays on one node.
+ */
+@Component
+@ConditionalOnProperty(name = "consumer.idempotency.store", havingValue = "redis", matchIfMissing = true)
+public class RedisIdempotencyStore implements IdempotencyStore {
+
+    static final String PREFIX = "processed:";
+    static final String BUCKET_PREFIX = "processed:bucket:";
+    static final String PROCESSED = "PROCESSED";
+    private static final String RELEASE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "  return redis.call('del', KEYS[1]) " +
+                    "else " +
+                    "  return 0 " +
+                    "end";
+    // KEYS[1] = claim key, KEYS[2..3] = current and previous bucket; ARGV[1] = token, ARGV[2] = claim expiry (ms), ARGV[3] = messageId
+    private static final String CLAIM_SCRIPT =
+            "for i = 2, #KEYS do " +
+                    "  if redis.call('hexists', KEYS[i], ARGV[3]) == 1 then return 'PROCESSED' end " +
+                    "end " +
+                    "local v = redis.call('get', KEYS[1]) " +
+                    "if not v then " +
+                    "  redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2]) " +
+                    "  return 'FREE' " +
+                    "elseif v == 'PROCESSED' then " +
+                    "  return 'PROCESSED' " +
+                    "else " +
+                    "  return 'CLAIMED' " +
+                    "end";
+    // KEYS[1] = claim key; ARGV[1] = token, ARGV[2] = lease (ms)
+    private static final String RENEW_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "  return redis.call('pexpire', KEYS[1], ARGV[2]) " +
+                    "else " +
+                    "  return 0 " +
+                    "end";
+    // KEYS[1] = claim key, KEYS[2] = current bucket; ARGV[1] = messageId, ARGV[2] = bucket expiry (epoch s),
+    // ARGV[3] = claim token (optional; when given, a claim held with another token fences the mark)
+    private static final String MARK_SCRIPT =
+            "local v = redis.call('get', KEYS[1]) " +
+                    "if ARGV[3] and v and v ~= 'PROCESSED' and v ~= ARGV[3] then return 0 end " +
+                    "redis.call('hset', KEYS[2], ARGV[1], '1') " +
+                    "redis.call('expireat', KEYS[2], ARGV[2]) " +
+                    "redis.call('del', KEYS[1]) " +
+                    "return 1";
+    // KEYS as for CLAIM_SCRIPT; ARGV[1] = messageId
+    private static final String IS_PROCESSED_SCRIPT =
+            "for i = 2, #KEYS do " +
+                    "  if redis.call('hexists', KEYS[i], ARGV[1]) == 1 then return 1 end " +
+                    "end " +
+                    "if redis.call('get', KEYS[1]) == 'PROCESSED' then return 1 end " +
+                    "return 0";
+    private static final byte[] CLAIM_SCRIPT_BYTES = CLAIM_SCRIPT.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MARK_SCRIPT_BYTES = MARK_SCRIPT.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RENEW_SCRIPT_BYTES = RENEW_SCRIPT.getBytes(StandardCharsets.UTF_8);
+
+    private final RedisNodes nodes;
+    private final long bucketSeconds;
+    private final int shards;
+    private final Clock clock;
+    private final DefaultRedisScript<Long> releaseScript;
+    private final DefaultRedisScript<String> claimScript;
+    private final DefaultRedisScript<Long> markScript;
+    private final DefaultRedisScript<Long> isProcessedScript;
+    private final DefaultRedisScript<Long> renewScript;
+
+    @Autowired
+    public RedisIdempotencyStore(
+            RedisNodes nodes,
+            @Value("${consumer.idempotency.redis.dedup-horizon-seconds:86400}") long horizonSeconds,
+            @Value("${consumer.idempotency.redis.shards:1024}") int shards) {
+        this(nodes, horizonSeconds, shards, Clock.systemUTC());
+    }
+
+    RedisIdempotencyStore(RedisNodes nodes, long horizonSeconds, int shards, Clock clock) {
+        this.nodes = nodes;
+        this.bucketSeconds = Math.max(1, horizonSeconds);
+        this.shards = shards;
+        this.clock = clock;
+        this.releaseScript = new DefaultRedisScript<>(RELEASE_SCRIPT, Long.class);
+        this.claimScript = new DefaultRedisScript<>(CLAIM_SCRIPT, String.class);
+        this.markScript = new DefaultRedisScript<>(MARK_SCRIPT, Long.class);
+        this.isProcessedScript = new DefaultRedisScript<>(IS_PROCESSED_SCRIPT, Long.class);
+        this.renewScript = new DefaultRedisScript<>(RENEW_SCRIPT, Long.class);
+    }
+
+    @Override
+    public ClaimResult.Status claim(String messageId, String token, Duration expiry) {
+        String status = nodes.nodeFor(messageId).execute(claimScript, lookupKeys(messageId, nowSeconds()),
+                token, String.valueOf(expiry.toMillis()), messageId);
+        ClaimResult.Status claimed = ClaimResult.Status.valueOf(status);
+        if (claimed == ClaimResult.Status.FREE && legacyProcessed(List.of(messageId)).get(0)) {
+            markProcessed(messageId, token);
+            return ClaimResult.Status.PROCESSED;
+        }
+        return claimed;
+    }
+
+    /**
+     * Pipelined: one network flush per node for the whole batch instead of one round trip per id.
+     */
+    @Override
+    public List<ClaimResult.Status> claimAll(List<String> messageIds, List<String> tokens, Duration expiry) {
+        byte[] expiryMs = bytes(String.valueOf(expiry.toMillis()));
+        long now = nowSeconds();
+        List<ClaimResult.Status> claimed = nodes.perNode(messageIds, (redis, at) -> {
+            List<Object> results = redis.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i : at) {
+                    List<String> keys = lookupKeys(messageIds.get(i), now);
+                    byte[][] keysAndArgs = new byte[keys.size() + 3][];
+                    for (int k = 0; k < keys.size(); k++) {
+                        keysAndArgs[k] = bytes(keys.get(k));
+                    }
+                    keysAndArgs[keys.size()] = bytes(tokens.get(i));
+                    keysAndArgs[keys.size() + 1] = expiryMs;
+                    keysAndArgs[keys.size() + 2] = bytes(messageIds.get(i));
+                    connection.scriptingCommands().eval(CLAIM_SCRIPT_BYTES, ReturnType.VALUE, keys.size(), keysAndArgs);
+                }
+                return null;
+            });
+            List<ClaimResult.Status> statuses = new ArrayList<>(results.size());
+            for (Object status : results) {
+                statuses.add(ClaimResult.Status.valueOf((String) status));
+            }
+            return statuses;
+        });
+        return withLegacyMarkers(messageIds, tokens, claimed);
+    }
+
+    // FREE ids with a legacy marker: our claim becomes a marker in the id's bucket and the id is reported PROCESSED
+    private List<ClaimResult.Status> withLegacyMarkers(List<String> messageIds, List<String> tokens,
+                                                       List<ClaimResult.Status> claimed) {
+        if (nodes.legacyNode() == null) return claimed;
+        List<String> free = new ArrayList<>();
+        List<Integer> at = new ArrayList<>();
+        for (int i = 0; i < claimed.size(); i++) {
+            if (claimed.get(i) == ClaimResult.Status.FREE) {
+                free.add(messageIds.get(i));
+                at.add(i);
+            }
+        }
+        if (free.isEmpty()) return claimed;
+        List<Boolean> legacy = legacyProcessed(free);
+        List<String> moveIds = new ArrayList<>();
+        List<String> moveTokens = new ArrayList<>();
+        List<ClaimResult.Status> statuses = new ArrayList<>(claimed);
+        for (int k = 0; k < free.size(); k++) {
+            if (!legacy.get(k)) continue;
+            moveIds.add(free.get(k));
+            moveTokens.add(tokens.get(at.get(k)));
+            statuses.set(at.get(k), ClaimResult.Status.PROCESSED);
+        }
+        if (!moveIds.isEmpty()) markAll(moveIds, moveTokens);
+        return statuses;
+    }
+
+    // one pipelined GET per id on the legacy node; all false when there is none
+    private List<Boolean> legacyProcessed(List<String> messageIds) {
+        StringRedisTemplate legacy = nodes.legacyNode();
+        List<Boolean> found = new ArrayList<>(messageIds.size());
+        if (legacy == null) {
+            for (int i = 0; i < messageIds.size(); i++) found.add(false);
+            return found;
+        }
+        List<Object> values = legacy.executePipelined((RedisCallback<Object>) connection -> {
+            for (String messageId : messageIds) {
+                connection.stringCommands().get(bytes(PREFIX + messageId));
+            }
+            return null;
+        });
+        for (Object value : values) found.add(PROCESSED.equals(value));
+        return found;
+    }
+
+    /**
+     * Adds the id to the current bucket (refreshing the bucket's expiry) and drops the claim key.
+     */
+    @Override
+    public void markProcessed(String messageId) {
+        long now = nowSeconds();
+        long bucket = now / bucketSeconds;
+        nodes.nodeFor(messageId).execute(markScript, List.of(PREFIX + messageId, bucketKey(bucket, messageId)),
+                messageId, String.valueOf(bucketExpiry(bucket)));
+    }
+
+    @Override
+    public void markAllProcessed(Collection<String> messageIds) {
+        markAll(List.copyOf(messageIds), null);
+    }
+
+    @Override
+    public boolean markProcessed(String messageId, String token) {
+        long bucket = nowSeconds() / bucketSeconds;
+        Long res = nodes.nodeFor(messageId).execute(markScript, List.of(PREFIX + messageId, bucketKey(bucket, messageId)),
+                messageId, String.valueOf(bucketExpiry(bucket)), token);
+        return res != null && res > 0;
+    }
+
+    @Override
+    public List<Boolean> markAllProcessed(List<String> messageIds, List<String> tokens) {
+        return markAll(messageIds, tokens);
+    }
+
+    // tokens null = unfenced
+    private List<Boolean> markAll(List<String> messageIds, List<String> tokens) {
+        long bucket = nowSeconds() / bucketSeconds;
+        byte[] expireAt = bytes(String.valueOf(bucketExpiry(bucket)));
+        return nodes.perNode(messageIds, (redis, at) -> flags(redis.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i : at) {
+                String messageId = messageIds.get(i);
+                byte[] claimKey = bytes(PREFIX + messageId), bucketKey = bytes(bucketKey(bucket, messageId));
+                if (tokens == null) {
+                    connection.scriptingCommands().eval(MARK_SCRIPT_BYTES, ReturnType.INTEGER, 2,
+                            claimKey, bucketKey, bytes(messageId), expireAt);
+                } else {
+                    connection.scriptingCommands().eval(MARK_SCRIPT_BYTES, ReturnType.INTEGER, 2,
+                            claimKey, bucketKey, bytes(messageId), expireAt, bytes(tokens.get(i)));
+                }
+            }
+            return null;
+        })));
+    }
+
+    @Override
+    public boolean renew(String messageId, String token, Duration lease) {
+        Long res = nodes.nodeFor(messageId).execute(renewScript, Collections.singletonList(PREFIX + messageId),
+                token, String.valueOf(lease.toMillis()));
+        return res != null && res > 0;
+    }
+
+    /**
+     * Pipelined, so a heartbeat costs one round trip per node however many leases this instance holds.
+     */
+    @Override
+    public List<Boolean> renewAll(List<String> messageIds, List<String> tokens, Duration lease) {
+        byte[] leaseMs = bytes(String.valueOf(lease.toMillis()));
+        return nodes.perNode(messageIds, (redis, at) -> flags(redis.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i : at) {
+                connection.scriptingCommands().eval(RENEW_SCRIPT_BYTES, ReturnType.INTEGER, 1,
+                        bytes(PREFIX + messageIds.get(i)), bytes(tokens.get(i)), leaseMs);
+            }
+            return null;
+        })));
+    }
+
+    @Override
+    public boolean release(String messageId, String token) {
+        Long res = nodes.nodeFor(messageId).execute(releaseScript, Collections.singletonList(PREFIX + messageId), token);
+        return res != null && res > 0;
+    }
+
+    @Override
+    public boolean isProcessed(String messageId) {
+        Long res = nodes.nodeFor(messageId).execute(isProcessedScript, lookupKeys(messageId, nowSeconds()), messageId);
+        return res != null && res > 0 || legacyProcessed(List.of(messageId)).get(0);
+    }
+
+    private static List<Boolean> flags(List<Object> results) {
+        List<Boolean> flags = new ArrayList<>(results.size());
+        for (Object result : results) {
+            flags.add(result instanceof Long n && n > 0);
+        }
+        return flags;
+    }
+
+    // claim key first, then the current and the previous bucket
+    private List<String> lookupKeys(String messageId, long now) {
+        long bucket = now / bucketSeconds;
+        return List.of(PREFIX + messageId, bucketKey(bucket, messageId), bucketKey(bucket - 1, messageId));
+    }
+
+    private String bucketKey(long bucket, String messageId) {
+        return BUCKET_PREFIX + bucket + ":" + Math.floorMod(RedisNodes.hash64(messageId), shards);
+    }
+
+    // lookups stop reading a bucket once the bucket after it has ended; a whole bucket width after the bucket's own
+    // end, so even the last marker written into it outlives the horizon
+    private long bucketExpiry(long bucket) {
+        return (bucket + 2) * bucketSeconds;
+    }
+
+    private long nowSeconds() {
+        return clock.millis() / 1000;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,177 @@
+package com.mouli.consumer.store;
+
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+
+/**
+ * The Redis nodes behind {@link RedisIdempotencyStore} (consumer.idempotency.redis.nodes), each with its own
+ * connection. A messageId lives entirely on one node, chosen by a jump consistent hash of the id, so the claim,
+ * mark, renew and release scripts keep touching only keys of one node. Appending a node moves 1/(N+1) of the
+ * ids; their markers stay behind on the old node, so ids moved within the dedup horizon can be processed again.
+ * Nodes must therefore only ever be appended, never reordered or removed.
+ *
+ * Moving from the single spring.data.redis connection to a node list moves ids the same way, and the legacy
+ * processed:&lt;id&gt; markers stay on that connection whatever node their id now maps to. So it is kept as the
+ * legacy node, read as a fallback for legacyReads, by which time the migrator has let those markers age out.
+ *
+ * Plain standalone instances rather than Redis Cluster: the claim script reads the claim key and the bucket
+ * hashes in one call, which cluster slots would only allow with hash tags in every key (a new key layout).
+ */
+public class RedisNodes implements AutoCloseable {
+
+    private final List<StringRedisTemplate> nodes;
+    private final List<LettuceConnectionFactory> owned;
+    private final StringRedisTemplate legacy;
+    private final long legacyUntil;
+    // batches spanning several nodes send one pipeline per node concurrently
+    private final ExecutorService fanOut = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("redis-node-", 0).factory());
+
+    public RedisNodes(List<StringRedisTemplate> nodes) {
+        this(nodes, List.of(), null, Duration.ZERO);
+    }
+
+    /** legacy = the connection the markers lived on before there were nodes, read for legacyReads from now. */
+    public RedisNodes(List<StringRedisTemplate> nodes, StringRedisTemplate legacy, Duration legacyReads) {
+        this(nodes, List.of(), legacy, legacyReads);
+    }
+
+    private RedisNodes(List<StringRedisTemplate> nodes, List<LettuceConnectionFactory> owned,
+                       StringRedisTemplate legacy, Duration legacyReads) {
+        if (nodes.isEmpty()) throw new IllegalArgumentException("at least one Redis node is required");
+        this.nodes = List.copyOf(nodes);
+        this.owned = owned;
+        this.legacy = legacy;
+        this.legacyUntil = System.nanoTime() + legacyReads.toNanos();
+    }
+
+    /** One connection per host:port, in the given order (which fixes the id-to-node mapping). */
+    public static RedisNodes connect(List<String> hostPorts, String password,
+                                     StringRedisTemplate legacy, Duration legacyReads) {
+        List<LettuceConnectionFactory> factories = new ArrayList<>(hostPorts.size());
+        List<StringRedisTemplate> templates = new ArrayList<>(hostPorts.size());
+        for (String hostPort : hostPorts) {
+            int colon = hostPort.lastIndexOf(':');
+            RedisStandaloneConfiguration cfg = colon < 0
+                    ? new RedisStandaloneConfiguration(hostPort.trim())
+                    : new RedisStandaloneConfiguration(hostPort.substring(0, colon).trim(),
+                    Integer.parseInt(hostPort.substring(colon + 1).trim()));
+            if (password != null && !password.isEmpty()) cfg.setPassword(password);
+            LettuceConnectionFactory factory = new LettuceConnectionFactory(cfg);
+            factory.afterPropertiesSet();
+            factory.start();
+            factories.add(factory);
+            templates.add(new StringRedisTemplate(factory));
+        }
+        return new RedisNodes(templates, factories, legacy, legacyReads);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public List<StringRedisTemplate> all() {
+        return nodes;
+    }
+
+    /** The pre-node connection while its legacy markers may still be live, else null. */
+    public StringRedisTemplate legacyNode() {
+        return legacy != null && System.nanoTime() - legacyUntil < 0 ? legacy : null;
+    }
+
+    public StringRedisTemplate nodeFor(String messageId) {
+        return nodes.get(nodeOf(messageId));
+    }
+
+    int nodeOf(String messageId) {
+        return nodes.size() == 1 ? 0 : jumpHash(hash64(messageId), nodes.size());
+    }
+
+    /**
+     * Runs call once per node with the positions (into messageIds) of the ids living there, and puts each node's
+     * results back in the original order. call returns one result per position, in the order given.
+     */
+    public <T> List<T> perNode(List<String> messageIds, BiFunction<StringRedisTemplate, int[], List<T>> call) {
+        if (nodes.size() == 1) {
+            int[] all = new int[messageIds.size()];
+            Arrays.setAll(all, i -> i);
+            return call.apply(nodes.get(0), all);
+        }
+        int[] counts = new int[nodes.size()];
+        int[] nodeOf = new int[messageIds.size()];
+        for (int i = 0; i < messageIds.size(); i++) {
+            nodeOf[i] = nodeOf(messageIds.get(i));
+            counts[nodeOf[i]]++;
+        }
+        int[][] positions = new int[nodes.size()][];
+        for (int n = 0; n < nodes.size(); n++) positions[n] = new int[counts[n]];
+        int[] filled = new int[nodes.size()];
+        for (int i = 0; i < messageIds.size(); i++) {
+            positions[nodeOf[i]][filled[nodeOf[i]]++] = i;
+        }
+
+        List<CompletableFuture<List<T>>> calls = new ArrayList<>(nodes.size());
+        for (int n = 0; n < nodes.size(); n++) {
+            if (positions[n].length == 0) {
+                calls.add(null);
+                continue;
+            }
+            StringRedisTemplate node = nodes.get(n);
+            int[] at = positions[n];
+            calls.add(CompletableFuture.supplyAsync(() -> call.apply(node, at), fanOut));
+        }
+        List<T> results = new ArrayList<>(messageIds.size());
+        for (int i = 0; i < messageIds.size(); i++) results.add(null);
+        for (int n = 0; n < nodes.size(); n++) {
+            if (calls.get(n) == null) continue;
+            List<T> nodeResults = calls.get(n).join();
+            for (int k = 0; k < positions[n].length; k++) {
+                results.set(positions[n][k], nodeResults.get(k));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        fanOut.shutdownNow();
+        owned.forEach(LettuceConnectionFactory::destroy);
+    }
+
+    // same jump hash and FNV-1a/murmur3 mix as the producer's PartitionRouter
+    static int jumpHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    static long hash64(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,59 @@
+package com.mouli.consumer;
+
+import com.github.fppt.jedismock.RedisServer;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * An in-process Redis (jedis-mock, Lua included) with a Lettuce template in front of it, for tests of the
+ * classes that run scripts against Redis.
+ */
+public final class MockRedis implements AutoCloseable {
+
+    private final RedisServer server;
+    private final LettuceConnectionFactory connectionFactory;
+    private final StringRedisTemplate template;
+
+    public MockRedis() {
+        try {
+            this.server = RedisServer.newRedisServer().start();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        this.connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(server.getHost(), server.getBindPort()));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        this.template = new StringRedisTemplate(connectionFactory);
+    }
+
+    public StringRedisTemplate template() {
+        return template;
+    }
+
+    public String hostPort() {
+        return server.getHost() + ":" + server.getBindPort();
+    }
+
+    public void flushAll() {
+        template.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        connectionFactory.destroy();
+        try {
+            server.stop();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.mouli.consumer.adaptive;
+
+import com.mouli.consumer.metrics.ConsumerMetrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ConcurrencyControllerTests {
+
+    private static final double TARGET_MS = 250;
+
+    // keeps cumulative histogram buckets, like production; SimpleMeterRegistry keeps none
+    private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    private final ConsumerMetrics metrics = new ConsumerMetrics(registry);
+    // never started; the controller only sets its consumer counts and prefetch
+    private final SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
+
+    @Test
+    void latencyAboveTargetCutsConsumersByTheFactor() {
+        ConcurrencyController controller = controller(4, 4, "single");
+
+        controller.decide(container, window(400), 100, 0);
+
+        assertThat(last(controller).action()).isEqualTo(ConcurrencyController.Action.DECREASE);
+        assertThat(last(controller).reason()).contains("p99 400.0ms above target");
+        assertThat(status(controller, "consumers")).isEqualTo(3);
+        assertThat(status(controller, "prefetch")).isEqualTo(4);
+    }
+
+    @Test
+    void redisAboveTargetAlsoDecreases() {
+        ConcurrencyController controller = controller(4, 4, "single");
+
+        controller.decide(container, new ConcurrencyController.Window(100, 50, 35, 20), 100, 0);
+
+        assertThat(last(controller).action()).isEqualTo(ConcurrencyController.Action.DECREASE);
+        assertThat(last(controller).reason()).contains("redis 35.0ms");
+    }
+
+    @Test
+    void decreaseAtTheFloorHalvesPrefetchExceptInBatchMode() {
+        ConcurrencyController controller = controller(1, 8, "single");
+        controller.decide(container, window(400), 100, 0);
+        assertThat(status(controller, "consumers")).isEqualTo(1);
+        assertThat(status(controller, "prefetch")).isEqualTo(4);
+
+        ConcurrencyController batch = controller(1, 8, "batch");
+        batch.decide(container, window(400), 100, 0);
+        assertThat(status(batch, "prefetch")).isEqualTo(8);
+    }
+
+    @Test
+    void increasesWaitOutTheCooldownAfterADecrease() {
+        ConcurrencyController controller = controller(4, 4, "single");
+        controller.decide(container, window(400), 100, 0);
+
+        controller.decide(container, window(50), 100, 0);
+        assertThat(last(controller).action()).isEqualTo(ConcurrencyController.Action.HOLD);
+        assertThat(last(controller).reason()).isEqualTo("cooling down after a decrease");
+        assertThat(status(controller, "consumers")).isEqualTo(3);
+
+        controller.decide(container, window(50), 100, 10);
+        assertThat(last(controller).action()).isEqualTo(ConcurrencyController.Action.INCREASE);
+        assertThat(last(controller).reason()).isEqualTo("backlog of 100 growing by 10");
+        assertThat(status(controller, "consumers")).isEqualTo(4);
+    }
+
+    @Test
+    void backlogNearTheTargetHolds() {
+        ConcurrencyController controller = controller(2, 4, "single");
+
+        controller.decide(container, window(TARGET_MS * 0.9), 100, 0);
+
+        assertThat(last(controller).action()).isEqualTo(ConcurrencyController.Action.HOLD);
+        assertThat(status(controller, "consumers")).isEqualTo(2);
+    }
+
+    @Test
+    void atMaxConsumersPrefetchDoublesOnlyWhileLatencyIsUnderHalfTheTarget() {
+        ConcurrencyController controller = controller(4, 4, "single");
+
+        controller.decide(container, window(150), 100, 0);
+        assertThat(last(controller).reason()).isEqualTo("at max consumers and prefetch");
+        assertThat(status(controller, "prefetch")).isEqualTo(4);
+
+        controller.decide(container, window(100), 100, 0);
+        assertThat(last(controller).action()).isEqualTo(ConcurrencyController.Action.INCREASE);
+        assertThat(status(controller, "prefetch")).isEqualTo(8);
+        controller.decide(container, window(100), 100, 0);
+        controller.decide(container, window(100), 100, 0);
+        assertThat(status(controller, "prefetch")).isEqualTo(16);
+        assertThat(last(controller).reason()).isEqualTo("at max consumers and prefetch");
+    }
+
+    @Test
+    void emptyQueuesShedAConsumerEveryIdleTicks() {
+        ConcurrencyController controller = controller(3, 4, "single");
+
+        controller.decide(container, window(10), 0, 0);
+        controller.decide(container, window(10), 0, 0);
+        assertThat(last(controller).action()).isEqualTo(ConcurrencyController.Action.HOLD);
+        controller.decide(container, window(10), 0, 0);
+        assertThat(last(controller).action()).isEqualTo(ConcurrencyController.Action.IDLE);
+        assertThat(status(controller, "consumers")).isEqualTo(2);
+
+        // a backlog in between restarts the count
+        controller.decide(container, window(10), 0, 0);
+        controller.decide(container, window(10), 0, 0);
+        controller.decide(container, window(10), 5, 5);
+        controller.decide(container, window(10), 0, 0);
+        assertThat(last(controller).action()).isEqualTo(ConcurrencyController.Action.HOLD);
+        assertThat(status(controller, "consumers")).isEqualTo(3);
+    }
+
+    @Test
+    void windowedP99OnlySeesTheLastWindow() {
+        ConcurrencyController controller = controller(1, 1, "single");
+        record(ConsumerMetrics.StageOutcome.SUCCESS, 500, 100);
+        ConcurrencyController.Window slow = controller.sample();
+        assertThat(slow.count()).isEqualTo(100);
+        assertThat(slow.p99Ms()).isBetween(500.0, 600.0);
+
+        // cumulatively the p99 is still in the 500ms bucket; this window's is not
+        record(ConsumerMetrics.StageOutcome.SUCCESS, 10, 100);
+        ConcurrencyController.Window fast = controller.sample();
+        assertThat(fast.count()).isEqualTo(100);
+        assertThat(fast.p99Ms()).isBetween(10.0, 12.0);
+
+        ConcurrencyController.Window idle = controller.sample();
+        assertThat(idle.count()).isZero();
+        assertThat(idle.p99Ms()).isZero();
+    }
+
+    @Test
+    void windowedP99CountsFailedAndTimedOutCalls() {
+        ConcurrencyController controller = controller(1, 1, "single");
+        record(ConsumerMetrics.StageOutcome.SUCCESS, 10, 90);
+        record(ConsumerMetrics.StageOutcome.FAILURE, 10, 5);
+        record(ConsumerMetrics.StageOutcome.TIMEOUT, 30_000, 5);
+
+        ConcurrencyController.Window window = controller.sample();
+
+        assertThat(window.count()).isEqualTo(100);
+        assertThat(window.p99Ms()).isGreaterThanOrEqualTo(30_000);
+        assertThat(controller.sample().count()).isZero();
+        record(ConsumerMetrics.StageOutcome.FAILURE, 20, 1);
+        assertThat(controller.sample().p99Ms()).isCloseTo(20, within(3.0));
+    }
+
+    @Test
+    void withoutHistogramBucketsTheWindowMeanStandsIn() {
+        SimpleMeterRegistry simple = new SimpleMeterRegistry();
+        ConsumerMetrics simpleMetrics = new ConsumerMetrics(simple);
+        ConcurrencyController controller = new ConcurrencyController(new RabbitListenerEndpointRegistry(), null,
+                simpleMetrics, simple, true, "single", 5000, TARGET_MS, 20, 1, 4, 1, 16, 0.75, 0.8, 3, 2, 50, 1, 1);
+        Timer timer = simpleMetrics.stage(ConsumerMetrics.Stage.PROCESS, ConsumerMetrics.StageOutcome.SUCCESS);
+        timer.record(Duration.ofMillis(10));
+        timer.record(Duration.ofMillis(30));
+
+        assertThat(controller.sample().p99Ms()).isCloseTo(20, within(0.01));
+    }
+
+    private ConcurrencyController controller(int consumers, int prefetch, String mode) {
+        // min 1 / max 4 consumers, prefetch 1..16, x0.75, headroom 0.8, idle after 3 ticks, cooldown 2 ticks
+        return new ConcurrencyController(new RabbitListenerEndpointRegistry(), null, metrics, registry, true, mode,
+                5000, TARGET_MS, 20, 1, 4, 1, 16, 0.75, 0.8, 3, 2, 50, consumers, prefetch);
+    }
+
+    private void record(ConsumerMetrics.StageOutcome outcome, long millis, int times) {
+        Timer timer = metrics.stage(ConsumerMetrics.Stage.PROCESS, outcome);
+        for (int i = 0; i < times; i++) {
+            timer.record(Duration.ofMillis(millis));
+        }
+    }
+
+    private static ConcurrencyController.Window window(double p99Ms) {
+        return new ConcurrencyController.Window(100, p99Ms, 1, 20);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConcurrencyController.Decision last(ConcurrencyController controller) {
+        return ((List<ConcurrencyController.Decision>) controller.status().get("decisions")).getFirst();
+    }
+
+    private static Object status(ConcurrencyController controller, String key) {
+        return controller.status().get(key);
+    }
+}
@@ -0,0 +1,166 @@
+package com.mouli.consumer.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.mouli.consumer.dto.CommandMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CommandMessageCodecTests {
+
+    private static final Instant CREATED_AT = Instant.parse("2026-01-02T03:04:05.123456789Z");
+
+    // the application's mapper (JacksonConfig)
+    private final CommandMessageCodec codec =
+            new CommandMessageCodec(new ObjectMapper().registerModule(new JavaTimeModule()), 1 << 20);
+
+    @Test
+    void smileAndJsonBodiesAreDecodedByContentType() throws Exception {
+        assertDecoded(codec.decode(message(producerSmile(), WireFormat.SMILE_CONTENT_TYPE)));
+        assertDecoded(codec.decode(message(producerJson(), WireFormat.JSON_CONTENT_TYPE)));
+        assertDecoded(codec.decode(message(producerJson(), WireFormat.JSON_CONTENT_TYPE + ";charset=UTF-8")));
+    }
+
+    @Test
+    void bodyWithoutAContentTypeIsReadAsJson() throws Exception {
+        assertDecoded(codec.decode(message(producerJson(), null)));
+        assertThatThrownBy(() -> codec.decode(message(producerSmile(), null)))
+                .isInstanceOf(MessageConversionException.class);
+    }
+
+    @Test
+    void newerSchemaVersionIsRefused() throws Exception {
+        Message message = message(producerJson(), WireFormat.JSON_CONTENT_TYPE);
+        message.getMessageProperties().setHeader(WireFormat.SCHEMA_VERSION_HEADER, WireFormat.SCHEMA_VERSION + 1);
+
+        assertThatThrownBy(() -> codec.decode(message))
+                .isInstanceOf(MessageConversionException.class)
+                .hasMessageStartingWith("Unsupported schema version");
+    }
+
+    @Test
+    void zstdBodyIsInflatedWhateverCharsetFollowsTheAlgorithm() throws Exception {
+        for (String encoding : new String[] {"zstd:UTF-8", "zstd"}) {
+            assertDecoded(codec.decode(compressed(Zstd.compress(producerJson(), 3), encoding)));
+        }
+        assertDecoded(codec.decode(message(Zstd.compress(producerSmile(), 3), WireFormat.SMILE_CONTENT_TYPE,
+                "zstd:UTF-8")));
+    }
+
+    @Test
+    void zstdFrameWithoutItsSizeIsInflatedByStreaming() throws Exception {
+        byte[] frame = zstdStream(producerJson());
+        assertThatThrownBy(() -> Zstd.getFrameContentSize(frame)).hasMessage("Content size is unknown");
+
+        assertDecoded(codec.decode(compressed(frame, "zstd:UTF-8")));
+    }
+
+    @Test
+    void gzipBodyIsInflated() throws Exception {
+        assertDecoded(codec.decode(compressed(gzip(producerJson()), "gzip:UTF-8")));
+    }
+
+    @Test
+    void bodyInflatingPastTheLimitIsRejected() throws Exception {
+        CommandMessageCodec small = new CommandMessageCodec(new ObjectMapper().registerModule(new JavaTimeModule()),
+                64);
+        byte[] body = producerJson();
+        assertThat(body.length).isGreaterThan(64);
+
+        // size read from the zstd frame header, before inflating anything
+        assertThatThrownBy(() -> small.decode(compressed(Zstd.compress(body, 3), "zstd:UTF-8")))
+                .isInstanceOf(MessageConversionException.class)
+                .hasMessage("Decompressed body exceeds 64 bytes (consumer.compression.max-decompressed-bytes)");
+        // counted while streaming
+        assertThatThrownBy(() -> small.decode(compressed(zstdStream(body), "zstd:UTF-8")))
+                .isInstanceOf(MessageConversionException.class)
+                .hasMessageStartingWith("Decompressed body exceeds 64 bytes");
+        assertThatThrownBy(() -> small.decode(compressed(gzip(body), "gzip:UTF-8")))
+                .isInstanceOf(MessageConversionException.class)
+                .hasMessageStartingWith("Decompressed body exceeds 64 bytes");
+    }
+
+    @Test
+    void uncompressedBodyWithACharsetEncodingIsReadAsItIs() throws Exception {
+        assertDecoded(codec.decode(message(producerJson(), WireFormat.JSON_CONTENT_TYPE, "UTF-8")));
+    }
+
+    private static void assertDecoded(CommandMessage decoded) {
+        assertThat(decoded.getMessageId()).isEqualTo("m-1");
+        assertThat(decoded.getCreatedAt()).isEqualTo(CREATED_AT);
+        assertThat(decoded.getPriority()).isEqualTo("high");
+        assertThat(decoded.getPayload()).containsEntry("type", "report").containsEntry("amount", 42);
+    }
+
+    // the producer's smile wire mapper: binary timestamps
+    private static byte[] producerSmile() throws Exception {
+        return new ObjectMapper(new SmileFactory()).registerModule(new JavaTimeModule())
+                .enable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .writeValueAsBytes(command());
+    }
+
+    // the producer's json wire mapper: ISO-8601 timestamps
+    private static byte[] producerJson() throws Exception {
+        return new ObjectMapper(new JsonFactory()).registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .writeValueAsBytes(command());
+    }
+
+    private static byte[] zstdStream(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZstdOutputStream zstd = new ZstdOutputStream(out)) {
+            zstd.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static Message compressed(byte[] body, String encoding) {
+        return message(body, WireFormat.JSON_CONTENT_TYPE, encoding);
+    }
+
+    private static Message message(byte[] body, String contentType) {
+        return message(body, contentType, null);
+    }
+
+    private static Message message(byte[] body, String contentType, String encoding) {
+        MessageProperties props = new MessageProperties();
+        props.setContentType(contentType);
+        props.setContentEncoding(encoding);
+        props.setHeader(WireFormat.SCHEMA_VERSION_HEADER, WireFormat.SCHEMA_VERSION);
+        return MessageBuilder.withBody(body).andProperties(props).build();
+    }
+
+    private static CommandMessage command() {
+        CommandMessage message = new CommandMessage();
+        message.setMessageId("m-1");
+        message.setPayload(Map.of("type", "report", "amount", 42));
+        message.setCreatedAt(CREATED_AT);
+        message.setPriority("high");
+        return message;
+    }
+}
@@ -0,0 +1,32 @@
+package com.mouli.consumer.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Queue;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RabbitMQConfigTests {
+
+    @Test
+    void lanesDeclareTheirQueuesForTheSingleListener() {
+        assertThat(config(true).laneQueues("single").getDeclarablesByType(Queue.class))
+                .extracting(Queue::getName)
+                .containsExactly(RabbitMQConfig.HIGH_LANE_QUEUE, RabbitMQConfig.LOW_LANE_QUEUE);
+        assertThat(config(false).laneQueues("batch").getDeclarables()).isEmpty();
+    }
+
+    @Test
+    void lanesWithTheBatchListenerRefuseToStart() {
+        assertThatThrownBy(() -> config(true).laneQueues("batch"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageStartingWith("consumer.lanes.enabled needs consumer.listener.mode=single");
+    }
+
+    private static RabbitMQConfig config(boolean lanes) {
+        RabbitMQConfig config = new RabbitMQConfig();
+        ReflectionTestUtils.setField(config, "lanesEnabled", lanes);
+        return config;
+    }
+}
@@ -0,0 +1,225 @@
+package com.mouli.consumer.handler;
+
+import com.mouli.consumer.dto.CommandMessage;
+import com.mouli.consumer.exception.BulkheadFullException;
+import com.mouli.consumer.exception.TransientProcessingException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BulkheadTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<Bulkhead> bulkheads = new ArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        bulkheads.forEach(Bulkhead::shutdown);
+    }
+
+    @Test
+    void handlerFailuresReachTheListenerUnchanged() {
+        Bulkhead bulkhead = bulkhead(1, 0, 5000);
+
+        assertThatThrownBy(() -> bulkhead.run(handler(m -> {
+            throw new IllegalArgumentException("bad payload");
+        }), new CommandMessage())).isInstanceOf(IllegalArgumentException.class).hasMessage("bad payload");
+        bulkhead.run(handler(m -> { }), new CommandMessage());
+
+        assertThat(bulkhead.stats()).containsEntry("calls", 2L).containsEntry("rejectedFull", 0L);
+    }
+
+    @Test
+    void fullBulkheadRejectsAtOnceAndTakesCommandsAgainOnceAThreadIsFree() throws InterruptedException {
+        Bulkhead bulkhead = bulkhead(1, 0, 5000);
+        Thread running = inBackground(bulkhead, blocking());
+
+        assertThatThrownBy(() -> bulkhead.run(handler(m -> { }), new CommandMessage()))
+                .isInstanceOf(BulkheadFullException.class)
+                .hasMessage("Bulkhead for type test is full (1 running, 0 queued)");
+        assertThat(rejections("full")).isEqualTo(1);
+
+        release.countDown();
+        running.join();
+        // back-to-back hand-overs are not mistaken for a full bulkhead
+        for (int i = 0; i < 100; i++) bulkhead.run(handler(m -> { }), new CommandMessage());
+        assertThat(rejections("full")).isEqualTo(1);
+    }
+
+    @Test
+    void queueLimitCommandsWaitForAThread() throws InterruptedException {
+        Bulkhead bulkhead = bulkhead(1, 1, 5000);
+        inBackground(bulkhead, blocking());
+        AtomicBoolean ran = new AtomicBoolean();
+        Thread queued = Thread.ofVirtual().start(() -> bulkhead.run(handler(m -> ran.set(true)), new CommandMessage()));
+        awaitQueued(bulkhead, 1);
+
+        assertThatThrownBy(() -> bulkhead.run(handler(m -> { }), new CommandMessage()))
+                .isInstanceOf(TransientProcessingException.class)
+                .hasMessageContaining("is full");
+
+        release.countDown();
+        queued.join();
+        assertThat(ran).isTrue();
+    }
+
+    @Test
+    void timeoutIsRejectedAndAHandlerIgnoringTheInterruptKeepsItsSlotUntilItReturns() {
+        Bulkhead bulkhead = bulkhead(1, 0, 100);
+        AtomicBoolean interrupted = new AtomicBoolean();
+
+        assertThatThrownBy(() -> bulkhead.run(stubborn(interrupted), new CommandMessage()))
+                .isInstanceOf(TransientProcessingException.class)
+                .hasMessage("Handler for type test timed out after 100 ms")
+                .hasCauseInstanceOf(TimeoutException.class);
+        assertThat(rejections("timeout")).isEqualTo(1);
+
+        // still running on its thread, so the bulkhead stays full
+        assertThatThrownBy(() -> bulkhead.run(handler(m -> { }), new CommandMessage()))
+                .hasMessageContaining("is full");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!interrupted.get()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        release.countDown();
+        awaitSlotFree(bulkhead);
+    }
+
+    @Test
+    void interruptibleHandlerGivesItsSlotBackWhenTimedOut() {
+        Bulkhead bulkhead = bulkhead(1, 0, 100);
+
+        assertThatThrownBy(() -> bulkhead.run(blocking(), new CommandMessage()))
+                .isInstanceOf(TransientProcessingException.class)
+                .hasMessageContaining("timed out");
+
+        awaitSlotFree(bulkhead);
+        assertThat(rejections("timeout")).isEqualTo(1);
+    }
+
+    @Test
+    void queuedCommandThatTimesOutNeverRunsAndFreesItsSlotAtOnce() {
+        Bulkhead bulkhead = bulkhead(1, 1, 100);
+        inBackground(bulkhead, stubborn(new AtomicBoolean()));
+        AtomicInteger ran = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> bulkhead.run(handler(m -> ran.incrementAndGet()), new CommandMessage()))
+                    .hasMessageContaining("timed out");
+        }
+
+        assertThat(rejections("full")).isZero();
+        assertThat(bulkhead.stats()).containsEntry("queued", 0);
+        release.countDown();
+        awaitSlotFree(bulkhead);
+        assertThat(ran).hasValue(0);
+    }
+
+    private Bulkhead bulkhead(int concurrency, int queueLimit, long timeoutMs) {
+        Bulkhead bulkhead = new Bulkhead("test", concurrency, queueLimit, timeoutMs, registry);
+        bulkheads.add(bulkhead);
+        return bulkhead;
+    }
+
+    // blocks until the test releases it; an interrupt ends it early
+    private CommandHandler blocking() {
+        return handler(m -> {
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    // ignores interrupts (noting them) until the test releases it
+    private CommandHandler stubborn(AtomicBoolean interrupted) {
+        return handler(m -> {
+            while (release.getCount() > 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                if (Thread.interrupted()) interrupted.set(true);
+            }
+        });
+    }
+
+    // returns once the handler holds the bulkhead's thread
+    private static Thread inBackground(Bulkhead bulkhead, CommandHandler handler) {
+        CountDownLatch started = new CountDownLatch(1);
+        Thread thread = Thread.ofVirtual().start(() -> {
+            try {
+                bulkhead.run(handler(m -> {
+                    started.countDown();
+                    handler.handle(m);
+                }), new CommandMessage());
+            } catch (TransientProcessingException ignored) {
+                // timed out while the test holds it
+            }
+        });
+        try {
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return thread;
+    }
+
+    private static void awaitQueued(Bulkhead bulkhead, int queued) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!bulkhead.stats().get("queued").equals(queued)) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private static void awaitSlotFree(Bulkhead bulkhead) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            try {
+                bulkhead.run(handler(m -> { }), new CommandMessage());
+                return;
+            } catch (TransientProcessingException ex) {
+                assertThat(System.nanoTime()).isLessThan(deadline);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+            }
+        }
+    }
+
+    private double rejections(String reason) {
+        return registry.get("consumer.handler.rejections").tag("reason", reason).counter().count();
+    }
+
+    static CommandHandler handler(Consumer<CommandMessage> body) {
+        return handler("test", body);
+    }
+
+    static CommandHandler handler(String type, Consumer<CommandMessage> body) {
+        return new CommandHandler() {
+            @Override
+            public String type() {
+                return type;
+            }
+
+            @Override
+            public void handle(CommandMessage message) {
+                body.accept(message);
+            }
+        };
+    }
+}
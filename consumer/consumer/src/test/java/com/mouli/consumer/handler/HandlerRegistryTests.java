@@ -0,0 +1,138 @@
+package com.mouli.consumer.handler;
+
+import com.mouli.consumer.dto.CommandMessage;
+import com.mouli.consumer.exception.BulkheadFullException;
+import com.mouli.consumer.exception.TransientProcessingException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.mouli.consumer.handler.BulkheadTests.handler;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HandlerRegistryTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MockEnvironment env = new MockEnvironment();
+    private final List<String> handled = new ArrayList<>();
+    private final CountDownLatch slowStarted = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HandlerRegistry handlers;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (handlers != null) handlers.stop();
+    }
+
+    @Test
+    void commandsGoToTheHandlerForTheirTypeOrTheDefault() {
+        handlers = registry(8, 0);
+
+        handlers.dispatch(command(Map.of("type", "report")));
+        handlers.dispatch(command(Map.of("type", "unknown")));
+        handlers.dispatch(command(Map.of("amount", 1)));
+        handlers.dispatch(command(null));
+
+        assertThat(handled).containsExactly("report", "default", "default", "default");
+    }
+
+    @Test
+    void concurrencyDefaultsToHalfTheListenerThreadsWithoutAQueue() {
+        env.setProperty("consumer.handlers.type.report.concurrency", "1");
+        handlers = registry(8, 0);
+
+        assertThat(limits(DefaultCommandHandler.TYPE)).containsEntry("concurrency", 4).containsEntry("queueLimit", 0);
+        assertThat(limits("report")).containsEntry("concurrency", 1);
+        assertThat(limits(DefaultCommandHandler.TYPE)).containsEntry("timeoutMs", 5000L);
+    }
+
+    @Test
+    void singleTypeGetsEveryListenerThread() {
+        handlers = new HandlerRegistry(List.of(handler(DefaultCommandHandler.TYPE, m -> { })), env, registry,
+                "type", 8, 0, 0, 5000);
+
+        assertThat(limits(DefaultCommandHandler.TYPE)).containsEntry("concurrency", 8).containsEntry("queueLimit", 0);
+    }
+
+    @Test
+    void fullTypeIsRejectedWhileOtherTypesStillRun() throws InterruptedException {
+        handlers = registry(2, 0);
+        Thread slow = Thread.ofVirtual().start(() -> handlers.dispatch(command(Map.of("type", "slow"))));
+        assertThat(slowStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> handlers.dispatch(command(Map.of("type", "slow"))))
+                .isInstanceOf(BulkheadFullException.class)
+                .hasMessage("Bulkhead for type slow is full (1 running, 0 queued)");
+        handlers.dispatch(command(Map.of("type", "report")));
+
+        assertThat(rejections("slow", "full")).isEqualTo(1);
+        release.countDown();
+        slow.join();
+    }
+
+    @Test
+    void typePastItsTimeoutIsRejectedAsTransient() {
+        env.setProperty("consumer.handlers.type.slow.timeout-ms", "50");
+        handlers = registry(2, 0);
+
+        assertThatThrownBy(() -> handlers.dispatch(command(Map.of("type", "slow"))))
+                .isInstanceOf(TransientProcessingException.class)
+                .hasMessage("Handler for type slow timed out after 50 ms")
+                .hasCauseInstanceOf(TimeoutException.class);
+        assertThat(rejections("slow", "timeout")).isEqualTo(1);
+        assertThat(rejections(DefaultCommandHandler.TYPE, "timeout")).isZero();
+    }
+
+    @Test
+    void defaultHandlerIsRequiredAndTypesAreUnique() {
+        assertThatThrownBy(() -> new HandlerRegistry(List.of(handler("report", m -> { })), env, registry,
+                "type", 1, 0, 0, 5000))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("No handler registered for type default");
+        assertThatThrownBy(() -> new HandlerRegistry(List.of(handler("default", m -> { }),
+                handler("default", m -> { })), env, registry, "type", 1, 0, 0, 5000))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageStartingWith("Two handlers for command type default");
+    }
+
+    // default, report and slow; slow blocks until the test releases it
+    private HandlerRegistry registry(int listenerThreads, int concurrency) {
+        return new HandlerRegistry(List.of(
+                handler(DefaultCommandHandler.TYPE, m -> handled.add(DefaultCommandHandler.TYPE)),
+                handler("report", m -> handled.add("report")),
+                handler("slow", m -> {
+                    slowStarted.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                })), env, registry, "type", listenerThreads, concurrency, 0, 5000);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> limits(String type) {
+        return (Map<String, Object>) handlers.status().get(type);
+    }
+
+    private double rejections(String type, String reason) {
+        return registry.get("consumer.handler.rejections").tag("type", type).tag("reason", reason).counter().count();
+    }
+
+    private static CommandMessage command(Map<String, Object> payload) {
+        CommandMessage message = new CommandMessage();
+        message.setMessageId("m-1");
+        message.setPayload(payload);
+        return message;
+    }
+}
@@ -0,0 +1,101 @@
+package com.mouli.consumer.listener;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mouli.consumer.codec.CommandMessageCodec;
+import com.mouli.consumer.config.RabbitMQConfig;
+import com.mouli.consumer.exception.BulkheadFullException;
+import com.mouli.consumer.exception.TransientProcessingException;
+import com.mouli.consumer.lane.LaneScheduler;
+import com.mouli.consumer.metrics.ConsumerMetrics;
+import com.mouli.consumer.partition.OrderingGate;
+import com.mouli.consumer.service.ClaimResult;
+import com.mouli.consumer.service.IdempotencyService;
+import com.mouli.consumer.service.ProcessingService;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CommandListenerTests {
+
+    private static final int MAX_RETRIES = 3;
+
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final IdempotencyService idempotency = mock(IdempotencyService.class);
+    private final ProcessingService processor = mock(ProcessingService.class);
+    private final Channel channel = mock(Channel.class);
+    private final CommandListener listener = new CommandListener(idempotency, processor,
+            new RetryRouter(rabbitTemplate, new ConsumerMetrics(new SimpleMeterRegistry()), MAX_RETRIES,
+                    new long[] {1000, 10000, 60000}, 1000, 10, 60000, 0.2, 20),
+            new CommandMessageCodec(new ObjectMapper(), 1 << 20), mock(OrderingGate.class),
+            mock(LaneScheduler.class), new ConsumerMetrics(new SimpleMeterRegistry()));
+
+    @Test
+    void fullBulkheadNeverDeadLettersHoweverOftenItHappens() throws Exception {
+        when(idempotency.claim("m-1")).thenReturn(new ClaimResult(ClaimResult.Status.FREE, "t1"));
+        doThrow(new BulkheadFullException("Bulkhead for type default is full (1 running, 0 queued)"))
+                .when(processor).process(any());
+
+        // already out of retries, and bounced many times before
+        listener.consume(delivery(MAX_RETRIES, 50), channel);
+
+        Message sent = sent();
+        assertThat(sent.getMessageProperties().<Integer>getHeader("x-retries")).isEqualTo(MAX_RETRIES);
+        assertThat(sent.getMessageProperties().<Integer>getHeader(RetryRouter.CAPACITY_DEFERRALS_HEADER))
+                .isEqualTo(51);
+        verify(rabbitTemplate, never())
+                .send(anyString(), eq(RabbitMQConfig.DLQ_QUEUE), any(Message.class));
+        verify(idempotency).releaseClaim("m-1", "t1");
+        verify(channel).basicAck(7L, false);
+    }
+
+    @Test
+    void otherTransientFailuresStillSpendARetry() throws Exception {
+        when(idempotency.claim("m-1")).thenReturn(new ClaimResult(ClaimResult.Status.FREE, "t1"));
+        doThrow(new TransientProcessingException("downstream unavailable")).when(processor).process(any());
+
+        listener.consume(delivery(MAX_RETRIES, 0), channel);
+
+        ArgumentCaptor<Message> dead = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate).send(eq(""), eq(RabbitMQConfig.DLQ_QUEUE), dead.capture());
+        assertThat(dead.getValue().getMessageProperties().<Integer>getHeader("x-retries")).isEqualTo(MAX_RETRIES + 1);
+    }
+
+    // the one message sent; it went to a retry tier, not the DLQ
+    private Message sent() {
+        ArgumentCaptor<String> queue = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate).send(eq(""), queue.capture(), message.capture());
+        assertThat(List.of(RabbitMQConfig.retryQueueName(1000), RabbitMQConfig.retryQueueName(10000),
+                RabbitMQConfig.retryQueueName(60000))).contains(queue.getValue());
+        return message.getValue();
+    }
+
+    private static Message delivery(int retries, int capacityDeferrals) {
+        MessageProperties props = new MessageProperties();
+        props.setMessageId("m-1");
+        props.setDeliveryTag(7L);
+        props.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        props.setHeader("x-retries", retries);
+        if (capacityDeferrals > 0) props.setHeader(RetryRouter.CAPACITY_DEFERRALS_HEADER, capacityDeferrals);
+        byte[] body = "{\"messageId\":\"m-1\",\"payload\":{}}".getBytes(StandardCharsets.UTF_8);
+        return MessageBuilder.withBody(body).andProperties(props).build();
+    }
+}
@@ -0,0 +1,77 @@
+package com.mouli.consumer.listener;
+
+import com.mouli.consumer.config.RabbitMQConfig;
+import com.mouli.consumer.metrics.ConsumerMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class RetryRouterTests {
+
+    private static final int MAX_DEFERRALS = 3;
+
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final RetryRouter router = new RetryRouter(rabbitTemplate, new ConsumerMetrics(new SimpleMeterRegistry()),
+            3, new long[] {1000, 10000, 60000}, 1000, 10, 60000, 0.2, MAX_DEFERRALS);
+
+    @Test
+    void deferralGoesRoundTheTierThatHoldsTheLease() {
+        assertThat(router.deferBehindLease(delivery(null), "m-1", 5000)).isTrue();
+
+        Message sent = sent(RabbitMQConfig.retryQueueName(10000));
+        assertThat(sent.getMessageProperties().<Integer>getHeader(RetryRouter.LEASE_DEFERRALS_HEADER)).isEqualTo(1);
+        assertThat(sent.getMessageProperties().getExpiration()).isEqualTo("5000");
+        assertThat(sent.getMessageProperties().<Object>getHeader("x-retries")).isNull();
+    }
+
+    @Test
+    void deferralsPastTheLimitAreDeadLettered() {
+        assertThat(router.deferBehindLease(delivery(MAX_DEFERRALS - 1), "m-1", 5000)).isTrue();
+        assertThat(router.deferBehindLease(delivery(MAX_DEFERRALS), "m-1", 5000)).isFalse();
+
+        Message dead = sent(RabbitMQConfig.DLQ_QUEUE);
+        assertThat(dead.getMessageProperties().<String>getHeader("x-error-reason"))
+                .isEqualTo("lease held by another consumer through 3 deferrals");
+        assertThat(dead.getMessageProperties().<String>getHeader("x-original-queue"))
+                .isEqualTo(RabbitMQConfig.COMMAND_QUEUE);
+        assertThat(dead.getMessageProperties().getMessageId()).isEqualTo("m-1");
+    }
+
+    @Test
+    void capacityDeferralLeavesTheRetriesAlone() {
+        MessageProperties props = delivery(null).getMessageProperties();
+        props.setHeader("x-retries", 3);
+
+        router.deferForCapacity(MessageBuilder.withBody("{}".getBytes()).andProperties(props).build(), "m-1");
+
+        // first deferral: the first backoff step (1s less jitter) goes round the 1s tier
+        Message sent = sent(RabbitMQConfig.retryQueueName(1000));
+        assertThat(sent.getMessageProperties().<Integer>getHeader("x-retries")).isEqualTo(3);
+        assertThat(sent.getMessageProperties().<Integer>getHeader(RetryRouter.CAPACITY_DEFERRALS_HEADER)).isEqualTo(1);
+    }
+
+    private Message sent(String queue) {
+        ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate).send(eq(""), eq(queue), message.capture());
+        return message.getValue();
+    }
+
+    private static Message delivery(Integer deferrals) {
+        MessageProperties props = new MessageProperties();
+        props.setMessageId("m-1");
+        props.setRedelivered(true);
+        if (deferrals != null) {
+            props.setHeader(RetryRouter.LEASE_DEFERRALS_HEADER, deferrals);
+        }
+        return MessageBuilder.withBody("{}".getBytes()).andProperties(props).build();
+    }
+}
@@ -0,0 +1,108 @@
+package com.mouli.consumer.partition;
+
+import com.mouli.consumer.MockRedis;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static com.mouli.consumer.partition.OrderingGate.Decision.PROCEED;
+import static com.mouli.consumer.partition.OrderingGate.Decision.WAIT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderingGateTests {
+
+    private static final int MAX_LAPS = 5;
+
+    private static MockRedis redis;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private OrderingGate gate;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = new MockRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        redis.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        gate = new OrderingGate(redis.template(), registry, 900, MAX_LAPS);
+    }
+
+    @Test
+    void freeKeyAdmitsWithoutLeavingState() {
+        assertThat(gate.admit("k", "a", 0)).isEqualTo(PROCEED);
+        gate.release("k", "a");
+
+        assertThat(redis.template().hasKey(OrderingGate.PREFIX + "k")).isFalse();
+    }
+
+    @Test
+    void laterCommandsWaitBehindAHeldOneInArrivalOrder() {
+        assertThat(gate.admit("k", "a", 0)).isEqualTo(PROCEED);
+        gate.hold("k", "a");
+
+        assertThat(gate.admit("k", "b", 0)).isEqualTo(WAIT);
+        assertThat(gate.admit("k", "c", 0)).isEqualTo(WAIT);
+        // a lap does not queue the same command twice
+        assertThat(gate.admit("k", "b", 1)).isEqualTo(WAIT);
+        assertThat(redis.template().opsForList().range(OrderingGate.PREFIX + "k", 0, -1))
+                .containsExactly("a", "b", "c");
+
+        // the retried head comes back through the gate, then finishes
+        assertThat(gate.admit("k", "a", 0)).isEqualTo(PROCEED);
+        gate.release("k", "a");
+
+        assertThat(gate.admit("k", "c", 1)).isEqualTo(WAIT);
+        assertThat(gate.admit("k", "b", 1)).isEqualTo(PROCEED);
+        gate.release("k", "b");
+        assertThat(gate.admit("k", "c", 2)).isEqualTo(PROCEED);
+        gate.release("k", "c");
+        assertThat(redis.template().hasKey(OrderingGate.PREFIX + "k")).isFalse();
+    }
+
+    @Test
+    void keysAreIndependent() {
+        gate.admit("k1", "a", 0);
+        gate.hold("k1", "a");
+
+        assertThat(gate.admit("k2", "b", 0)).isEqualTo(PROCEED);
+    }
+
+    @Test
+    void releaseByAnotherCommandIsIgnored() {
+        gate.admit("k", "a", 0);
+        gate.hold("k", "a");
+        gate.admit("k", "b", 0);
+
+        gate.release("k", "b");
+
+        assertThat(gate.admit("k", "b", 1)).isEqualTo(WAIT);
+    }
+
+    @Test
+    void lostHeadIsForcedOutAfterMaxLaps() {
+        gate.admit("k", "lost", 0);
+        gate.hold("k", "lost");
+        gate.admit("k", "b", 0);
+        gate.admit("k", "c", 0);
+
+        assertThat(gate.admit("k", "b", MAX_LAPS - 1)).isEqualTo(WAIT);
+        assertThat(gate.admit("k", "b", MAX_LAPS)).isEqualTo(PROCEED);
+        assertThat(redis.template().opsForList().range(OrderingGate.PREFIX + "k", 0, -1))
+                .containsExactly("b", "c");
+        assertThat(registry.get("consumer.partitions.gate.forced").counter().count()).isEqualTo(1);
+
+        // c still waits for b, then goes
+        assertThat(gate.admit("k", "c", 1)).isEqualTo(WAIT);
+        gate.release("k", "b");
+        assertThat(gate.admit("k", "c", 2)).isEqualTo(PROCEED);
+    }
+}
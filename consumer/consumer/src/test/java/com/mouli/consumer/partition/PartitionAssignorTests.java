@@ -0,0 +1,66 @@
+package com.mouli.consumer.partition;
+
+import com.mouli.consumer.MockRedis;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartitionAssignorTests {
+
+    private static MockRedis redis;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = new MockRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        redis.close();
+    }
+
+    @BeforeEach
+    void flush() {
+        redis.flushAll();
+    }
+
+    @Test
+    void membersSplitThePartitionsWithoutOverlap() {
+        List<String> members = List.of("c@host", "a@host", "b@host");
+        List<Integer> all = new ArrayList<>();
+        for (String member : members) {
+            all.addAll(assignor(member, 8).assignment(members));
+        }
+
+        assertThat(assignor("a@host", 8).assignment(members)).containsExactly(0, 3, 6);
+        assertThat(assignor("c@host", 8).assignment(members)).containsExactly(2, 5);
+        assertThat(all).containsExactlyInAnyOrder(0, 1, 2, 3, 4, 5, 6, 7);
+    }
+
+    @Test
+    void instanceMissingFromTheMemberListTakesEverything() {
+        assertThat(assignor("a@host", 4).assignment(List.of("a@host"))).containsExactly(0, 1, 2, 3);
+        assertThat(assignor("a@host", 4).assignment(List.of())).containsExactly(0, 1, 2, 3);
+    }
+
+    @Test
+    void heartbeatRegistersAndDropsExpiredMembers() {
+        redis.template().opsForZSet().add(PartitionAssignor.MEMBERS_KEY, "stale@host", 1);
+
+        assertThat(assignor("b@host", 4).heartbeatMembers()).containsExactly("b@host");
+        assertThat(assignor("a@host", 4).heartbeatMembers()).containsExactlyInAnyOrder("a@host", "b@host");
+    }
+
+    private static PartitionAssignor assignor(String instanceId, int partitions) {
+        return new PartitionAssignor(new RabbitListenerEndpointRegistry(), redis.template(), new SimpleMeterRegistry(),
+                partitions, 2000, 10000, instanceId);
+    }
+}
@@ -0,0 +1,51 @@
+package com.mouli.consumer.redrive;
+
+import com.rabbitmq.client.AMQP;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DlqRedriveServiceTests {
+
+    @Test
+    void redriveStripsDeadLetterHeadersAndCountsTheRedrive() {
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("x-retries", 3);
+        headers.put("x-error-reason", "timeout");
+        headers.put("x-original-queue", "command.queue.2");
+        headers.put(DlqRedriveService.DEAD_LETTERED_AT_HEADER, 1_700_000_000_000L);
+        headers.put("x-death", List.of(Map.of("reason", "rejected", "queue", "command.queue.2", "time", new Date())));
+        headers.put("x-partition-key", "order-7");
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .messageId("m-1")
+                .contentType("application/json")
+                .expiration("60000")
+                .headers(headers)
+                .build();
+
+        AMQP.BasicProperties redriven = DlqRedriveService.redriveProperties(properties, headers);
+
+        assertThat(redriven.getHeaders()).containsOnly(
+                Map.entry("x-partition-key", "order-7"),
+                Map.entry(DlqRedriveService.REDRIVEN_HEADER, 1));
+        assertThat(redriven.getExpiration()).isNull();
+        assertThat(redriven.getMessageId()).isEqualTo("m-1");
+        assertThat(redriven.getContentType()).isEqualTo("application/json");
+        // the DLQ copy is untouched; a failed batch leaves it as it was
+        assertThat(properties.getHeaders()).containsKey("x-retries");
+    }
+
+    @Test
+    void redriveCountGrowsEachTime() {
+        Map<String, Object> headers = Map.of(DlqRedriveService.REDRIVEN_HEADER, 2, "x-retries", 3);
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder().headers(headers).build();
+
+        assertThat(DlqRedriveService.redriveProperties(properties, headers).getHeaders())
+                .containsOnly(Map.entry(DlqRedriveService.REDRIVEN_HEADER, 3));
+    }
+}
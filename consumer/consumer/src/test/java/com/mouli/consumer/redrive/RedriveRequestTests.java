@@ -0,0 +1,61 @@
+package com.mouli.consumer.redrive;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedriveRequestTests {
+
+    @Test
+    void noFiltersMatchEverything() {
+        RedriveRequest.Matcher matcher = request(null, null, null, null).matcher();
+
+        assertThat(matcher.matches(null, null, null)).isTrue();
+        assertThat(matcher.matches("timeout", "order-1", 5L)).isTrue();
+    }
+
+    @Test
+    void reasonIsACaseInsensitiveSubstring() {
+        RedriveRequest.Matcher matcher = request("TimeOut", " ", null, null).matcher();
+
+        assertThat(matcher.matches("Handler timeout after 30000 ms", "a", null)).isTrue();
+        assertThat(matcher.matches("maxlen", "a", null)).isFalse();
+        assertThat(matcher.matches(null, "a", null)).isFalse();
+    }
+
+    @Test
+    void messageIdPatternMustMatchTheWholeId() {
+        RedriveRequest.Matcher matcher = request(null, "order-\\d+", null, null).matcher();
+
+        assertThat(matcher.matches(null, "order-42", null)).isTrue();
+        assertThat(matcher.matches(null, "order-42-retry", null)).isFalse();
+        assertThat(matcher.matches(null, "my-order-42", null)).isFalse();
+        assertThat(matcher.matches(null, null, null)).isFalse();
+    }
+
+    @Test
+    void ageBoundsAreInclusiveAndNeedAKnownAge() {
+        RedriveRequest.Matcher matcher = request(null, null, 60L, 3600L).matcher();
+
+        assertThat(matcher.matches(null, "a", 59L)).isFalse();
+        assertThat(matcher.matches(null, "a", 60L)).isTrue();
+        assertThat(matcher.matches(null, "a", 3600L)).isTrue();
+        assertThat(matcher.matches(null, "a", 3601L)).isFalse();
+        assertThat(matcher.matches(null, "a", null)).isFalse();
+        assertThat(request(null, null, null, 3600L).matcher().matches(null, "a", null)).isFalse();
+    }
+
+    @Test
+    void everyFilterThatIsSetMustMatch() {
+        RedriveRequest.Matcher matcher = request("timeout", "order-.*", 60L, null).matcher();
+
+        assertThat(matcher.matches("timeout", "order-1", 120L)).isTrue();
+        assertThat(matcher.matches("timeout", "order-1", 10L)).isFalse();
+        assertThat(matcher.matches("timeout", "refund-1", 120L)).isFalse();
+        assertThat(matcher.matches("poison", "order-1", 120L)).isFalse();
+    }
+
+    private static RedriveRequest request(String reason, String idPattern, Long minAge, Long maxAge) {
+        return new RedriveRequest(reason, idPattern, minAge, maxAge, null, null, true);
+    }
+}
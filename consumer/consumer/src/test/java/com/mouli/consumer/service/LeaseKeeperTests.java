@@ -0,0 +1,127 @@
+package com.mouli.consumer.service;
+
+import com.mouli.consumer.store.IdempotencyStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class LeaseKeeperTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final IdempotencyStore store = mock(IdempotencyStore.class);
+    // never started: the tests run the heartbeat themselves
+    private final LeaseKeeper keeper = new LeaseKeeper(store, registry, 3000, 0);
+
+    @Test
+    void heldLeasesAreRenewedInOneBatchedCall() {
+        when(store.renewAll(anyList(), anyList(), any())).thenReturn(List.of(true, true));
+        keeper.hold("a", "t1");
+        keeper.hold("b", "t2");
+
+        keeper.renew();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<String>> ids = ArgumentCaptor.forClass(List.class);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<String>> tokens = ArgumentCaptor.forClass(List.class);
+        verify(store, times(1)).renewAll(ids.capture(), tokens.capture(), any());
+        List<String> pairs = new ArrayList<>();
+        for (int i = 0; i < ids.getValue().size(); i++) {
+            pairs.add(ids.getValue().get(i) + "=" + tokens.getValue().get(i));
+        }
+        assertThat(pairs).containsExactlyInAnyOrder("a=t1", "b=t2");
+        assertThat(renewals("renewed")).isEqualTo(2);
+        assertThat(held()).isEqualTo(2);
+    }
+
+    @Test
+    void leaseRenewedWithTheConfiguredLength() {
+        when(store.renewAll(anyList(), anyList(), any())).thenReturn(List.of(true));
+        keeper.hold("a", "t1");
+
+        keeper.renew();
+
+        verify(store).renewAll(List.of("a"), List.of("t1"), Duration.ofMillis(3000));
+        assertThat(keeper.lease()).isEqualTo(Duration.ofMillis(3000));
+    }
+
+    @Test
+    void leaseThatCannotBeRenewedIsDropped() {
+        when(store.renewAll(anyList(), anyList(), any())).thenReturn(List.of(false));
+        keeper.hold("a", "t1");
+
+        keeper.renew();
+
+        assertThat(renewals("lost")).isEqualTo(1);
+        assertThat(held()).isZero();
+        keeper.renew();
+        verify(store, times(1)).renewAll(anyList(), anyList(), any());
+    }
+
+    @Test
+    void leaseFinishedDuringTheRenewalIsNotCountedLost() {
+        keeper.hold("a", "t1");
+        when(store.renewAll(anyList(), anyList(), any())).thenAnswer(invocation -> {
+            // marked (and so deleted) while the heartbeat was in flight
+            keeper.drop("a", "t1");
+            return List.of(false);
+        });
+
+        keeper.renew();
+
+        assertThat(renewals("lost")).isZero();
+        assertThat(held()).isZero();
+    }
+
+    @Test
+    void unreachableStoreKeepsTheLeasesForTheNextBeat() {
+        when(store.renewAll(anyList(), anyList(), any()))
+                .thenThrow(new IllegalStateException("Unable to connect to Redis"))
+                .thenReturn(List.of(true, true));
+        keeper.hold("a", "t1");
+        keeper.hold("b", "t2");
+
+        keeper.renew();
+        assertThat(renewals("error")).isEqualTo(2);
+        assertThat(held()).isEqualTo(2);
+
+        keeper.renew();
+        assertThat(renewals("renewed")).isEqualTo(2);
+    }
+
+    @Test
+    void dropRemovesOnlyTheMatchingClaim() {
+        keeper.hold("a", "t1");
+        keeper.drop("a", "someone-elses");
+        assertThat(held()).isEqualTo(1);
+
+        keeper.drop("a", "t1");
+        assertThat(held()).isZero();
+
+        keeper.hold("b", "t2");
+        keeper.drop("b");
+        keeper.renew();
+        verifyNoInteractions(store);
+    }
+
+    private double renewals(String result) {
+        return registry.get("consumer.lease.renewals").tag("result", result).counter().count();
+    }
+
+    private double held() {
+        return registry.get("consumer.lease.held").gauge().value();
+    }
+}
@@ -0,0 +1,170 @@
+package com.mouli.consumer.store;
+
+import com.mouli.consumer.service.ClaimResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedIdempotencyStoreTests {
+
+    private static final Duration LEASE = Duration.ofSeconds(5);
+    private static final long HORIZON_SECONDS = 3600;
+
+    @TempDir
+    Path dir;
+
+    private final MutableClock clock = new MutableClock();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private MappedIdempotencyStore store;
+
+    @AfterEach
+    void close() throws IOException {
+        if (store != null) store.close();
+    }
+
+    @Test
+    void claimMarkAndRelease() throws IOException {
+        store = open(0.7);
+
+        assertThat(store.claim("a", "t1", LEASE)).isEqualTo(ClaimResult.Status.FREE);
+        assertThat(store.claim("a", "t2", LEASE)).isEqualTo(ClaimResult.Status.CLAIMED);
+        assertThat(store.release("a", "t2")).isFalse();
+        assertThat(store.release("a", "t1")).isTrue();
+
+        assertThat(store.claim("a", "t3", LEASE)).isEqualTo(ClaimResult.Status.FREE);
+        assertThat(store.isProcessed("a")).isFalse();
+        assertThat(store.markProcessed("a", "t3")).isTrue();
+        assertThat(store.isProcessed("a")).isTrue();
+        assertThat(store.claim("a", "t4", LEASE)).isEqualTo(ClaimResult.Status.PROCESSED);
+        assertThat(store.release("a", "t3")).isFalse();
+    }
+
+    @Test
+    void lapsedLeaseIsTakenOverAndFencesTheOldHolder() throws IOException {
+        store = open(0.7);
+        store.claim("a", "old", LEASE);
+        assertThat(store.renew("a", "old", LEASE)).isTrue();
+
+        clock.advance(LEASE.plusMillis(1));
+        assertThat(store.renew("a", "old", LEASE)).isFalse();
+        assertThat(store.claim("a", "new", LEASE)).isEqualTo(ClaimResult.Status.FREE);
+
+        assertThat(store.markProcessed("a", "old")).isFalse();
+        assertThat(store.isProcessed("a")).isFalse();
+        assertThat(store.markProcessed("a", "new")).isTrue();
+        assertThat(store.isProcessed("a")).isTrue();
+    }
+
+    @Test
+    void lapsedLeaseNobodyTookOverDoesNotFence() throws IOException {
+        store = open(0.7);
+        store.claim("a", "t1", LEASE);
+        clock.advance(LEASE.plusMillis(1));
+
+        assertThat(store.markProcessed("a", "t1")).isTrue();
+        assertThat(store.isProcessed("a")).isTrue();
+    }
+
+    @Test
+    void processedMarkerExpiresAfterTheHorizon() throws IOException {
+        store = open(0.7);
+        store.markProcessed("a");
+
+        clock.advance(Duration.ofSeconds(HORIZON_SECONDS - 1));
+        assertThat(store.isProcessed("a")).isTrue();
+
+        clock.advance(Duration.ofSeconds(2));
+        assertThat(store.isProcessed("a")).isFalse();
+        assertThat(store.claim("a", "t1", LEASE)).isEqualTo(ClaimResult.Status.FREE);
+    }
+
+    @Test
+    void stateSurvivesReopen() throws IOException {
+        store = open(0.7);
+        store.markProcessed("done");
+        store.claim("busy", "t1", LEASE);
+        store.close();
+
+        store = open(0.7);
+        assertThat(store.isProcessed("done")).isTrue();
+        assertThat(store.claim("busy", "t2", LEASE)).isEqualTo(ClaimResult.Status.CLAIMED);
+        assertThat(store.release("busy", "t1")).isTrue();
+    }
+
+    @Test
+    void resizeGrowsWhileEntriesAreLive() throws IOException {
+        store = open(0.5);
+        for (int i = 0; i < 2000; i++) {
+            store.markProcessed("id-" + i);
+        }
+        assertThat(slots("capacity")).isGreaterThan(2000 / 0.5);
+        store.close();
+
+        store = open(0.5);
+        for (int i = 0; i < 2000; i++) {
+            assertThat(store.isProcessed("id-" + i)).as("id-" + i).isTrue();
+        }
+    }
+
+    @Test
+    void resizeDropsMarkersPastTheHorizonInsteadOfGrowing() throws IOException {
+        store = open(0.5);
+        // 1024 slots (the minimum); a rewrite is due at 512 used
+        for (int i = 0; i < 500; i++) {
+            store.markProcessed("old-" + i);
+        }
+        clock.advance(Duration.ofSeconds(HORIZON_SECONDS + 1));
+        for (int i = 0; i < 200; i++) {
+            store.markProcessed("new-" + i);
+        }
+
+        assertThat(slots("capacity")).isEqualTo(1024);
+        assertThat(slots("used")).isEqualTo(200);
+        assertThat(store.isProcessed("old-0")).isFalse();
+        assertThat(store.isProcessed("new-199")).isTrue();
+    }
+
+    private MappedIdempotencyStore open(double maxLoad) throws IOException {
+        return new MappedIdempotencyStore(dir.resolve("idempotency.dat").toString(), 1024, maxLoad,
+                HORIZON_SECONDS, registry, clock);
+    }
+
+    private double slots(String state) {
+        return registry.get("idempotency.local.slots").tag("state", state).gauge().value();
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(Duration by) {
+            now = now.plus(by);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
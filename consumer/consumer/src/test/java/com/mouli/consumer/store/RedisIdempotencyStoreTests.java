@@ -0,0 +1,135 @@
+package com.mouli.consumer.store;
+
+import com.mouli.consumer.MockRedis;
+import com.mouli.consumer.service.ClaimResult;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedisIdempotencyStoreTests {
+
+    private static final Duration LEASE = Duration.ofSeconds(5);
+
+    private static MockRedis redis;
+
+    private RedisIdempotencyStore store;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = new MockRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        redis.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        store = new RedisIdempotencyStore(new RedisNodes(List.of(redis.template())), 86400, 1024);
+    }
+
+    @Test
+    void claimMarkAndRelease() {
+        assertThat(store.claim("a", "t1", LEASE)).isEqualTo(ClaimResult.Status.FREE);
+        assertThat(store.claim("a", "t2", LEASE)).isEqualTo(ClaimResult.Status.CLAIMED);
+        assertThat(store.release("a", "t2")).isFalse();
+        assertThat(store.release("a", "t1")).isTrue();
+
+        assertThat(store.claim("a", "t3", LEASE)).isEqualTo(ClaimResult.Status.FREE);
+        assertThat(store.markProcessed("a", "t3")).isTrue();
+        assertThat(store.isProcessed("a")).isTrue();
+        assertThat(store.claim("a", "t4", LEASE)).isEqualTo(ClaimResult.Status.PROCESSED);
+        // the claim key is gone; the marker lives in the bucket hash
+        assertThat(redis.template().hasKey("processed:a")).isFalse();
+    }
+
+    @Test
+    void markerWrittenAsItsBucketEndsIsRememberedForTheWholeHorizon() {
+        long horizon = 3600;
+        // a bucket ahead of the real clock, so Redis has not expired it yet
+        long bucket = System.currentTimeMillis() / 1000 / horizon + 1;
+        long written = (bucket + 1) * horizon - 1;
+
+        assertThat(at(written, horizon).markProcessed("a", "t1")).isTrue();
+
+        assertThat(at(written + horizon, horizon).isProcessed("a")).isTrue();
+        assertThat(at(written + horizon, horizon).claim("a", "t2", LEASE)).isEqualTo(ClaimResult.Status.PROCESSED);
+        assertThat(at(written + horizon + 1, horizon).isProcessed("a")).isFalse();
+        // the hash expires just as lookups stop reading it
+        String key = RedisIdempotencyStore.BUCKET_PREFIX + bucket + ":"
+                + Math.floorMod(RedisNodes.hash64("a"), 1024);
+        long expiresAt = System.currentTimeMillis() / 1000 + redis.template().getExpire(key, TimeUnit.SECONDS);
+        assertThat(expiresAt).isBetween(written + horizon, written + horizon + 2);
+    }
+
+    @Test
+    void markWithAnotherHoldersTokenIsFenced() {
+        store.claim("a", "new", LEASE);
+
+        assertThat(store.markProcessed("a", "old")).isFalse();
+        assertThat(store.isProcessed("a")).isFalse();
+        assertThat(store.claim("a", "other", LEASE)).isEqualTo(ClaimResult.Status.CLAIMED);
+
+        assertThat(store.markProcessed("a", "new")).isTrue();
+        assertThat(store.isProcessed("a")).isTrue();
+    }
+
+    @Test
+    void lapsedLeaseIsTakenOverAndFencesTheOldHolder() throws InterruptedException {
+        store.claim("a", "old", Duration.ofMillis(50));
+        Thread.sleep(150);
+
+        assertThat(store.renew("a", "old", LEASE)).isFalse();
+        assertThat(store.claim("a", "new", LEASE)).isEqualTo(ClaimResult.Status.FREE);
+        assertThat(store.markProcessed("a", "old")).isFalse();
+        assertThat(store.markProcessed("a", "new")).isTrue();
+    }
+
+    @Test
+    void lapsedLeaseNobodyTookOverDoesNotFence() throws InterruptedException {
+        store.claim("a", "t1", Duration.ofMillis(50));
+        Thread.sleep(150);
+
+        assertThat(store.markProcessed("a", "t1")).isTrue();
+        assertThat(store.isProcessed("a")).isTrue();
+    }
+
+    @Test
+    void renewExtendsOnlyOurOwnLease() {
+        store.claim("a", "t1", Duration.ofMillis(1000));
+        store.claim("b", "t2", Duration.ofMillis(1000));
+
+        assertThat(store.renewAll(List.of("a", "b", "c"), List.of("t1", "other", "t3"), Duration.ofSeconds(60)))
+                .containsExactly(true, false, false);
+        assertThat(redis.template().getExpire("processed:a", TimeUnit.MILLISECONDS)).isGreaterThan(30_000);
+        assertThat(redis.template().getExpire("processed:b", TimeUnit.MILLISECONDS)).isLessThanOrEqualTo(1000);
+    }
+
+    @Test
+    void batchedFencedMarkReportsEachId() {
+        store.claimAll(List.of("a", "b"), List.of("t1", "t2"), LEASE);
+
+        assertThat(store.markAllProcessed(List.of("a", "b", "c"), List.of("t1", "stale", "t3")))
+                .containsExactly(true, false, true);
+        assertThat(store.isProcessed("a")).isTrue();
+        assertThat(store.isProcessed("b")).isFalse();
+        assertThat(store.isProcessed("c")).isTrue();
+    }
+
+    private static RedisIdempotencyStore at(long epochSecond, long horizonSeconds) {
+        return new RedisIdempotencyStore(new RedisNodes(List.of(redis.template())), horizonSeconds, 1024,
+                Clock.fixed(Instant.ofEpochSecond(epochSecond), ZoneOffset.UTC));
+    }
+}
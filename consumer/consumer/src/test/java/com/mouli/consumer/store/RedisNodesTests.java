@@ -0,0 +1,139 @@
+package com.mouli.consumer.store;
+
+import com.mouli.consumer.MockRedis;
+import com.mouli.consumer.service.ClaimResult;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedisNodesTests {
+
+    private static final Duration LEASE = Duration.ofSeconds(5);
+
+    // legacy is the pre-node connection; a and b are the nodes
+    private static MockRedis legacy;
+    private static MockRedis a;
+    private static MockRedis b;
+
+    @BeforeAll
+    static void startRedis() {
+        legacy = new MockRedis();
+        a = new MockRedis();
+        b = new MockRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        legacy.close();
+        a.close();
+        b.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        legacy.flushAll();
+        a.flushAll();
+        b.flushAll();
+    }
+
+    @Test
+    void idsSpreadEvenlyAndAppendingANodeOnlyMovesIdsOntoIt() {
+        RedisNodes three = nodes(3);
+        RedisNodes four = nodes(4);
+        int[] counts = new int[3];
+        int moved = 0;
+        for (int i = 0; i < 30_000; i++) {
+            String id = "msg-" + i;
+            int before = three.nodeOf(id);
+            int after = four.nodeOf(id);
+            counts[before]++;
+            if (after != before) {
+                assertThat(after).isEqualTo(3);
+                moved++;
+            }
+        }
+        for (int n : counts) assertThat(n).isBetween(9_000, 11_000);
+        assertThat(moved).isBetween(6_500, 8_500);
+    }
+
+    @Test
+    void perNodeCallsEachNodeWithItsOwnIdsAndKeepsTheCallersOrder() {
+        RedisNodes nodes = new RedisNodes(List.of(a.template(), b.template()));
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 100; i++) ids.add("msg-" + i);
+
+        List<String> results = nodes.perNode(ids, (redis, at) -> {
+            List<String> answered = new ArrayList<>(at.length);
+            for (int i : at) {
+                assertThat(nodes.nodeFor(ids.get(i))).isSameAs(redis);
+                answered.add(ids.get(i));
+            }
+            return answered;
+        });
+
+        assertThat(results).isEqualTo(ids);
+    }
+
+    @Test
+    void legacyMarkerOnThePreNodeConnectionIsFoundAndCopiedToTheIdsNode() {
+        RedisNodes nodes = new RedisNodes(List.of(a.template(), b.template()), legacy.template(), Duration.ofHours(1));
+        RedisIdempotencyStore store = new RedisIdempotencyStore(nodes, 86400, 1024);
+        legacy.template().opsForValue().set("processed:x", "PROCESSED");
+        legacy.template().opsForValue().set("processed:y", "PROCESSED");
+
+        assertThat(store.isProcessed("x")).isTrue();
+        assertThat(store.claim("x", "t1", LEASE)).isEqualTo(ClaimResult.Status.PROCESSED);
+        assertThat(store.claimAll(List.of("y", "z"), List.of("t2", "t3"), LEASE))
+                .containsExactly(ClaimResult.Status.PROCESSED, ClaimResult.Status.FREE);
+
+        // the copies answer on their own once the legacy markers are gone
+        legacy.flushAll();
+        assertThat(store.claim("x", "t4", LEASE)).isEqualTo(ClaimResult.Status.PROCESSED);
+        assertThat(store.isProcessed("y")).isTrue();
+        assertThat(nodes.nodeFor("x").hasKey("processed:x")).isFalse();
+    }
+
+    @Test
+    void legacyNodeIsNoLongerReadOnceItsMarkersHaveAgedOut() {
+        RedisNodes nodes = new RedisNodes(List.of(a.template(), b.template()), legacy.template(), Duration.ZERO);
+        RedisIdempotencyStore store = new RedisIdempotencyStore(nodes, 86400, 1024);
+        legacy.template().opsForValue().set("processed:x", "PROCESSED");
+
+        assertThat(nodes.legacyNode()).isNull();
+        assertThat(store.isProcessed("x")).isFalse();
+        assertThat(store.claim("x", "t1", LEASE)).isEqualTo(ClaimResult.Status.FREE);
+    }
+
+    @Test
+    void migratorExpiresLegacyMarkersOnEveryNode() throws InterruptedException {
+        RedisNodes nodes = new RedisNodes(List.of(a.template(), b.template()), legacy.template(), Duration.ofHours(1));
+        for (MockRedis redis : List.of(legacy, a, b)) {
+            redis.template().opsForValue().set("processed:old", "PROCESSED");
+            redis.template().opsForValue().set("processed:claimed", "some-token");
+        }
+        LegacyMarkerMigrator migrator = new LegacyMarkerMigrator(nodes, true, 3600, 10, 100_000, 60, 0);
+
+        assertThat(migrator.pass()).isEqualTo(3);
+        for (MockRedis redis : List.of(legacy, a, b)) {
+            assertThat(redis.template().getExpire("processed:old", TimeUnit.SECONDS)).isBetween(1L, 3600L);
+            assertThat(redis.template().getExpire("processed:claimed", TimeUnit.SECONDS)).isEqualTo(-1);
+        }
+        assertThat(migrator.pass()).isZero();
+    }
+
+    // the mapping only depends on the node count, so the same template can stand in for every node
+    private static RedisNodes nodes(int count) {
+        List<StringRedisTemplate> templates = new ArrayList<>();
+        for (int i = 0; i < count; i++) templates.add(a.template());
+        return new RedisNodes(templates);
+    }
+}
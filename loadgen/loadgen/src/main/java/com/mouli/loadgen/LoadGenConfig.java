@@ -0,0 +1,72 @@
+package com.mouli.loadgen;
+
+import com.mouli.loadgen.profile.LoadProfile;
+import com.mouli.loadgen.profile.RampProfile;
+import com.mouli.loadgen.profile.SoakProfile;
+import com.mouli.loadgen.profile.StepProfile;
+import com.mouli.loadgen.stub.StubTarget;
+import com.mouli.loadgen.tracking.RedisProcessedMarkers;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+@Configuration
+public class LoadGenConfig {
+
+    @Bean
+    public LoadProfile loadProfile(
+            @Value("${loadgen.profile:step}") String profile,
+            @Value("${loadgen.step.start-rate:100}") double stepStartRate,
+            @Value("${loadgen.step.increment:100}") double stepIncrement,
+            @Value("${loadgen.step.steps:10}") int steps,
+            @Value("${loadgen.step.duration-s:30}") long stepSeconds,
+            @Value("${loadgen.ramp.from-rate:10}") double rampFrom,
+            @Value("${loadgen.ramp.to-rate:1000}") double rampTo,
+            @Value("${loadgen.ramp.duration-s:300}") long rampSeconds,
+            @Value("${loadgen.ramp.window-s:30}") long rampWindowSeconds,
+            @Value("${loadgen.soak.rate:200}") double soakRate,
+            @Value("${loadgen.soak.duration-s:3600}") long soakSeconds,
+            @Value("${loadgen.soak.window-s:300}") long soakWindowSeconds) {
+        return switch (profile.toLowerCase()) {
+            case "step" -> new StepProfile(stepStartRate, stepIncrement, steps, stepSeconds);
+            case "ramp" -> new RampProfile(rampFrom, rampTo, rampSeconds, rampWindowSeconds);
+            case "soak" -> new SoakProfile(soakRate, soakSeconds, soakWindowSeconds);
+            default -> throw new IllegalArgumentException("loadgen.profile must be step, ramp or soak: " + profile);
+        };
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "loadgen.target", havingValue = "stub")
+    public StubTarget stubTarget(
+            ObjectMapper objectMapper,
+            @Value("${loadgen.stub.consumers:4}") int consumers,
+            @Value("${loadgen.stub.processing-ms:5}") long processingMs,
+            @Value("${loadgen.stub.failure-rate:0.3}") double failureRate,
+            @Value("${loadgen.stub.max-retries:3}") int maxRetries,
+            @Value("${loadgen.stub.retry-delay-ms:1000}") long retryDelayMs) throws IOException {
+        return new StubTarget(objectMapper, consumers, processingMs, failureRate, maxRetries, retryDelayMs);
+    }
+
+    // against the real stack markers are read from Redis (the consumer's nodes, if it has several);
+    // the stub answers for its own
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "loadgen.target", havingValue = "http", matchIfMissing = true)
+    public RedisProcessedMarkers processedMarkers(
+            StringRedisTemplate redis,
+            @Value("${loadgen.e2e.redis-nodes:}") String[] nodes,
+            @Value("${spring.data.redis.password:}") String password,
+            @Value("${loadgen.e2e.dedup-horizon-seconds:86400}") long horizonSeconds,
+            @Value("${loadgen.e2e.shards:1024}") int shards) {
+        List<String> hostPorts = Arrays.stream(nodes).map(String::trim).filter(n -> !n.isEmpty()).toList();
+        return hostPorts.isEmpty()
+                ? new RedisProcessedMarkers(redis, horizonSeconds, shards)
+                : RedisProcessedMarkers.connect(hostPorts, password, horizonSeconds, shards);
+    }
+}
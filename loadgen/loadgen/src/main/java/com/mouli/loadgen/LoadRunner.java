@@ -0,0 +1,211 @@
+package com.mouli.loadgen;
+
+import com.mouli.loadgen.client.CommandClient;
+import com.mouli.loadgen.client.SendResult;
+import com.mouli.loadgen.profile.LoadProfile;
+import com.mouli.loadgen.report.ConsumerStats;
+import com.mouli.loadgen.report.Reporter;
+import com.mouli.loadgen.report.RunStats;
+import com.mouli.loadgen.stub.StubTarget;
+import com.mouli.loadgen.tracking.EndToEndTracker;
+import com.mouli.loadgen.tracking.ProcessedMarkers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.ObjectMapper;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-model driver. Requests are issued on a schedule derived from the profile's target rate and
+ * never wait for earlier responses, so a slow system gets more concurrent requests, not fewer.
+ * Latencies are measured from each request's intended send time: when the dispatcher falls behind
+ * (GC, a full in-flight window) the delay is charged to the system rather than silently omitted.
+ */
+@Component
+public class LoadRunner implements CommandLineRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadRunner.class);
+
+    private final LoadProfile profile;
+    private final ProcessedMarkers markers;
+    private final StubTarget stub;
+    private final ObjectMapper objectMapper;
+
+    @Value("${loadgen.target:http}")
+    private String target;
+    @Value("${loadgen.producer-url:http://localhost:8080}")
+    private String producerUrl;
+    @Value("${loadgen.consumer-url:http://localhost:8081}")
+    private String consumerUrl;
+    @Value("${loadgen.mode:single}")
+    private String mode;
+    @Value("${loadgen.batch-size:50}")
+    private int batchSize;
+    @Value("${loadgen.await-confirm:false}")
+    private boolean awaitConfirm;
+    @Value("${loadgen.payload-bytes:256}")
+    private int payloadBytes;
+    @Value("${loadgen.max-in-flight:10000}")
+    private int maxInFlight;
+    @Value("${loadgen.request-timeout-ms:10000}")
+    private long requestTimeoutMs;
+    @Value("${loadgen.report-interval-s:5}")
+    private long reportIntervalSeconds;
+    @Value("${loadgen.e2e.enabled:true}")
+    private boolean e2eEnabled;
+    @Value("${loadgen.e2e.poll-interval-ms:20}")
+    private long e2ePollIntervalMs;
+    @Value("${loadgen.e2e.poll-batch:500}")
+    private int e2ePollBatch;
+    @Value("${loadgen.e2e.timeout-ms:180000}")
+    private long e2eTimeoutMs;
+    @Value("${loadgen.e2e.drain-timeout-s:90}")
+    private long e2eDrainSeconds;
+    @Value("${loadgen.results-dir:results}")
+    private String resultsDir;
+    @Value("${loadgen.label:}")
+    private String label;
+
+    private final AtomicLong inFlight = new AtomicLong();
+
+    public LoadRunner(LoadProfile profile, ProcessedMarkers markers, ObjectProvider<StubTarget> stub,
+                      ObjectMapper objectMapper) {
+        this.profile = profile;
+        this.markers = markers;
+        this.stub = stub.getIfAvailable();
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        if (stub != null) {
+            producerUrl = stub.baseUrl();
+            consumerUrl = stub.baseUrl();
+        }
+        boolean batch = "batch".equalsIgnoreCase(mode);
+        int perRequest = batch ? batchSize : 1;
+        String runLabel = label.isBlank()
+                ? "loadgen-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) : label;
+        String runId = UUID.randomUUID().toString().substring(0, 8);
+
+        CommandClient client = new CommandClient(objectMapper, producerUrl, awaitConfirm, payloadBytes,
+                Duration.ofMillis(requestTimeoutMs));
+        long start = System.nanoTime();
+        RunStats stats = new RunStats(profile, start);
+        EndToEndTracker tracker = new EndToEndTracker(markers, stats, e2ePollIntervalMs, e2eTimeoutMs, e2ePollBatch);
+        if (e2eEnabled) tracker.start();
+
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("label", runLabel);
+        run.put("startedAt", Instant.now().toString());
+        run.put("target", target);
+        run.put("producerUrl", producerUrl);
+        run.put("profile", profile.toString());
+        run.put("mode", batch ? "batch" : "single");
+        run.put("batchSize", perRequest);
+        run.put("awaitConfirm", awaitConfirm);
+        run.put("payloadBytes", payloadBytes);
+
+        log.info("[LOAD_START] {} against {} ({} per request), {}s", profile, producerUrl, perRequest,
+                TimeUnit.NANOSECONDS.toSeconds(profile.durationNanos()));
+
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        try (Reporter reporter = new Reporter(stats, new ConsumerStats(objectMapper, consumerUrl), objectMapper,
+                Path.of(resultsDir), runLabel, start)) {
+            ticker.scheduleAtFixedRate(() -> reporter.tick(
+                            profile.rateAt(Math.min(System.nanoTime() - start, profile.durationNanos())),
+                            inFlight.get(), tracker.pending()),
+                    reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+
+            long seq = 0;
+            long intended = start;
+            while (intended - start < profile.durationNanos()) {
+                double rate = profile.rateAt(intended - start);
+                if (rate <= 0) {
+                    intended += TimeUnit.MILLISECONDS.toNanos(100);
+                    continue;
+                }
+                parkUntil(intended);
+
+                stats.offered(intended, perRequest);
+                if (inFlight.get() >= maxInFlight) {
+                    stats.dropped(intended, perRequest);
+                } else {
+                    List<String> ids = new ArrayList<>(perRequest);
+                    for (int i = 0; i < perRequest; i++) {
+                        ids.add("lg-" + runId + "-" + seq++);
+                    }
+                    fire(client, batch, ids, intended, stats, tracker);
+                }
+                intended += (long) (perRequest * 1e9 / rate);
+            }
+
+            awaitInFlight();
+            if (e2eEnabled) tracker.drain(TimeUnit.SECONDS.toMillis(e2eDrainSeconds));
+            ticker.shutdownNow();
+            reporter.tick(0, inFlight.get(), tracker.pending());
+            reporter.finish(run, tracker.completed(), tracker.timedOut(), tracker.pending());
+        } finally {
+            ticker.shutdownNow();
+        }
+    }
+
+    private void fire(CommandClient client, boolean batch, List<String> ids, long intended,
+                      RunStats stats, EndToEndTracker tracker) {
+        inFlight.incrementAndGet();
+        long sent = System.nanoTime();
+        CompletableFuture<SendResult> response = batch ? client.sendBatch(ids) : client.send(ids.get(0));
+        response.whenComplete((result, ex) -> {
+            inFlight.decrementAndGet();
+            stats.response(intended, sent, System.nanoTime());
+            if (ex != null) {
+                stats.error(intended, ids.size());
+                return;
+            }
+            if (!result.acceptedIds().isEmpty()) {
+                stats.accepted(intended, result.acceptedIds().size());
+                if (e2eEnabled) result.acceptedIds().forEach(id -> tracker.track(id, intended));
+            }
+            if (result.rejected() > 0) {
+                if (result.status() >= 500) {
+                    stats.error(intended, result.rejected());
+                } else {
+                    stats.rejected(intended, result.rejected(), result.throttled());
+                }
+            }
+        });
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(requestTimeoutMs * 2);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void parkUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.mouli.loadgen.client;
+
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+/**
+ * Async client for POST /command and POST /command/batch. Requests never wait for each other:
+ * the generator fires on schedule and responses are handled on virtual threads.
+ */
+public class CommandClient {
+
+    private final HttpClient http;
+    private final ObjectMapper objectMapper;
+    private final URI single;
+    private final URI batch;
+    private final Duration timeout;
+    private final String note;
+
+    public CommandClient(ObjectMapper objectMapper, String producerUrl, boolean awaitConfirm,
+                         int payloadBytes, Duration timeout) {
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        this.objectMapper = objectMapper;
+        this.single = URI.create(producerUrl + "/command?awaitConfirm=" + awaitConfirm);
+        this.batch = URI.create(producerUrl + "/command/batch");
+        this.timeout = timeout;
+        // the fixed fields below take roughly 100 bytes of the body
+        this.note = "x".repeat(Math.max(0, payloadBytes - 100));
+    }
+
+    public CompletableFuture<SendResult> send(String messageId) {
+        return post(single, command(messageId)).thenApply(response -> response.statusCode() == 202
+                ? new SendResult(202, List.of(messageId), 0, null)
+                : new SendResult(response.statusCode(), List.of(), 1, response.body()));
+    }
+
+    public CompletableFuture<SendResult> sendBatch(List<String> messageIds) {
+        List<Map<String, Object>> commands = new ArrayList<>(messageIds.size());
+        for (String id : messageIds) {
+            commands.add(command(id));
+        }
+        return post(batch, commands).thenApply(response -> {
+            if (response.statusCode() != 200) {
+                return new SendResult(response.statusCode(), List.of(), messageIds.size(), response.body());
+            }
+            List<String> accepted = new ArrayList<>(messageIds.size());
+            for (JsonNode result : objectMapper.readTree(response.body()).path("results")) {
+                if ("ACCEPTED".equals(result.path("status").asString())) {
+                    accepted.add(result.path("messageId").asString());
+                }
+            }
+            return new SendResult(200, accepted, messageIds.size() - accepted.size(), null);
+        });
+    }
+
+    private Map<String, Object> command(String messageId) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("type", "LOAD_TEST");
+        payload.put("note", note);
+        return Map.of("messageId", messageId, "payload", payload);
+    }
+
+    private CompletableFuture<HttpResponse<String>> post(URI uri, Object body) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                .build();
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
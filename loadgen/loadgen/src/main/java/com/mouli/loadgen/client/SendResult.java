@@ -0,0 +1,18 @@
+package com.mouli.loadgen.client;
+
+import java.util.List;
+
+/**
+ * Outcome of one POST. acceptedIds are the messageIds the producer took (all of them for a 202
+ * on /command, the ACCEPTED items for /command/batch); only those are tracked end to end.
+ */
+public record SendResult(int status, List<String> acceptedIds, int rejected, String error) {
+
+    public static SendResult failed(String error) {
+        return new SendResult(-1, List.of(), 0, error);
+    }
+
+    public boolean throttled() {
+        return status == 429;
+    }
+}
@@ -0,0 +1,15 @@
+package com.mouli.loadgen.profile;
+
+/**
+ * Target arrival rate over time. The rate is in messages per second in both single and batch mode,
+ * so runs with different modes can be compared at the same offered load.
+ * Results are summarised per phase: one phase per step, or per fixed window for ramp and soak.
+ */
+public interface LoadProfile {
+
+    double rateAt(long elapsedNanos);
+
+    long durationNanos();
+
+    String phaseAt(long elapsedNanos);
+}
@@ -0,0 +1,28 @@
+package com.mouli.loadgen.profile;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Linear ramp from fromRate to toRate over durationSeconds, summarised in windowSeconds slices.
+ */
+public record RampProfile(double fromRate, double toRate, long durationSeconds, long windowSeconds)
+        implements LoadProfile {
+
+    @Override
+    public double rateAt(long elapsedNanos) {
+        double progress = Math.min(1.0, (double) elapsedNanos / durationNanos());
+        return fromRate + (toRate - fromRate) * progress;
+    }
+
+    @Override
+    public long durationNanos() {
+        return TimeUnit.SECONDS.toNanos(durationSeconds);
+    }
+
+    @Override
+    public String phaseAt(long elapsedNanos) {
+        long window = TimeUnit.SECONDS.toNanos(windowSeconds);
+        long start = Math.min(elapsedNanos, durationNanos() - 1) / window * window;
+        return String.format("ramp-%.0f-%.0f/s", rateAt(start), rateAt(Math.min(start + window, durationNanos())));
+    }
+}
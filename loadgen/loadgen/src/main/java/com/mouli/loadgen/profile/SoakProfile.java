@@ -0,0 +1,26 @@
+package com.mouli.loadgen.profile;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Constant rate for a long time. Each windowSeconds slice is its own phase, so drift
+ * (growing latency, queue build-up, rising retry / DLQ rates) shows up as a trend across phases.
+ */
+public record SoakProfile(double rate, long durationSeconds, long windowSeconds) implements LoadProfile {
+
+    @Override
+    public double rateAt(long elapsedNanos) {
+        return rate;
+    }
+
+    @Override
+    public long durationNanos() {
+        return TimeUnit.SECONDS.toNanos(durationSeconds);
+    }
+
+    @Override
+    public String phaseAt(long elapsedNanos) {
+        long window = Math.min(elapsedNanos, durationNanos() - 1) / TimeUnit.SECONDS.toNanos(windowSeconds);
+        return String.format("soak-%03d@%.0f/s", window + 1, rate);
+    }
+}
@@ -0,0 +1,30 @@
+package com.mouli.loadgen.profile;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * startRate, startRate + increment, ... held for stepSeconds each. The step where latency
+ * percentiles turn up sharply (or achieved throughput stops following the target) is the saturation point.
+ */
+public record StepProfile(double startRate, double increment, int steps, long stepSeconds) implements LoadProfile {
+
+    @Override
+    public double rateAt(long elapsedNanos) {
+        return startRate + increment * step(elapsedNanos);
+    }
+
+    @Override
+    public long durationNanos() {
+        return TimeUnit.SECONDS.toNanos(stepSeconds) * steps;
+    }
+
+    @Override
+    public String phaseAt(long elapsedNanos) {
+        int step = step(elapsedNanos);
+        return String.format("step-%02d@%.0f/s", step + 1, startRate + increment * step);
+    }
+
+    private int step(long elapsedNanos) {
+        return (int) Math.min(steps - 1, elapsedNanos / TimeUnit.SECONDS.toNanos(stepSeconds));
+    }
+}
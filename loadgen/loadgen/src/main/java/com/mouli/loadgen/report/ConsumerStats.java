@@ -0,0 +1,51 @@
+package com.mouli.loadgen.report;
+
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.OptionalDouble;
+
+/**
+ * Reads the consumer's consumer.messages{outcome} counters from its actuator, so retry and DLQ
+ * rates can be reported next to the latencies. Counters are cumulative; the reporter diffs them.
+ */
+public class ConsumerStats {
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+    private final ObjectMapper objectMapper;
+    private final String consumerUrl;
+
+    public ConsumerStats(ObjectMapper objectMapper, String consumerUrl) {
+        this.objectMapper = objectMapper;
+        this.consumerUrl = consumerUrl;
+    }
+
+    /** Empty if the consumer (or its metrics endpoint) cannot be reached. */
+    public OptionalDouble count(String outcome) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(
+                            consumerUrl + "/actuator/metrics/consumer.messages?tag=outcome:" + outcome))
+                    .timeout(Duration.ofSeconds(2))
+                    .GET()
+                    .build();
+            HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) return OptionalDouble.empty();
+            for (JsonNode measurement : objectMapper.readTree(response.body()).path("measurements")) {
+                if ("COUNT".equals(measurement.path("statistic").asString())) {
+                    return OptionalDouble.of(measurement.path("value").asDouble());
+                }
+            }
+            return OptionalDouble.empty();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return OptionalDouble.empty();
+        } catch (Exception ex) {
+            return OptionalDouble.empty();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.mouli.loadgen.report;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Totals for one phase of the profile. Requests are attributed by their intended send time, so a
+ * message that only completes after the next step started still counts towards the step that sent it.
+ * Consumer retry / DLQ counts are attributed by the reporting interval in which they were observed.
+ */
+class PhaseStats {
+
+    final String name;
+    final double targetRate;
+    final Histogram responseTime = new ConcurrentHistogram(3);
+    final Histogram serviceTime = new ConcurrentHistogram(3);
+    final Histogram endToEnd = new ConcurrentHistogram(3);
+    final LongAdder offered = new LongAdder();
+    final LongAdder accepted = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    final LongAdder throttled = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder dropped = new LongAdder();
+    final LongAdder retried = new LongAdder();
+    final LongAdder deadLettered = new LongAdder();
+    volatile long firstNanos = Long.MAX_VALUE;
+    volatile long lastNanos;
+
+    PhaseStats(String name, double targetRate) {
+        this.name = name;
+        this.targetRate = targetRate;
+    }
+
+    void sawIntended(long elapsedNanos) {
+        if (elapsedNanos < firstNanos) firstNanos = elapsedNanos;
+        if (elapsedNanos > lastNanos) lastNanos = elapsedNanos;
+    }
+
+    double seconds() {
+        return firstNanos == Long.MAX_VALUE ? 0 : Math.max(1, lastNanos - firstNanos) / 1e9;
+    }
+}
@@ -0,0 +1,181 @@
+package com.mouli.loadgen.report;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints one line per reporting interval and, at the end, one line per phase.
+ * Writes results/&lt;label&gt;.json (per-phase summary) and results/&lt;label&gt;.hlog
+ * (HdrHistogram interval log, tags "response" and "e2e", readable with HistogramLogProcessor / HistogramLogAnalyzer).
+ */
+public class Reporter implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(Reporter.class);
+
+    private final RunStats stats;
+    private final ConsumerStats consumer;
+    private final ObjectMapper objectMapper;
+    private final Path summaryFile;
+    private final HistogramLogWriter histogramLog;
+    private final long startNanos;
+
+    private long lastTickNanos;
+    private long lastOffered;
+    private long lastAccepted;
+    private long lastFailed;
+    private OptionalDouble lastRetried;
+    private OptionalDouble lastDeadLettered;
+
+    public Reporter(RunStats stats, ConsumerStats consumer, ObjectMapper objectMapper,
+                    Path resultsDir, String label, long startNanos) throws Exception {
+        this.stats = stats;
+        this.consumer = consumer;
+        this.objectMapper = objectMapper;
+        Files.createDirectories(resultsDir);
+        this.summaryFile = resultsDir.resolve(label + ".json");
+        this.histogramLog = histogramLog(resultsDir.resolve(label + ".hlog"));
+        this.startNanos = startNanos;
+        this.lastTickNanos = startNanos;
+        this.lastRetried = consumer.count("retried");
+        this.lastDeadLettered = consumer.count("dead_lettered");
+    }
+
+    private static HistogramLogWriter histogramLog(Path file) throws FileNotFoundException {
+        HistogramLogWriter writer = new HistogramLogWriter(file.toFile());
+        writer.outputLogFormatVersion();
+        writer.outputLegend();
+        return writer;
+    }
+
+    public void tick(double targetRate, long inFlight, int e2ePending) {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastTickNanos) / 1e9;
+        lastTickNanos = now;
+
+        Histogram response = stats.responseTime.getIntervalHistogram();
+        Histogram endToEnd = stats.endToEnd.getIntervalHistogram();
+        response.setTag("response");
+        endToEnd.setTag("e2e");
+        histogramLog.outputIntervalHistogram(response);
+        histogramLog.outputIntervalHistogram(endToEnd);
+
+        long offered = stats.offered.sum();
+        long accepted = stats.accepted.sum();
+        long failed = stats.failed.sum();
+
+        OptionalDouble retried = consumer.count("retried");
+        OptionalDouble deadLettered = consumer.count("dead_lettered");
+        long retriedDelta = delta(retried, lastRetried);
+        long deadLetteredDelta = delta(deadLettered, lastDeadLettered);
+        lastRetried = retried;
+        lastDeadLettered = deadLettered;
+        stats.consumerOutcomes(now, Math.max(0, retriedDelta), Math.max(0, deadLetteredDelta));
+
+        log.info("[INTERVAL] t={}s target={}/s offered={}/s accepted={}/s failed={}/s inFlight={} "
+                        + "response(ms) p50={} p99={} p99.9={} max={} e2e(ms) p50={} p99={} max={} e2ePending={} "
+                        + "retried={}/s dlq={}/s",
+                TimeUnit.NANOSECONDS.toSeconds(now - startNanos), fmt(targetRate),
+                fmt((offered - lastOffered) / seconds), fmt((accepted - lastAccepted) / seconds),
+                fmt((failed - lastFailed) / seconds), inFlight,
+                ms(response, 50), ms(response, 99), ms(response, 99.9), ms(response, 100),
+                ms(endToEnd, 50), ms(endToEnd, 99), ms(endToEnd, 100), e2ePending,
+                retriedDelta < 0 ? "n/a" : fmt(retriedDelta / seconds),
+                deadLetteredDelta < 0 ? "n/a" : fmt(deadLetteredDelta / seconds));
+
+        lastOffered = offered;
+        lastAccepted = accepted;
+        lastFailed = failed;
+    }
+
+    /** Prints the per-phase table and writes the JSON summary. */
+    public void finish(Map<String, Object> run, long e2eCompleted, long e2eTimedOut, int e2ePending) throws Exception {
+        List<Map<String, Object>> phases = new ArrayList<>();
+        for (PhaseStats phase : stats.phases()) {
+            double seconds = phase.seconds();
+            Map<String, Object> p = new LinkedHashMap<>();
+            p.put("phase", phase.name);
+            p.put("targetRate", round(phase.targetRate));
+            p.put("seconds", round(seconds));
+            p.put("offered", phase.offered.sum());
+            p.put("accepted", phase.accepted.sum());
+            p.put("throughput", round(phase.accepted.sum() / seconds));
+            p.put("rejected", phase.rejected.sum());
+            p.put("throttled", phase.throttled.sum());
+            p.put("errors", phase.errors.sum());
+            p.put("dropped", phase.dropped.sum());
+            p.put("retried", phase.retried.sum());
+            p.put("deadLettered", phase.deadLettered.sum());
+            p.put("retryRate", round(phase.retried.sum() / seconds));
+            p.put("dlqRate", round(phase.deadLettered.sum() / seconds));
+            p.put("responseTimeMs", percentiles(phase.responseTime));
+            p.put("serviceTimeMs", percentiles(phase.serviceTime));
+            p.put("endToEndMs", percentiles(phase.endToEnd));
+            phases.add(p);
+
+            log.info("[PHASE] {} target={}/s throughput={}/s offered={} accepted={} rejected={} throttled={} "
+                            + "errors={} dropped={} response(ms) p50={} p99={} p99.9={} service p99={} "
+                            + "e2e(ms) p50={} p99={} p99.9={} n={} retried={}/s dlq={}/s",
+                    phase.name, fmt(phase.targetRate), fmt(phase.accepted.sum() / seconds),
+                    phase.offered.sum(), phase.accepted.sum(), phase.rejected.sum(), phase.throttled.sum(),
+                    phase.errors.sum(), phase.dropped.sum(),
+                    ms(phase.responseTime, 50), ms(phase.responseTime, 99), ms(phase.responseTime, 99.9),
+                    ms(phase.serviceTime, 99),
+                    ms(phase.endToEnd, 50), ms(phase.endToEnd, 99), ms(phase.endToEnd, 99.9),
+                    phase.endToEnd.getTotalCount(),
+                    fmt(phase.retried.sum() / seconds), fmt(phase.deadLettered.sum() / seconds));
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>(run);
+        summary.put("endToEnd", Map.of("completed", e2eCompleted, "timedOut", e2eTimedOut, "pending", e2ePending));
+        summary.put("phases", phases);
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(summaryFile.toFile(), summary);
+        log.info("[RESULTS] {} completed={} timedOut={} pending={}", summaryFile, e2eCompleted, e2eTimedOut, e2ePending);
+    }
+
+    @Override
+    public void close() {
+        histogramLog.close();
+    }
+
+    private static Map<String, Object> percentiles(Histogram h) {
+        Map<String, Object> p = new LinkedHashMap<>();
+        p.put("count", h.getTotalCount());
+        p.put("p50", ms(h, 50));
+        p.put("p90", ms(h, 90));
+        p.put("p99", ms(h, 99));
+        p.put("p99.9", ms(h, 99.9));
+        p.put("max", ms(h, 100));
+        return p;
+    }
+
+    private static double ms(Histogram h, double percentile) {
+        if (h.getTotalCount() == 0) return 0;
+        long nanos = percentile >= 100 ? h.getMaxValue() : h.getValueAtPercentile(percentile);
+        return round(nanos / 1e6);
+    }
+
+    private static long delta(OptionalDouble now, OptionalDouble before) {
+        return now.isPresent() && before.isPresent() ? (long) (now.getAsDouble() - before.getAsDouble()) : -1;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static String fmt(double value) {
+        return String.format("%.1f", value);
+    }
+}
@@ -0,0 +1,96 @@
+package com.mouli.loadgen.report;
+
+import com.mouli.loadgen.profile.LoadProfile;
+import org.HdrHistogram.Recorder;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Everything the generator measures, recorded lock-free from the dispatcher, response and poller threads.
+ * All latencies are in nanoseconds:
+ *
+ * response time  intended send time -> HTTP response (coordinated-omission corrected)
+ * service time   actual send time -> HTTP response (what a closed-loop tool would report)
+ * end to end     intended send time -> processed marker seen
+ *
+ * Recorders feed the per-interval report lines; {@link PhaseStats} keep the per-phase totals.
+ */
+public class RunStats {
+
+    final Recorder responseTime = new Recorder(3);
+    final Recorder endToEnd = new Recorder(3);
+    final LongAdder offered = new LongAdder();
+    final LongAdder accepted = new LongAdder();
+    final LongAdder failed = new LongAdder();
+
+    private final LoadProfile profile;
+    private final long startNanos;
+    // sorted by name, which for every profile is also chronological
+    private final Map<String, PhaseStats> phases = new ConcurrentSkipListMap<>();
+
+    public RunStats(LoadProfile profile, long startNanos) {
+        this.profile = profile;
+        this.startNanos = startNanos;
+    }
+
+    public void offered(long intendedNanos, int messages) {
+        offered.add(messages);
+        PhaseStats phase = phase(intendedNanos);
+        phase.offered.add(messages);
+        phase.sawIntended(intendedNanos - startNanos);
+    }
+
+    public void response(long intendedNanos, long sentNanos, long receivedNanos) {
+        long responseTime = Math.max(0, receivedNanos - intendedNanos);
+        this.responseTime.recordValue(responseTime);
+        PhaseStats phase = phase(intendedNanos);
+        phase.responseTime.recordValue(responseTime);
+        phase.serviceTime.recordValue(Math.max(0, receivedNanos - sentNanos));
+    }
+
+    public void accepted(long intendedNanos, int messages) {
+        accepted.add(messages);
+        phase(intendedNanos).accepted.add(messages);
+    }
+
+    /** throttled = 429 from the producer's admission control, rejected = any other non-2xx / invalid item */
+    public void rejected(long intendedNanos, int messages, boolean throttled) {
+        failed.add(messages);
+        PhaseStats phase = phase(intendedNanos);
+        (throttled ? phase.throttled : phase.rejected).add(messages);
+    }
+
+    public void error(long intendedNanos, int messages) {
+        failed.add(messages);
+        phase(intendedNanos).errors.add(messages);
+    }
+
+    /** the in-flight cap was hit: the generator itself could not keep the schedule */
+    public void dropped(long intendedNanos, int messages) {
+        failed.add(messages);
+        phase(intendedNanos).dropped.add(messages);
+    }
+
+    public void endToEnd(long intendedNanos, long latencyNanos) {
+        endToEnd.recordValue(latencyNanos);
+        phase(intendedNanos).endToEnd.recordValue(latencyNanos);
+    }
+
+    void consumerOutcomes(long observedNanos, long retried, long deadLettered) {
+        PhaseStats phase = phase(observedNanos);
+        phase.retried.add(retried);
+        phase.deadLettered.add(deadLettered);
+    }
+
+    Collection<PhaseStats> phases() {
+        return phases.values();
+    }
+
+    private PhaseStats phase(long nanos) {
+        long elapsed = Math.max(0, nanos - startNanos);
+        return phases.computeIfAbsent(profile.phaseAt(elapsed), name -> new PhaseStats(name, profile.rateAt(elapsed)));
+    }
+}
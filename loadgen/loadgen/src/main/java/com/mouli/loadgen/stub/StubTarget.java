@@ -0,0 +1,146 @@
+package com.mouli.loadgen.stub;
+
+import com.mouli.loadgen.tracking.ProcessedMarkers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for the producer, broker and consumer (loadgen.target=stub), so the
+ * generator and its reporting can be exercised without the docker-compose stack.
+ *
+ * POST /command and /command/batch queue messages for a fixed pool of simulated consumers that
+ * each take processing-ms per message, so the stub saturates at consumers * 1000 / processing-ms
+ * messages per second. A failure-rate share of attempts is retried after retry-delay-ms, up to
+ * max-retries, then dead-lettered. Outcome counters are served like the consumer's actuator.
+ */
+public class StubTarget implements ProcessedMarkers, AutoCloseable {
+
+    private final ObjectMapper objectMapper;
+    private final HttpServer server;
+    private final ExecutorService consumers;
+    private final ScheduledExecutorService retries =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().factory());
+    private final long processingMs;
+    private final double failureRate;
+    private final int maxRetries;
+    private final long retryDelayMs;
+    private final Set<String> processed = ConcurrentHashMap.newKeySet();
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+    public StubTarget(ObjectMapper objectMapper, int consumerThreads, long processingMs,
+                      double failureRate, int maxRetries, long retryDelayMs) throws IOException {
+        this.objectMapper = objectMapper;
+        this.processingMs = processingMs;
+        this.failureRate = failureRate;
+        this.maxRetries = maxRetries;
+        this.retryDelayMs = retryDelayMs;
+        this.consumers = Executors.newFixedThreadPool(consumerThreads, Thread.ofPlatform().daemon().factory());
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext("/command", this::handleCommand);
+        this.server.createContext("/actuator/metrics/consumer.messages", this::handleMetrics);
+        this.server.start();
+    }
+
+    public String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    @Override
+    public List<Boolean> areProcessed(List<String> messageIds) {
+        List<Boolean> result = new ArrayList<>(messageIds.size());
+        for (String id : messageIds) {
+            result.add(processed.contains(id));
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        consumers.shutdownNow();
+        retries.shutdownNow();
+    }
+
+    private void handleCommand(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            JsonNode body = objectMapper.readTree(exchange.getRequestBody());
+            if (exchange.getRequestURI().getPath().endsWith("/batch")) {
+                List<Map<String, Object>> results = new ArrayList<>();
+                int index = 0;
+                for (JsonNode command : body) {
+                    String id = command.path("messageId").asString();
+                    enqueue(id, 0);
+                    results.add(Map.of("index", index++, "messageId", id, "status", "ACCEPTED"));
+                }
+                respond(exchange, 200, Map.of("accepted", results.size(), "rejected", 0, "results", results));
+            } else {
+                String id = body.path("messageId").asString();
+                enqueue(id, 0);
+                respond(exchange, 202, Map.of("status", "ACCEPTED", "messageId", id));
+            }
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String query = exchange.getRequestURI().getQuery();
+            String outcome = query == null ? "" : query.substring(query.lastIndexOf(':') + 1);
+            Map<String, Object> measurement = new LinkedHashMap<>();
+            measurement.put("statistic", "COUNT");
+            measurement.put("value", outcomes.computeIfAbsent(outcome, o -> new LongAdder()).sum());
+            respond(exchange, 200, Map.of("name", "consumer.messages", "measurements", List.of(measurement)));
+        }
+    }
+
+    private void enqueue(String id, int attempt) {
+        consumers.execute(() -> process(id, attempt));
+    }
+
+    private void process(String id, int attempt) {
+        try {
+            Thread.sleep(processingMs);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (ThreadLocalRandom.current().nextDouble() >= failureRate) {
+            processed.add(id);
+            count("processed");
+        } else if (attempt < maxRetries) {
+            count("retried");
+            retries.schedule(() -> enqueue(id, attempt + 1), retryDelayMs, TimeUnit.MILLISECONDS);
+        } else {
+            count("dead_lettered");
+        }
+    }
+
+    private void count(String outcome) {
+        outcomes.computeIfAbsent(outcome, o -> new LongAdder()).increment();
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
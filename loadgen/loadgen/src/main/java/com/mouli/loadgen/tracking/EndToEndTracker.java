@@ -0,0 +1,119 @@
+package com.mouli.loadgen.tracking;
+
+import com.mouli.loadgen.report.RunStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Follows accepted messageIds until the consumer marks them processed.
+ * Latency runs from the request's intended send time to the poll that first saw the marker, so it
+ * includes queueing, retry delays and up to one poll interval of detection lag.
+ * Ids not seen within the timeout (typically dead-lettered) are counted and dropped.
+ */
+public class EndToEndTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(EndToEndTracker.class);
+
+    private final ProcessedMarkers markers;
+    private final RunStats stats;
+    private final long pollIntervalMs;
+    private final long timeoutNanos;
+    private final int pollBatch;
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private volatile boolean running = true;
+    private Thread poller;
+
+    public EndToEndTracker(ProcessedMarkers markers, RunStats stats,
+                           long pollIntervalMs, long timeoutMs, int pollBatch) {
+        this.markers = markers;
+        this.stats = stats;
+        this.pollIntervalMs = pollIntervalMs;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.pollBatch = pollBatch;
+    }
+
+    public void start() {
+        poller = Thread.ofPlatform().daemon().name("e2e-poller").start(this::pollLoop);
+    }
+
+    public void track(String messageId, long intendedNanos) {
+        pending.put(messageId, intendedNanos);
+    }
+
+    /** Keep polling until every tracked id completed or timed out, or maxWaitMs passed. */
+    public void drain(long maxWaitMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        while (!pending.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(pollIntervalMs);
+        }
+        running = false;
+        poller.join();
+    }
+
+    public long completed() {
+        return completed.sum();
+    }
+
+    public long timedOut() {
+        return timedOut.sum();
+    }
+
+    public int pending() {
+        return pending.size();
+    }
+
+    private void pollLoop() {
+        while (running) {
+            try {
+                pollOnce();
+            } catch (RuntimeException ex) {
+                log.warn("[E2E_POLL_FAILED] {}", ex.getMessage());
+            }
+            try {
+                Thread.sleep(pollIntervalMs);
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    private void pollOnce() {
+        List<String> ids = new ArrayList<>(pollBatch);
+        Iterator<String> it = pending.keySet().iterator();
+        while (it.hasNext()) {
+            ids.add(it.next());
+            if (ids.size() == pollBatch || !it.hasNext()) {
+                check(ids);
+                ids = new ArrayList<>(pollBatch);
+            }
+        }
+    }
+
+    private void check(List<String> ids) {
+        List<Boolean> processed = markers.areProcessed(ids);
+        long now = System.nanoTime();
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            Long intended = pending.get(id);
+            if (intended == null) continue;
+            if (processed.get(i)) {
+                stats.endToEnd(intended, Math.max(0, now - intended));
+                pending.remove(id);
+                completed.increment();
+            } else if (now - intended > timeoutNanos) {
+                pending.remove(id);
+                timedOut.increment();
+            }
+        }
+    }
+}
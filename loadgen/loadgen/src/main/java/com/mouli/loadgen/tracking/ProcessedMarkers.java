@@ -0,0 +1,12 @@
+package com.mouli.loadgen.tracking;
+
+import java.util.List;
+
+/**
+ * Where the generator looks for the consumer's "processed" marker.
+ */
+public interface ProcessedMarkers {
+
+    /** One entry per id, in order: true once the consumer has marked that id processed. */
+    List<Boolean> areProcessed(List<String> messageIds);
+}
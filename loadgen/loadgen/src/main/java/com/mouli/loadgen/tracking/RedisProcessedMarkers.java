@@ -0,0 +1,126 @@
+package com.mouli.loadgen.tracking;
+
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the consumer's PROCESSED markers: field &lt;messageId&gt; in processed:bucket:&lt;bucket&gt;:&lt;shard&gt;.
+ * The horizon, shards and nodes must match the consumer's consumer.idempotency.redis.* settings; buckets are as
+ * wide as the horizon. Like the consumer, only the current and previous bucket are checked, on the node the id's
+ * hash picks. One pipelined round trip per node per poll.
+ */
+public class RedisProcessedMarkers implements ProcessedMarkers, AutoCloseable {
+
+    private static final String BUCKET_PREFIX = "processed:bucket:";
+
+    private final List<StringRedisTemplate> nodes;
+    private final List<LettuceConnectionFactory> owned;
+    private final long bucketSeconds;
+    private final int shards;
+
+    public RedisProcessedMarkers(StringRedisTemplate redis, long horizonSeconds, int shards) {
+        this(List.of(redis), List.of(), horizonSeconds, shards);
+    }
+
+    private RedisProcessedMarkers(List<StringRedisTemplate> nodes, List<LettuceConnectionFactory> owned,
+                                  long horizonSeconds, int shards) {
+        this.nodes = nodes;
+        this.owned = owned;
+        this.bucketSeconds = Math.max(1, horizonSeconds);
+        this.shards = shards;
+    }
+
+    /** One connection per host:port, in the consumer's consumer.idempotency.redis.nodes order. */
+    public static RedisProcessedMarkers connect(List<String> hostPorts, String password,
+                                                long horizonSeconds, int shards) {
+        List<LettuceConnectionFactory> factories = new ArrayList<>(hostPorts.size());
+        List<StringRedisTemplate> templates = new ArrayList<>(hostPorts.size());
+        for (String hostPort : hostPorts) {
+            int colon = hostPort.lastIndexOf(':');
+            RedisStandaloneConfiguration cfg = colon < 0
+                    ? new RedisStandaloneConfiguration(hostPort.trim())
+                    : new RedisStandaloneConfiguration(hostPort.substring(0, colon).trim(),
+                    Integer.parseInt(hostPort.substring(colon + 1).trim()));
+            if (password != null && !password.isEmpty()) cfg.setPassword(password);
+            LettuceConnectionFactory factory = new LettuceConnectionFactory(cfg);
+            factory.afterPropertiesSet();
+            factory.start();
+            factories.add(factory);
+            templates.add(new StringRedisTemplate(factory));
+        }
+        return new RedisProcessedMarkers(templates, factories, horizonSeconds, shards);
+    }
+
+    @Override
+    public List<Boolean> areProcessed(List<String> messageIds) {
+        long bucket = System.currentTimeMillis() / 1000 / bucketSeconds;
+        List<List<Integer>> positions = new ArrayList<>(nodes.size());
+        for (int n = 0; n < nodes.size(); n++) positions.add(new ArrayList<>());
+        long[] hashes = new long[messageIds.size()];
+        for (int i = 0; i < messageIds.size(); i++) {
+            hashes[i] = hash64(messageIds.get(i));
+            positions.get(nodes.size() == 1 ? 0 : jumpHash(hashes[i], nodes.size())).add(i);
+        }
+
+        List<Boolean> processed = new ArrayList<>(messageIds.size());
+        for (int i = 0; i < messageIds.size(); i++) processed.add(false);
+        for (int n = 0; n < nodes.size(); n++) {
+            List<Integer> at = positions.get(n);
+            if (at.isEmpty()) continue;
+            List<Object> exists = nodes.get(n).executePipelined((RedisCallback<Object>) connection -> {
+                for (int i : at) {
+                    byte[] field = messageIds.get(i).getBytes(StandardCharsets.UTF_8);
+                    connection.hashCommands().hExists(key(bucket, hashes[i]), field);
+                    connection.hashCommands().hExists(key(bucket - 1, hashes[i]), field);
+                }
+                return null;
+            });
+            for (int k = 0; k < at.size(); k++) {
+                processed.set(at.get(k),
+                        Boolean.TRUE.equals(exists.get(2 * k)) || Boolean.TRUE.equals(exists.get(2 * k + 1)));
+            }
+        }
+        return processed;
+    }
+
+    @Override
+    public void close() {
+        owned.forEach(LettuceConnectionFactory::destroy);
+    }
+
+    private byte[] key(long bucket, long hash) {
+        return (BUCKET_PREFIX + bucket + ":" + Math.floorMod(hash, shards)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // same jump hash and FNV-1a/murmur3 mix as the consumer's RedisNodes
+    static int jumpHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    static long hash64(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,22 @@
+package com.mouli.loadgen;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = {
+        "loadgen.target=stub",
+        "loadgen.step.steps=1",
+        "loadgen.step.duration-s=1",
+        "loadgen.step.start-rate=50",
+        "loadgen.stub.failure-rate=0",
+        "loadgen.e2e.drain-timeout-s=5",
+        "loadgen.report-interval-s=1",
+        "loadgen.results-dir=target/loadgen-results"
+})
+class LoadGeneratorApplicationTests {
+
+	@Test
+	void contextLoads() {
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.mouli.producer.codec;
+
+import com.github.luben.zstd.Zstd;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Before-publish post-processor that compresses bodies of at least threshold-bytes.
+ *
+ * The algorithm goes into content-encoding with the converter's charset after a colon ("zstd:UTF-8"), the
+ * same convention as Spring AMQP's GZipPostProcessor, so the consumer can restore both. Content-type is left
+ * alone: the body is still JSON or Smile once decoded. A body that does not shrink is sent as it was.
+ */
+public class PayloadCompressor implements MessagePostProcessor {
+
+    private final String algorithm;
+    private final int thresholdBytes;
+    private final int level;
+    private final Counter compressed;
+    private final DistributionSummary ratio;
+
+    public PayloadCompressor(String algorithm, int thresholdBytes, int level, MeterRegistry registry) {
+        if (!WireFormat.ZSTD_ENCODING.equals(algorithm) && !WireFormat.GZIP_ENCODING.equals(algorithm)) {
+            throw new IllegalArgumentException("producer.compression.algorithm must be zstd or gzip: " + algorithm);
+        }
+        this.algorithm = algorithm;
+        this.thresholdBytes = thresholdBytes;
+        this.level = level;
+        this.compressed = registry.counter("producer.compression.messages", "algorithm", algorithm);
+        // compressed size / original size
+        this.ratio = DistributionSummary.builder("producer.compression.ratio").tag("algorithm", algorithm)
+                .register(registry);
+    }
+
+    @Override
+    public Message postProcessMessage(Message message) throws AmqpException {
+        byte[] body = message.getBody();
+        MessageProperties props = message.getMessageProperties();
+        String charset = props.getContentEncoding();
+        if (body.length < thresholdBytes || isCompressed(charset)) {
+            return message;
+        }
+        byte[] packed = compress(body);
+        if (packed.length >= body.length) {
+            return message;
+        }
+        props.setContentEncoding(charset == null ? algorithm : algorithm + ":" + charset);
+        props.setContentLength(packed.length);
+        compressed.increment();
+        ratio.record((double) packed.length / body.length);
+        return new Message(packed, props);
+    }
+
+    private static boolean isCompressed(String encoding) {
+        return encoding != null
+                && (encoding.startsWith(WireFormat.ZSTD_ENCODING) || encoding.startsWith(WireFormat.GZIP_ENCODING));
+    }
+
+    private byte[] compress(byte[] body) {
+        if (WireFormat.ZSTD_ENCODING.equals(algorithm)) {
+            return Zstd.compress(body, level);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException ex) {
+            throw new AmqpException("gzip failed", ex);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,23 @@
+package com.mouli.producer.codec;
+
+/**
+ * Wire formats for CommandMessage bodies, negotiated through the AMQP content-type.
+ * Consumers pick the decoder from content-type, so json and smile publishers can run side by side
+ * during a rollout (upgrade consumers first, then switch producers to smile).
+ */
+public final class WireFormat {
+
+    public static final String JSON_CONTENT_TYPE = "application/json";
+    public static final String SMILE_CONTENT_TYPE = "application/x-jackson-smile";
+
+    /** content-encoding prefixes of compressed bodies ("zstd:UTF-8"); the part after the colon is the charset. */
+    public static final String ZSTD_ENCODING = "zstd";
+    public static final String GZIP_ENCODING = "gzip";
+
+    /** Body schema version, sent as an AMQP header so older consumers can still read the body. */
+    public static final String SCHEMA_VERSION_HEADER = "x-schema-version";
+    public static final int SCHEMA_VERSION = 1;
+
+    private WireFormat() {
+    }
+}
@@ -1,12 +1,25 @@
 package com.mouli.producer.config;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import com.mouli.producer.codec.PayloadCompressor;
+import com.mouli.producer.codec.SmileMessageConverter;
+import com.mouli.producer.codec.WireFormat;
+import com.mouli.producer.dto.CommandMessage;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.support.converter.AbstractJackson2MessageConverter;
+import org.springframework.amqp.support.converter.ClassMapper;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.amqp.autoconfigure.RabbitTemplateCustomizer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import tools.jackson.databind.ObjectMapper;
 
 @Configuration
 public class RabbitMQConfig {
@@ -33,8 +46,63 @@ public class RabbitMQConfig {
 //                .with(ROUTING_KEY);
 //    }
 
+    /**
+     * producer.wire-format=json (default) or smile. Both mappers share the same module setup.
+     * No __TypeId__ header is written: consumers infer the type from the listener signature. Anything this
+     * template reads back (receiveAndConvert, replies) is decoded as a {@link CommandMessage} for the same reason.
+     * Jackson 2 converters, deprecated for removal in Spring AMQP 4; see {@link SmileMessageConverter} for why.
+     */
     @Bean
-    public MessageConverter jsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+    @SuppressWarnings("removal")
+    public MessageConverter jsonMessageConverter(@Value("${producer.wire-format:json}") String wireFormat) {
+        AbstractJackson2MessageConverter converter;
+        if ("smile".equalsIgnoreCase(wireFormat)) {
+            // binary timestamps instead of ISO strings
+            converter = new SmileMessageConverter(wireMapper(new SmileFactory())
+                    .enable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS));
+        } else {
+            converter = new Jackson2JsonMessageConverter(wireMapper(new JsonFactory())
+                    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS));
+        }
+        converter.setClassMapper(new ClassMapper() {
+            @Override
+            public void fromClass(Class<?> clazz, MessageProperties properties) {
+            }
+
+            @Override
+            public Class<?> toClass(MessageProperties properties) {
+                return CommandMessage.class;
+            }
+        });
+        return converter;
+    }
+
+    private static ObjectMapper wireMapper(JsonFactory factory) {
+        ObjectMapper mapper = new ObjectMapper(factory);
+        mapper.registerModule(new JavaTimeModule());
+        return mapper;
+    }
+
+    @Bean
+    public RabbitTemplateCustomizer schemaVersionHeader() {
+        return template -> template.addBeforePublishPostProcessors(message -> {
+            message.getMessageProperties().setHeader(WireFormat.SCHEMA_VERSION_HEADER, WireFormat.SCHEMA_VERSION);
+            return message;
+        });
+    }
+
+    /**
+     * Compresses bodies of at least threshold-bytes after serialization. Off by default: enable only once every
+     * consumer decodes content-encoding (older consumers would hand compressed bytes to the JSON parser).
+     */
+    @Bean
+    @ConditionalOnProperty(name = "producer.compression.enabled", havingValue = "true")
+    public RabbitTemplateCustomizer payloadCompression(
+            @Value("${producer.compression.algorithm:zstd}") String algorithm,
+            @Value("${producer.compression.threshold-bytes:16384}") int thresholdBytes,
+            @Value("${producer.compression.level:3}") int level,
+            MeterRegistry registry) {
+        PayloadCompressor compressor = new PayloadCompressor(algorithm, thresholdBytes, level, registry);
+        return template -> template.addBeforePublishPostProcessors(compressor);
     }
 }
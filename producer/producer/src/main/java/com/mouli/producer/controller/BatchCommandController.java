@@ -0,0 +1,154 @@
+package com.mouli.producer.controller;
+
+import com.mouli.producer.dto.CommandRequest;
+import com.mouli.producer.dto.CommandResult;
+import com.mouli.producer.service.AdmissionService;
+import com.mouli.producer.service.BatchIngestService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.DeserializationFeature;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk ingestion: a JSON array, or NDJSON (one CommandRequest per line) that is parsed and published
+ * incrementally without buffering the whole body. Both answer with one result per input item.
+ */
+@RestController
+@RequestMapping("/command")
+public class BatchCommandController {
+
+    private final BatchIngestService ingestService;
+    private final AdmissionService admission;
+    private final ObjectMapper objectMapper;
+    // reads one array item at a time from a shared parser, so the tokens after it are not an error
+    private final ObjectReader itemReader;
+    private final int maxItems;
+
+    public BatchCommandController(BatchIngestService ingestService,
+                                  AdmissionService admission,
+                                  ObjectMapper objectMapper,
+                                  @Value("${producer.batch.max-items:10000}") int maxItems) {
+        this.ingestService = ingestService;
+        this.admission = admission;
+        this.objectMapper = objectMapper;
+        this.itemReader = objectMapper.readerFor(CommandRequest.class)
+                .without(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+        this.maxItems = maxItems;
+    }
+
+    /**
+     * The array is read item by item and reading stops at item maxItems + 1, so an oversized upload is refused
+     * without parsing (or buffering) the rest of it.
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> sendBatch(HttpServletRequest request) throws IOException {
+        admission.checkAdmission();
+        List<CommandRequest> requests = new ArrayList<>();
+        try (JsonParser parser = objectMapper.createParser(request.getInputStream())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return malformed("expected a JSON array of commands");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) return malformed("unexpected end of the array");
+                if (requests.size() == maxItems) {
+                    return ResponseEntity
+                            .status(HttpStatus.CONTENT_TOO_LARGE)
+                            .body(Map.of(
+                                    "error", "Too many items",
+                                    "message", "batch has more than " + maxItems
+                                            + " items; use application/x-ndjson for larger uploads"
+                            ));
+                }
+                requests.add(itemReader.readValue(parser));
+            }
+        } catch (JacksonException ex) {
+            return malformed(ex.getOriginalMessage());
+        }
+
+        List<CommandResult> results = ingestService.ingest(requests);
+        long accepted = results.stream().filter(r -> "ACCEPTED".equals(r.status())).count();
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(Map.of(
+                        "accepted", accepted,
+                        "rejected", results.size() - accepted,
+                        "results", results
+                ));
+    }
+
+    /**
+     * Streams results back as NDJSON, one line per non-blank input line, flushed after every chunk.
+     * A result's index is the 0-based line number in the request body, blank lines included.
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public void sendBatchStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        admission.checkAdmission();
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        int chunkSize = ingestService.chunkSize();
+        Writer out = response.getWriter();
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8))) {
+
+            List<BatchIngestService.Item> chunk = new ArrayList<>(chunkSize);
+            int lineNumber = -1;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+                chunk.add(parse(lineNumber, line));
+                if (chunk.size() == chunkSize) {
+                    write(out, ingestService.ingestChunk(chunk).join());
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                write(out, ingestService.ingestChunk(chunk).join());
+            }
+        }
+    }
+
+    private static ResponseEntity<?> malformed(String message) {
+        return ResponseEntity
+                .status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("error", "Malformed JSON", "message", message));
+    }
+
+    private BatchIngestService.Item parse(int index, String line) {
+        try {
+            return new BatchIngestService.Item(index, objectMapper.readValue(line, CommandRequest.class), null);
+        } catch (JacksonException ex) {
+            return new BatchIngestService.Item(index, null, "malformed JSON: " + ex.getOriginalMessage());
+        }
+    }
+
+    private void write(Writer out, List<CommandResult> results) throws IOException {
+        for (CommandResult result : results) {
+            out.write(objectMapper.writeValueAsString(result));
+            out.write('\n');
+        }
+        out.flush();
+    }
+}
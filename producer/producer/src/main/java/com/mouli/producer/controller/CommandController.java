@@ -2,38 +2,94 @@ package com.mouli.producer.controller;
 
 import com.mouli.producer.dto.CommandMessage;
 import com.mouli.producer.dto.CommandRequest;
+import com.mouli.producer.outbox.OutboxService;
+import com.mouli.producer.service.AdmissionService;
+import com.mouli.producer.service.IngestDedupWindow;
 import com.mouli.producer.service.MessagePublisherService;
 import jakarta.validation.Valid;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/command")
 public class CommandController {
 
     private final MessagePublisherService publisherService;
+    private final AdmissionService admission;
+    private final IngestDedupWindow dedup;
+    private final OutboxService outbox;
+    private final boolean awaitConfirmByDefault;
 
-    public CommandController(MessagePublisherService publisherService) {
+    public CommandController(MessagePublisherService publisherService,
+                             AdmissionService admission,
+                             IngestDedupWindow dedup,
+                             OutboxService outbox,
+                             @Value("${producer.publish.await-confirm:false}") boolean awaitConfirmByDefault) {
         this.publisherService = publisherService;
+        this.admission = admission;
+        this.dedup = dedup;
+        this.outbox = outbox;
+        this.awaitConfirmByDefault = awaitConfirmByDefault;
     }
 
+    /**
+     * awaitConfirm=false answers 202 as soon as the message is handed to the channel;
+     * awaitConfirm=true answers once the broker confirmed it. Either way the request thread is
+     * released immediately and the response is written from the confirm callback.
+     *
+     * A messageId already accepted within the dedup window is not published again: the response is the
+     * original's (same status, from the same confirm) with Idempotent-Replayed: true.
+     *
+     * In outbox mode the response always waits for the command to be durable in the local journal and is
+     * ACCEPTED; the broker confirm happens later, in the drainer.
+     */
     @PostMapping
-    public ResponseEntity<?> sendCommand(@Valid @RequestBody CommandRequest request) {
+    public CompletableFuture<ResponseEntity<?>> sendCommand(
+            @Valid @RequestBody CommandRequest request,
+            @RequestParam(name = "awaitConfirm", required = false) Boolean awaitConfirm) {
 
-        CommandMessage message =
-                new CommandMessage(request.getMessageId(), request.getPayload());
+        IngestDedupWindow.Claim claim = dedup.claim(request.getMessageId());
+        if (!claim.duplicate()) {
+            try {
+                admission.checkAdmission();
+            } catch (RuntimeException ex) {
+                // not published: drop the claim so the client's retry is admitted again
+                dedup.track(request.getMessageId(), claim, CompletableFuture.failedFuture(ex));
+                throw ex;
+            }
+            CommandMessage message =
+                    new CommandMessage(request.getMessageId(), request.getPayload(), request.getPriority());
+            dedup.track(request.getMessageId(), claim,
+                    outbox.enabled() ? outbox.append(message) : publisherService.publishAsync(message));
+        }
 
-        publisherService.publish(message);
+        CompletableFuture<Void> confirmed = claim.confirmed();
+        boolean replayed = claim.duplicate();
+        if (outbox.enabled()) {
+            return confirmed.thenApply(v -> accepted(request.getMessageId(), "ACCEPTED", replayed));
+        }
+        boolean await = awaitConfirm != null ? awaitConfirm : awaitConfirmByDefault;
+        // failures known up front (window full, channel error) are reported in both modes
+        if (!await && !confirmed.isCompletedExceptionally()) {
+            return CompletableFuture.completedFuture(accepted(request.getMessageId(), "ACCEPTED", replayed));
+        }
+        return confirmed.thenApply(v -> accepted(request.getMessageId(), "CONFIRMED", replayed));
+    }
 
-        return ResponseEntity
-                .status(HttpStatus.ACCEPTED)
+    private static ResponseEntity<?> accepted(String messageId, String status, boolean replayed) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.ACCEPTED);
+        if (replayed) {
+            response.header("Idempotent-Replayed", "true");
+        }
+        return response
                 .body(Map.of(
-                        "status", "ACCEPTED",
-                        "messageId", request.getMessageId()
+                        "status", status,
+                        "messageId", messageId
                 ));
     }
 }
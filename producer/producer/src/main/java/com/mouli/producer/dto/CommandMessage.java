@@ -1,5 +1,7 @@
 package com.mouli.producer.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.time.Instant;
 import java.util.Map;
 
@@ -8,13 +10,21 @@ public class CommandMessage {
     private String messageId;
     private Map<String, Object> payload;
     private Instant createdAt;
+    // left out of the body when absent, so normal-priority messages look exactly as before
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String priority;
 
     public CommandMessage() {
     }
 
     public CommandMessage(String messageId, Map<String, Object> payload) {
+        this(messageId, payload, null);
+    }
+
+    public CommandMessage(String messageId, Map<String, Object> payload, String priority) {
         this.messageId = messageId;
         this.payload = payload;
+        this.priority = priority;
         this.createdAt = Instant.now();
     }
 
@@ -29,4 +39,8 @@ public class CommandMessage {
     public Instant getCreatedAt() {
         return createdAt;
     }
+
+    public String getPriority() {
+        return priority;
+    }
 }
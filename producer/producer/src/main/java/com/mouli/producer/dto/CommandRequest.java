@@ -2,6 +2,7 @@ package com.mouli.producer.dto;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
 import java.util.Map;
 
 public class CommandRequest {
@@ -12,6 +13,10 @@ public class CommandRequest {
     @NotNull
     private Map<String, Object> payload;
 
+    // optional; absent means normal
+    @Pattern(regexp = "high|normal|low", message = "must be high, normal or low")
+    private String priority;
+
     public String getMessageId() {
         return messageId;
     }
@@ -27,4 +32,12 @@ public class CommandRequest {
     public void setPayload(Map<String, Object> payload) {
         this.payload = payload;
     }
+
+    public String getPriority() {
+        return priority;
+    }
+
+    public void setPriority(String priority) {
+        this.priority = priority;
+    }
 }
@@ -0,0 +1,18 @@
+package com.mouli.producer.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Per-item outcome of a batch / NDJSON ingestion request.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CommandResult(int index, String messageId, String status, String error) {
+
+    public static CommandResult accepted(int index, String messageId) {
+        return new CommandResult(index, messageId, "ACCEPTED", null);
+    }
+
+    public static CommandResult rejected(int index, String messageId, String error) {
+        return new CommandResult(index, messageId, "REJECTED", error);
+    }
+}
@@ -0,0 +1,18 @@
+package com.mouli.producer.exception;
+
+/**
+ * Admission control is shedding load because command.queue is above its high watermark.
+ */
+public class OverloadedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public OverloadedException(long retryAfterSeconds) {
+        super("Command queue is overloaded, retry after " + retryAfterSeconds + "s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
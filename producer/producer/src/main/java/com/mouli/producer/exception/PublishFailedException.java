@@ -0,0 +1,32 @@
+package com.mouli.producer.exception;
+
+/**
+ * The broker did not accept a message: nacked, returned as unroutable,
+ * confirm timed out, or the in-flight window was full.
+ */
+public class PublishFailedException extends RuntimeException {
+
+    private final boolean rejected;
+
+    public PublishFailedException(String messageId, String reason) {
+        this(messageId, reason, null, false);
+    }
+
+    public PublishFailedException(String messageId, String reason, Throwable cause) {
+        this(messageId, reason, cause, false);
+    }
+
+    private PublishFailedException(String messageId, String reason, Throwable cause, boolean rejected) {
+        super("Publish failed for messageId=" + messageId + ": " + reason, cause);
+        this.rejected = rejected;
+    }
+
+    /** The broker answered and refused this message (nack or unroutable return), as opposed to not answering. */
+    public static PublishFailedException rejected(String messageId, String reason) {
+        return new PublishFailedException(messageId, reason, null, true);
+    }
+
+    public boolean isRejected() {
+        return rejected;
+    }
+}
@@ -0,0 +1,470 @@
+package com.mouli.producer.outbox;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of memory-mapped segment files (segment-&lt;first seq&gt;.log).
+ *
+ * Record layout: int payload length, int CRC32C over seq + payload, long seq, payload. Sequence numbers are
+ * dense and start at 1; a segment file is pre-sized (sparse, zero-filled), so a zero length marks the end.
+ *
+ * Appends copy into the mapping under one lock. With fsync on, a single flusher thread msyncs everything
+ * written since its last pass and then completes all appends that were waiting on it: appends that arrive
+ * during an msync go out together in the next one (group commit), so the fsync rate stays flat as load grows.
+ * With fsync off an append is done once it is in the page cache, which survives a process crash but not a
+ * machine crash.
+ *
+ * Only durable records are handed to the reader. {@link #acknowledge} records the last seq the reader is done
+ * with in a checkpoint file and deletes sealed segments that lie entirely below it. The checkpoint is replaced
+ * atomically but not fsynced: losing it re-reads records, which is at-least-once, never loss.
+ *
+ * Recovery scans every segment and stops at the first record with a bad length, CRC or out-of-sequence seq
+ * (a torn write); the active segment's tail is zeroed from there so later appends cannot revive stale bytes.
+ */
+final class OutboxJournal implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxJournal.class);
+
+    static final int HEADER_BYTES = 16;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT = "checkpoint";
+
+    record Entry(long seq, byte[] payload) {
+    }
+
+    /** Where the reader stands: a segment (by first seq) and a byte offset inside it. */
+    record Position(long segment, int offset) {
+    }
+
+    record Batch(List<Entry> entries, Position next) {
+    }
+
+    private static final class Segment {
+        final long firstSeq;
+        final Path path;
+        final MappedByteBuffer buffer;
+        int written;             // guarded by lock
+        volatile int durable;    // bytes the reader may see
+        volatile boolean sealed; // no more appends; written is final
+
+        Segment(long firstSeq, Path path, MappedByteBuffer buffer) {
+            this.firstSeq = firstSeq;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private record Waiter(long seq, CompletableFuture<Long> durable) {
+    }
+
+    private record Flush(Segment segment, int from, int to) {
+    }
+
+    /** How the flusher makes a range of a segment durable; tests swap in one that fails. */
+    interface Msync {
+        void force(MappedByteBuffer buffer, int from, int length);
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final boolean fsync;
+    private final Msync msync;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushNeeded = lock.newCondition();
+    private final Condition durableAdvanced = lock.newCondition();
+    private final Timer fsyncTimer;
+    private final DistributionSummary groupSize;
+    private final Thread flusher;
+
+    private Segment active;
+    private long nextSeq;
+    private List<Waiter> waiting = new ArrayList<>();
+    private boolean closed;
+    private volatile long durableSeq;
+    private volatile long acknowledged;
+
+    OutboxJournal(Path dir, int segmentBytes, int maxSegments, boolean fsync, MeterRegistry registry)
+            throws IOException {
+        this(dir, segmentBytes, maxSegments, fsync, registry, MappedByteBuffer::force);
+    }
+
+    OutboxJournal(Path dir, int segmentBytes, int maxSegments, boolean fsync, MeterRegistry registry, Msync msync)
+            throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(2, maxSegments);
+        this.fsync = fsync;
+        this.msync = msync;
+        this.fsyncTimer = Timer.builder("producer.outbox.fsync").publishPercentiles(0.5, 0.99).register(registry);
+        this.groupSize = DistributionSummary.builder("producer.outbox.fsync.group").register(registry);
+        Files.createDirectories(dir);
+        recover();
+        this.flusher = Thread.ofPlatform().name("outbox-flusher").daemon().unstarted(this::flushLoop);
+        if (fsync) {
+            flusher.start();
+        }
+    }
+
+    /**
+     * Appends one record; the future completes with its seq once it is durable. Throws
+     * {@link IllegalStateException} when the journal is full (max-segments) or closed.
+     */
+    CompletableFuture<Long> append(byte[] payload) {
+        int size = HEADER_BYTES + payload.length;
+        if (payload.length == 0 || size > segmentBytes) {
+            throw new IllegalArgumentException("record of " + payload.length + " bytes does not fit a segment");
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("outbox closed");
+            }
+            if (active.written + size > active.buffer.capacity()) {
+                roll();
+            }
+            long seq = nextSeq++;
+            int pos = active.written;
+            MappedByteBuffer buffer = active.buffer;
+            buffer.putLong(pos + 8, seq);
+            buffer.put(pos + HEADER_BYTES, payload);
+            buffer.putInt(pos + 4, crc(seq, payload));
+            // length last: a record is not there for recovery until its length is
+            buffer.putInt(pos, payload.length);
+            active.written = pos + size;
+            if (!fsync) {
+                active.durable = active.written;
+                durableSeq = seq;
+                durableAdvanced.signalAll();
+                return CompletableFuture.completedFuture(seq);
+            }
+            CompletableFuture<Long> durable = new CompletableFuture<>();
+            waiting.add(new Waiter(seq, durable));
+            flushNeeded.signal();
+            return durable;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Position of the oldest record still on disk. */
+    Position start() {
+        return new Position(segments.firstKey(), 0);
+    }
+
+    /** Up to max durable records from the position on, and the position after the last one. */
+    Batch read(Position from, int max) {
+        Map.Entry<Long, Segment> first = segments.ceilingEntry(from.segment());
+        if (first == null) {
+            return new Batch(List.of(), from);
+        }
+        Segment segment = first.getValue();
+        int offset = segment.firstSeq == from.segment() ? from.offset() : 0;
+        List<Entry> entries = new ArrayList<>(Math.min(max, 1024));
+        while (entries.size() < max) {
+            if (offset < segment.durable) {
+                MappedByteBuffer buffer = segment.buffer;
+                int length = buffer.getInt(offset);
+                byte[] payload = new byte[length];
+                buffer.get(offset + HEADER_BYTES, payload);
+                entries.add(new Entry(buffer.getLong(offset + 8), payload));
+                offset += HEADER_BYTES + length;
+            } else if (segment.sealed && offset >= segment.written) {
+                Map.Entry<Long, Segment> next = segments.higherEntry(segment.firstSeq);
+                if (next == null) break;
+                segment = next.getValue();
+                offset = 0;
+            } else {
+                break;
+            }
+        }
+        return new Batch(entries, new Position(segment.firstSeq, offset));
+    }
+
+    /** Waits until a record after seq is durable, or the timeout passes. */
+    void awaitDurable(long seq, long timeoutMs) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lockInterruptibly();
+        try {
+            while (durableSeq <= seq && remaining > 0 && !closed) {
+                remaining = durableAdvanced.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Everything up to and including seq is done with; drops the segments that hold nothing newer. */
+    void acknowledge(long seq) throws IOException {
+        if (seq <= acknowledged) return;
+        Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+        Files.writeString(tmp, Long.toString(seq), StandardCharsets.US_ASCII);
+        Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        acknowledged = seq;
+        deleteAcknowledgedSegments();
+    }
+
+    long acknowledged() {
+        return acknowledged;
+    }
+
+    /** Records appended but not yet acknowledged. */
+    long backlog() {
+        return Math.max(0, durableSeq - acknowledged);
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            flushNeeded.signal();
+            durableAdvanced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (fsync) {
+            try {
+                flusher.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<Waiter> group;
+            List<Flush> flushes = new ArrayList<>();
+            lock.lock();
+            try {
+                while (waiting.isEmpty() && !closed) {
+                    flushNeeded.awaitUninterruptibly();
+                }
+                if (waiting.isEmpty()) return;
+                group = waiting;
+                waiting = new ArrayList<>();
+                for (Segment segment : segments.values()) {
+                    if (segment.durable < segment.written) {
+                        flushes.add(new Flush(segment, segment.durable, segment.written));
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            long start = System.nanoTime();
+            RuntimeException failure = null;
+            try {
+                for (Flush flush : flushes) {
+                    msync.force(flush.segment().buffer, flush.from(), flush.to() - flush.from());
+                }
+            } catch (RuntimeException ex) {
+                // msync failed (disk full, I/O error): nothing in this group is known to be durable. The records
+                // stay in the mapping and the next msync retries the range, so they may still be published; the
+                // client was told they failed, and its retry is a duplicate the consumer drops.
+                log.error("[OUTBOX_FSYNC_FAILED] {} records: {}", group.size(), ex.getMessage());
+                failure = ex;
+            }
+            fsyncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            groupSize.record(group.size());
+
+            if (failure != null) {
+                for (Waiter waiter : group) {
+                    waiter.durable().completeExceptionally(failure);
+                }
+                continue;
+            }
+            lock.lock();
+            try {
+                for (Flush flush : flushes) {
+                    flush.segment().durable = flush.to();
+                }
+                durableSeq = group.getLast().seq();
+                durableAdvanced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            for (Waiter waiter : group) {
+                waiter.durable().complete(waiter.seq());
+            }
+        }
+    }
+
+    // called with the lock held
+    private void roll() {
+        if (segments.size() >= maxSegments) {
+            throw new IllegalStateException("outbox full (" + segments.size() + " segments)");
+        }
+        Segment next;
+        try {
+            next = openSegment(nextSeq, segmentBytes);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        active.sealed = true;
+        segments.put(next.firstSeq, next);
+        active = next;
+    }
+
+    private void recover() throws IOException {
+        acknowledged = readCheckpoint();
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(dir)) {
+            files = listing.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        long lastSeq = acknowledged;
+        long activeRecords = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long firstSeq = Long.parseLong(
+                    name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            Segment segment = openSegment(firstSeq, (int) Files.size(file));
+            Scan scan = scan(segment);
+            segment.written = scan.end();
+            segment.durable = scan.end();
+            if (scan.records() > 0) {
+                lastSeq = Math.max(lastSeq, firstSeq + scan.records() - 1);
+            }
+            if (active != null) {
+                active.sealed = true;
+            }
+            segments.put(firstSeq, segment);
+            active = segment;
+            activeRecords = scan.records();
+        }
+        nextSeq = lastSeq + 1;
+
+        if (active != null && active.firstSeq + activeRecords == nextSeq) {
+            if (hasBytesAfter(active.buffer, active.written)) {
+                log.warn("[OUTBOX_TORN_TAIL] {} at offset {}: discarding the partial record",
+                        active.path.getFileName(), active.written);
+                zero(active.buffer, active.written);
+            }
+        } else {
+            // no segment yet, or the last one does not continue the sequence (its records were torn or
+            // are below the checkpoint): appends start a fresh segment
+            if (active != null) {
+                active.sealed = true;
+                if (active.written == 0) {
+                    segments.remove(active.firstSeq);
+                    Files.deleteIfExists(active.path);
+                }
+            }
+            active = openSegment(nextSeq, segmentBytes);
+            segments.put(active.firstSeq, active);
+        }
+        durableSeq = nextSeq - 1;
+        deleteAcknowledgedSegments();
+        log.info("[OUTBOX_RECOVERED] segments={} acknowledged={} nextSeq={} backlog={}",
+                segments.size(), acknowledged, nextSeq, backlog());
+    }
+
+    private record Scan(int end, long records) {
+    }
+
+    private static Scan scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int capacity = buffer.capacity();
+        int offset = 0;
+        long expected = segment.firstSeq;
+        while (offset + HEADER_BYTES <= capacity) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || length > capacity - offset - HEADER_BYTES) break;
+            long seq = buffer.getLong(offset + 8);
+            if (seq != expected) break;
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER_BYTES, payload);
+            if (crc(seq, payload) != buffer.getInt(offset + 4)) break;
+            offset += HEADER_BYTES + length;
+            expected++;
+        }
+        return new Scan(offset, expected - segment.firstSeq);
+    }
+
+    private static boolean hasBytesAfter(MappedByteBuffer buffer, int from) {
+        for (int i = from; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) return true;
+        }
+        return false;
+    }
+
+    private static void zero(MappedByteBuffer buffer, int from) {
+        byte[] zeros = new byte[64 * 1024];
+        for (int i = from; i < buffer.capacity(); i += zeros.length) {
+            buffer.put(i, zeros, 0, Math.min(zeros.length, buffer.capacity() - i));
+        }
+        buffer.force();
+    }
+
+    private void deleteAcknowledgedSegments() throws IOException {
+        for (Map.Entry<Long, Segment> entry : segments.entrySet()) {
+            Segment segment = entry.getValue();
+            Long next = segments.higherKey(entry.getKey());
+            if (!segment.sealed || next == null || next - 1 > acknowledged) break;
+            segments.remove(entry.getKey());
+            // the mapping stays valid until it is collected; the file is gone from the directory now
+            Files.deleteIfExists(segment.path);
+        }
+    }
+
+    private Segment openSegment(long firstSeq, int size) throws IOException {
+        Path path = dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSeq, SEGMENT_SUFFIX));
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            if (file.length() < size) {
+                file.setLength(size);
+            }
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new Segment(firstSeq, path, buffer);
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path checkpoint = dir.resolve(CHECKPOINT);
+        if (!Files.exists(checkpoint)) return 0;
+        return Long.parseLong(Files.readString(checkpoint, StandardCharsets.US_ASCII).trim());
+    }
+
+    private static int crc(long seq, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (seq >>> shift));
+        }
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
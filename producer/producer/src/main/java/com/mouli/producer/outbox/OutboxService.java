@@ -0,0 +1,303 @@
+package com.mouli.producer.outbox;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mouli.producer.dto.CommandMessage;
+import com.mouli.producer.exception.PublishFailedException;
+import com.mouli.producer.service.MessagePublisherService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbox mode (producer.outbox.enabled): POST /command and /command/batch answer once the command is durable in
+ * the local journal, and a background drainer publishes it to RabbitMQ with confirms. A slow, blocked or
+ * restarting broker then shows up as outbox backlog instead of in HTTP latency or 5xx.
+ *
+ * The drainer reads the journal in order, publishes a batch, and only acknowledges it (checkpoint + segment
+ * cleanup) once every message in it was confirmed. When some are not, the batch is published again with backoff
+ * from the first unconfirmed message on, so a retried message never overtakes a later one with the same
+ * partition key; the confirmed ones after it go out twice, and like a message published again after a crash or
+ * a lost confirm, the copy is a duplicate the consumer's idempotency store drops.
+ *
+ * A broker outage is retried for as long as it lasts. A message the broker itself refuses (nacked or returned as
+ * unroutable) max-rejections times in a row, or a record that no longer decodes, would block the outbox behind
+ * it for good: it is appended to dead-letters.ndjson next to the journal instead and the drainer moves on.
+ *
+ * When the journal holds max-segments segments, appends fail with 503 until the drainer catches up.
+ */
+@Service
+public class OutboxService {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxService.class);
+
+    static final String DEAD_LETTERS = "dead-letters.ndjson";
+
+    private record Pending(long seq, byte[] payload, CommandMessage message) {
+    }
+
+    private final MessagePublisherService publisher;
+    private final boolean enabled;
+    private final int drainBatch;
+    private final long retryBackoffMs;
+    private final long maxRetryBackoffMs;
+    private final int maxRejections;
+    private final boolean fsync;
+    private final Path deadLetters;
+    private final ObjectMapper mapper;
+    private final OutboxJournal journal;
+    private final Timer appendTimer;
+    private final Counter drained;
+    private final Counter republished;
+    private final Counter full;
+    private final Counter unreadable;
+    private final Counter deadLettered;
+    private final Thread drainer;
+
+    private volatile boolean running;
+
+    public OutboxService(MessagePublisherService publisher,
+                         MeterRegistry registry,
+                         @Value("${producer.outbox.enabled:false}") boolean enabled,
+                         @Value("${producer.outbox.dir:outbox}") String dir,
+                         @Value("${producer.outbox.segment-mb:64}") int segmentMb,
+                         @Value("${producer.outbox.max-segments:16}") int maxSegments,
+                         @Value("${producer.outbox.fsync:true}") boolean fsync,
+                         @Value("${producer.outbox.drain-batch:500}") int drainBatch,
+                         @Value("${producer.outbox.retry-backoff-ms:200}") long retryBackoffMs,
+                         @Value("${producer.outbox.max-retry-backoff-ms:5000}") long maxRetryBackoffMs,
+                         @Value("${producer.outbox.max-rejections:5}") int maxRejections) {
+        this.publisher = publisher;
+        this.enabled = enabled;
+        this.drainBatch = Math.max(1, drainBatch);
+        this.retryBackoffMs = retryBackoffMs;
+        this.maxRetryBackoffMs = maxRetryBackoffMs;
+        this.maxRejections = Math.max(1, maxRejections);
+        this.fsync = fsync;
+        this.deadLetters = Path.of(dir).resolve(DEAD_LETTERS);
+        // journal records are plain JSON whatever producer.wire-format is; unknown fields from a newer build are skipped
+        this.mapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        // append -> durable in the journal, which is what the HTTP response waits for
+        this.appendTimer = Timer.builder("producer.outbox.append").publishPercentiles(0.5, 0.99).register(registry);
+        this.drained = registry.counter("producer.outbox.drained");
+        this.republished = registry.counter("producer.outbox.republished");
+        this.full = registry.counter("producer.outbox.full");
+        this.unreadable = registry.counter("producer.outbox.unreadable");
+        this.deadLettered = registry.counter("producer.outbox.dead_lettered");
+        this.drainer = Thread.ofPlatform().name("outbox-drainer").daemon().unstarted(this::drain);
+        if (!enabled) {
+            this.journal = null;
+            return;
+        }
+        try {
+            this.journal = new OutboxJournal(Path.of(dir), Math.multiplyExact(segmentMb, 1024 * 1024), maxSegments,
+                    fsync, registry);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("cannot open outbox at " + dir, ex);
+        }
+        registry.gauge("producer.outbox.backlog", journal, OutboxJournal::backlog);
+        registry.gauge("producer.outbox.segments", journal, OutboxJournal::segmentCount);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /** Completes once the message is durable in the journal; fails with {@link PublishFailedException}. */
+    public CompletableFuture<Void> append(CommandMessage message) {
+        String id = message.getMessageId();
+        long start = System.nanoTime();
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            journal.append(mapper.writeValueAsBytes(message)).whenComplete((seq, ex) -> {
+                appendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (ex == null) {
+                    result.complete(null);
+                } else {
+                    result.completeExceptionally(
+                            new PublishFailedException(id, "outbox write failed: " + ex.getMessage(), ex));
+                }
+            });
+            return result;
+        } catch (IllegalStateException ex) {
+            full.increment();
+            return CompletableFuture.failedFuture(new PublishFailedException(id, ex.getMessage()));
+        } catch (IOException | RuntimeException ex) {
+            return CompletableFuture.failedFuture(
+                    new PublishFailedException(id, "outbox write failed: " + ex.getMessage(), ex));
+        }
+    }
+
+    /** {@link #append} for a chunk; the futures are in the same order as the messages. */
+    public List<CompletableFuture<Void>> appendAll(List<CommandMessage> messages) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(messages.size());
+        for (CommandMessage message : messages) {
+            futures.add(append(message));
+        }
+        return futures;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        running = true;
+        drainer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!enabled) return;
+        running = false;
+        drainer.interrupt();
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+
+    private void drain() {
+        OutboxJournal.Position position = journal.start();
+        long backoff = retryBackoffMs;
+        while (running) {
+            try {
+                OutboxJournal.Batch batch = journal.read(position, drainBatch);
+                if (batch.entries().isEmpty()) {
+                    journal.awaitDurable(journal.acknowledged(), 1000);
+                    position = batch.next();
+                    continue;
+                }
+                List<Pending> pending = new ArrayList<>(batch.entries().size());
+                for (OutboxJournal.Entry entry : batch.entries()) {
+                    // a restart re-reads from the start of the oldest segment; skip what was already acknowledged
+                    if (entry.seq() <= journal.acknowledged()) continue;
+                    CommandMessage message = decode(entry);
+                    if (message != null) pending.add(new Pending(entry.seq(), entry.payload(), message));
+                }
+                publishUntilConfirmed(pending);
+                journal.acknowledge(batch.entries().getLast().seq());
+                position = batch.next();
+                drained.increment(pending.size());
+                backoff = retryBackoffMs;
+            } catch (InterruptedException ex) {
+                // shutting down; whatever was not acknowledged is published again on the next start
+                return;
+            } catch (IOException | RuntimeException ex) {
+                log.error("[OUTBOX_DRAIN_FAILED] retrying in {}ms: {}", backoff, ex.getMessage(), ex);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, maxRetryBackoffMs);
+            }
+        }
+    }
+
+    private void publishUntilConfirmed(List<Pending> batch) throws InterruptedException, IOException {
+        int from = 0;
+        // consecutive broker refusals of batch[from]
+        int rejections = 0;
+        long backoff = retryBackoffMs;
+        while (from < batch.size()) {
+            List<Pending> pending = batch.subList(from, batch.size());
+            List<CommandMessage> messages = new ArrayList<>(pending.size());
+            for (Pending p : pending) {
+                messages.add(p.message());
+            }
+            List<CompletableFuture<Void>> confirms = publisher.publishAllAsync(messages);
+            int firstUnconfirmed = -1;
+            Throwable failure = null;
+            // wait for every confirm, so nothing from this round is still in flight when the next one starts
+            for (int i = 0; i < confirms.size(); i++) {
+                try {
+                    confirms.get(i).join();
+                } catch (RuntimeException ex) {
+                    if (firstUnconfirmed < 0) {
+                        firstUnconfirmed = i;
+                        failure = ex.getCause() != null ? ex.getCause() : ex;
+                    }
+                }
+            }
+            if (firstUnconfirmed < 0) return;
+            if (firstUnconfirmed > 0) {
+                from += firstUnconfirmed;
+                rejections = 0;
+            }
+            if (failure instanceof PublishFailedException publishFailed && publishFailed.isRejected()
+                    && ++rejections >= maxRejections) {
+                Pending poison = batch.get(from);
+                deadLetter(poison.seq(), poison.payload(), rejections + " rejections, last: " + failure.getMessage());
+                from++;
+                rejections = 0;
+                backoff = retryBackoffMs;
+                continue;
+            }
+            republished.increment(batch.size() - from);
+            log.warn("[OUTBOX_REPUBLISH] {} of {} from seq={} on, retrying in {}ms: {}", batch.size() - from,
+                    batch.size(), batch.get(from).seq(), backoff, failure.getMessage());
+            Thread.sleep(backoff);
+            backoff = Math.min(backoff * 2, maxRetryBackoffMs);
+        }
+    }
+
+    private CommandMessage decode(OutboxJournal.Entry entry) {
+        try {
+            return mapper.readValue(entry.payload(), CommandMessage.class);
+        } catch (IOException ex) {
+            // CRC-checked, so this is a schema problem, not corruption; one bad record must not block the outbox
+            unreadable.increment();
+            log.error("[OUTBOX_UNREADABLE] seq={}: {}", entry.seq(), ex.getMessage());
+            try {
+                deadLetter(entry.seq(), entry.payload(), "unreadable: " + ex.getMessage());
+            } catch (IOException deadLetterFailed) {
+                throw new UncheckedIOException(deadLetterFailed);
+            }
+            return null;
+        }
+    }
+
+    /** One JSON line per record set aside: its seq, why, and the journal payload as it was. */
+    private void deadLetter(long seq, byte[] payload, String reason) throws IOException {
+        ObjectNode line = mapper.createObjectNode();
+        line.put("seq", seq);
+        line.put("reason", reason);
+        try {
+            line.set("message", mapper.readTree(payload));
+        } catch (IOException notJson) {
+            line.put("payload", payload);
+        }
+        byte[] bytes = (mapper.writeValueAsString(line) + "\n").getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(deadLetters, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(bytes));
+            if (fsync) channel.force(false);
+        }
+        deadLettered.increment();
+        log.error("[OUTBOX_DEAD_LETTERED] seq={} -> {}: {}", seq, deadLetters, reason);
+    }
+}
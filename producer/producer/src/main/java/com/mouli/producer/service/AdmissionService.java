@@ -0,0 +1,84 @@
+package com.mouli.producer.service;
+
+import com.mouli.producer.exception.OverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Sheds load when command.queue is backed up, based on the sampler's cached view.
+ * Shedding starts when depth reaches the high watermark and only stops once it falls back to the
+ * low watermark, so admission does not flap around a single threshold.
+ * Stale or missing samples admit traffic: if the broker is unreachable, publishing reports that itself.
+ */
+@Service
+public class AdmissionService {
+
+    private static final Logger log =
+            LoggerFactory.getLogger(AdmissionService.class);
+
+    private final QueueDepthSampler sampler;
+    private final boolean enabled;
+    private final long highWatermark;
+    private final long lowWatermark;
+    private final long staleAfterMs;
+    private final long defaultRetryAfterSeconds;
+    private final long maxRetryAfterSeconds;
+    private final Counter rejected;
+
+    private volatile boolean shedding;
+
+    public AdmissionService(QueueDepthSampler sampler,
+                            MeterRegistry registry,
+                            @Value("${producer.admission.enabled:true}") boolean enabled,
+                            @Value("${producer.admission.high-watermark:100000}") long highWatermark,
+                            @Value("${producer.admission.low-watermark:50000}") long lowWatermark,
+                            @Value("${producer.admission.stale-after-ms:5000}") long staleAfterMs,
+                            @Value("${producer.admission.retry-after-seconds:5}") long defaultRetryAfterSeconds,
+                            @Value("${producer.admission.max-retry-after-seconds:60}") long maxRetryAfterSeconds) {
+        this.sampler = sampler;
+        this.enabled = enabled;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = Math.min(lowWatermark, highWatermark);
+        this.staleAfterMs = staleAfterMs;
+        this.defaultRetryAfterSeconds = defaultRetryAfterSeconds;
+        this.maxRetryAfterSeconds = maxRetryAfterSeconds;
+        this.rejected = registry.counter("producer.admission.rejected");
+        registry.gauge("producer.admission.shedding", this, a -> a.shedding ? 1 : 0);
+    }
+
+    /**
+     * Throws {@link OverloadedException} (429 + Retry-After) while shedding.
+     */
+    public void checkAdmission() {
+        if (!enabled) return;
+        QueueDepthSampler.Sample sample = sampler.latest();
+        if (sample == null || System.currentTimeMillis() - sample.sampledAtMillis() > staleAfterMs) {
+            shedding = false;
+            return;
+        }
+
+        if (!shedding && sample.depth() >= highWatermark) {
+            shedding = true;
+            log.warn("[ADMISSION_SHEDDING] depth={} highWatermark={}", sample.depth(), highWatermark);
+        } else if (shedding && sample.depth() <= lowWatermark) {
+            shedding = false;
+            log.info("[ADMISSION_RESUMED] depth={} lowWatermark={}", sample.depth(), lowWatermark);
+        }
+
+        if (shedding) {
+            rejected.increment();
+            throw new OverloadedException(retryAfterSeconds(sample));
+        }
+    }
+
+    // time for the queue to drain to the low watermark at the observed rate, if it is draining at all
+    private long retryAfterSeconds(QueueDepthSampler.Sample sample) {
+        if (sample.depthRate() >= 0) return defaultRetryAfterSeconds;
+        long seconds = (long) Math.ceil((sample.depth() - lowWatermark) / -sample.depthRate());
+        return Math.max(1, Math.min(seconds, maxRetryAfterSeconds));
+    }
+}
@@ -0,0 +1,141 @@
+package com.mouli.producer.service;
+
+import com.mouli.producer.dto.CommandMessage;
+import com.mouli.producer.dto.CommandRequest;
+import com.mouli.producer.dto.CommandResult;
+import com.mouli.producer.outbox.OutboxService;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Validates and publishes bulk ingestion requests chunk by chunk.
+ * Items are validated with the same constraints as POST /command; each chunk is published on one
+ * channel and its results reflect broker confirms (in outbox mode: the journal write). Items whose messageId was accepted within the dedup window
+ * (or earlier in the same request) are not published again; their result follows the original publish.
+ */
+@Service
+public class BatchIngestService {
+
+    /** One input element; parseError is set when the element could not be read as a CommandRequest. */
+    public record Item(int index, CommandRequest request, String parseError) {
+    }
+
+    private final Validator validator;
+    private final MessagePublisherService publisherService;
+    private final IngestDedupWindow dedup;
+    private final OutboxService outbox;
+    private final int chunkSize;
+
+    public BatchIngestService(Validator validator,
+                              MessagePublisherService publisherService,
+                              IngestDedupWindow dedup,
+                              OutboxService outbox,
+                              @Value("${producer.batch.chunk-size:500}") int chunkSize) {
+        this.validator = validator;
+        this.publisherService = publisherService;
+        this.dedup = dedup;
+        this.outbox = outbox;
+        this.chunkSize = chunkSize;
+    }
+
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Validate and publish one chunk; the future completes once every accepted item was confirmed or failed.
+     */
+    public CompletableFuture<List<CommandResult>> ingestChunk(List<Item> items) {
+        CommandResult[] results = new CommandResult[items.size()];
+        List<Integer> positions = new ArrayList<>(items.size());
+        List<CompletableFuture<Void>> confirms = new ArrayList<>(items.size());
+        List<IngestDedupWindow.Claim> claims = new ArrayList<>(items.size());
+        List<CommandMessage> messages = new ArrayList<>(items.size());
+
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            String error = item.parseError() != null ? item.parseError() : validate(item.request());
+            if (error != null) {
+                String messageId = item.request() != null ? item.request().getMessageId() : null;
+                results[i] = CommandResult.rejected(item.index(), messageId, error);
+            } else {
+                IngestDedupWindow.Claim claim = dedup.claim(item.request().getMessageId());
+                positions.add(i);
+                confirms.add(claim.confirmed());
+                if (!claim.duplicate()) {
+                    claims.add(claim);
+                    messages.add(new CommandMessage(item.request().getMessageId(), item.request().getPayload(),
+                            item.request().getPriority()));
+                }
+            }
+        }
+        if (positions.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of(results));
+        }
+
+        if (!messages.isEmpty()) {
+            List<CompletableFuture<Void>> published = outbox.enabled()
+                    ? outbox.appendAll(messages)
+                    : publisherService.publishAllAsync(messages);
+            for (int m = 0; m < messages.size(); m++) {
+                dedup.track(messages.get(m).getMessageId(), claims.get(m), published.get(m));
+            }
+        }
+        return CompletableFuture.allOf(confirms.toArray(new CompletableFuture[0]))
+                .handle((v, ignored) -> {
+                    for (int p = 0; p < confirms.size(); p++) {
+                        int i = positions.get(p);
+                        Item item = items.get(i);
+                        String messageId = item.request().getMessageId();
+                        CompletableFuture<Void> confirm = confirms.get(p);
+                        results[i] = confirm.isCompletedExceptionally()
+                                ? CommandResult.rejected(item.index(), messageId, failureOf(confirm))
+                                : CommandResult.accepted(item.index(), messageId);
+                    }
+                    return List.of(results);
+                });
+    }
+
+    /**
+     * Whole JSON-array request. Chunks go out one after another, so the caller thread waits for each
+     * chunk's confirms; that keeps at most one chunk in the in-flight window per request.
+     */
+    public List<CommandResult> ingest(List<CommandRequest> requests) {
+        List<CommandResult> results = new ArrayList<>(requests.size());
+        for (int from = 0; from < requests.size(); from += chunkSize) {
+            List<Item> chunk = new ArrayList<>(chunkSize);
+            for (int i = from; i < Math.min(from + chunkSize, requests.size()); i++) {
+                CommandRequest request = requests.get(i);
+                chunk.add(new Item(i, request, request == null ? "item must not be null" : null));
+            }
+            results.addAll(ingestChunk(chunk).join());
+        }
+        return results;
+    }
+
+    private String validate(CommandRequest request) {
+        Set<ConstraintViolation<CommandRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) return null;
+        return violations.stream()
+                .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    private static String failureOf(CompletableFuture<Void> confirm) {
+        try {
+            confirm.join();
+            return null;
+        } catch (RuntimeException ex) {
+            return ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage();
+        }
+    }
+}
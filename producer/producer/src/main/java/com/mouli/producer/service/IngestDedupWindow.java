@@ -0,0 +1,115 @@
+package com.mouli.producer.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Suppresses client retries of POST /command (and batch items) with a messageId that was accepted within the
+ * last window-seconds: the retry is answered from the original publish instead of publishing again, so it never
+ * costs a broker publish or a consumer-side claim.
+ *
+ * Each entry is the original publish's confirm future. A retry that arrives while that publish is still
+ * unconfirmed waits on the same future. A publish that fails is dropped from the window, so the client's next
+ * retry publishes again; only accepted messages are ever answered from here.
+ *
+ * Caffeine keeps reads lock-free and writes striped. Memory is capped by max-memory-mb, estimated per entry;
+ * evictions are counted by cause: expired is the window doing its job, size means the cap is cutting the
+ * window short and some duplicates inside it will get through (the consumer still dedups them).
+ */
+@Component
+public class IngestDedupWindow {
+
+    // Caffeine node + String header + CompletableFuture, roughly, on a 64-bit JVM with compressed oops
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    /** duplicate=false: the caller owns the publish and must hand its confirm to {@link #track}. */
+    public record Claim(CompletableFuture<Void> confirmed, boolean duplicate) {
+    }
+
+    private final boolean enabled;
+    private final Cache<String, CompletableFuture<Void>> window;
+    private final ConcurrentMap<String, CompletableFuture<Void>> entries;
+    private final Counter suppressed;
+    private final Counter evictedBySize;
+    private final Counter expired;
+
+    @Autowired
+    public IngestDedupWindow(MeterRegistry registry,
+                             @Value("${producer.dedup.enabled:true}") boolean enabled,
+                             @Value("${producer.dedup.window-seconds:300}") long windowSeconds,
+                             @Value("${producer.dedup.max-memory-mb:64}") long maxMemoryMb) {
+        this(registry, enabled, windowSeconds, maxMemoryMb, Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    // tests pass a fake ticker and a same-thread executor so expiry and eviction happen when they look
+    IngestDedupWindow(MeterRegistry registry, boolean enabled, long windowSeconds, long maxMemoryMb,
+                      Ticker ticker, Executor maintenance) {
+        this.enabled = enabled;
+        this.suppressed = registry.counter("producer.dedup.suppressed");
+        this.evictedBySize = registry.counter("producer.dedup.evictions", "cause", "size");
+        this.expired = registry.counter("producer.dedup.evictions", "cause", "expired");
+        this.window = Caffeine.newBuilder()
+                .ticker(ticker)
+                .executor(maintenance)
+                .expireAfterWrite(Duration.ofSeconds(windowSeconds))
+                .maximumWeight(maxMemoryMb * 1024 * 1024)
+                .weigher((String id, CompletableFuture<Void> f) -> ENTRY_OVERHEAD_BYTES + 2 * id.length())
+                .evictionListener((String id, CompletableFuture<Void> f, RemovalCause cause) ->
+                        (cause == RemovalCause.SIZE ? evictedBySize : expired).increment())
+                .build();
+        this.entries = window.asMap();
+        registry.gauge("producer.dedup.entries", window, Cache::estimatedSize);
+        registry.gauge("producer.dedup.weight_bytes", window,
+                w -> w.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L));
+    }
+
+    /**
+     * A duplicate claim carries the original publish's confirm; otherwise a fresh, pending future is registered
+     * under the messageId and completes once {@link #track} is given the real confirm.
+     */
+    public Claim claim(String messageId) {
+        CompletableFuture<Void> mine = new CompletableFuture<>();
+        if (!enabled) {
+            return new Claim(mine, false);
+        }
+        while (true) {
+            CompletableFuture<Void> existing = entries.putIfAbsent(messageId, mine);
+            if (existing == null) {
+                return new Claim(mine, false);
+            }
+            if (!existing.isCompletedExceptionally()) {
+                suppressed.increment();
+                return new Claim(existing, true);
+            }
+            // a failed publish that has not been dropped yet: take its place, or look again if someone else did
+            if (entries.replace(messageId, existing, mine)) {
+                return new Claim(mine, false);
+            }
+        }
+    }
+
+    /** Completes a non-duplicate claim from the publish's confirm; a failure drops the entry again. */
+    public void track(String messageId, Claim claim, CompletableFuture<Void> published) {
+        published.whenComplete((v, ex) -> {
+            if (ex != null) {
+                entries.remove(messageId, claim.confirmed());
+                claim.confirmed().completeExceptionally(ex);
+            } else {
+                claim.confirmed().complete(null);
+            }
+        });
+    }
+}
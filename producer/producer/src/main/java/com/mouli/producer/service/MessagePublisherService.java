@@ -1,17 +1,59 @@
 package com.mouli.producer.service;
 
 import com.mouli.producer.dto.CommandMessage;
+import com.mouli.producer.exception.PublishFailedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 @Service
 public class MessagePublisherService {
 
+    private static final Logger log =
+            LoggerFactory.getLogger(MessagePublisherService.class);
+
     private final RabbitTemplate rabbitTemplate;
+    private final PartitionRouter router;
+    private final Timer confirmed;
+    private final Timer failed;
+    private final Counter windowFull;
+    private final Semaphore inFlight;
+    private final long confirmTimeoutMs;
 
-    public MessagePublisherService(RabbitTemplate rabbitTemplate) {
+    public MessagePublisherService(
+            RabbitTemplate rabbitTemplate,
+            PartitionRouter router,
+            MeterRegistry registry,
+            @Value("${producer.publish.max-in-flight:1000}") int maxInFlight,
+            @Value("${producer.publish.confirm-timeout-ms:5000}") long confirmTimeoutMs) {
         this.rabbitTemplate = rabbitTemplate;
+        this.router = router;
+        // publish -> broker confirm latency, split by outcome
+        this.confirmed = Timer.builder("producer.publish.confirm").tag("outcome", "confirmed")
+                .publishPercentileHistogram().register(registry);
+        this.failed = Timer.builder("producer.publish.confirm").tag("outcome", "failed")
+                .register(registry);
+        this.windowFull = registry.counter("producer.publish.window_full");
+        this.inFlight = new Semaphore(maxInFlight);
+        registry.gauge("producer.publish.in_flight", inFlight, s -> maxInFlight - s.availablePermits());
+        this.confirmTimeoutMs = confirmTimeoutMs;
     }
 
     @PostConstruct
@@ -20,10 +62,108 @@ public class MessagePublisherService {
     }
 
     public void publish(CommandMessage message) {
+        PartitionRouter.Route route = router.route(message);
         rabbitTemplate.convertAndSend(
-                "command.exchange",
-                "command.key",
-                message
+                PartitionRouter.COMMAND_EXCHANGE,
+                route.routingKey(),
+                message,
+                stamp(message.getMessageId(), route)
         );
     }
+
+    /**
+     * Publish with a correlated publisher confirm.
+     * The future completes when the broker acks, and completes exceptionally with
+     * {@link PublishFailedException} on nack, unroutable return (mandatory=true), confirm timeout
+     * or when the in-flight window is full.
+     * No thread waits, neither for the confirm, which is delivered on the connection's confirm callback, nor for
+     * a slot in the window: a full window fails the publish at once, and admission control (429) is what slows
+     * clients down before it fills.
+     */
+    public CompletableFuture<Void> publishAsync(CommandMessage message) {
+        String id = message.getMessageId();
+        if (!inFlight.tryAcquire()) {
+            windowFull.increment();
+            return CompletableFuture.failedFuture(new PublishFailedException(id, "in-flight window full"));
+        }
+
+        CorrelationData correlation = new CorrelationData(id + ":" + UUID.randomUUID());
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        long start = System.nanoTime();
+        correlation.getFuture()
+                .orTimeout(confirmTimeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((confirm, ex) -> {
+                    inFlight.release();
+                    PublishFailedException failure = checkConfirm(id, correlation, confirm, ex);
+                    (failure == null ? confirmed : failed).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    if (failure == null) {
+                        result.complete(null);
+                    } else {
+                        log.warn("[PUBLISH_FAILED] {}", failure.getMessage());
+                        result.completeExceptionally(failure);
+                    }
+                });
+
+        try {
+            PartitionRouter.Route route = router.route(message);
+            rabbitTemplate.convertAndSend(PartitionRouter.COMMAND_EXCHANGE, route.routingKey(), message,
+                    stamp(id, route), correlation);
+        } catch (RuntimeException ex) {
+            correlation.getFuture().completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    /**
+     * {@link #publishAsync} for a chunk of messages, all sent on one channel bound to the calling thread.
+     * Futures are in the same order as the given messages. Messages that find the in-flight window full fail at
+     * once, so a full window never pins the thread and its channel.
+     */
+    public List<CompletableFuture<Void>> publishAllAsync(List<CommandMessage> messages) {
+        try {
+            return rabbitTemplate.invoke(ops -> {
+                List<CompletableFuture<Void>> futures = new ArrayList<>(messages.size());
+                for (CommandMessage message : messages) {
+                    futures.add(publishAsync(message));
+                }
+                return futures;
+            });
+        } catch (RuntimeException ex) {
+            // no channel could be obtained: every message in the chunk fails the same way
+            List<CompletableFuture<Void>> failed = new ArrayList<>(messages.size());
+            for (CommandMessage message : messages) {
+                failed.add(CompletableFuture.failedFuture(
+                        new PublishFailedException(message.getMessageId(), ex.getMessage(), ex)));
+            }
+            return failed;
+        }
+    }
+
+    // the consumer dedups on the message-id property and orders on x-partition-key without deserializing the body
+    private static MessagePostProcessor stamp(String id, PartitionRouter.Route route) {
+        return m -> {
+            m.getMessageProperties().setMessageId(id);
+            if (route.orderingKey() != null) {
+                m.getMessageProperties().setHeader(PartitionRouter.PARTITION_KEY_HEADER, route.orderingKey());
+            }
+            return m;
+        };
+    }
+
+    private static PublishFailedException checkConfirm(String id, CorrelationData correlation,
+                                                       CorrelationData.Confirm confirm, Throwable ex) {
+        if (ex != null) {
+            String reason = ex instanceof TimeoutException ? "confirm timed out" : ex.getMessage();
+            return new PublishFailedException(id, reason, ex);
+        }
+        if (!confirm.ack()) {
+            return PublishFailedException.rejected(id, "nacked: " + confirm.reason());
+        }
+        // with mandatory=true the return arrives before the (positive) confirm
+        ReturnedMessage returned = correlation.getReturned();
+        if (returned != null) {
+            return PublishFailedException.rejected(id, "returned: " + returned.getReplyText());
+        }
+        return null;
+    }
 }
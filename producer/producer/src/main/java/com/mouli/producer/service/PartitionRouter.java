@@ -0,0 +1,139 @@
+package com.mouli.producer.service;
+
+import com.mouli.producer.dto.CommandMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the routing key for a command.
+ *
+ * With producer.lanes.enabled, priority high / low commands go to their lane queue (command.lane.high /
+ * command.lane.low, routing key = queue name) and are not partitioned. Everything else is the normal lane.
+ *
+ * With producer.partitions.count &gt; 1 every normal-lane command goes to one of
+ * N partition queues (command.queue.&lt;n&gt;, bound to command.exchange as command.partition.&lt;n&gt;), chosen by
+ * a consistent hash of the partition key. With count=1 everything keeps going to command.key / command.queue.
+ *
+ * producer.partitions.key is messageId (default) or payload.&lt;field&gt;. A payload field keeps all commands for
+ * one entity on one partition, in order; it is also stamped as the x-partition-key header so the consumer can
+ * hold later commands for that key while an earlier one waits in a retry tier. Commands without the field
+ * fall back to their messageId.
+ *
+ * Jump consistent hash (Lamping &amp; Veach): growing from N to N+1 partitions moves only 1/(N+1) of the keys.
+ * The broker's consistent-hash exchange would need a plugin, and the consumer could not tell which key a
+ * message was hashed on.
+ */
+@Component
+public class PartitionRouter {
+
+    public static final String COMMAND_EXCHANGE = "command.exchange";
+    public static final String ROUTING_KEY = "command.key";
+    public static final String PARTITION_ROUTING_PREFIX = "command.partition.";
+    public static final String PARTITION_QUEUE_PREFIX = "command.queue.";
+    public static final String PARTITION_KEY_HEADER = "x-partition-key";
+    public static final String LANE_ROUTING_PREFIX = "command.lane.";
+
+    private static final String PAYLOAD_PREFIX = "payload.";
+
+    /** orderingKey is null unless partitioning on a payload field that the command carries. */
+    public record Route(String routingKey, String orderingKey) {
+    }
+
+    private final int partitions;
+    private final String payloadField;
+    private final boolean lanes;
+
+    public PartitionRouter(@Value("${producer.partitions.count:1}") int partitions,
+                           @Value("${producer.partitions.key:messageId}") String key,
+                           @Value("${producer.lanes.enabled:false}") boolean lanes) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("producer.partitions.count must be at least 1");
+        }
+        this.partitions = partitions;
+        if (key.startsWith(PAYLOAD_PREFIX) && key.length() > PAYLOAD_PREFIX.length()) {
+            this.payloadField = key.substring(PAYLOAD_PREFIX.length());
+        } else if ("messageId".equals(key)) {
+            this.payloadField = null;
+        } else {
+            throw new IllegalArgumentException("producer.partitions.key must be messageId or payload.<field>: " + key);
+        }
+        this.lanes = lanes;
+    }
+
+    public boolean partitioned() {
+        return partitions > 1;
+    }
+
+    public Route route(CommandMessage message) {
+        String priority = message.getPriority();
+        if (lanes && ("high".equals(priority) || "low".equals(priority))) {
+            return new Route(LANE_ROUTING_PREFIX + priority, null);
+        }
+        if (!partitioned()) {
+            return new Route(ROUTING_KEY, null);
+        }
+        String orderingKey = orderingKey(message);
+        String key = orderingKey != null ? orderingKey : message.getMessageId();
+        return new Route(PARTITION_ROUTING_PREFIX + partitionOf(key), orderingKey);
+    }
+
+    /** The queues commands are routed to: command.queue or every partition queue, plus the lane queues. */
+    public List<String> queueNames() {
+        List<String> names = new ArrayList<>();
+        if (!partitioned()) {
+            names.add("command.queue");
+        }
+        for (int p = 0; partitioned() && p < partitions; p++) {
+            names.add(PARTITION_QUEUE_PREFIX + p);
+        }
+        if (lanes) {
+            names.add(LANE_ROUTING_PREFIX + "high");
+            names.add(LANE_ROUTING_PREFIX + "low");
+        }
+        return names;
+    }
+
+    public boolean lanes() {
+        return lanes;
+    }
+
+    int partitionOf(String key) {
+        return jumpHash(hash64(key), partitions);
+    }
+
+    private String orderingKey(CommandMessage message) {
+        if (payloadField == null || message.getPayload() == null) return null;
+        Object value = message.getPayload().get(payloadField);
+        return value == null ? null : String.valueOf(value);
+    }
+
+    static int jumpHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    // FNV-1a over the UTF-8 bytes plus the murmur3 finalizer: stable across JVMs and producer restarts
+    static long hash64(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,80 @@
+package com.mouli.producer.service;
+
+import com.rabbitmq.client.AMQP;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Polls command.queue depth and consumer count once per interval and caches the result,
+ * so request handling never talks to the broker just to learn how backed up it is.
+ * With partitioned queues or lanes the sample is the sum over the configured queue and every partition / lane queue.
+ */
+@Component
+public class QueueDepthSampler {
+
+    /**
+     * depthRate is the change in depth per second since the previous sample (negative = draining).
+     */
+    public record Sample(long depth, int consumers, double depthRate, long sampledAtMillis) {
+    }
+
+    private static final Logger log =
+            LoggerFactory.getLogger(QueueDepthSampler.class);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final List<String> queues;
+    private volatile Sample latest;
+
+    public QueueDepthSampler(RabbitTemplate rabbitTemplate,
+                             PartitionRouter router,
+                             MeterRegistry registry,
+                             @Value("${producer.admission.queue:command.queue}") String queue) {
+        this.rabbitTemplate = rabbitTemplate;
+        List<String> queues = new ArrayList<>();
+        queues.add(queue);
+        if (router.partitioned() || router.lanes()) {
+            router.queueNames().stream().filter(q -> !q.equals(queue)).forEach(queues::add);
+        }
+        this.queues = List.copyOf(queues);
+        registry.gauge("producer.admission.queue_depth", this, s -> s.latest == null ? Double.NaN : s.latest.depth());
+        registry.gauge("producer.admission.queue_consumers", this, s -> s.latest == null ? Double.NaN : s.latest.consumers());
+    }
+
+    @Scheduled(fixedDelayString = "${producer.admission.sample-interval-ms:1000}")
+    public void sample() {
+        try {
+            long[] totals = rabbitTemplate.execute(channel -> {
+                long depth = 0;
+                long consumers = 0;
+                for (String queue : queues) {
+                    AMQP.Queue.DeclareOk ok = channel.queueDeclarePassive(queue);
+                    depth += ok.getMessageCount();
+                    consumers += ok.getConsumerCount();
+                }
+                return new long[]{depth, consumers};
+            });
+            long now = System.currentTimeMillis();
+            Sample previous = latest;
+            double rate = 0;
+            if (previous != null && now > previous.sampledAtMillis()) {
+                rate = (totals[0] - previous.depth()) * 1000.0 / (now - previous.sampledAtMillis());
+            }
+            latest = new Sample(totals[0], (int) totals[1], rate, now);
+        } catch (Exception ex) {
+            log.debug("[QUEUE_SAMPLE_FAILED] queues={} reason={}", queues, ex.getMessage());
+        }
+    }
+
+    /** Latest cached sample, or null if none succeeded yet. */
+    public Sample latest() {
+        return latest;
+    }
+}
@@ -0,0 +1,119 @@
+package com.mouli.producer.codec;
+
+import com.github.luben.zstd.Zstd;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PayloadCompressorTests {
+
+    private static final int THRESHOLD = 1024;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void zstdBodyRoundTripsAndKeepsTheCharsetAfterTheAlgorithm() {
+        byte[] body = payload(4096);
+
+        Message packed = compressor(WireFormat.ZSTD_ENCODING).postProcessMessage(message(body, "UTF-8"));
+
+        assertThat(packed.getMessageProperties().getContentEncoding()).isEqualTo("zstd:UTF-8");
+        assertThat(packed.getMessageProperties().getContentLength()).isEqualTo(packed.getBody().length);
+        assertThat(packed.getBody().length).isLessThan(body.length);
+        assertThat(Zstd.decompress(packed.getBody(), (int) Zstd.getFrameContentSize(packed.getBody())))
+                .isEqualTo(body);
+        assertThat(compressed(WireFormat.ZSTD_ENCODING)).isEqualTo(1);
+    }
+
+    @Test
+    void gzipBodyRoundTrips() throws IOException {
+        byte[] body = payload(4096);
+
+        Message packed = compressor(WireFormat.GZIP_ENCODING).postProcessMessage(message(body, "UTF-8"));
+
+        assertThat(packed.getMessageProperties().getContentEncoding()).isEqualTo("gzip:UTF-8");
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(packed.getBody()))) {
+            assertThat(in.readAllBytes()).isEqualTo(body);
+        }
+    }
+
+    @Test
+    void bodyWithoutACharsetGetsTheBareAlgorithm() {
+        Message packed = compressor(WireFormat.ZSTD_ENCODING).postProcessMessage(message(payload(4096), null));
+
+        assertThat(packed.getMessageProperties().getContentEncoding()).isEqualTo("zstd");
+    }
+
+    @Test
+    void bodyUnderTheThresholdPassesThroughUnchanged() {
+        Message message = message(payload(THRESHOLD - 1), "UTF-8");
+
+        assertThat(compressor(WireFormat.ZSTD_ENCODING).postProcessMessage(message)).isSameAs(message);
+        assertThat(message.getMessageProperties().getContentEncoding()).isEqualTo("UTF-8");
+        assertThat(compressed(WireFormat.ZSTD_ENCODING)).isZero();
+    }
+
+    @Test
+    void bodyThatDoesNotShrinkPassesThroughUnchanged() {
+        byte[] random = new byte[4096];
+        new Random(42).nextBytes(random);
+
+        for (String algorithm : new String[] {WireFormat.ZSTD_ENCODING, WireFormat.GZIP_ENCODING}) {
+            Message message = message(random.clone(), "UTF-8");
+            Message sent = compressor(algorithm).postProcessMessage(message);
+
+            assertThat(sent).isSameAs(message);
+            assertThat(sent.getBody()).isEqualTo(random);
+            assertThat(sent.getMessageProperties().getContentEncoding()).isEqualTo("UTF-8");
+            assertThat(compressed(algorithm)).isZero();
+        }
+    }
+
+    @Test
+    void compressedBodyIsNotCompressedTwice() {
+        // a threshold the compressed body still reaches
+        PayloadCompressor compressor = new PayloadCompressor(WireFormat.ZSTD_ENCODING, 1, 3, registry);
+        Message once = compressor.postProcessMessage(message(payload(4096), "UTF-8"));
+
+        assertThat(compressor.postProcessMessage(once)).isSameAs(once);
+        assertThat(compressed(WireFormat.ZSTD_ENCODING)).isEqualTo(1);
+    }
+
+    @Test
+    void unknownAlgorithmIsRefused() {
+        assertThatThrownBy(() -> compressor("lz4"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("producer.compression.algorithm must be zstd or gzip: lz4");
+    }
+
+    private PayloadCompressor compressor(String algorithm) {
+        return new PayloadCompressor(algorithm, THRESHOLD, 3, registry);
+    }
+
+    private double compressed(String algorithm) {
+        return registry.counter("producer.compression.messages", "algorithm", algorithm).count();
+    }
+
+    private static Message message(byte[] body, String charset) {
+        MessageProperties props = new MessageProperties();
+        props.setContentType(WireFormat.JSON_CONTENT_TYPE);
+        props.setContentEncoding(charset);
+        return new Message(body, props);
+    }
+
+    // a body of the given size, repetitive like real payloads
+    private static byte[] payload(int size) {
+        String row = "{\"id\":7,\"type\":\"report\"},";
+        return row.repeat(size / row.length() + 1).substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,60 @@
+package com.mouli.producer.codec;
+
+import com.mouli.producer.config.RabbitMQConfig;
+import com.mouli.producer.dto.CommandMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SmileMessageConverterTests {
+
+    private final CommandMessage command = new CommandMessage("m-1", Map.of("type", "report", "amount", 42), "high");
+
+    @Test
+    void smileWireFormatWritesSmileAndReadsItBack() {
+        MessageConverter converter = new RabbitMQConfig().jsonMessageConverter("smile");
+
+        Message message = converter.toMessage(command, new MessageProperties());
+
+        assertThat(message.getMessageProperties().getContentType()).isEqualTo(WireFormat.SMILE_CONTENT_TYPE);
+        // Smile header ":)\n"
+        assertThat(Arrays.copyOf(message.getBody(), 3)).isEqualTo(":)\n".getBytes(StandardCharsets.US_ASCII));
+        assertRoundTrip(converter, message);
+    }
+
+    @Test
+    void jsonWireFormatWritesIsoTimestampsAndReadsThemBack() {
+        MessageConverter converter = new RabbitMQConfig().jsonMessageConverter("json");
+
+        Message message = converter.toMessage(command, new MessageProperties());
+
+        assertThat(message.getMessageProperties().getContentType()).isEqualTo(WireFormat.JSON_CONTENT_TYPE);
+        assertThat(new String(message.getBody(), StandardCharsets.UTF_8))
+                .contains("\"createdAt\":\"" + command.getCreatedAt() + "\"");
+        assertRoundTrip(converter, message);
+    }
+
+    @Test
+    void smileBodyIsSmallerThanTheSameCommandInJson() {
+        MessageConverter smile = new RabbitMQConfig().jsonMessageConverter("smile");
+        MessageConverter json = new RabbitMQConfig().jsonMessageConverter("json");
+
+        assertThat(smile.toMessage(command, new MessageProperties()).getBody().length)
+                .isLessThan(json.toMessage(command, new MessageProperties()).getBody().length);
+    }
+
+    private void assertRoundTrip(MessageConverter converter, Message message) {
+        CommandMessage decoded = (CommandMessage) converter.fromMessage(message);
+        assertThat(decoded.getMessageId()).isEqualTo("m-1");
+        assertThat(decoded.getCreatedAt()).isEqualTo(command.getCreatedAt());
+        assertThat(decoded.getPriority()).isEqualTo("high");
+        assertThat(decoded.getPayload()).containsEntry("type", "report").containsEntry("amount", 42);
+    }
+}
@@ -0,0 +1,84 @@
+package com.mouli.producer.controller;
+
+import com.mouli.producer.dto.CommandRequest;
+import com.mouli.producer.dto.CommandResult;
+import com.mouli.producer.service.AdmissionService;
+import com.mouli.producer.service.BatchIngestService;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchCommandControllerTests {
+
+    private final BatchIngestService ingestService = mock(BatchIngestService.class);
+    private final BatchCommandController controller = new BatchCommandController(ingestService,
+            mock(AdmissionService.class), JsonMapper.builder().build(), 2);
+
+    @Test
+    void arrayWithinTheLimitIsIngestedInOrder() throws IOException {
+        when(ingestService.ingest(anyList())).thenReturn(List.of(CommandResult.accepted(0, "a"),
+                CommandResult.rejected(1, "", "item must not be null")));
+
+        ResponseEntity<?> response = controller.sendBatch(body("[{\"messageId\":\"a\",\"payload\":{}}, null]"));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(fields(response)).containsEntry("accepted", 1L).containsEntry("rejected", 1L);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<CommandRequest>> requests = ArgumentCaptor.forClass(List.class);
+        verify(ingestService).ingest(requests.capture());
+        assertThat(requests.getValue()).hasSize(2);
+        assertThat(requests.getValue().get(0).getMessageId()).isEqualTo("a");
+        assertThat(requests.getValue().get(1)).isNull();
+    }
+
+    @Test
+    void oversizedArrayIsRefusedBeforeTheRestIsRead() throws IOException {
+        // item 3 is past the limit; the broken tail after it is never parsed
+        ResponseEntity<?> response = controller.sendBatch(body(
+                "[{\"messageId\":\"a\",\"payload\":{}}, {\"messageId\":\"b\",\"payload\":{}}, {\"messageId\": ]"));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CONTENT_TOO_LARGE);
+        assertThat(fields(response)).containsEntry("error", "Too many items");
+        verify(ingestService, never()).ingest(any());
+    }
+
+    @Test
+    void malformedOrNonArrayBodyIsABadRequest() throws IOException {
+        for (String json : List.of("{\"messageId\":\"a\"}", "[{\"messageId\":\"a\",\"payload\":{}}",
+                "[{\"messageId\": ]")) {
+            ResponseEntity<?> response = controller.sendBatch(body(json));
+
+            assertThat(response.getStatusCode()).as(json).isEqualTo(HttpStatus.BAD_REQUEST);
+            assertThat(fields(response)).containsEntry("error", "Malformed JSON");
+        }
+        verify(ingestService, never()).ingest(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> fields(ResponseEntity<?> response) {
+        return (Map<String, Object>) response.getBody();
+    }
+
+    private static MockHttpServletRequest body(String json) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/command/batch");
+        request.setContentType("application/json");
+        request.setContent(json.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+}
@@ -0,0 +1,196 @@
+package com.mouli.producer.outbox;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OutboxJournalTests {
+
+    // four 64-byte records per segment
+    private static final int PAYLOAD_BYTES = 48;
+    private static final int RECORD_BYTES = OutboxJournal.HEADER_BYTES + PAYLOAD_BYTES;
+    private static final int SEGMENT_BYTES = 4 * RECORD_BYTES;
+
+    @TempDir
+    Path dir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private OutboxJournal journal;
+
+    @AfterEach
+    void close() {
+        if (journal != null) journal.close();
+    }
+
+    @Test
+    void recordsAreReadBackInOrderAcrossSegments() throws IOException {
+        journal = open(16, false);
+        append(1, 10);
+
+        assertThat(seqs(journal.read(journal.start(), 100))).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+        assertThat(journal.segmentCount()).isEqualTo(3);
+        assertThat(journal.backlog()).isEqualTo(10);
+
+        OutboxJournal.Batch first = journal.read(journal.start(), 3);
+        assertThat(seqs(first)).containsExactly(1L, 2L, 3L);
+        assertThat(seqs(journal.read(first.next(), 3))).containsExactly(4L, 5L, 6L);
+    }
+
+    @Test
+    void acknowledgeDeletesSealedSegmentsBelowTheCheckpoint() throws IOException {
+        journal = open(16, false);
+        append(1, 10);
+
+        journal.acknowledge(3);
+        assertThat(journal.segmentCount()).isEqualTo(3);
+        journal.acknowledge(4);
+        assertThat(journal.segmentCount()).isEqualTo(2);
+        assertThat(Files.exists(segment(1))).isFalse();
+
+        // the active segment stays even when everything in it is done
+        journal.acknowledge(10);
+        assertThat(journal.segmentCount()).isEqualTo(1);
+        assertThat(journal.backlog()).isZero();
+    }
+
+    @Test
+    void appendsFailOnceMaxSegmentsAreFull() throws IOException {
+        journal = open(2, false);
+        append(1, 8);
+
+        assertThatThrownBy(() -> journal.append(payload(9)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("outbox full");
+
+        journal.acknowledge(4);
+        assertThat(journal.append(payload(9)).join()).isEqualTo(9);
+    }
+
+    @Test
+    void restartReplaysFromTheCheckpoint() throws IOException {
+        journal = open(16, false);
+        append(1, 6);
+        journal.acknowledge(2);
+        journal.close();
+
+        journal = open(16, false);
+        assertThat(journal.acknowledged()).isEqualTo(2);
+        assertThat(journal.backlog()).isEqualTo(4);
+        // the reader starts at the oldest segment and skips what the checkpoint covers
+        assertThat(seqs(journal.read(journal.start(), 100))).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+        assertThat(journal.append(payload(7)).join()).isEqualTo(7);
+        journal.close();
+
+        // a lost checkpoint re-reads everything: duplicates, never loss
+        Files.delete(dir.resolve("checkpoint"));
+        journal = open(16, false);
+        assertThat(journal.acknowledged()).isZero();
+        assertThat(journal.backlog()).isEqualTo(7);
+    }
+
+    @Test
+    void tornTailIsDiscardedAndOverwritten() throws IOException {
+        journal = open(16, false);
+        append(1, 3);
+        journal.close();
+        // a fourth record whose length and seq made it to disk, but not its CRC and payload
+        try (RandomAccessFile file = new RandomAccessFile(segment(1).toFile(), "rw")) {
+            file.seek(3 * RECORD_BYTES);
+            file.writeInt(PAYLOAD_BYTES);
+            file.writeInt(0);
+            file.writeLong(4);
+            file.write(new byte[] {1, 2, 3});
+        }
+
+        journal = open(16, false);
+        assertThat(journal.backlog()).isEqualTo(3);
+        assertThat(bytesFrom(segment(1), 3 * RECORD_BYTES)).containsOnly(0);
+
+        assertThat(journal.append(payload(4)).join()).isEqualTo(4);
+        journal.close();
+        journal = open(16, false);
+        List<OutboxJournal.Entry> entries = journal.read(journal.start(), 100).entries();
+        assertThat(entries).extracting(OutboxJournal.Entry::seq).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(entries.getLast().payload()).isEqualTo(payload(4));
+    }
+
+    @Test
+    void corruptRecordInASealedSegmentEndsThatSegmentOnly() throws IOException {
+        journal = open(16, false);
+        append(1, 8);
+        journal.close();
+        try (RandomAccessFile file = new RandomAccessFile(segment(1).toFile(), "rw")) {
+            file.seek(RECORD_BYTES + OutboxJournal.HEADER_BYTES);
+            file.write('X');
+        }
+
+        journal = open(16, false);
+        // 2 and 3 sit behind the bad record and are not recovered; the next segment still is
+        assertThat(seqs(journal.read(journal.start(), 100))).containsExactly(1L, 5L, 6L, 7L, 8L);
+        assertThat(journal.append(payload(9)).join()).isEqualTo(9);
+    }
+
+    @Test
+    void failedGroupCommitFailsItsAppendsAndIsRetriedByTheNext() throws IOException {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        journal = new OutboxJournal(dir, SEGMENT_BYTES, 16, true, registry, (buffer, from, length) -> {
+            if (failing.get()) throw new UncheckedIOException(new IOException("No space left on device"));
+            buffer.force(from, length);
+        });
+
+        CompletableFuture<Long> first = journal.append(payload(1));
+        CompletableFuture<Long> second = journal.append(payload(2));
+        assertThatThrownBy(first::join).isInstanceOf(CompletionException.class).hasMessageContaining("No space");
+        assertThatThrownBy(second::join).isInstanceOf(CompletionException.class);
+        assertThat(journal.backlog()).isZero();
+        assertThat(journal.read(journal.start(), 100).entries()).isEmpty();
+
+        failing.set(false);
+        assertThat(journal.append(payload(3)).join()).isEqualTo(3);
+        assertThat(seqs(journal.read(journal.start(), 100))).containsExactly(1L, 2L, 3L);
+    }
+
+    private OutboxJournal open(int maxSegments, boolean fsync) throws IOException {
+        return new OutboxJournal(dir, SEGMENT_BYTES, maxSegments, fsync, registry);
+    }
+
+    private void append(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            assertThat(journal.append(payload(i)).join()).isEqualTo(i);
+        }
+    }
+
+    private static byte[] payload(int i) {
+        return String.format("%-" + PAYLOAD_BYTES + "s", "record-" + i).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static List<Long> seqs(OutboxJournal.Batch batch) {
+        return batch.entries().stream().map(OutboxJournal.Entry::seq).toList();
+    }
+
+    private Path segment(long firstSeq) {
+        return dir.resolve(String.format("segment-%020d.log", firstSeq));
+    }
+
+    private static byte[] bytesFrom(Path file, int offset) throws IOException {
+        byte[] all = Files.readAllBytes(file);
+        byte[] tail = new byte[all.length - offset];
+        System.arraycopy(all, offset, tail, 0, tail.length);
+        return tail;
+    }
+}
@@ -0,0 +1,126 @@
+package com.mouli.producer.outbox;
+
+import com.mouli.producer.dto.CommandMessage;
+import com.mouli.producer.exception.PublishFailedException;
+import com.mouli.producer.service.MessagePublisherService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OutboxServiceTests {
+
+    @TempDir
+    Path dir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MessagePublisherService publisher = mock(MessagePublisherService.class);
+    // messageIds of every publishAllAsync call, in call order
+    private final List<List<String>> rounds = new CopyOnWriteArrayList<>();
+    private OutboxService outbox;
+
+    @AfterEach
+    void stop() {
+        if (outbox != null) outbox.stop();
+    }
+
+    @Test
+    void retryResendsFromTheFirstUnconfirmedMessageInOrder() throws Exception {
+        outbox = open(5, (id, round) -> round == 0 && id.equals("b") ? outage(id) : null);
+
+        drain("a", "b", "c", "d");
+
+        assertThat(rounds).containsExactly(List.of("a", "b", "c", "d"), List.of("b", "c", "d"));
+        assertThat(counter("producer.outbox.republished")).isEqualTo(3);
+        assertThat(counter("producer.outbox.dead_lettered")).isZero();
+    }
+
+    @Test
+    void messageRejectedMaxRejectionsTimesIsDeadLettered() throws Exception {
+        outbox = open(3, (id, round) -> id.equals("b")
+                ? PublishFailedException.rejected(id, "returned: NO_ROUTE") : null);
+
+        drain("a", "b", "c");
+
+        assertThat(rounds).containsExactly(
+                List.of("a", "b", "c"), List.of("b", "c"), List.of("b", "c"), List.of("c"));
+        assertThat(counter("producer.outbox.dead_lettered")).isEqualTo(1);
+        List<String> lines = Files.readAllLines(dir.resolve(OutboxService.DEAD_LETTERS));
+        assertThat(lines).hasSize(1);
+        assertThat(lines.getFirst())
+                .contains("\"seq\":2", "3 rejections", "NO_ROUTE", "\"messageId\":\"b\"");
+    }
+
+    @Test
+    void rejectionCountRestartsWhenTheHeadMoves() throws Exception {
+        // a is refused twice, then b twice: neither reaches three in a row
+        outbox = open(3, (id, round) -> (round < 2 && id.equals("a")) || (round >= 2 && round < 4 && id.equals("b"))
+                ? PublishFailedException.rejected(id, "nacked") : null);
+
+        drain("a", "b");
+
+        assertThat(rounds).hasSize(5);
+        assertThat(counter("producer.outbox.dead_lettered")).isZero();
+    }
+
+    @Test
+    void brokerOutageIsRetriedWithoutDeadLettering() throws Exception {
+        outbox = open(1, (id, round) -> round < 5 ? outage(id) : null);
+
+        drain("a", "b");
+
+        assertThat(rounds).hasSize(6).allMatch(ids -> ids.equals(List.of("a", "b")));
+        assertThat(counter("producer.outbox.dead_lettered")).isZero();
+        assertThat(Files.exists(dir.resolve(OutboxService.DEAD_LETTERS))).isFalse();
+    }
+
+    private OutboxService open(int maxRejections, BiFunction<String, Integer, RuntimeException> outcome) {
+        when(publisher.publishAllAsync(anyList())).thenAnswer(invocation -> {
+            List<CommandMessage> messages = invocation.getArgument(0);
+            int round = rounds.size();
+            rounds.add(messages.stream().map(CommandMessage::getMessageId).toList());
+            List<CompletableFuture<Void>> confirms = new ArrayList<>();
+            for (CommandMessage message : messages) {
+                RuntimeException failure = outcome.apply(message.getMessageId(), round);
+                confirms.add(failure == null
+                        ? CompletableFuture.completedFuture(null) : CompletableFuture.failedFuture(failure));
+            }
+            return confirms;
+        });
+        return new OutboxService(publisher, registry, true, dir.toString(), 1, 4, false, 500, 1, 2, maxRejections);
+    }
+
+    private void drain(String... ids) throws Exception {
+        for (String id : ids) {
+            outbox.append(new CommandMessage(id, Map.of("n", 1))).join();
+        }
+        outbox.start();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (registry.get("producer.outbox.backlog").gauge().value() > 0) {
+            assertThat(System.currentTimeMillis()).as("outbox drained in time").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private double counter(String name) {
+        return registry.get(name).counter().count();
+    }
+
+    private static RuntimeException outage(String id) {
+        return new PublishFailedException(id, "confirm timed out");
+    }
+}
@@ -0,0 +1,113 @@
+package com.mouli.producer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IngestDedupWindowTests {
+
+    private static final long WINDOW_SECONDS = 300;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void duplicateWhilePendingWaitsOnTheOriginalPublish() {
+        IngestDedupWindow window = open(64);
+        IngestDedupWindow.Claim first = window.claim("a");
+        assertThat(first.duplicate()).isFalse();
+
+        IngestDedupWindow.Claim retry = window.claim("a");
+        assertThat(retry.duplicate()).isTrue();
+        assertThat(retry.confirmed()).isSameAs(first.confirmed()).isNotDone();
+
+        CompletableFuture<Void> published = new CompletableFuture<>();
+        window.track("a", first, published);
+        assertThat(retry.confirmed()).isNotDone();
+        published.complete(null);
+
+        assertThat(retry.confirmed()).isCompleted();
+        assertThat(window.claim("a").duplicate()).isTrue();
+        assertThat(registry.get("producer.dedup.suppressed").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void failedPublishIsDroppedSoTheRetryPublishesAgain() {
+        IngestDedupWindow window = open(64);
+        IngestDedupWindow.Claim first = window.claim("a");
+        IngestDedupWindow.Claim waiting = window.claim("a");
+
+        CompletableFuture<Void> published = new CompletableFuture<>();
+        window.track("a", first, published);
+        published.completeExceptionally(new IllegalStateException("nacked"));
+
+        assertThat(waiting.confirmed()).isCompletedExceptionally();
+        IngestDedupWindow.Claim retry = window.claim("a");
+        assertThat(retry.duplicate()).isFalse();
+        assertThat(retry.confirmed()).isNotSameAs(first.confirmed()).isNotDone();
+    }
+
+    @Test
+    void failedEntryNotYetDroppedIsReplaced() {
+        IngestDedupWindow window = open(64);
+        IngestDedupWindow.Claim first = window.claim("a");
+        // failed, but track's removal has not run yet
+        first.confirmed().completeExceptionally(new IllegalStateException("nacked"));
+
+        IngestDedupWindow.Claim retry = window.claim("a");
+        assertThat(retry.duplicate()).isFalse();
+        assertThat(window.claim("a").confirmed()).isSameAs(retry.confirmed());
+    }
+
+    @Test
+    void acceptedMessageIsForgottenAfterTheWindow() {
+        IngestDedupWindow window = open(64);
+        IngestDedupWindow.Claim first = window.claim("a");
+        window.track("a", first, CompletableFuture.completedFuture(null));
+
+        nanos.addAndGet(Duration.ofSeconds(WINDOW_SECONDS - 1).toNanos());
+        assertThat(window.claim("a").duplicate()).isTrue();
+
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertThat(window.claim("a").duplicate()).isFalse();
+        assertThat(evictions("expired")).isEqualTo(1);
+    }
+
+    @Test
+    void memoryCapEvictsBySize() {
+        IngestDedupWindow window = open(1);
+        int claims = 20_000;
+        for (int i = 0; i < claims; i++) {
+            String id = "msg-%05d".formatted(i);
+            window.track(id, window.claim(id), CompletableFuture.completedFuture(null));
+        }
+
+        double entries = registry.get("producer.dedup.entries").gauge().value();
+        assertThat(entries).isLessThan(claims);
+        assertThat(evictions("size")).isEqualTo(claims - entries);
+        assertThat(registry.get("producer.dedup.weight_bytes").gauge().value()).isLessThanOrEqualTo(1024 * 1024);
+        assertThat(evictions("expired")).isZero();
+        assertThat(window.claim("msg-%05d".formatted(claims - 1)).duplicate()).isTrue();
+    }
+
+    @Test
+    void disabledWindowNeverSuppresses() {
+        IngestDedupWindow window = new IngestDedupWindow(registry, false, WINDOW_SECONDS, 64, nanos::get,
+                Runnable::run);
+        assertThat(window.claim("a").duplicate()).isFalse();
+        assertThat(window.claim("a").duplicate()).isFalse();
+    }
+
+    private IngestDedupWindow open(long maxMemoryMb) {
+        return new IngestDedupWindow(registry, true, WINDOW_SECONDS, maxMemoryMb, nanos::get, Runnable::run);
+    }
+
+    private double evictions(String cause) {
+        return registry.get("producer.dedup.evictions").tag("cause", cause).counter().count();
+    }
+}
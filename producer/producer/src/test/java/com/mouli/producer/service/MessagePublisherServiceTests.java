@@ -0,0 +1,54 @@
+package com.mouli.producer.service;
+
+import com.mouli.producer.dto.CommandMessage;
+import com.mouli.producer.exception.PublishFailedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class MessagePublisherServiceTests {
+
+    private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MessagePublisherService publisher = new MessagePublisherService(rabbitTemplate,
+            new PartitionRouter(1, "messageId", false), registry, 1, 5000);
+
+    @Test
+    void fullWindowFailsAtOnceAndTakesPublishesAgainAfterAConfirm() {
+        CompletableFuture<Void> first = publisher.publishAsync(new CommandMessage("a", Map.of()));
+
+        // failed by the time it returns: nothing waited for a slot
+        CompletableFuture<Void> second = publisher.publishAsync(new CommandMessage("b", Map.of()));
+        assertThat(second).isCompletedExceptionally();
+        assertThat(second.exceptionNow()).isInstanceOf(PublishFailedException.class)
+                .hasMessageContaining("in-flight window full");
+        assertThat(registry.counter("producer.publish.window_full").count()).isEqualTo(1);
+
+        confirm(0);
+        assertThat(first).isCompleted();
+        assertThat(publisher.publishAsync(new CommandMessage("c", Map.of()))).isNotDone();
+    }
+
+    // acks the n-th correlated publish
+    private void confirm(int n) {
+        ArgumentCaptor<CorrelationData> correlation = ArgumentCaptor.forClass(CorrelationData.class);
+        verify(rabbitTemplate, times(n + 1)).convertAndSend(anyString(), anyString(), any(Object.class),
+                any(MessagePostProcessor.class), correlation.capture());
+        List<CorrelationData> sent = correlation.getAllValues();
+        sent.get(n).getFuture().complete(new CorrelationData.Confirm(true, null));
+    }
+}